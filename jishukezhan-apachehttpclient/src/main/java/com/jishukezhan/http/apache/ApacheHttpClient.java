@@ -10,6 +10,8 @@ import com.jishukezhan.core.lang.CollectionUtil;
 import com.jishukezhan.core.lang.Preconditions;
 import com.jishukezhan.core.lang.StringUtil;
 import com.jishukezhan.http.*;
+import com.jishukezhan.http.event.CallRecorder;
+import com.jishukezhan.http.exceptions.ResponseTooLargeException;
 import org.apache.http.*;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -18,28 +20,58 @@ import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.Configurable;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.methods.RequestBuilder;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.mime.HttpMultipartMode;
-import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.protocol.BasicAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.util.EntityUtils;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -47,7 +79,7 @@ import java.util.stream.Collectors;
  *
  * @author miles.tang
  */
-public class ApacheHttpClient implements Client {
+public class ApacheHttpClient implements Client, Closeable {
     private static final String ACCEPT_HEADER_NAME = "Accept";
 
     /**
@@ -57,75 +89,408 @@ public class ApacheHttpClient implements Client {
 
     private final HttpClient httpClient;
 
+    /**
+     * 共享的连接池，所有派生出来的{@linkplain HttpClient}都复用该连接池；外部传入{@linkplain HttpClient}时为{@code null}
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * 按照代理缓存的{@linkplain HttpClient}，超时等参数通过{@linkplain RequestConfig}在请求级别设置
+     */
+    private final ConcurrentMap<ClientKey, HttpClient> scopedClients = new ConcurrentHashMap<>();
+
+    /**
+     * 创建时的选项，用于初始化异步客户端
+     */
+    private final Options defaultOptions;
+
+    /**
+     * 异步客户端，首次异步请求时才会创建并启动
+     */
+    private volatile CloseableHttpAsyncClient asyncClient;
+
     public ApacheHttpClient() {
         this((Options) null);
     }
 
     public ApacheHttpClient(@NonNull HttpClient httpClient) {
         this.httpClient = Preconditions.requireNonNull(httpClient, "httpClient == null");
+        this.connectionManager = null;
+        this.defaultOptions = Options.builder().build();
     }
 
     public ApacheHttpClient(@Nullable Options options) {
-        this.httpClient = build(options, null);
+        Options actualOptions = options == null ? Options.builder().build() : options;
+        this.defaultOptions = actualOptions;
+        this.connectionManager = new PoolingHttpClientConnectionManager(
+                ApacheTimings.socketFactoryRegistry(actualOptions.sslConfig()),
+                ApacheTimings.dnsResolver(actualOptions.dns()));
+        this.connectionManager.setMaxTotal(actualOptions.maxConnections());
+        this.connectionManager.setDefaultMaxPerRoute(actualOptions.maxConnectionsPerRoute());
+        this.httpClient = build(actualOptions);
+        this.scopedClients.put(ClientKey.of(actualOptions), this.httpClient);
     }
 
-    HttpClient build(@Nullable Options options, @Nullable HttpClient httpClient) {
-        if (options == null) {
-            return HttpClientBuilder.create().build();
-        } else {
-            HttpClientBuilder builder = HttpClientBuilder.create();
-            RequestConfig.Builder customBuilder = ((httpClient instanceof Configurable) ?
-                    RequestConfig.copy(((Configurable) httpClient).getConfig()) : RequestConfig.custom())
-                    .setConnectTimeout(options.connectTimeoutMillis())
-                    .setSocketTimeout(options.readTimeoutMillis())
-                    .setRedirectsEnabled(options.followRedirects());
-
-            // 代理
-            ProxyInfo proxyInfo = options.proxyInfo();
-            if (proxyInfo != null) {
-                builder.setProxy(new HttpHost(proxyInfo.hostOrIP(), proxyInfo.port(), proxyInfo.type().name()));
+    /**
+     * 返回共享的连接池，外部传入{@linkplain HttpClient}时返回{@code null}
+     *
+     * @return 连接池
+     */
+    @Nullable
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
 
-                if (StringUtil.haveAnyLength(proxyInfo.username(), proxyInfo.password())) {
-                    CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-                    credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(proxyInfo.username(), proxyInfo.password()));
-                    builder.setDefaultCredentialsProvider(credentialsProvider);
+    /**
+     * 预热同步请求使用的连接池，异步客户端有独立的连接池，不在预热范围内
+     * <p>{@code probe}为{@code null}且没有配置代理时直接通过连接池建立连接（包括TLS握手）后归还，不发送请求；
+     * 否则同时发出探测请求，所有响应返回之后再一起关闭</p>
+     *
+     * @param url         目标地址，比如{@code https://api.example.com}
+     * @param connections 连接数，超过{@linkplain Options#maxConnectionsPerRoute()}的部分会因为等待连接超时而失败
+     * @param probe       探测请求的方法，为{@code null}时只建立连接
+     * @param options     请求选项
+     * @return 预热结果，不会异常结束
+     */
+    @Override
+    public CompletableFuture<WarmUpResult> warmUp(String url, int connections, @Nullable Method probe,
+                                                  @Nullable Options options) {
+        Preconditions.requireNonNull(url, "url == null");
+        Preconditions.checkArgument(connections > 0, "'connections' must than 0");
+        Options actualOptions = options == null ? defaultOptions : options;
+        if (probe != null || connectionManager == null || actualOptions.proxyInfo() != null) {
+            // 通过同步请求探测，避免预热到异步客户端的连接池
+            Client sync = this::execute;
+            return sync.warmUp(url, connections, probe == null ? Method.HEAD : probe, options);
+        }
+        long start = System.nanoTime();
+        HttpRoute route;
+        try {
+            route = route(url);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(new WarmUpResult(url, connections, 0, 0, e));
+        }
+        List<CompletableFuture<HttpClientConnection>> futures = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            futures.add(AsyncExecutors.supplyAsync(() -> connect(route, actualOptions)));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, e) -> {
+            int succeeded = 0;
+            Throwable failure = null;
+            for (CompletableFuture<HttpClientConnection> future : futures) {
+                try {
+                    // 所有连接都建立之后再一起归还，保证是不同的连接
+                    connectionManager.releaseConnection(future.join(), null, 0, TimeUnit.MILLISECONDS);
+                    succeeded++;
+                } catch (CompletionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() != null ? ex.getCause() : ex;
+                    }
                 }
             }
+            return new WarmUpResult(url, connections, succeeded,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failure);
+        });
+    }
+
+    private static HttpRoute route(String url) {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase();
+        boolean secure = "https".equals(scheme);
+        int port = uri.getPort() >= 0 ? uri.getPort() : (secure ? 443 : 80);
+        Preconditions.checkArgument(uri.getHost() != null, "'" + url + "' has no host");
+        // 与DefaultRoutePlanner生成的路由一致，才能被后续请求复用
+        return new HttpRoute(new HttpHost(uri.getHost(), port, scheme), null, secure);
+    }
 
-            // 重试机制
-            if (options.retryCount() > 0) {
-                builder.setRetryHandler(new DefaultHttpRequestRetryHandler(options.retryCount()));
+    private HttpClientConnection connect(HttpRoute route, Options options) {
+        HttpClientConnection connection = null;
+        try {
+            ConnectionRequest connectionRequest = connectionManager.requestConnection(route, null);
+            connection = connectionRequest.get(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS);
+            if (!connection.isOpen()) {
+                HttpClientContext context = HttpClientContext.create();
+                connectionManager.connect(connection, route, options.connectTimeoutMillis(), context);
+                connectionManager.routeComplete(connection, route, context);
+            }
+            return connection;
+        } catch (IOException e) {
+            release(connection);
+            throw new IoRuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(connection);
+            throw new IoRuntimeException("Interrupted while warming up " + route);
+        } catch (ExecutionException e) {
+            release(connection);
+            throw new IoRuntimeException("Failed to lease connection to " + route + ": " + e.getCause());
+        }
+    }
+
+    private void release(@Nullable HttpClientConnection connection) {
+        if (connection != null) {
+            // 没有建立成功的连接不能复用
+            IOUtil.closeQuietly(connection);
+            connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    HttpClient build(@NonNull Options options) {
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                // 连接池由当前对象持有，派生的客户端关闭时不能关闭连接池
+                .setConnectionManagerShared(true)
+                .setDefaultRequestConfig(toRequestConfig(RequestConfig.DEFAULT, options));
+
+        // 代理
+        ProxyInfo proxyInfo = options.proxyInfo();
+        if (proxyInfo != null) {
+            builder.setProxy(new HttpHost(proxyInfo.hostOrIP(), proxyInfo.port(), proxyInfo.type().name()));
+
+            if (StringUtil.haveAnyLength(proxyInfo.username(), proxyInfo.password())) {
+                CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(proxyInfo.username(), proxyInfo.password()));
+                builder.setDefaultCredentialsProvider(credentialsProvider);
             }
+        }
+
+        // 重试由RetryPolicy在请求级别处理，关闭Apache HttpClient自带的重试
+        builder.disableAutomaticRetries();
+        // 记录发送请求和等待响应头的耗时
+        builder.setRequestExecutor(new ApacheTimings.TimedRequestExecutor());
+        return builder.build();
+    }
 
-            builder.setDefaultRequestConfig(customBuilder.build());
-            return builder.build();
+    /**
+     * 根据请求选项返回复用连接池的{@linkplain HttpClient}，相同的代理配置共用同一个实例
+     *
+     * @param options 请求选项
+     * @return {@linkplain HttpClient}
+     */
+    HttpClient scopedClient(@Nullable Options options) {
+        if (options == null || connectionManager == null) {
+            return httpClient;
         }
+        return scopedClients.computeIfAbsent(ClientKey.of(options), key -> build(options));
+    }
+
+    private RequestConfig toRequestConfig(@NonNull RequestConfig base, @NonNull Options options) {
+        return RequestConfig.copy(base)
+                .setConnectTimeout(options.connectTimeoutMillis())
+                .setConnectionRequestTimeout(options.connectTimeoutMillis())
+                .setSocketTimeout(options.readTimeoutMillis())
+                .setRedirectsEnabled(options.followRedirects())
+                .build();
     }
 
+    /**
+     * 执行HTTP请求，按照{@linkplain Options#retryPolicy()}重试
+     *
+     * @param request 请求对象
+     * @param options 请求选项
+     * @return 执行结果
+     * @throws IoRuntimeException HTTP请求异常
+     */
     @Override
     public Response execute(Request request, Options options) throws IoRuntimeException {
-        try {
-            HttpUriRequest httpUriRequest = toHttpUriRequest(request);
-            HttpClient httpClientScoped;
+        HttpClient httpClientScoped = scopedClient(options);
+        RequestConfig base = httpClientScoped instanceof Configurable ?
+                ((Configurable) httpClientScoped).getConfig() : null;
+        RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+        return retryPolicy.execute(request, (attemptRequest, timeoutMillis) -> {
+            CallRecorder recorder = CallRecorder.start(attemptRequest, options);
+            ScheduledFuture<?> deadline = null;
+            try {
+                HttpUriRequest httpUriRequest = toHttpUriRequest(attemptRequest, base, options);
+                if (timeoutMillis > 0) {
+                    // 到达期限时中止请求，收到响应头后不再限制
+                    deadline = AsyncExecutors.schedule(httpUriRequest::abort, timeoutMillis);
+                }
+                HttpClientContext context = HttpClientContext.create();
+                context.setAttribute(ApacheTimings.ATTRIBUTE, recorder.timings());
+                HttpResponse httpResponse = httpClientScoped.execute(httpUriRequest, context);
+                return recorder.complete(ResponseBodyPolicy.apply(toApiResponse(httpResponse, attemptRequest), options));
+            } catch (URISyntaxException e) {
+                IoRuntimeException ex = new IoRuntimeException(
+                        "URL '" + attemptRequest.url() + "' couldn't be parsed into a URI", e);
+                recorder.failed(ex);
+                throw ex;
+            } catch (IOException e) {
+                IoRuntimeException ex = new IoRuntimeException(e);
+                recorder.failed(ex);
+                throw ex;
+            } catch (RuntimeException e) {
+                recorder.failed(e);
+                throw e;
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+            }
+        });
+    }
 
-            if (options == null) {
-                httpClientScoped = httpClient;
-            } else {
-                httpClientScoped = build(options, httpClient);
+    /**
+     * 基于{@code Apache HttpAsyncClient}异步执行HTTP请求，按照{@linkplain Options#retryPolicy()}重试，
+     * 取消返回的{@linkplain CompletableFuture}会中止底层请求
+     *
+     * @param request 请求对象
+     * @param options 请求选项
+     * @return 异步执行结果
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        Options actualOptions = options == null ? defaultOptions : options;
+        RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+        return retryPolicy.executeAsync(request, attemptRequest -> executeAsyncOnce(attemptRequest, actualOptions));
+    }
+
+    private CompletableFuture<Response> executeAsyncOnce(Request request, Options options) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        CallRecorder recorder = CallRecorder.start(request, options);
+        future.whenComplete((response, e) -> {
+            if (e != null) {
+                recorder.failed(e);
+            }
+        });
+        try {
+            // 异步客户端只有一个实例，代理和认证信息都放在请求级别
+            RequestConfig.Builder base = RequestConfig.custom();
+            HttpClientContext context = HttpClientContext.create();
+            context.setAttribute(ApacheTimings.ATTRIBUTE, recorder.timings());
+            ProxyInfo proxyInfo = options.proxyInfo();
+            if (proxyInfo != null) {
+                base.setProxy(new HttpHost(proxyInfo.hostOrIP(), proxyInfo.port(), proxyInfo.type().name()));
+                if (StringUtil.haveAnyLength(proxyInfo.username(), proxyInfo.password())) {
+                    CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+                    credentialsProvider.setCredentials(AuthScope.ANY, new UsernamePasswordCredentials(proxyInfo.username(), proxyInfo.password()));
+                    context.setCredentialsProvider(credentialsProvider);
+                }
             }
-            HttpResponse httpResponse = httpClientScoped.execute(httpUriRequest);
-            return toApiResponse(httpResponse, request);
+            HttpUriRequest httpUriRequest = toHttpUriRequest(request, base.build(), options);
+            // 默认的BasicAsyncResponseConsumer会把完整的响应内容读入内存，配置了长度限制或暂存阈值时在接收过程中处理
+            ResponseBodyPolicy.Accumulator accumulator = ResponseBodyPolicy.accumulator(request.url(), options);
+            HttpAsyncResponseConsumer<HttpResponse> consumer = accumulator == null ?
+                    new BasicAsyncResponseConsumer() : new PolicyResponseConsumer(accumulator);
+            Future<HttpResponse> responseFuture = asyncClient().execute(HttpAsyncMethods.create(httpUriRequest),
+                    consumer, context, new FutureCallback<HttpResponse>() {
+                @Override
+                public void completed(HttpResponse httpResponse) {
+                    Response response;
+                    try {
+                        response = recorder.complete(ResponseBodyPolicy.apply(toApiResponse(httpResponse, request), options));
+                    } catch (RuntimeException e) {
+                        // 响应内容超过限制或者暂存失败，响应已经被关闭
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    if (!future.complete(response)) {
+                        response.close();
+                    }
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    if (e.getCause() instanceof ResponseTooLargeException) {
+                        future.completeExceptionally(e.getCause());
+                        return;
+                    }
+                    future.completeExceptionally(e instanceof IOException ?
+                            new IoRuntimeException((IOException) e) : e);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            });
+            future.whenComplete((response, e) -> {
+                if (future.isCancelled()) {
+                    responseFuture.cancel(true);
+                }
+            });
         } catch (URISyntaxException e) {
-            throw new IoRuntimeException("URL '" + request.url() + "' couldn't be parsed into a URI", e);
+            future.completeExceptionally(
+                    new IoRuntimeException("URL '" + request.url() + "' couldn't be parsed into a URI", e));
         } catch (IOException e) {
-            throw new IoRuntimeException(e);
+            future.completeExceptionally(new IoRuntimeException(e));
+        }
+        return future;
+    }
+
+    /**
+     * 返回已启动的异步客户端，不存在则创建
+     *
+     * @return {@linkplain CloseableHttpAsyncClient}
+     * @throws IOReactorException 创建IO Reactor失败
+     */
+    CloseableHttpAsyncClient asyncClient() throws IOReactorException {
+        CloseableHttpAsyncClient client = asyncClient;
+        if (client == null) {
+            synchronized (this) {
+                client = asyncClient;
+                if (client == null) {
+                    IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                            .setConnectTimeout(defaultOptions.connectTimeoutMillis())
+                            .setSoTimeout(defaultOptions.readTimeoutMillis())
+                            .build();
+                    PoolingNHttpClientConnectionManager asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+                            new DefaultConnectingIOReactor(ioReactorConfig), sessionStrategyRegistry(defaultOptions.sslConfig()),
+                            ApacheTimings.dnsResolver(defaultOptions.dns()));
+                    asyncConnectionManager.setMaxTotal(defaultOptions.maxConnections());
+                    asyncConnectionManager.setDefaultMaxPerRoute(defaultOptions.maxConnectionsPerRoute());
+                    client = HttpAsyncClients.custom()
+                            .setConnectionManager(asyncConnectionManager)
+                            .setDefaultRequestConfig(toRequestConfig(RequestConfig.DEFAULT, defaultOptions))
+                            .addInterceptorLast(ApacheTimings.REQUEST_INTERCEPTOR)
+                            .addInterceptorFirst(ApacheTimings.RESPONSE_INTERCEPTOR)
+                            .build();
+                    client.start();
+                    asyncClient = client;
+                }
+            }
         }
+        return client;
     }
 
-    private HttpUriRequest toHttpUriRequest(Request request) throws URISyntaxException {
+    /**
+     * 与{@code PoolingNHttpClientConnectionManager}默认相同的协议注册表
+     *
+     * @param sslConfig TLS配置，为{@code null}时与默认相同
+     * @return 协议注册表
+     */
+    private static Registry<SchemeIOSessionStrategy> sessionStrategyRegistry(@Nullable Options.SSLConfig sslConfig) {
+        SchemeIOSessionStrategy sslStrategy = sslConfig == null ? SSLIOSessionStrategy.getDefaultStrategy() :
+                new SSLIOSessionStrategy(sslConfig.sslContext(), sslConfig.protocols(), sslConfig.cipherSuites(),
+                        SSLIOSessionStrategy.getDefaultHostnameVerifier());
+        return RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", sslStrategy)
+                .build();
+    }
+
+    /**
+     * 关闭异步客户端和共享的连接池，外部传入的{@linkplain HttpClient}由调用方自行关闭
+     */
+    @Override
+    public void close() {
+        IOUtil.closeQuietly(asyncClient);
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    private HttpUriRequest toHttpUriRequest(Request request, @Nullable RequestConfig base, @Nullable Options options)
+            throws URISyntaxException {
         RequestBuilder requestBuilder = RequestBuilder.create(request.method().name());
 
-        requestBuilder.setUri(new URIBuilder(request.url()).build());
+        // 请求级别的超时、跳转设置，避免为了不同的超时重新构建客户端
+        if (options != null) {
+            requestBuilder.setConfig(toRequestConfig(base == null ? RequestConfig.DEFAULT : base, options));
+        }
+
+        // 已经编码的地址直接构造URI，不再经过URIBuilder拆分、解码再重新编码查询参数
+        requestBuilder.setUri(request.isUrlEncoded() ? new URI(request.url()) : new URIBuilder(request.url()).build());
 
         // request headers
         boolean hasAcceptHeader = false;
@@ -160,32 +525,12 @@ public class ApacheHttpClient implements Client {
                         .collect(Collectors.toList());
                 requestBuilder.setEntity(new UrlEncodedFormEntity(nvpList, formBody.getCharset()));
             } else if (request.body() instanceof MultipartBody) {
+                // 使用自身的编码器流式写出，文件和流的部分不会读入内存
                 MultipartBody multipartBody = (MultipartBody) request.body();
-                MultipartEntityBuilder multipartEntityBuilder = MultipartEntityBuilder.create()
-                        .setBoundary(multipartBody.getBoundary())
-                        .setCharset(multipartBody.getCharset())
-                        .setContentType(contentType)
-                        .setMode(HttpMultipartMode.BROWSER_COMPATIBLE);
-                for (MultipartBody.Part part : multipartBody.getParts()) {
-                    ContentType partContentType = ContentType.create(part.getContentType().toString());
-                    if (part.getFile() != null) {
-                        multipartEntityBuilder.addBinaryBody(part.getName(), part.getFile());
-                    } else if (part.getIn() != null) {
-                        multipartEntityBuilder.addBinaryBody(part.getName(), part.getIn(), partContentType, part.getValue());
-                    } else if (part.getBody() != null) {
-                        multipartEntityBuilder.addBinaryBody(part.getName(), part.getBody().getData(),
-                                partContentType, part.getValue());
-                    } else if (part.getValue() != null) {
-                        multipartEntityBuilder.addTextBody(part.getName(), part.getValue(), partContentType);
-                    }
-                }
-                requestBuilder.setEntity(multipartEntityBuilder.build());
+                requestBuilder.setEntity(new RequestBodyEntity(multipartBody,
+                        ContentType.parse(multipartBody.contentTypeHeader())));
             } else {
-                ByteArrayEntity byteArrayEntity = new ByteArrayEntity(request.body().getData());
-                if (request.body().contentType() != null) {
-                    byteArrayEntity.setContentType(contentType.toString());
-                }
-                requestBuilder.setEntity(byteArrayEntity);
+                requestBuilder.setEntity(toEntity(request.body(), contentType));
             }
         } else {
             requestBuilder.setEntity(new ByteArrayEntity(new byte[0]));
@@ -193,10 +538,32 @@ public class ApacheHttpClient implements Client {
         return requestBuilder.build();
     }
 
+    /**
+     * 将请求内容转为{@linkplain HttpEntity}，文件和流的内容以流式发送，不会全部读入内存
+     *
+     * @param body        请求内容
+     * @param contentType 内容类型
+     * @return {@linkplain HttpEntity}
+     */
+    private static HttpEntity toEntity(RequestBody body, @Nullable ContentType contentType) {
+        if (body instanceof RequestBody.FileRequestBody) {
+            return new FileEntity(((RequestBody.FileRequestBody) body).getFile(), contentType);
+        }
+        if (body instanceof RequestBody.InputStreamRequestBody) {
+            return new InputStreamEntity(((RequestBody.InputStreamRequestBody) body).getIn(),
+                    body.contentLength(), contentType);
+        }
+        if (body.getClass() == RequestBody.class) {
+            return new ByteArrayEntity(body.getData(), contentType);
+        }
+        // 其他的请求内容按照writeTo写出
+        return new RequestBodyEntity(body, contentType);
+    }
+
     private ContentType getContentType(Request request) {
         ContentType contentType = null;
         RequestBody body = request.body();
-        if (body != null) {
+        if (body != null && body.contentType() != null) {
             contentType = ContentType.parse(body.contentType().toString());
         }
         if (contentType == null) {
@@ -240,6 +607,10 @@ public class ApacheHttpClient implements Client {
         if (entity == null) {
             return null;
         }
+        if (entity instanceof PolicyResponseConsumer.BufferedBodyEntity) {
+            // 异步客户端已经按照ResponseBodyPolicy接收完成
+            return ((PolicyResponseConsumer.BufferedBodyEntity) entity).body;
+        }
         return new ResponseBody() {
             @Override
             public Integer length() {
@@ -291,7 +662,7 @@ public class ApacheHttpClient implements Client {
                 Charset resultEncoding = charset;
                 if (resultEncoding == null) {
                     ContentType contentType = ContentType.get(entity);
-                    resultEncoding = contentType.getCharset();
+                    resultEncoding = contentType == null ? null : contentType.getCharset();
                 }
                 if (resultEncoding == null) {
                     resultEncoding = CharsetUtil.UTF_8;
@@ -302,4 +673,38 @@ public class ApacheHttpClient implements Client {
         };
     }
 
+    /**
+     * 派生{@linkplain HttpClient}的缓存键，只包含无法在请求级别设置的选项
+     */
+    static final class ClientKey {
+
+        private final ProxyInfo proxyInfo;
+
+        private ClientKey(ProxyInfo proxyInfo) {
+            this.proxyInfo = proxyInfo;
+        }
+
+        static ClientKey of(@NonNull Options options) {
+            return new ClientKey(options.proxyInfo());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ClientKey that = (ClientKey) o;
+            return Objects.equals(proxyInfo, that.proxyInfo);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(proxyInfo);
+        }
+
+    }
+
 }
@@ -0,0 +1,211 @@
+package com.jishukezhan.http.apache;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.dns.Dns;
+import com.jishukezhan.http.event.CallTimings;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.ssl.SSLContexts;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * 将Apache HttpClient的连接和请求过程记录到{@linkplain CallTimings}中，{@linkplain CallTimings}通过
+ * {@code HttpContext}的{@link #ATTRIBUTE}属性传递
+ * <ul>
+ * <li>DNS解析：{@linkplain DnsResolver}没有上下文参数，解析结果暂存在线程变量中，由随后在同一线程上建立连接的
+ * {@linkplain ConnectionSocketFactory}取出</li>
+ * <li>建立连接、TLS握手：包装{@linkplain ConnectionSocketFactory}</li>
+ * <li>发送请求、等待响应头：同步客户端使用{@linkplain HttpRequestExecutor}，异步客户端使用请求和响应拦截器</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+final class ApacheTimings {
+
+    static final String ATTRIBUTE = CallTimings.class.getName();
+
+    /**
+     * 当前线程最近一次DNS解析的起止时间
+     */
+    private static final ThreadLocal<long[]> LAST_DNS = new ThreadLocal<>();
+
+
+    /**
+     * 异步客户端生成请求时的拦截器
+     */
+    static final HttpRequestInterceptor REQUEST_INTERCEPTOR = (request, context) -> {
+        CallTimings timings = timings(context);
+        if (timings != null) {
+            timings.mark(CallTimings.Phase.REQUEST_START);
+        }
+    };
+
+    /**
+     * 异步客户端收到响应头后的拦截器
+     */
+    static final HttpResponseInterceptor RESPONSE_INTERCEPTOR = (response, context) -> {
+        CallTimings timings = timings(context);
+        if (timings != null) {
+            timings.mark(CallTimings.Phase.RESPONSE_HEADERS_START);
+            timings.mark(CallTimings.Phase.RESPONSE_HEADERS_END);
+        }
+    };
+
+    private ApacheTimings() {
+        throw new AssertionError("No com.jishukezhan.http.apache.ApacheTimings instances for you!");
+    }
+
+    @Nullable
+    static CallTimings timings(@Nullable HttpContext context) {
+        Object timings = context == null ? null : context.getAttribute(ATTRIBUTE);
+        return timings instanceof CallTimings ? (CallTimings) timings : null;
+    }
+
+    /**
+     * 返回使用{@code dns}解析的{@linkplain DnsResolver}，同时记录解析耗时
+     *
+     * @param dns 域名解析服务，{@linkplain Dns#SYSTEM}时与默认的{@linkplain SystemDefaultDnsResolver}一致
+     * @return {@linkplain DnsResolver}
+     */
+    static DnsResolver dnsResolver(Dns dns) {
+        return host -> {
+            long start = System.nanoTime();
+            try {
+                if (dns == Dns.SYSTEM) {
+                    return SystemDefaultDnsResolver.INSTANCE.resolve(host);
+                }
+                List<InetAddress> addresses = dns.lookup(host);
+                return addresses.toArray(new InetAddress[0]);
+            } finally {
+                LAST_DNS.set(new long[]{start, System.nanoTime()});
+            }
+        };
+    }
+
+    /**
+     * 与{@code PoolingHttpClientConnectionManager}默认相同的协议注册表，额外记录连接耗时
+     *
+     * @param sslConfig TLS配置，为{@code null}时与默认相同
+     * @return 协议注册表
+     */
+    static Registry<ConnectionSocketFactory> socketFactoryRegistry(@Nullable Options.SSLConfig sslConfig) {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", new TimedPlainSocketFactory())
+                .register("https",
+                        sslConfig == null ? new TimedSslSocketFactory() : new TimedSslSocketFactory(sslConfig))
+                .build();
+    }
+
+    private static void markConnectStart(HttpContext context) {
+        long[] dns = LAST_DNS.get();
+        LAST_DNS.remove();
+        CallTimings timings = timings(context);
+        if (timings == null) {
+            return;
+        }
+        if (dns != null) {
+            timings.mark(CallTimings.Phase.DNS_START, dns[0]);
+            timings.mark(CallTimings.Phase.DNS_END, dns[1]);
+        }
+        timings.mark(CallTimings.Phase.CONNECT_START);
+    }
+
+    private static void mark(HttpContext context, CallTimings.Phase phase) {
+        CallTimings timings = timings(context);
+        if (timings != null) {
+            timings.mark(phase);
+        }
+    }
+
+    static final class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            markConnectStart(context);
+            Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            mark(context, CallTimings.Phase.CONNECT_END);
+            return connected;
+        }
+
+    }
+
+    static final class TimedSslSocketFactory extends SSLConnectionSocketFactory {
+
+        TimedSslSocketFactory() {
+            super(SSLContexts.createDefault(), getDefaultHostnameVerifier());
+        }
+
+        TimedSslSocketFactory(Options.SSLConfig sslConfig) {
+            // 直接使用共享的SSLContext，会话缓存在多个客户端之间复用
+            super(sslConfig.sslContext().getSocketFactory(), sslConfig.protocols(), sslConfig.cipherSuites(),
+                    getDefaultHostnameVerifier());
+        }
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            markConnectStart(context);
+            Socket connected = super.connectSocket(connectTimeout, socket, host, remoteAddress, localAddress, context);
+            mark(context, CallTimings.Phase.CONNECT_END);
+            return connected;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context)
+                throws IOException {
+            mark(context, CallTimings.Phase.SECURE_CONNECT_START);
+            Socket layered = super.createLayeredSocket(socket, target, port, context);
+            mark(context, CallTimings.Phase.SECURE_CONNECT_END);
+            return layered;
+        }
+
+    }
+
+    /**
+     * 同步客户端的请求执行器，记录发送请求和等待响应头的时间
+     */
+    static final class TimedRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            mark(context, CallTimings.Phase.REQUEST_START);
+            HttpResponse response = super.doSendRequest(request, conn, context);
+            mark(context, CallTimings.Phase.REQUEST_END);
+            return response;
+        }
+
+        @Override
+        protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws HttpException, IOException {
+            HttpResponse response = super.doReceiveResponse(request, conn, context);
+            // 无法区分首字节和响应头结束
+            mark(context, CallTimings.Phase.RESPONSE_HEADERS_START);
+            mark(context, CallTimings.Phase.RESPONSE_HEADERS_END);
+            return response;
+        }
+
+    }
+
+}
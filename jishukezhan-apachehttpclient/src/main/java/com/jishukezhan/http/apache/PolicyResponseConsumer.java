@@ -0,0 +1,127 @@
+package com.jishukezhan.http.apache;
+
+import com.jishukezhan.http.ResponseBody;
+import com.jishukezhan.http.ResponseBodyPolicy;
+import com.jishukezhan.http.exceptions.ResponseTooLargeException;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * 异步客户端的响应消费者，在数据到达时按照{@linkplain ResponseBodyPolicy}检查最大长度并暂存到临时文件，
+ * 代替默认把完整响应内容读入堆内存的{@code BasicAsyncResponseConsumer}
+ * <p>超过最大长度时以{@linkplain IOException}结束请求，原因是{@linkplain ResponseTooLargeException}</p>
+ *
+ * @author miles.tang
+ */
+final class PolicyResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+
+    private final ResponseBodyPolicy.Accumulator accumulator;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+
+    private HttpResponse response;
+
+    PolicyResponseConsumer(ResponseBodyPolicy.Accumulator accumulator) {
+        this.accumulator = accumulator;
+    }
+
+    @Override
+    protected void onResponseReceived(HttpResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+        try {
+            accumulator.checkContentLength(entity.getContentLength());
+        } catch (ResponseTooLargeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+        try {
+            while (decoder.read(buffer) > 0) {
+                accumulator.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        } catch (ResponseTooLargeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected HttpResponse buildResult(HttpContext context) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new BufferedBodyEntity(accumulator.toResponseBody(), entity));
+        }
+        return response;
+    }
+
+    @Override
+    protected void releaseResources() {
+        // 响应内容已经交出时不会删除临时文件
+        accumulator.close();
+    }
+
+    /**
+     * 已经完整接收的响应内容，{@code ApacheHttpClient}直接取出其中的{@linkplain ResponseBody}
+     */
+    static final class BufferedBodyEntity extends AbstractHttpEntity {
+
+        final ResponseBody body;
+
+        BufferedBodyEntity(ResponseBody body, HttpEntity original) {
+            this.body = body;
+            setContentType(original.getContentType());
+            setContentEncoding(original.getContentEncoding());
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public long getContentLength() {
+            Integer length = body.length();
+            return length == null ? -1 : length;
+        }
+
+        @Override
+        public InputStream getContent() {
+            return body.byteStream();
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = body.byteStream()) {
+                byte[] b = new byte[8 * 1024];
+                int n;
+                while ((n = in.read(b)) != -1) {
+                    out.write(b, 0, n);
+                }
+            }
+        }
+
+        @Override
+        public boolean isStreaming() {
+            return false;
+        }
+
+    }
+
+}
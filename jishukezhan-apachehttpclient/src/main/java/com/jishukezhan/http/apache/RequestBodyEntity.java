@@ -0,0 +1,57 @@
+package com.jishukezhan.http.apache;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.http.RequestBody;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 将{@linkplain RequestBody}适配为{@code HttpEntity}，发送时直接调用{@link RequestBody#writeTo(OutputStream)}
+ *
+ * @author miles.tang
+ */
+class RequestBodyEntity extends AbstractHttpEntity {
+
+    private final RequestBody body;
+
+    RequestBodyEntity(RequestBody body, @Nullable ContentType contentType) {
+        this.body = body;
+        if (contentType != null) {
+            setContentType(contentType.toString());
+        }
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return body.isRepeatable();
+    }
+
+    @Override
+    public long getContentLength() {
+        return body.contentLength();
+    }
+
+    /**
+     * 仅用于拦截器等需要读取内容的场景，会将内容读入内存
+     */
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ByteArrayInputStream(body.getData());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        body.writeTo(outStream);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return !body.isRepeatable();
+    }
+
+}
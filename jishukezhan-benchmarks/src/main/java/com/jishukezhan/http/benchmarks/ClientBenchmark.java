@@ -0,0 +1,193 @@
+package com.jishukezhan.http.benchmarks;
+
+import com.jishukezhan.core.http.ContentType;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.MultipartBody;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.RequestBody;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.apache.ApacheHttpClient;
+import com.jishukezhan.http.okhttp.OkHttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在同一个本地回环服务器上对比三种{@linkplain Client}实现的吞吐量、延迟和每次操作的内存分配
+ * <p>运行方式：{@code mvn -f jishukezhan-benchmarks/pom.xml package && java -jar jishukezhan-benchmarks/target/benchmarks.jar -prof gc}，
+ * 或者直接运行{@link #main(String[])}。{@code gc.alloc.rate.norm}即每次操作分配的字节数。</p>
+ *
+ * @author miles.tang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientBenchmark {
+
+    /**
+     * 并发扇出的请求数
+     */
+    private static final int FAN_OUT = 16;
+
+    @Param({"default", "okhttp", "apache"})
+    public String client;
+
+    /**
+     * 大文件下载的字节数
+     */
+    @Param({"4194304"})
+    public int downloadSize;
+
+    /**
+     * 上传文件部分的字节数
+     */
+    @Param({"262144"})
+    public int uploadSize;
+
+    private LoopbackServer server;
+
+    private Client httpClient;
+
+    private Options options;
+
+    private Request jsonRequest;
+
+    private Request downloadRequest;
+
+    private Request uploadRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LoopbackServer();
+        options = Options.builder()
+                .maxConnections(256)
+                .maxConnectionsPerRoute(64)
+                .build();
+        httpClient = createClient(client, options);
+
+        jsonRequest = Request.builder().url(server.url("/json")).build();
+        downloadRequest = Request.builder().url(server.url("/bytes?size=" + downloadSize)).build();
+        MultipartBody multipartBody = new MultipartBody.Builder()
+                .add("description", "benchmark upload")
+                .add("file", "payload.bin", RequestBody.create(ContentType.APPLICATION_OCTET_STREAM, new byte[uploadSize]))
+                .build();
+        uploadRequest = Request.builder()
+                .url(server.url("/upload"))
+                .method(Method.POST, multipartBody)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (httpClient instanceof Closeable) {
+            IOUtil.closeQuietly((Closeable) httpClient);
+        }
+        server.close();
+    }
+
+    static Client createClient(String name, Options options) {
+        switch (name) {
+            case "okhttp":
+                return new OkHttpClient(options);
+            case "apache":
+                return new ApacheHttpClient(options);
+            default:
+                return new Client.DefaultClient();
+        }
+    }
+
+    /**
+     * 小JSON的GET请求，主要衡量每次请求的固定开销
+     */
+    @Benchmark
+    public long smallJsonGet() {
+        return consume(httpClient.execute(jsonRequest, options));
+    }
+
+    /**
+     * 大文件下载，主要衡量读取响应内容的拷贝和缓冲
+     */
+    @Benchmark
+    public long largeDownload() {
+        return consume(httpClient.execute(downloadRequest, options));
+    }
+
+    /**
+     * multipart/form-data上传，主要衡量请求内容的编码
+     */
+    @Benchmark
+    public long multipartUpload() {
+        return consume(httpClient.execute(uploadRequest, options));
+    }
+
+    /**
+     * 同时发出多个异步请求并等待全部完成，衡量连接池和异步调度
+     */
+    @Benchmark
+    @OperationsPerInvocation(FAN_OUT)
+    public void concurrentFanOut(Blackhole blackhole) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Response>[] futures = new CompletableFuture[FAN_OUT];
+        for (int i = 0; i < FAN_OUT; i++) {
+            futures[i] = httpClient.executeAsync(jsonRequest, options);
+        }
+        for (CompletableFuture<Response> future : futures) {
+            blackhole.consume(consume(future.join()));
+        }
+    }
+
+    /**
+     * 读取并关闭响应
+     *
+     * @return 读取的字节数
+     */
+    private static long consume(Response response) {
+        try (Response r = response; InputStream in = r.body().byteStream()) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+            }
+            return total;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ClientBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.jishukezhan.http.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 基准测试使用的本地回环HTTP服务器，基于JDK内置的{@code com.sun.net.httpserver}
+ * <ul>
+ * <li>{@code GET /json}：约200字节的JSON</li>
+ * <li>{@code GET /bytes?size=n}：n字节的二进制内容</li>
+ * <li>{@code POST /upload}：读取并丢弃请求内容，返回收到的字节数</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+final class LoopbackServer implements Closeable {
+
+    static final byte[] JSON = ("{\"id\":1024,\"name\":\"cilantro\",\"tags\":[\"http\",\"client\",\"benchmark\"]," +
+            "\"enabled\":true,\"score\":98.5,\"owner\":{\"id\":7,\"name\":\"miles\"}," +
+            "\"createdAt\":\"2020-04-01T08:00:00Z\",\"description\":\"loopback response\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final int CHUNK = 64 * 1024;
+
+    private static final byte[] BYTES = new byte[CHUNK];
+
+    static {
+        for (int i = 0; i < BYTES.length; i++) {
+            BYTES[i] = (byte) i;
+        }
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    LoopbackServer() throws IOException {
+        // 默认开启Nagle算法，与客户端的延迟确认叠加后每个请求会多出约40毫秒
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        this.executor = Executors.newFixedThreadPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 2),
+                r -> {
+                    Thread thread = new Thread(r, "loopback-server");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        server.setExecutor(executor);
+        server.createContext("/json", this::json);
+        server.createContext("/bytes", this::bytes);
+        server.createContext("/upload", this::upload);
+        server.start();
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void json(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, JSON.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(JSON);
+        }
+    }
+
+    private void bytes(HttpExchange exchange) throws IOException {
+        drain(exchange.getRequestBody());
+        String query = exchange.getRequestURI().getQuery();
+        long size = query != null && query.startsWith("size=") ? Long.parseLong(query.substring(5)) : CHUNK;
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.sendResponseHeaders(200, size);
+        try (OutputStream out = exchange.getResponseBody()) {
+            long remaining = size;
+            while (remaining > 0) {
+                int n = (int) Math.min(remaining, CHUNK);
+                out.write(BYTES, 0, n);
+                remaining -= n;
+            }
+        }
+    }
+
+    private void upload(HttpExchange exchange) throws IOException {
+        long received = drain(exchange.getRequestBody());
+        byte[] body = ("{\"received\":" + received + "}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static long drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
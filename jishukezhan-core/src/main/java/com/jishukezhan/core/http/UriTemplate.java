@@ -0,0 +1,413 @@
+package com.jishukezhan.core.http;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.lang.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的URI模板，支持RFC 6570中最常用的两种变量
+ * <ul>
+ * <li>{@code {name}}：简单展开，位于{@code ?}之前时按照路径片段编码（{@code /}会被编码），之后按照查询参数编码</li>
+ * <li>{@code {+name}}：保留展开，保留{@code /}、{@code ?}、{@code &}等分隔符和已有的{@code %XX}，只编码非法字符</li>
+ * </ul>
+ * 模板只解析一次，展开时直接按照预先计算好的安全字符表写入{@linkplain StringBuilder}，不经过{@linkplain java.net.URLEncoder}，
+ * 也不会生成中间字符串。未定义或者为{@code null}的变量展开为空字符串。
+ * <pre>
+ * UriTemplate template = UriTemplate.compile("https://api.example.com/users/{id}/posts?tag={tag}");
+ * template.expand("a b", "c&amp;d"); // https://api.example.com/users/a%20b/posts?tag=c%26d
+ * </pre>
+ * 实例是不可变的，可以在多个线程之间共享。
+ *
+ * @author miles.tang
+ */
+public final class UriTemplate {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * RFC 3986 unreserved：{@code ALPHA / DIGIT / "-" / "." / "_" / "~"}
+     */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    /**
+     * 路径片段中可以不编码的字符：unreserved、sub-delims、{@code ":"}和{@code "@"}
+     */
+    private static final boolean[] PATH_SEGMENT_SAFE = new boolean[128];
+
+    /**
+     * 查询参数的名称和值中可以不编码的字符，排除了{@code "&"}、{@code "="}、{@code "+"}和{@code "#"}
+     */
+    private static final boolean[] QUERY_PARAM_SAFE = new boolean[128];
+
+    /**
+     * 保留展开时可以不编码的字符：unreserved和所有reserved（gen-delims与sub-delims），{@code "%"}单独处理
+     */
+    private static final boolean[] RESERVED_SAFE = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        mark(UNRESERVED, "-._~");
+
+        System.arraycopy(UNRESERVED, 0, PATH_SEGMENT_SAFE, 0, 128);
+        mark(PATH_SEGMENT_SAFE, "!$&'()*+,;=:@");
+
+        System.arraycopy(UNRESERVED, 0, QUERY_PARAM_SAFE, 0, 128);
+        mark(QUERY_PARAM_SAFE, "!$'()*,;:@/?");
+
+        System.arraycopy(UNRESERVED, 0, RESERVED_SAFE, 0, 128);
+        mark(RESERVED_SAFE, ":/?#[]@!$&'()*+,;=");
+    }
+
+    private static void mark(boolean[] table, String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+    }
+
+    /**
+     * 变量的编码方式
+     */
+    private static final int LITERAL = 0;
+    private static final int PATH_SEGMENT = 1;
+    private static final int QUERY_PARAM = 2;
+    private static final int RESERVED = 3;
+
+    private final String template;
+
+    /**
+     * 字面量或者变量名
+     */
+    private final String[] parts;
+
+    /**
+     * 每个部分的类型，{@link #LITERAL}或者变量的编码方式
+     */
+    private final int[] kinds;
+
+    /**
+     * 变量名，按照第一次出现的顺序，不重复
+     */
+    private final List<String> variableNames;
+
+    /**
+     * 每个变量部分在{@link #variableNames}中的下标，字面量为{@code -1}
+     */
+    private final int[] variableIndexes;
+
+    /**
+     * 预估展开后的长度，字面量的总长度加上每个变量16个字符
+     */
+    private final int estimatedLength;
+
+    private UriTemplate(String template) {
+        this.template = template;
+        List<String> parts = new ArrayList<>();
+        List<Integer> kinds = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        boolean inQuery = false;
+        int literalLength = 0;
+        int position = 0;
+        int length = template.length();
+        while (position < length) {
+            int start = template.indexOf('{', position);
+            if (start < 0) {
+                start = length;
+            }
+            if (start > position) {
+                String literal = template.substring(position, start);
+                parts.add(literal);
+                kinds.add(LITERAL);
+                literalLength += literal.length();
+                inQuery = inQuery || literal.indexOf('?') >= 0;
+            }
+            if (start == length) {
+                break;
+            }
+            int end = template.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed variable at " + start + " in template '" + template + "'");
+            }
+            String name = template.substring(start + 1, end).trim();
+            int kind = inQuery ? QUERY_PARAM : PATH_SEGMENT;
+            if (name.startsWith("+")) {
+                name = name.substring(1).trim();
+                kind = RESERVED;
+            }
+            if (name.isEmpty()) {
+                throw new IllegalArgumentException("Empty variable at " + start + " in template '" + template + "'");
+            }
+            parts.add(name);
+            kinds.add(kind);
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+            position = end + 1;
+        }
+
+        this.parts = parts.toArray(new String[0]);
+        this.kinds = new int[this.parts.length];
+        this.variableIndexes = new int[this.parts.length];
+        int estimatedLength = literalLength;
+        for (int i = 0; i < this.parts.length; i++) {
+            this.kinds[i] = kinds.get(i);
+            this.variableIndexes[i] = this.kinds[i] == LITERAL ? -1 : names.indexOf(this.parts[i]);
+            if (this.kinds[i] != LITERAL) {
+                estimatedLength += 16;
+            }
+        }
+        this.variableNames = Collections.unmodifiableList(names);
+        this.estimatedLength = estimatedLength;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template 模板
+     * @return {@linkplain UriTemplate}
+     * @throws IllegalArgumentException 变量没有闭合或者变量名为空
+     */
+    public static UriTemplate compile(@NonNull String template) {
+        Preconditions.requireNonNull(template, "template == null");
+        return new UriTemplate(template);
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * 返回变量名，按照第一次出现的顺序，不重复
+     *
+     * @return 变量名
+     */
+    public List<String> getVariableNames() {
+        return variableNames;
+    }
+
+    /**
+     * 按照变量名展开
+     *
+     * @param variables 变量
+     * @return 展开后的URI
+     */
+    public String expand(@Nullable Map<String, ?> variables) {
+        StringBuilder out = new StringBuilder(estimatedLength);
+        expandTo(variables, out);
+        return out.toString();
+    }
+
+    /**
+     * 按照变量名展开，写入到给定的{@linkplain StringBuilder}中，便于调用方复用
+     *
+     * @param variables 变量
+     * @param out       输出
+     */
+    public void expandTo(@Nullable Map<String, ?> variables, @NonNull StringBuilder out) {
+        for (int i = 0; i < parts.length; i++) {
+            if (kinds[i] == LITERAL) {
+                out.append(parts[i]);
+            } else if (variables != null) {
+                append(variables.get(parts[i]), kinds[i], out);
+            }
+        }
+    }
+
+    /**
+     * 按照{@link #getVariableNames()}的顺序展开
+     *
+     * @param values 变量值，个数不足时缺少的变量展开为空字符串
+     * @return 展开后的URI
+     */
+    public String expand(Object... values) {
+        StringBuilder out = new StringBuilder(estimatedLength);
+        expandTo(values, out);
+        return out.toString();
+    }
+
+    /**
+     * 按照{@link #getVariableNames()}的顺序展开，写入到给定的{@linkplain StringBuilder}中
+     *
+     * @param values 变量值
+     * @param out    输出
+     */
+    public void expandTo(@Nullable Object[] values, @NonNull StringBuilder out) {
+        for (int i = 0; i < parts.length; i++) {
+            if (kinds[i] == LITERAL) {
+                out.append(parts[i]);
+            } else if (values != null && variableIndexes[i] < values.length) {
+                append(values[variableIndexes[i]], kinds[i], out);
+            }
+        }
+    }
+
+    /**
+     * 预估展开后的长度，用于初始化{@linkplain StringBuilder}
+     *
+     * @return 预估长度
+     */
+    public int estimatedLength() {
+        return estimatedLength;
+    }
+
+    private static void append(@Nullable Object value, int kind, StringBuilder out) {
+        if (value == null) {
+            return;
+        }
+        CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+        switch (kind) {
+            case PATH_SEGMENT:
+                encodePathSegment(text, out);
+                break;
+            case QUERY_PARAM:
+                encodeQueryParam(text, out);
+                break;
+            default:
+                encodeReserved(text, out);
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+    // region encode
+
+    /**
+     * 按照路径片段编码，{@code /}、{@code ?}、{@code #}和空格都会被编码
+     *
+     * @param text 待编码的内容
+     * @param out  输出
+     */
+    public static void encodePathSegment(@NonNull CharSequence text, @NonNull StringBuilder out) {
+        encode(text, 0, text.length(), PATH_SEGMENT_SAFE, false, out);
+    }
+
+    /**
+     * 按照查询参数的名称或者值编码，{@code &}、{@code =}、{@code +}、{@code #}和空格都会被编码，空格编码为{@code %20}
+     *
+     * @param text 待编码的内容
+     * @param out  输出
+     */
+    public static void encodeQueryParam(@NonNull CharSequence text, @NonNull StringBuilder out) {
+        encode(text, 0, text.length(), QUERY_PARAM_SAFE, false, out);
+    }
+
+    /**
+     * 按照查询参数编码{@code text}中{@code [start, end)}的部分，用于编码整段查询字符串中的某个值，不需要先截取子串
+     *
+     * @param text  待编码的内容
+     * @param start 开始位置（包含）
+     * @param end   结束位置（不包含）
+     * @param out   输出
+     */
+    public static void encodeQueryParam(@NonNull CharSequence text, int start, int end, @NonNull StringBuilder out) {
+        encode(text, start, end, QUERY_PARAM_SAFE, false, out);
+    }
+
+    /**
+     * 编码一段已经基本合法的URI（例如完整的查询字符串），保留所有分隔符和已有的{@code %XX}，只编码空格、非ASCII等非法字符
+     *
+     * @param text 待编码的内容
+     * @param out  输出
+     */
+    public static void encodeReserved(@NonNull CharSequence text, @NonNull StringBuilder out) {
+        encode(text, 0, text.length(), RESERVED_SAFE, true, out);
+    }
+
+    /**
+     * 按照查询参数编码
+     *
+     * @param text 待编码的内容，为{@code null}时返回空字符串
+     * @return 编码后的内容
+     * @see #encodeQueryParam(CharSequence, StringBuilder)
+     */
+    public static String encodeQueryParam(@Nullable CharSequence text) {
+        if (text == null || text.length() == 0) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        encodeQueryParam(text, out);
+        return out.toString();
+    }
+
+    /**
+     * 判断内容中是否含有需要保留展开编码的字符
+     *
+     * @param text 内容
+     * @return 需要编码返回{@code true}
+     */
+    public static boolean needsReservedEncoding(@NonNull CharSequence text) {
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 128 || (!RESERVED_SAFE[c] && !(c == '%' && isEscape(text, i)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void encode(CharSequence text, int start, int end, boolean[] safe, boolean keepEscapes,
+                               StringBuilder out) {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                if (safe[c] || (keepEscapes && c == '%' && isEscape(text, i))) {
+                    out.append(c);
+                } else {
+                    appendEscaped(c, out);
+                }
+                continue;
+            }
+            // 按照UTF-8编码，代理对合并为一个码点
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?';
+            }
+            if (codePoint < 0x800) {
+                appendEscaped(0xC0 | (codePoint >> 6), out);
+                appendEscaped(0x80 | (codePoint & 0x3F), out);
+            } else if (codePoint < 0x10000) {
+                appendEscaped(0xE0 | (codePoint >> 12), out);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (codePoint & 0x3F), out);
+            } else {
+                appendEscaped(0xF0 | (codePoint >> 18), out);
+                appendEscaped(0x80 | ((codePoint >> 12) & 0x3F), out);
+                appendEscaped(0x80 | ((codePoint >> 6) & 0x3F), out);
+                appendEscaped(0x80 | (codePoint & 0x3F), out);
+            }
+        }
+    }
+
+    private static boolean isEscape(CharSequence text, int index) {
+        return index + 2 < text.length() && isHex(text.charAt(index + 1)) && isHex(text.charAt(index + 2));
+    }
+
+    private static boolean isHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static void appendEscaped(int b, StringBuilder out) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0x0F]).append(HEX_DIGITS[b & 0x0F]);
+    }
+
+    // endregion
+
+}
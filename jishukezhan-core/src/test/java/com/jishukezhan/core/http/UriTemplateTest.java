@@ -0,0 +1,82 @@
+package com.jishukezhan.core.http;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class UriTemplateTest {
+
+    @Test
+    public void testExpandByName() {
+        UriTemplate template = UriTemplate.compile("https://api.example.com/users/{id}/posts?tag={tag}&page={page}");
+        assertEquals(template.getVariableNames(), Arrays.asList("id", "tag", "page"));
+
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("id", "a b/c");
+        variables.put("tag", "x&y=z+1");
+        variables.put("page", 2);
+        assertEquals(template.expand(variables),
+                "https://api.example.com/users/a%20b%2Fc/posts?tag=x%26y%3Dz%2B1&page=2");
+    }
+
+    @Test
+    public void testExpandByPosition() {
+        UriTemplate template = UriTemplate.compile("/users/{id}/friends/{id}?q={q}");
+        assertEquals(template.getVariableNames(), Arrays.asList("id", "q"));
+        assertEquals(template.expand("7", "中文"), "/users/7/friends/7?q=%E4%B8%AD%E6%96%87");
+        // 缺少或者为null的变量展开为空字符串
+        assertEquals(template.expand("7"), "/users/7/friends/7?q=");
+        assertEquals(template.expand((Object) null, null), "/users//friends/?q=");
+    }
+
+    @Test
+    public void testReservedExpansion() {
+        UriTemplate template = UriTemplate.compile("{+base}/search{+query}");
+        assertEquals(template.expand("http://example.com/api", "?q=a b&r=%2F"),
+                "http://example.com/api/search?q=a%20b&r=%2F");
+    }
+
+    @Test
+    public void testExpandIntoBuilder() {
+        UriTemplate template = UriTemplate.compile("/files/{name}");
+        StringBuilder out = new StringBuilder("http://localhost");
+        template.expandTo(new Object[]{"😀.txt"}, out);
+        assertEquals(out.toString(), "http://localhost/files/%F0%9F%98%80.txt");
+    }
+
+    @Test
+    public void testEncode() {
+        StringBuilder out = new StringBuilder();
+        UriTemplate.encodeQueryParam("a=b&c d", out);
+        assertEquals(out.toString(), "a%3Db%26c%20d");
+
+        out.setLength(0);
+        UriTemplate.encodeQueryParam("k=v w", 2, 5, out);
+        assertEquals(out.toString(), "v%20w");
+
+        out.setLength(0);
+        UriTemplate.encodePathSegment("a:b@c?d", out);
+        assertEquals(out.toString(), "a:b@c%3Fd");
+
+        out.setLength(0);
+        UriTemplate.encodeReserved("/a b?x=%20&y=%zz", out);
+        assertEquals(out.toString(), "/a%20b?x=%20&y=%25zz");
+
+        assertEquals(UriTemplate.encodeQueryParam((CharSequence) null), "");
+        assertFalse(UriTemplate.needsReservedEncoding("http://example.com/a?b=%20"));
+        assertTrue(UriTemplate.needsReservedEncoding("http://example.com/a b"));
+        assertTrue(UriTemplate.needsReservedEncoding("http://example.com/%zz"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testUnclosedVariable() {
+        UriTemplate.compile("/users/{id");
+    }
+
+}
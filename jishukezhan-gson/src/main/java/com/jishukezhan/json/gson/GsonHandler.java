@@ -1,10 +1,14 @@
 package com.jishukezhan.json.gson;
 
 import com.google.gson.Gson;
+import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.json.Handler;
 import com.jishukezhan.json.JsonRuntimeException;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 public class GsonHandler implements Handler {
 
@@ -36,6 +40,20 @@ public class GsonHandler implements Handler {
         return gson.fromJson(json, typeOfT);
     }
 
+    /**
+     * 从字节流中读取JSON并反序列化为Java对象，直接基于流解析，不会生成中间字符串
+     *
+     * @param in      JSON字节流
+     * @param charset 字节流的编码，为{@code null}时采用{@code UTF-8}
+     * @param typeOfT Java类型
+     * @return Java对象
+     * @throws JsonRuntimeException 反序列化出现异常
+     */
+    @Override
+    public <T> T deserialize(InputStream in, Charset charset, Type typeOfT) throws JsonRuntimeException {
+        return gson.fromJson(new InputStreamReader(in, CharsetUtil.getCharset(charset, CharsetUtil.UTF_8)), typeOfT);
+    }
+
     public void setGson(Gson gson) {
         this.gson = gson;
     }
@@ -0,0 +1,136 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.core.thread.ThreadFactoryBuilder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 异步请求使用的有界线程池，用于没有原生异步实现的{@linkplain Client}
+ *
+ * @author miles.tang
+ */
+public final class AsyncExecutors {
+
+    /**
+     * 等待队列的最大长度，超过后直接拒绝
+     */
+    private static final int MAX_QUEUED_TASKS = 1024;
+
+    private AsyncExecutors() {
+        throw new AssertionError("No com.jishukezhan.http.AsyncExecutors instances for you!");
+    }
+
+    private static class Holder {
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(MAX_QUEUED_TASKS),
+                    new ThreadFactoryBuilder().namePrefix("cilantro-async-").daemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private static class SchedulerHolder {
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                    new ThreadFactoryBuilder().namePrefix("cilantro-scheduler-").daemon(true).build());
+            // 大部分定时任务（重试等待、请求期限）都会在到期前取消，及时移出队列
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /**
+     * 返回默认的有界线程池
+     *
+     * @return {@linkplain ExecutorService}
+     */
+    public static ExecutorService get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * 在默认线程池中执行任务，线程池已满时返回异常结束的{@linkplain CompletableFuture}而不是阻塞调用方
+     *
+     * @param supplier 任务
+     * @param <T>      结果类型
+     * @return 异步结果
+     */
+    public static <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, get());
+        } catch (RejectedExecutionException e) {
+            return failed(e);
+        }
+    }
+
+    /**
+     * 延迟执行任务，任务应当足够轻量（比如取消请求、提交到其他线程池），不能阻塞调度线程
+     *
+     * @param task        任务
+     * @param delayMillis 延迟时间，单位毫秒
+     * @return 可用于取消任务的{@linkplain ScheduledFuture}
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return SchedulerHolder.INSTANCE.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 返回一个异常结束的{@linkplain CompletableFuture}
+     *
+     * @param cause 异常
+     * @param <T>   结果类型
+     * @return 异步结果
+     */
+    public static <T> CompletableFuture<T> failed(Throwable cause) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
+    /**
+     * 去掉{@linkplain CompletableFuture}包装的{@linkplain CompletionException}，返回原始异常
+     *
+     * @param e 异常
+     * @return 原始异常
+     */
+    public static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * 在同步调用中重新抛出异步结果的异常，{@linkplain Error}直接抛出，受检异常包装为{@linkplain CompletionException}
+     *
+     * @param e 异常
+     * @return 需要抛出的运行时异常
+     */
+    public static RuntimeException rethrow(Throwable e) {
+        Throwable cause = unwrap(e);
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new CompletionException(cause);
+    }
+
+}
@@ -3,20 +3,31 @@ package com.jishukezhan.http;
 import com.jishukezhan.annotation.NonNull;
 import com.jishukezhan.annotation.Nullable;
 import com.jishukezhan.core.exceptions.IoRuntimeException;
-import com.jishukezhan.core.http.UrlUtil;
+import com.jishukezhan.core.http.UriTemplate;
 import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
 import com.jishukezhan.core.lang.StringUtil;
+import com.jishukezhan.http.event.CallRecorder;
+import com.jishukezhan.http.event.CallTimings;
 
 import javax.net.ssl.HttpsURLConnection;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * 执行HTTP请求{@linkplain Request}
@@ -35,13 +46,94 @@ public interface Client {
      */
     Response execute(@NonNull Request request, @Nullable Options options) throws IoRuntimeException;
 
+    /**
+     * 异步执行HTTP请求
+     * <p>默认在{@linkplain AsyncExecutors}的有界线程池中调用{@link #execute(Request, Options)}，
+     * 有原生异步能力的实现应当覆盖本方法</p>
+     *
+     * @param request 请求对象
+     * @param options 请求选项
+     * @return 异步执行结果，请求失败时以{@linkplain IoRuntimeException}异常结束
+     */
+    default CompletableFuture<Response> executeAsync(@NonNull Request request, @Nullable Options options) {
+        return AsyncExecutors.supplyAsync(() -> execute(request, options));
+    }
+
+    /**
+     * 预热连接，通过{@code HEAD}请求建立连接并放入连接池
+     *
+     * @param url         目标地址，比如{@code https://api.example.com}
+     * @param connections 连接数
+     * @param options     请求选项
+     * @return 预热结果，不会异常结束
+     * @see #warmUp(String, int, Method, Options)
+     */
+    default CompletableFuture<WarmUpResult> warmUp(@NonNull String url, int connections, @Nullable Options options) {
+        return warmUp(url, connections, Method.HEAD, options);
+    }
+
+    /**
+     * 预热连接，在服务启动后、接收流量之前建立到下游的长连接，避免最初的请求承担TCP和TLS握手的耗时
+     * <p>默认同时发出{@code connections}个探测请求，所有响应返回之后才一起关闭，保证建立的是不同的连接并归还到连接池。
+     * 任何状态码都视为连接成功。连接池能保留的空闲连接数受{@linkplain Options#maxConnectionsPerRoute()}限制，
+     * 超出的部分会在归还时被关闭。</p>
+     * <p>使用HTTP/2时同一主机的探测请求会复用同一个多路复用的连接，此时并不会建立{@code connections}个连接。
+     * 能够统计连接池的实现（比如OkHttp）按照实际新建的连接数报告结果，其他实现按照成功的探测请求数报告。</p>
+     *
+     * @param url         目标地址，比如{@code https://api.example.com}
+     * @param connections 连接数
+     * @param probe       探测请求的方法，通常为{@code HEAD}或{@code OPTIONS}；为{@code null}时支持的实现只建立连接、
+     *                    不发送请求，其他实现使用{@code HEAD}
+     * @param options     请求选项
+     * @return 预热结果，不会异常结束
+     */
+    default CompletableFuture<WarmUpResult> warmUp(@NonNull String url, int connections, @Nullable Method probe,
+                                                   @Nullable Options options) {
+        Preconditions.requireNonNull(url, "url == null");
+        Preconditions.checkArgument(connections > 0, "'connections' must than 0");
+        Request request = Request.builder().method(probe == null ? Method.HEAD : probe).url(url).build();
+        long start = System.nanoTime();
+        Response[] responses = new Response[connections];
+        Throwable[] failures = new Throwable[connections];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[connections];
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            CompletableFuture<Response> future;
+            try {
+                future = executeAsync(request, options);
+            } catch (RuntimeException e) {
+                future = AsyncExecutors.failed(e);
+            }
+            futures[i] = future.handle((response, e) -> {
+                responses[index] = response;
+                failures[index] = AsyncExecutors.unwrap(e);
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(futures).handle((v, e) -> {
+            int succeeded = 0;
+            Throwable failure = null;
+            for (int i = 0; i < connections; i++) {
+                if (responses[i] != null) {
+                    IOUtil.closeQuietly(responses[i]);
+                    succeeded++;
+                } else if (failure == null) {
+                    failure = failures[i];
+                }
+            }
+            return new WarmUpResult(url, connections, succeeded,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), failure);
+        });
+    }
+
     /**
      * 实现一个简单的HTTP客户端
+     * <p>基于{@code HttpURLConnection}，域名解析始终由JVM完成，{@linkplain Options#dns()}对其无效</p>
      */
     class DefaultClient implements Client {
 
         /**
-         * 执行HTTP请求
+         * 执行HTTP请求，按照{@linkplain Options#retryPolicy()}重试
          *
          * @param request 请求对象
          * @param options 请求选项
@@ -50,11 +142,67 @@ public interface Client {
          */
         @Override
         public Response execute(Request request, Options options) throws IoRuntimeException {
+            RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+            return retryPolicy.execute(request,
+                    (attemptRequest, timeoutMillis) -> executeOnce(attemptRequest, options, timeoutMillis));
+        }
+
+        /**
+         * 在{@linkplain AsyncExecutors}中异步执行HTTP请求，重试等待期间不占用线程
+         * <p>取消无法中断阻塞中的连接，请求在取消之后返回时响应会被关闭</p>
+         *
+         * @param request 请求对象
+         * @param options 请求选项
+         * @return 异步执行结果
+         */
+        @Override
+        public CompletableFuture<Response> executeAsync(Request request, Options options) {
+            RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+            return retryPolicy.executeAsync(request, attemptRequest -> {
+                CompletableFuture<Response> future = new CompletableFuture<>();
+                AsyncExecutors.supplyAsync(
+                        () -> executeOnce(attemptRequest, options, retryPolicy.attemptTimeoutMillis()))
+                        .whenComplete((response, e) -> {
+                            if (e != null) {
+                                future.completeExceptionally(AsyncExecutors.unwrap(e));
+                            } else if (!future.complete(response)) {
+                                // 已经被取消，释放连接
+                                IOUtil.closeQuietly(response);
+                            }
+                        });
+                return future;
+            });
+        }
+
+        /**
+         * 执行一次HTTP请求，到达期限时断开连接
+         */
+        private Response executeOnce(Request request, Options options, long timeoutMillis) throws IoRuntimeException {
+            CallRecorder recorder = CallRecorder.start(request, options);
+            ScheduledFuture<?> deadline = null;
             try {
-                HttpURLConnection connection = convertAndSend(request, options);
-                return convertResponse(connection, request);
+                HttpURLConnection connection = openConnection(request);
+                if (timeoutMillis > 0) {
+                    deadline = AsyncExecutors.schedule(connection::disconnect, timeoutMillis);
+                }
+                send(connection, request, options, recorder.timings());
+                // 等待响应头，HttpURLConnection无法区分首字节和响应头结束
+                connection.getResponseCode();
+                recorder.timings().mark(CallTimings.Phase.RESPONSE_HEADERS_START);
+                recorder.timings().mark(CallTimings.Phase.RESPONSE_HEADERS_END);
+                return recorder.complete(ResponseBodyPolicy.apply(
+                        convertResponse(connection, request, options != null && options.acceptCompression()), options));
             } catch (IOException e) {
-                throw new IoRuntimeException(e);
+                IoRuntimeException ex = new IoRuntimeException(e);
+                recorder.failed(ex);
+                throw ex;
+            } catch (RuntimeException e) {
+                recorder.failed(e);
+                throw e;
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
             }
         }
 
@@ -62,12 +210,16 @@ public interface Client {
             return (HttpURLConnection) url.openConnection();
         }
 
-        HttpURLConnection convertAndSend(Request request, Options options) throws IOException {
-            final URL url = new URL(encodeUrl(request.url()));
-            HttpURLConnection connection = getConnection(url);
-            if (connection instanceof HttpsURLConnection) {
-                HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
-                // do something
+        private HttpURLConnection openConnection(Request request) throws IOException {
+            // 已经编码的地址直接使用，不再拆分查询参数
+            return getConnection(new URL(request.isUrlEncoded() ? request.url() : encodeUrl(request.url())));
+        }
+
+        private void send(HttpURLConnection connection, Request request, Options options, CallTimings timings)
+                throws IOException {
+            if (connection instanceof HttpsURLConnection && options != null && options.sslConfig() != null) {
+                // 共享同一个SSLSocketFactory，长连接和TLS会话才能被复用
+                ((HttpsURLConnection) connection).setSSLSocketFactory(options.sslConfig().socketFactory());
             }
             if (options != null) {
                 connection.setConnectTimeout(options.connectTimeoutMillis());
@@ -76,21 +228,35 @@ public interface Client {
                 connection.setInstanceFollowRedirects(options.followRedirects());
             }
             connection.setRequestMethod(request.method().name());
+            RequestBody body = request.body();
             List<String> contentEncodingValues = request.headers().get(CONTENT_ENCODING);
             boolean gzipEncodedRequest =
                     contentEncodingValues != null && contentEncodingValues.contains(ENCODING_GZIP);
             boolean deflateEncodedRequest =
                     contentEncodingValues != null && contentEncodingValues.contains(ENCODING_DEFLATE);
+            // 请求内容超过阈值时自动gzip压缩
+            if (body != null && contentEncodingValues == null && options != null
+                    && options.requestCompressionThreshold() >= 0
+                    && body.contentLength() >= options.requestCompressionThreshold()) {
+                gzipEncodedRequest = true;
+                connection.addRequestProperty(CONTENT_ENCODING, ENCODING_GZIP);
+            }
             boolean hasAcceptHeader = false;
-            Integer contentLength = null;
+            boolean hasAcceptEncodingHeader = false;
+            boolean hasContentTypeHeader = false;
+            Long contentLength = null;
             for (String field : request.headers().keySet()) {
                 if (field.equalsIgnoreCase("Accept")) {
                     hasAcceptHeader = true;
+                } else if (field.equalsIgnoreCase(ACCEPT_ENCODING)) {
+                    hasAcceptEncodingHeader = true;
+                } else if (field.equalsIgnoreCase("Content-Type")) {
+                    hasContentTypeHeader = true;
                 }
                 for (String value : request.headers().get(field)) {
                     if (field.equals(CONTENT_LENGTH)) {
                         if (!gzipEncodedRequest && !deflateEncodedRequest) {
-                            contentLength = Integer.valueOf(value);
+                            contentLength = Long.valueOf(value);
                             connection.addRequestProperty(field, value);
                         }
                     } else {
@@ -101,14 +267,34 @@ public interface Client {
             if (!hasAcceptHeader) {
                 connection.addRequestProperty("Accept", "*/*");
             }
+            // 用户自己设置了Accept-Encoding时不做透明解压，由调用方自行处理
+            if (options != null && options.acceptCompression() && !hasAcceptEncodingHeader) {
+                connection.addRequestProperty(ACCEPT_ENCODING, ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+            }
 
-            if (request.body() != null) {
+            if (body != null) {
+                if (contentLength == null && !gzipEncodedRequest && !deflateEncodedRequest && body.contentLength() >= 0) {
+                    contentLength = body.contentLength();
+                }
                 if (contentLength != null) {
                     connection.setFixedLengthStreamingMode(contentLength);
                 } else {
                     connection.setChunkedStreamingMode(8192);
                 }
+                if (body.contentType() != null && !hasContentTypeHeader) {
+                    // multipart需要带上分隔符
+                    connection.addRequestProperty("Content-Type", body instanceof MultipartBody ?
+                            ((MultipartBody) body).contentTypeHeader() : body.contentType().toString());
+                }
                 connection.setDoOutput(true);
+            }
+
+            // 显式建立连接以便记录耗时，包括DNS解析和TLS握手
+            timings.mark(CallTimings.Phase.CONNECT_START);
+            connection.connect();
+            timings.mark(CallTimings.Phase.CONNECT_END);
+            timings.mark(CallTimings.Phase.REQUEST_START);
+            if (body != null) {
                 OutputStream out = connection.getOutputStream();
                 if (gzipEncodedRequest) {
                     out = new GZIPOutputStream(out);
@@ -116,33 +302,64 @@ public interface Client {
                     out = new DeflaterOutputStream(out);
                 }
                 try {
-                    out.write(request.body().getData());
+                    // 流式写出，文件和流的内容不会全部读入内存
+                    body.writeTo(out);
                 } finally {
                     IOUtil.closeQuietly(out);
                 }
             }
-            return connection;
+            timings.mark(CallTimings.Phase.REQUEST_END);
         }
 
+        /**
+         * 编码查询参数的值，参数名和顺序保持不变，逐个扫描原地址写入同一个{@linkplain StringBuilder}
+         */
         private String encodeUrl(String url) {
             int index = url.indexOf('?');
-            if (index > 0) {
-                String paramStr = url.substring(index + 1);
-                Map<String, List<String>> paramMap = StringUtil.urlParamsToMap(paramStr);
-                StringBuilder buffer = new StringBuilder(url.substring(0, index));
-                for (Map.Entry<String, List<String>> entry : paramMap.entrySet()) {
-                    for (String val : entry.getValue()) {
-                        buffer.append(entry.getKey()).append(StringUtil.EQUALS)
-                                .append(UrlUtil.encode(val)).append(StringUtil.AMP);
+            if (index < 0) {
+                return url;
+            }
+            int length = url.length();
+            StringBuilder buffer = new StringBuilder(length + 16).append(url, 0, index + 1);
+            int start = index + 1;
+            while (start < length) {
+                int end = url.indexOf('&', start);
+                if (end < 0) {
+                    end = length;
+                }
+                if (end > start) {
+                    int equals = url.indexOf('=', start);
+                    if (equals < 0 || equals > end) {
+                        buffer.append(url, start, end);
+                    } else {
+                        buffer.append(url, start, equals + 1);
+                        UriTemplate.encodeQueryParam(url, equals + 1, end, buffer);
                     }
+                    buffer.append(StringUtil.AMP);
                 }
-                buffer.deleteCharAt(buffer.length() - 1);
-                return buffer.toString();
+                start = end + 1;
+            }
+            if (buffer.charAt(buffer.length() - 1) == '&') {
+                buffer.setLength(buffer.length() - 1);
             }
-            return url;
+            return buffer.toString();
         }
 
         public Response convertResponse(HttpURLConnection connection, Request request) throws IOException {
+            return convertResponse(connection, request, false);
+        }
+
+        /**
+         * 转换响应
+         *
+         * @param connection HTTP连接
+         * @param request    原始请求
+         * @param decompress 是否对{@code gzip}、{@code deflate}编码的响应内容自动解压
+         * @return 响应对象
+         * @throws IOException IO异常
+         */
+        public Response convertResponse(HttpURLConnection connection, Request request, boolean decompress)
+                throws IOException {
             int status = connection.getResponseCode();
             String reason = connection.getResponseMessage();
 
@@ -160,13 +377,75 @@ public interface Client {
             } else {
                 stream = connection.getInputStream();
             }
-            return Response.builder()
+            String contentEncoding = connection.getContentEncoding();
+            if (decompress && stream != null && contentEncoding != null && length != 0) {
+                InputStream decoded = decompress(stream, contentEncoding.trim());
+                if (decoded != stream) {
+                    // 解压后的长度未知，并移除与原始内容相关的响应头
+                    stream = decoded;
+                    length = -1;
+                    headers = stripContentHeaders(headers);
+                }
+            }
+            Response.Builder builder = Response.builder()
                     .status(status)
                     .reason(reason)
                     .headers(headers)
-                    .request(request)
-                    .body(stream, length)
-                    .build();
+                    .request(request);
+            if (stream != null) {
+                builder.body(stream, length);
+            }
+            return builder.build();
+        }
+
+        /**
+         * 按照内容编码包装解压流，空内容或不支持的编码原样返回
+         */
+        private static InputStream decompress(InputStream stream, String contentEncoding) throws IOException {
+            boolean gzip = ENCODING_GZIP.equalsIgnoreCase(contentEncoding);
+            if (!gzip && !ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+                return stream;
+            }
+            // HEAD、204、304等响应可能带有Content-Encoding但没有内容，提前探测避免解压流读取头部失败
+            PushbackInputStream in = new PushbackInputStream(stream, 2);
+            int b0 = in.read();
+            if (b0 == -1) {
+                return in;
+            }
+            int b1 = in.read();
+            if (b1 != -1) {
+                in.unread(b1);
+            }
+            in.unread(b0);
+            if (gzip) {
+                return new GZIPInputStream(in, IOUtil.DEFAULT_LARGE_BUFFER_SIZE);
+            }
+            // 规范要求deflate为zlib格式，但部分服务端发送的是裸deflate数据
+            boolean zlibWrapped = b1 != -1 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+            final Inflater inflater = new Inflater(!zlibWrapped);
+            return new InflaterInputStream(in, inflater, IOUtil.DEFAULT_LARGE_BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // 自定义的Inflater不会被InflaterInputStream释放
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        private static Map<String, List<String>> stripContentHeaders(Map<String, List<String>> headers) {
+            Map<String, List<String>> result = new LinkedHashMap<>(headers.size());
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                String name = entry.getKey();
+                if (CONTENT_ENCODING.equalsIgnoreCase(name) || CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                    continue;
+                }
+                result.put(name, entry.getValue());
+            }
+            return result;
         }
     }
 
@@ -180,6 +459,11 @@ public interface Client {
      */
     String CONTENT_ENCODING = "Content-Encoding";
 
+    /**
+     * The HTTP Accept-Encoding header field name.
+     */
+    String ACCEPT_ENCODING = "Accept-Encoding";
+
     /**
      * Value for the Content-Encoding header that indicates that GZIP encoding is in use.
      */
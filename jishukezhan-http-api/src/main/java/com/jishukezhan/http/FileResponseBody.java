@@ -0,0 +1,152 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.lang.CharsetUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * 暂存在临时文件中的响应内容，可以重复读取，关闭时删除临时文件
+ * <p>不超过2GB的文件通过内存映射读取，多次读取共享同一份映射，不占用堆内存</p>
+ *
+ * @author miles.tang
+ * @see ResponseBodyPolicy
+ */
+final class FileResponseBody implements ResponseBody {
+
+    private final File file;
+
+    private final long size;
+
+    /**
+     * 文件的内存映射，文件超过{@code Integer.MAX_VALUE}字节时为{@code null}
+     */
+    private final MappedByteBuffer buffer;
+
+    private volatile boolean closed;
+
+    FileResponseBody(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            this.size = channel.size();
+            // 关闭通道后映射仍然有效
+            this.buffer = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    @Nullable
+    public Integer length() {
+        return size <= Integer.MAX_VALUE ? (int) size : null;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public InputStream byteStream() throws IoRuntimeException {
+        if (closed) {
+            throw new IoRuntimeException("Response body closed");
+        }
+        if (buffer != null) {
+            return new ByteBufferInputStream(buffer.duplicate());
+        }
+        try {
+            return new BufferedInputStream(new FileInputStream(file));
+        } catch (IOException e) {
+            throw new IoRuntimeException(e);
+        }
+    }
+
+    @Override
+    public Reader charStream(@Nullable Charset charset) throws IoRuntimeException {
+        return new BufferedReader(new InputStreamReader(byteStream(), CharsetUtil.getCharset(charset, CharsetUtil.UTF_8)));
+    }
+
+    @Override
+    public String string(@Nullable Charset charset) throws IoRuntimeException {
+        if (buffer == null) {
+            throw new IoRuntimeException("Response body of " + size + " bytes is too large for a String");
+        }
+        byte[] data = new byte[(int) size];
+        buffer.duplicate().get(data);
+        return new String(data, CharsetUtil.getCharset(charset, CharsetUtil.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // 映射在被回收之前仍然占用文件，部分系统上无法立即删除
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileResponseBody{" + "file=" + file + ", size=" + size + '}';
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+    }
+
+}
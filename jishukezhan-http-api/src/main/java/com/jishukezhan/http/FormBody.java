@@ -1,8 +1,10 @@
 package com.jishukezhan.http;
 
 import com.jishukezhan.core.http.ContentType;
+import com.jishukezhan.core.http.UrlUtil;
 import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.core.lang.StringUtil;
 
 import java.nio.charset.Charset;
 import java.util.ArrayList;
@@ -14,6 +16,11 @@ public final class FormBody extends RequestBody {
     private final List<Item> items;
     private final Charset charset;
 
+    /**
+     * 编码后的内容，首次使用时生成
+     */
+    private volatile byte[] encoded;
+
     FormBody(List<Item> items, Charset charset) {
         this.items = Collections.unmodifiableList(items);
         this.contentType = ContentType.APPLICATION_FORM_URLENCODED;
@@ -29,6 +36,34 @@ public final class FormBody extends RequestBody {
         return charset;
     }
 
+    /**
+     * 按照{@code application/x-www-form-urlencoded}编码后的内容
+     *
+     * @return 字节数组
+     */
+    @Override
+    public byte[] getData() {
+        byte[] data = encoded;
+        if (data == null) {
+            StringBuilder buffer = new StringBuilder();
+            for (Item item : items) {
+                if (buffer.length() > 0) {
+                    buffer.append(StringUtil.AMP);
+                }
+                buffer.append(UrlUtil.encode(item.getName(), charset)).append(StringUtil.EQUALS)
+                        .append(UrlUtil.encode(item.getValue(), charset));
+            }
+            data = buffer.toString().getBytes(charset);
+            encoded = data;
+        }
+        return data;
+    }
+
+    @Override
+    public long contentLength() {
+        return getData().length;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -129,6 +129,31 @@ public enum HeaderName {
      */
     ETAG("ETag"),
 
+    /**
+     * 资源的最后修改时间
+     */
+    LAST_MODIFIED("Last-Modified"),
+
+    /**
+     * 只请求资源的部分内容，比如{@code bytes=0-1023}
+     */
+    RANGE("Range"),
+
+    /**
+     * 服务端是否支持范围请求，支持时为{@code bytes}
+     */
+    ACCEPT_RANGES("Accept-Ranges"),
+
+    /**
+     * 部分内容在完整资源中的位置，比如{@code bytes 0-1023/4096}
+     */
+    CONTENT_RANGE("Content-Range"),
+
+    /**
+     * 资源未变化时才按照{@code Range}返回部分内容，否则返回完整资源
+     */
+    IF_RANGE("If-Range"),
+
     /**
      * 重定向指示到的URL
      */
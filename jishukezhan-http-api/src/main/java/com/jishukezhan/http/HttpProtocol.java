@@ -0,0 +1,28 @@
+package com.jishukezhan.http;
+
+/**
+ * HTTP协议偏好，通过{@linkplain Options.Builder#protocol(HttpProtocol)}设置
+ * <p>目前只有OkHttp支持HTTP/2；{@linkplain Client.DefaultClient}和Apache HttpClient 4.x始终使用HTTP/1.1</p>
+ *
+ * @author miles.tang
+ */
+public enum HttpProtocol {
+
+    /**
+     * 只使用HTTP/1.1
+     */
+    HTTP_1_1,
+
+    /**
+     * HTTPS通过ALPN协商HTTP/2，服务端或者JDK不支持ALPN时回退到HTTP/1.1；明文HTTP使用HTTP/1.1
+     * <p>JDK 8需要8u252及以上版本才内置ALPN</p>
+     */
+    HTTP_2,
+
+    /**
+     * 明文HTTP直接使用HTTP/2（h2c prior knowledge），不经过升级协商，适用于已知支持h2c的服务网格、内部网关
+     * <p>不能用于HTTPS请求，也不会回退到HTTP/1.1</p>
+     */
+    H2_PRIOR_KNOWLEDGE,
+
+}
@@ -3,26 +3,90 @@ package com.jishukezhan.http;
 import com.jishukezhan.annotation.NonNull;
 import com.jishukezhan.annotation.Nullable;
 import com.jishukezhan.core.http.ContentType;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.FastByteArrayOutputStream;
 import com.jishukezhan.core.io.FileUtil;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.core.lang.Preconditions;
 import com.jishukezhan.core.lang.StringUtil;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-
+import java.util.UUID;
+
+/**
+ * {@code multipart/form-data}请求内容，按照RFC 7578流式编码
+ * <ul>
+ * <li>所有部分的长度都已知时（文本、字节数组、文件）{@link #contentLength()}返回精确长度，可以使用{@code Content-Length}发送；
+ * 包含长度未知的流时返回{@code -1}，由客户端采用分块传输</li>
+ * <li>文件部分通过{@linkplain FileChannel#transferTo(long, long, WritableByteChannel)}写出，流部分边读边写，都不会读入内存</li>
+ * </ul>
+ * 各部分的头信息在创建时编码好，多次写出（重试、跳转）时直接复用
+ */
 public class MultipartBody extends RequestBody {
 
+    private static final byte[] CRLF = {'\r', '\n'};
+
     private String boundary;
 
     private List<Part> parts;
 
+    /**
+     * 每个部分编码后的头信息，包括分隔行和结尾的空行
+     */
+    private final byte[][] partHeaders;
+
+    /**
+     * 文本部分编码后的内容，其他部分为{@code null}
+     */
+    private final byte[][] partValues;
+
+    private final byte[] closeDelimiter;
+
     MultipartBody(Builder builder) {
-        this.contentType = builder.contentType;
-        this.boundary = builder.boundary;
+        this.contentType = builder.contentType == null ? ContentType.MULTIPART_FORM_DATA : builder.contentType;
+        this.boundary = StringUtil.hasLength(builder.boundary) ? builder.boundary : UUID.randomUUID().toString();
         this.parts = Collections.unmodifiableList(builder.parts);
+
+        Charset charset = CharsetUtil.getCharset(contentType.getCharset(), CharsetUtil.UTF_8);
+        this.partHeaders = new byte[parts.size()][];
+        this.partValues = new byte[parts.size()][];
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            boolean textPart = part.getFile() == null && part.getIn() == null && part.getBody() == null;
+            StringBuilder header = new StringBuilder(128)
+                    .append("--").append(boundary).append("\r\n")
+                    .append("Content-Disposition: form-data; name=");
+            appendQuoted(header, part.getName());
+            if (!textPart && part.getValue() != null) {
+                header.append("; filename=");
+                appendQuoted(header, part.getValue());
+            }
+            header.append("\r\n");
+            if (part.getContentType() != null) {
+                header.append("Content-Type: ").append(part.getContentType()).append("\r\n");
+            }
+            header.append("\r\n");
+            partHeaders[i] = header.toString().getBytes(charset);
+            if (textPart) {
+                String value = part.getValue() == null ? "" : part.getValue();
+                partValues[i] = value.getBytes(part.getContentType() == null ? charset :
+                        CharsetUtil.getCharset(part.getContentType().getCharset(), charset));
+            }
+        }
+        this.closeDelimiter = ("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
     }
 
     public String getBoundary() {
@@ -33,6 +97,142 @@ public class MultipartBody extends RequestBody {
         return parts;
     }
 
+    /**
+     * 返回{@code Content-Type}请求头的值，包含分隔符，例如{@code multipart/form-data; boundary=xxx}
+     *
+     * @return 请求头的值
+     */
+    public String contentTypeHeader() {
+        return contentType.getType() + "/" + contentType.getSubtype() + "; boundary=" + boundary;
+    }
+
+    /**
+     * 返回编码后的总长度
+     *
+     * @return 字节长度，包含长度未知的流时返回{@code -1}
+     */
+    @Override
+    public long contentLength() {
+        long length = closeDelimiter.length;
+        for (int i = 0; i < parts.size(); i++) {
+            long partLength = partLength(i);
+            if (partLength < 0) {
+                return -1;
+            }
+            length += partHeaders[i].length + partLength + CRLF.length;
+        }
+        return length;
+    }
+
+    private long partLength(int index) {
+        Part part = parts.get(index);
+        if (part.getFile() != null) {
+            return part.getFile().length();
+        }
+        if (part.getIn() != null) {
+            return -1;
+        }
+        if (part.getBody() != null) {
+            return part.getBody().contentLength();
+        }
+        return partValues[index].length;
+    }
+
+    /**
+     * 包含流的部分只能写出一次
+     */
+    @Override
+    public boolean isRepeatable() {
+        for (Part part : parts) {
+            if (part.getIn() != null || (part.getBody() != null && !part.getBody().isRepeatable())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将编码后的内容全部读入内存，仅用于需要读取内容的场景，发送时请使用{@link #writeTo(OutputStream)}
+     *
+     * @return 字节数组
+     */
+    @Override
+    public byte[] getData() {
+        long length = contentLength();
+        FastByteArrayOutputStream out = new FastByteArrayOutputStream(
+                length > 0 && length < Integer.MAX_VALUE ? (int) length : 1024);
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IoRuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        WritableByteChannel target = null;
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+            out.write(partHeaders[i]);
+            if (part.getFile() != null) {
+                if (target == null) {
+                    target = Channels.newChannel(out);
+                }
+                try (FileChannel channel = FileChannel.open(part.getFile().toPath(), StandardOpenOption.READ)) {
+                    FileRequestBody.transferTo(channel, target);
+                }
+            } else if (part.getIn() != null) {
+                InputStream in = part.getIn();
+                try {
+                    byte[] buffer = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, n);
+                    }
+                } finally {
+                    IOUtil.closeQuietly(in);
+                }
+            } else if (part.getBody() != null) {
+                part.getBody().writeTo(out);
+            } else {
+                out.write(partValues[i]);
+            }
+            out.write(CRLF);
+        }
+        out.write(closeDelimiter);
+        out.flush();
+    }
+
+    /**
+     * 输出带引号的参数值，引号和换行按照浏览器的方式转义
+     */
+    private static void appendQuoted(StringBuilder buffer, @Nullable String value) {
+        buffer.append('"');
+        if (value == null) {
+            buffer.append('"');
+            return;
+        }
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '\n':
+                    buffer.append("%0A");
+                    break;
+                case '\r':
+                    buffer.append("%0D");
+                    break;
+                case '"':
+                    buffer.append("%22");
+                    break;
+                default:
+                    buffer.append(ch);
+                    break;
+            }
+        }
+        buffer.append('"');
+    }
+
 
     public static Builder builder() {
         return new Builder();
@@ -1,8 +1,21 @@
 package com.jishukezhan.http;
 
 import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
 import com.jishukezhan.core.lang.Preconditions;
-
+import com.jishukezhan.http.dns.Dns;
+import com.jishukezhan.http.event.HttpEventListener;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.File;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -39,11 +52,69 @@ public class Options {
      */
     private int retryCount;
 
+    /**
+     * 重试策略
+     */
+    private RetryPolicy retryPolicy;
+
     /**
      * 代理
      */
     private ProxyInfo proxyInfo;
 
+    /**
+     * 连接池最大连接数
+     */
+    private int maxConnections;
+
+    /**
+     * 连接池中每个路由(主机)的最大连接数
+     */
+    private int maxConnectionsPerRoute;
+
+    /**
+     * 是否协商响应压缩（发送{@code Accept-Encoding: gzip, deflate}并自动解压）
+     */
+    private boolean acceptCompression;
+
+    /**
+     * 请求内容自动gzip压缩的阈值，单位字节，小于0表示不压缩
+     */
+    private long requestCompressionThreshold;
+
+    /**
+     * 请求事件监听器
+     */
+    private HttpEventListener eventListener;
+
+    /**
+     * 域名解析服务
+     */
+    private Dns dns;
+
+    /**
+     * HTTP协议偏好
+     */
+    private HttpProtocol protocol;
+
+    /**
+     * 响应内容的最大字节数，小于0表示不限制
+     */
+    private long maxResponseBodySize;
+
+    /**
+     * 响应内容转存到临时文件的阈值，单位字节，小于0表示不转存、保持流式读取
+     */
+    private long responseBodySpillThreshold;
+
+    /**
+     * 响应内容临时文件的目录，为{@code null}时使用系统临时目录
+     */
+    private File responseBodySpillDirectory;
+
+    /**
+     * TLS配置，为{@code null}时使用各个客户端的默认配置
+     */
     private SSLConfig sslConfig;
 
     Options(Builder builder) {
@@ -52,7 +123,24 @@ public class Options {
         this.writeTimeoutMillis = builder.writeTimeoutMillis;
         this.followRedirects = builder.followRedirects;
         this.retryCount = builder.retryCount;
+        if (builder.retryPolicy != null) {
+            this.retryPolicy = builder.retryPolicy;
+        } else {
+            // 按照重试次数创建的策略保存在当前实例中，使用同一个Options的请求共享重试预算
+            this.retryPolicy = retryCount > 0 ? RetryPolicy.builder().maxRetries(retryCount).build() : RetryPolicy.NONE;
+        }
         this.proxyInfo = builder.proxyInfo;
+        this.maxConnections = builder.maxConnections;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.acceptCompression = builder.acceptCompression;
+        this.requestCompressionThreshold = builder.requestCompressionThreshold;
+        this.eventListener = builder.eventListener;
+        this.dns = builder.dns;
+        this.protocol = builder.protocol;
+        this.maxResponseBodySize = builder.maxResponseBodySize;
+        this.responseBodySpillThreshold = builder.responseBodySpillThreshold;
+        this.responseBodySpillDirectory = builder.responseBodySpillDirectory;
+        this.sslConfig = builder.sslConfig;
     }
 
     public int connectTimeoutMillis() {
@@ -75,10 +163,59 @@ public class Options {
         return retryCount;
     }
 
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
     public ProxyInfo proxyInfo() {
         return proxyInfo;
     }
 
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    public int maxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public boolean acceptCompression() {
+        return acceptCompression;
+    }
+
+    public long requestCompressionThreshold() {
+        return requestCompressionThreshold;
+    }
+
+    public HttpEventListener eventListener() {
+        return eventListener;
+    }
+
+    public Dns dns() {
+        return dns;
+    }
+
+    public HttpProtocol protocol() {
+        return protocol;
+    }
+
+    public long maxResponseBodySize() {
+        return maxResponseBodySize;
+    }
+
+    public long responseBodySpillThreshold() {
+        return responseBodySpillThreshold;
+    }
+
+    public File responseBodySpillDirectory() {
+        return responseBodySpillDirectory;
+    }
+
+    @Nullable
+    public SSLConfig sslConfig() {
+        return sslConfig;
+    }
+
     public Builder newBuilder() {
         return new Builder(this);
     }
@@ -88,8 +225,219 @@ public class Options {
     }
 
 
+    /**
+     * TLS配置，创建之后不可变，应当在多个{@linkplain Options}、多个客户端之间共享同一个实例
+     * <p>TLS会话缓存在{@linkplain SSLContext}中，只有复用同一个{@linkplain SSLContext}的连接才能恢复会话，
+     * 重新建立连接时跳过完整的密钥交换；各个客户端默认每次创建新的{@linkplain SSLContext}，无法跨客户端恢复会话</p>
+     * <p>ALPN由{@linkplain Options.Builder#protocol(HttpProtocol)}决定：OkHttp按照协议偏好的顺序协商，
+     * {@linkplain Client.DefaultClient}和Apache HttpClient 4.x只支持HTTP/1.1，不发送ALPN扩展</p>
+     */
     public static class SSLConfig {
 
+        private final SSLContext sslContext;
+
+        private final X509TrustManager trustManager;
+
+        /**
+         * 启用的TLS协议版本，为{@code null}时使用{@linkplain SSLContext}的默认值
+         */
+        private final String[] protocols;
+
+        /**
+         * 启用的加密套件，为{@code null}时使用{@linkplain SSLContext}的默认值
+         */
+        private final String[] cipherSuites;
+
+        /**
+         * 创建时的会话缓存大小，小于0表示不修改
+         */
+        private final int sessionCacheSize;
+
+        /**
+         * 创建时的会话超时时间，单位秒，小于0表示不修改
+         */
+        private final int sessionTimeoutSeconds;
+
+        /**
+         * 应用了协议版本和加密套件的{@linkplain SSLSocketFactory}，所有连接共享同一个实例
+         */
+        private final SSLSocketFactory socketFactory;
+
+        SSLConfig(Builder builder) {
+            this.trustManager = builder.trustManager != null ? builder.trustManager : defaultTrustManager();
+            this.sslContext = builder.sslContext != null ? builder.sslContext : newSslContext(trustManager);
+            this.protocols = builder.protocols;
+            this.cipherSuites = builder.cipherSuites;
+            this.sessionCacheSize = builder.sessionCacheSize;
+            this.sessionTimeoutSeconds = builder.sessionTimeoutSeconds;
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                if (sessionCacheSize >= 0) {
+                    sessionContext.setSessionCacheSize(sessionCacheSize);
+                }
+                if (sessionTimeoutSeconds >= 0) {
+                    sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+                }
+            }
+            this.socketFactory = new TlsSocketFactory(sslContext.getSocketFactory(), protocols, cipherSuites);
+        }
+
+        public SSLContext sslContext() {
+            return sslContext;
+        }
+
+        public X509TrustManager trustManager() {
+            return trustManager;
+        }
+
+        @Nullable
+        public String[] protocols() {
+            return protocols == null ? null : protocols.clone();
+        }
+
+        @Nullable
+        public String[] cipherSuites() {
+            return cipherSuites == null ? null : cipherSuites.clone();
+        }
+
+        public int sessionCacheSize() {
+            return sessionCacheSize;
+        }
+
+        public int sessionTimeoutSeconds() {
+            return sessionTimeoutSeconds;
+        }
+
+        /**
+         * 返回共享的{@linkplain SSLSocketFactory}，创建的连接启用了配置的协议版本和加密套件
+         * <p>{@code HttpsURLConnection}只复用{@linkplain SSLSocketFactory}相同的长连接，因此必须始终返回同一个实例</p>
+         *
+         * @return {@linkplain SSLSocketFactory}
+         */
+        public SSLSocketFactory socketFactory() {
+            return socketFactory;
+        }
+
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        private static X509TrustManager defaultTrustManager() {
+            try {
+                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init((KeyStore) null);
+                for (TrustManager trustManager : factory.getTrustManagers()) {
+                    if (trustManager instanceof X509TrustManager) {
+                        return (X509TrustManager) trustManager;
+                    }
+                }
+                throw new IllegalStateException("No X509TrustManager in " + Arrays.toString(factory.getTrustManagers()));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("No system TLS", e);
+            }
+        }
+
+        private static SSLContext newSslContext(X509TrustManager trustManager) {
+            try {
+                SSLContext sslContext = SSLContext.getInstance("TLS");
+                sslContext.init(null, new TrustManager[]{trustManager}, null);
+                return sslContext;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("No system TLS", e);
+            }
+        }
+
+        public static class Builder {
+
+            private SSLContext sslContext;
+
+            private X509TrustManager trustManager;
+
+            private String[] protocols;
+
+            private String[] cipherSuites;
+
+            private int sessionCacheSize;
+
+            private int sessionTimeoutSeconds;
+
+            Builder() {
+                this.sessionCacheSize = -1;
+                this.sessionTimeoutSeconds = -1;
+            }
+
+            /**
+             * 设置预先创建的{@linkplain SSLContext}，比如加载了客户端证书的{@linkplain SSLContext}
+             * <p>OkHttp需要与{@code sslContext}初始化时一致的{@linkplain X509TrustManager}</p>
+             *
+             * @param sslContext   已经初始化的{@linkplain SSLContext}
+             * @param trustManager 初始化{@code sslContext}时使用的{@linkplain X509TrustManager}
+             * @return {@linkplain Builder}
+             */
+            public Builder sslContext(@NonNull SSLContext sslContext, @NonNull X509TrustManager trustManager) {
+                this.sslContext = Preconditions.requireNonNull(sslContext, "sslContext == null");
+                this.trustManager = Preconditions.requireNonNull(trustManager, "trustManager == null");
+                return this;
+            }
+
+            /**
+             * 设置信任的证书，不设置{@linkplain #sslContext(SSLContext, X509TrustManager)}时用于创建{@linkplain SSLContext}
+             *
+             * @param trustManager {@linkplain X509TrustManager}
+             * @return {@linkplain Builder}
+             */
+            public Builder trustManager(@NonNull X509TrustManager trustManager) {
+                this.trustManager = Preconditions.requireNonNull(trustManager, "trustManager == null");
+                return this;
+            }
+
+            /**
+             * 设置启用的TLS协议版本，比如{@code TLSv1.3}、{@code TLSv1.2}
+             *
+             * @param protocols 协议版本
+             * @return {@linkplain Builder}
+             */
+            public Builder protocols(@NonNull String... protocols) {
+                Preconditions.checkArgument(protocols != null && protocols.length > 0, "'protocols' must not be empty");
+                this.protocols = protocols.clone();
+                return this;
+            }
+
+            /**
+             * 设置启用的加密套件
+             *
+             * @param cipherSuites 加密套件，比如{@code TLS_AES_128_GCM_SHA256}
+             * @return {@linkplain Builder}
+             */
+            public Builder cipherSuites(@NonNull String... cipherSuites) {
+                Preconditions.checkArgument(cipherSuites != null && cipherSuites.length > 0,
+                        "'cipherSuites' must not be empty");
+                this.cipherSuites = cipherSuites.clone();
+                return this;
+            }
+
+            /**
+             * 设置TLS会话缓存，缓存的会话用于重新连接时的会话恢复
+             * <p>作用于{@linkplain SSLContext}的客户端会话上下文，会影响所有使用该{@linkplain SSLContext}的连接</p>
+             *
+             * @param sessionCacheSize      缓存的会话数，0表示不限制
+             * @param sessionTimeoutSeconds 会话的有效期，单位秒，0表示不限制
+             * @return {@linkplain Builder}
+             */
+            public Builder sessionCache(int sessionCacheSize, int sessionTimeoutSeconds) {
+                Preconditions.checkArgument(sessionCacheSize >= 0, "'sessionCacheSize' must than 0");
+                Preconditions.checkArgument(sessionTimeoutSeconds >= 0, "'sessionTimeoutSeconds' must than 0");
+                this.sessionCacheSize = sessionCacheSize;
+                this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+                return this;
+            }
+
+            public SSLConfig build() {
+                return new SSLConfig(this);
+            }
+
+        }
+
     }
 
     public static class Builder {
@@ -119,25 +467,105 @@ public class Options {
          */
         private int retryCount;
 
+        /**
+         * 重试策略
+         */
+        private RetryPolicy retryPolicy;
+
         /**
          * 代理
          */
         private ProxyInfo proxyInfo;
 
+        /**
+         * 连接池最大连接数
+         */
+        private int maxConnections;
+
+        /**
+         * 连接池中每个路由(主机)的最大连接数
+         */
+        private int maxConnectionsPerRoute;
+
+        /**
+         * 是否协商响应压缩（发送{@code Accept-Encoding: gzip, deflate}并自动解压）
+         */
+        private boolean acceptCompression;
+
+        /**
+         * 请求内容自动gzip压缩的阈值，单位字节，小于0表示不压缩
+         */
+        private long requestCompressionThreshold;
+
+        /**
+         * 请求事件监听器
+         */
+        private HttpEventListener eventListener;
+
+        /**
+         * 域名解析服务
+         */
+        private Dns dns;
+
+        /**
+         * HTTP协议偏好
+         */
+        private HttpProtocol protocol;
+
+        /**
+         * 响应内容的最大字节数，小于0表示不限制
+         */
+        private long maxResponseBodySize;
+
+        /**
+         * 响应内容转存到临时文件的阈值，单位字节，小于0表示不转存、保持流式读取
+         */
+        private long responseBodySpillThreshold;
+
+        /**
+         * 响应内容临时文件的目录，为{@code null}时使用系统临时目录
+         */
+        private File responseBodySpillDirectory;
+
+        /**
+         * TLS配置，为{@code null}时使用各个客户端的默认配置
+         */
+        private SSLConfig sslConfig;
+
         Builder() {
             this.connectTimeoutMillis = 1000 * 10;
             this.readTimeoutMillis = 1000 * 10;
             this.writeTimeoutMillis = 1000 * 60;
             this.followRedirects = true;
+            this.maxConnections = 200;
+            this.maxConnectionsPerRoute = 20;
+            this.requestCompressionThreshold = -1;
+            this.eventListener = HttpEventListener.NONE;
+            this.dns = Dns.SYSTEM;
+            this.protocol = HttpProtocol.HTTP_2;
+            this.maxResponseBodySize = -1;
+            this.responseBodySpillThreshold = -1;
         }
 
         Builder(@NonNull Options source) {
             this.connectTimeoutMillis = Preconditions.requireNonNull(source).connectTimeoutMillis;
             this.readTimeoutMillis = source.readTimeoutMillis;
-            this.writeTimeoutMillis = source.connectTimeoutMillis;
+            this.writeTimeoutMillis = source.writeTimeoutMillis;
             this.followRedirects = source.followRedirects;
             this.retryCount = source.retryCount;
+            this.retryPolicy = source.retryPolicy;
             this.proxyInfo = source.proxyInfo;
+            this.maxConnections = source.maxConnections;
+            this.maxConnectionsPerRoute = source.maxConnectionsPerRoute;
+            this.acceptCompression = source.acceptCompression;
+            this.requestCompressionThreshold = source.requestCompressionThreshold;
+            this.eventListener = source.eventListener;
+            this.dns = source.dns;
+            this.protocol = source.protocol;
+            this.maxResponseBodySize = source.maxResponseBodySize;
+            this.responseBodySpillThreshold = source.responseBodySpillThreshold;
+            this.responseBodySpillDirectory = source.responseBodySpillDirectory;
+            this.sslConfig = source.sslConfig;
         }
 
         public Builder connectTimeoutMillis(int connectTimeoutMillis) {
@@ -185,7 +613,7 @@ public class Options {
         }
 
         /**
-         * 设置重试的次数，0则不会重置
+         * 设置重试的次数，0则不会重试，使用默认的{@linkplain RetryPolicy}
          *
          * @param retryCount 重试次数，必须不小于0
          * @return {@linkplain Builder}
@@ -193,6 +621,20 @@ public class Options {
         public Builder retryCount(int retryCount) {
             Preconditions.checkArgument(retryCount >= 0, "'retryCount' must than 0");
             this.retryCount = retryCount;
+            // 按照新的重试次数创建默认的重试策略
+            this.retryPolicy = null;
+            return this;
+        }
+
+        /**
+         * 设置重试策略，所有的{@linkplain Client}实现都会按照该策略重试
+         *
+         * @param retryPolicy 重试策略
+         * @return {@linkplain Builder}
+         */
+        public Builder retryPolicy(@NonNull RetryPolicy retryPolicy) {
+            this.retryPolicy = Preconditions.requireNonNull(retryPolicy, "retryPolicy == null");
+            this.retryCount = retryPolicy.maxRetries();
             return this;
         }
 
@@ -210,6 +652,143 @@ public class Options {
             return this;
         }
 
+        /**
+         * 设置连接池最大连接数
+         *
+         * @param maxConnections 最大连接数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxConnections(int maxConnections) {
+            Preconditions.checkArgument(maxConnections > 0, "'maxConnections' must than 0");
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * 设置连接池中每个路由(主机)的最大连接数
+         *
+         * @param maxConnectionsPerRoute 每个路由的最大连接数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            Preconditions.checkArgument(maxConnectionsPerRoute > 0, "'maxConnectionsPerRoute' must than 0");
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * 设置是否协商响应压缩
+         * <p>开启后{@linkplain Client.DefaultClient}会发送{@code Accept-Encoding: gzip, deflate}，
+         * 并对{@code gzip}、{@code deflate}编码的响应自动解压。OkHttp与Apache HttpClient默认已经支持透明解压，不受该选项影响</p>
+         *
+         * @param acceptCompression 是否开启
+         * @return {@linkplain Builder}
+         */
+        public Builder acceptCompression(boolean acceptCompression) {
+            this.acceptCompression = acceptCompression;
+            return this;
+        }
+
+        /**
+         * 设置请求内容自动gzip压缩的阈值
+         * <p>请求内容长度已知且不小于该阈值时，{@linkplain Client.DefaultClient}会以{@code Content-Encoding: gzip}发送，
+         * 需要服务端支持解压请求内容</p>
+         *
+         * @param requestCompressionThreshold 阈值，单位字节，小于0表示不压缩
+         * @return {@linkplain Builder}
+         */
+        public Builder requestCompressionThreshold(long requestCompressionThreshold) {
+            this.requestCompressionThreshold = requestCompressionThreshold;
+            return this;
+        }
+
+        /**
+         * 设置请求事件监听器，可以观察每次请求各阶段的耗时
+         *
+         * @param eventListener 监听器，多个监听器可以通过{@linkplain HttpEventListener#composite(HttpEventListener...)}组合
+         * @return {@linkplain Builder}
+         * @see com.jishukezhan.http.event.LatencyAggregator
+         */
+        public Builder eventListener(@NonNull HttpEventListener eventListener) {
+            this.eventListener = Preconditions.requireNonNull(eventListener, "eventListener == null");
+            return this;
+        }
+
+        /**
+         * 设置域名解析服务，默认使用{@linkplain Dns#SYSTEM}
+         * <p>OkHttp按照请求选项使用对应的解析服务；Apache HttpClient的连接池在创建时确定，只使用创建客户端时的解析服务；
+         * {@linkplain Client.DefaultClient}无法替换解析器，不受该选项影响</p>
+         *
+         * @param dns 解析服务，推荐使用{@linkplain com.jishukezhan.http.dns.CachingDns}
+         * @return {@linkplain Builder}
+         */
+        public Builder dns(@NonNull Dns dns) {
+            this.dns = Preconditions.requireNonNull(dns, "dns == null");
+            return this;
+        }
+
+        /**
+         * 设置HTTP协议偏好，默认{@linkplain HttpProtocol#HTTP_2}，即HTTPS通过ALPN协商HTTP/2
+         * <p>使用HTTP/2时同一主机的请求复用少量连接，{@link #maxConnectionsPerRoute(int)}限制的是OkHttp中每个主机的并发请求数</p>
+         *
+         * @param protocol 协议偏好
+         * @return {@linkplain Builder}
+         */
+        public Builder protocol(@NonNull HttpProtocol protocol) {
+            this.protocol = Preconditions.requireNonNull(protocol, "protocol == null");
+            return this;
+        }
+
+        /**
+         * 设置响应内容的最大字节数，超过时抛出{@linkplain com.jishukezhan.http.exceptions.ResponseTooLargeException}
+         * <p>{@code Content-Length}已知时在读取之前失败，否则在读取到超出的字节时失败</p>
+         *
+         * @param maxResponseBodySize 最大字节数，小于0表示不限制
+         * @return {@linkplain Builder}
+         */
+        public Builder maxResponseBodySize(long maxResponseBodySize) {
+            this.maxResponseBodySize = maxResponseBodySize;
+            return this;
+        }
+
+        /**
+         * 设置响应内容转存到临时文件的阈值
+         * <p>设置后响应内容在返回之前会被完整读取，可以重复读取：不超过阈值的保存在内存中，超过的写入临时文件并通过内存映射读取，
+         * 关闭响应时删除临时文件。不设置时保持流式读取</p>
+         *
+         * @param responseBodySpillThreshold 阈值，单位字节，小于0表示不转存
+         * @return {@linkplain Builder}
+         */
+        public Builder responseBodySpillThreshold(long responseBodySpillThreshold) {
+            this.responseBodySpillThreshold = responseBodySpillThreshold;
+            return this;
+        }
+
+        /**
+         * 设置响应内容临时文件的目录，默认使用系统临时目录
+         *
+         * @param responseBodySpillDirectory 目录
+         * @return {@linkplain Builder}
+         */
+        public Builder responseBodySpillDirectory(@NonNull File responseBodySpillDirectory) {
+            this.responseBodySpillDirectory = Preconditions.requireNonNull(responseBodySpillDirectory,
+                    "responseBodySpillDirectory == null");
+            return this;
+        }
+
+        /**
+         * 设置TLS配置，多个{@linkplain Options}应当共享同一个{@linkplain SSLConfig}实例，才能复用会话缓存
+         * <p>Apache HttpClient的连接池在创建时确定，只使用创建客户端时的TLS配置；
+         * OkHttp和{@linkplain Client.DefaultClient}按照请求选项使用对应的配置</p>
+         *
+         * @param sslConfig TLS配置
+         * @return {@linkplain Builder}
+         */
+        public Builder sslConfig(@NonNull SSLConfig sslConfig) {
+            this.sslConfig = Preconditions.requireNonNull(sslConfig, "sslConfig == null");
+            return this;
+        }
+
         public Options build() {
             return new Options(this);
         }
@@ -4,6 +4,7 @@ import com.jishukezhan.annotation.NonNull;
 
 import java.net.InetSocketAddress;
 import java.net.Proxy;
+import java.util.Objects;
 
 public class ProxyInfo {
 
@@ -68,6 +69,27 @@ public class ProxyInfo {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ProxyInfo that = (ProxyInfo) o;
+        return port == that.port &&
+                Objects.equals(hostOrIP, that.hostOrIP) &&
+                type == that.type &&
+                Objects.equals(username, that.username) &&
+                Objects.equals(password, that.password);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(hostOrIP, port, type, username, password);
+    }
+
     public static ProxyInfo direct() {
         return new ProxyInfo(ProxyType.NONE, null, 0, null, null);
     }
@@ -24,6 +24,11 @@ public final class Request {
      */
     private final String url;
 
+    /**
+     * {@link #url}是否已经按照RFC 3986编码
+     */
+    private final boolean urlEncoded;
+
     /**
      * 请求消息头
      */
@@ -37,6 +42,7 @@ public final class Request {
     Request(Builder builder) {
         this.method = builder.method;
         this.url = builder.url;
+        this.urlEncoded = builder.urlEncoded;
         this.headers = Collections.unmodifiableMap(builder.headers);
         this.body = builder.body;
     }
@@ -50,6 +56,16 @@ public final class Request {
         return url;
     }
 
+    /**
+     * 地址是否已经编码，为{@code true}时{@linkplain Client}直接使用，不再拆分查询参数重新编码
+     *
+     * @return 已经编码返回{@code true}
+     * @see Builder#encodedUrl(String)
+     */
+    public boolean isUrlEncoded() {
+        return urlEncoded;
+    }
+
     /**
      * Request Headers.
      *
@@ -88,6 +104,8 @@ public final class Request {
          */
         private String url;
 
+        private boolean urlEncoded;
+
         /**
          * 请求消息头
          */
@@ -106,6 +124,7 @@ public final class Request {
         public Builder(Request request) {
             this.method = request.method;
             this.url = request.url;
+            this.urlEncoded = request.urlEncoded;
             this.headers = new HashMap<>(request.headers);
             this.body = request.body;
         }
@@ -115,8 +134,27 @@ public final class Request {
             return this;
         }
 
+        /**
+         * 设置请求地址，查询参数的值可以是未编码的，由{@linkplain Client}负责编码
+         *
+         * @param url 请求地址
+         * @return {@linkplain Builder}
+         */
         public Builder url(@NonNull String url) {
             this.url = Preconditions.requireNotEmpty(url, "url is null or empty");
+            this.urlEncoded = false;
+            return this;
+        }
+
+        /**
+         * 设置已经编码好的请求地址，{@linkplain Client}会原样发送，例如通过{@linkplain com.jishukezhan.core.http.UriTemplate}生成的地址
+         *
+         * @param url 已经编码的请求地址
+         * @return {@linkplain Builder}
+         */
+        public Builder encodedUrl(@NonNull String url) {
+            this.url = Preconditions.requireNotEmpty(url, "url is null or empty");
+            this.urlEncoded = true;
             return this;
         }
 
@@ -9,8 +9,14 @@ import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.core.lang.Preconditions;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 
 public class RequestBody {
 
@@ -27,7 +33,12 @@ public class RequestBody {
         this.data = data;
     }
 
-    public int contentLength() {
+    /**
+     * 返回内容的字节长度
+     *
+     * @return 字节长度，未知时返回{@code -1}
+     */
+    public long contentLength() {
         return data != null ? data.length : 0;
     }
 
@@ -35,10 +46,38 @@ public class RequestBody {
         return contentType;
     }
 
+    /**
+     * 返回内容的字节数组
+     * <p>对于文件或流的请求内容，该方法会将内容全部读入内存，请优先使用{@link #writeTo(OutputStream)}</p>
+     *
+     * @return 字节数组
+     */
     public byte[] getData() {
         return data;
     }
 
+    /**
+     * 内容是否可以重复写出，比如重试、跳转时需要再次发送
+     *
+     * @return 可重复写出返回{@code true}
+     */
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * 将内容写出到输出流中，不会关闭输出流
+     *
+     * @param out 输出流
+     * @throws IOException 写出异常
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        byte[] bytes = getData();
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
     /**
      * 返回编码
      *
@@ -60,14 +99,141 @@ public class RequestBody {
         return new RequestBody(contentType, data);
     }
 
+    /**
+     * 创建文件的请求内容，发送时才会读取文件，不会将文件全部读入内存
+     *
+     * @param contentType 内容类型
+     * @param file        文件
+     * @return {@linkplain FileRequestBody}
+     */
     public static RequestBody create(@Nullable ContentType contentType, @NonNull File file) {
         Preconditions.requireNonNull(file, "file == null");
-        return new RequestBody(contentType, FileUtil.readBytes(file));
+        return new FileRequestBody(contentType, file);
     }
 
+    /**
+     * 创建流的请求内容，长度未知，发送时采用分块传输
+     *
+     * @param contentType 内容类型
+     * @param in          输入流
+     * @return {@linkplain InputStreamRequestBody}
+     */
     public static RequestBody create(@Nullable ContentType contentType, InputStream in) {
+        return create(contentType, in, -1);
+    }
+
+    /**
+     * 创建流的请求内容
+     *
+     * @param contentType 内容类型
+     * @param in          输入流
+     * @param length      流的长度，未知则为{@code -1}
+     * @return {@linkplain InputStreamRequestBody}
+     */
+    public static RequestBody create(@Nullable ContentType contentType, InputStream in, long length) {
         Preconditions.requireNonNull(in, "in == null");
-        return new RequestBody(contentType, IOUtil.readBytes(in));
+        return new InputStreamRequestBody(contentType, in, length);
+    }
+
+    /**
+     * 文件的请求内容，写出时使用{@linkplain FileChannel#transferTo(long, long, WritableByteChannel)}
+     */
+    public static class FileRequestBody extends RequestBody {
+
+        private final File file;
+
+        FileRequestBody(ContentType contentType, File file) {
+            this.contentType = contentType;
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        @Override
+        public long contentLength() {
+            return file.length();
+        }
+
+        @Override
+        public byte[] getData() {
+            return FileUtil.readBytes(file);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                transferTo(channel, Channels.newChannel(out));
+            }
+            out.flush();
+        }
+
+        /**
+         * 将文件通道的内容全部写出到目标通道
+         *
+         * @param channel 文件通道
+         * @param target  目标通道
+         * @throws IOException 写出异常
+         */
+        public static void transferTo(FileChannel channel, WritableByteChannel target) throws IOException {
+            long position = 0;
+            long size = channel.size();
+            while (position < size) {
+                position += channel.transferTo(position, size - position, target);
+            }
+        }
+
+    }
+
+    /**
+     * 流的请求内容，只能写出一次，写出完成后会关闭输入流
+     */
+    public static class InputStreamRequestBody extends RequestBody {
+
+        private final InputStream in;
+
+        private final long length;
+
+        InputStreamRequestBody(ContentType contentType, InputStream in, long length) {
+            this.contentType = contentType;
+            this.in = in;
+            this.length = length;
+        }
+
+        public InputStream getIn() {
+            return in;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public byte[] getData() {
+            return IOUtil.readBytes(in);
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try {
+                byte[] buffer = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+                out.flush();
+            } finally {
+                IOUtil.closeQuietly(in);
+            }
+        }
+
     }
 
 }
@@ -8,6 +8,7 @@ import com.jishukezhan.core.io.IOUtil;
 import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.core.lang.CollectionUtil;
 import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.event.CallTimings;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -47,12 +48,18 @@ public class Response implements Closeable {
      */
     Request request;
 
+    /**
+     * 各阶段的耗时
+     */
+    CallTimings timings;
+
     private Response(Builder builder) {
         this.status = builder.status;
         this.reason = builder.reason;
         this.headers = builder.headers;
         this.body = builder.body;
         this.request = builder.request;
+        this.timings = builder.timings;
     }
 
     public Builder newBuilder() {
@@ -93,6 +100,16 @@ public class Response implements Closeable {
         return request;
     }
 
+    /**
+     * 请求各阶段的耗时，响应内容读取完毕或关闭后才有完整的数据
+     *
+     * @return 耗时，{@linkplain Client}实现没有记录时为{@code null}
+     */
+    @Nullable
+    public CallTimings timings() {
+        return timings;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder("HTTP/1.1 ").append(status);
@@ -149,6 +166,11 @@ public class Response implements Closeable {
          */
         Request request;
 
+        /**
+         * 各阶段的耗时
+         */
+        CallTimings timings;
+
         Builder() {
         }
 
@@ -158,6 +180,7 @@ public class Response implements Closeable {
             this.headers = source.headers;
             this.body = source.body;
             this.request = source.request;
+            this.timings = source.timings;
         }
 
         /**
@@ -224,6 +247,13 @@ public class Response implements Closeable {
             return this;
         }
 
+        /**
+         * @see Response#timings
+         */
+        public Builder timings(CallTimings timings) {
+            this.timings = timings;
+            return this;
+        }
 
         public Response build() {
             return new Response(this);
@@ -255,7 +285,7 @@ public class Response implements Closeable {
 
         @Override
         public Reader charStream(Charset charset) throws IoRuntimeException {
-            return new BufferedReader(new InputStreamReader(byteStream(), charset));
+            return new BufferedReader(new InputStreamReader(byteStream(), CharsetUtil.getCharset(charset, CharsetUtil.UTF_8)));
         }
 
         /**
@@ -267,7 +297,7 @@ public class Response implements Closeable {
          */
         @Override
         public String string(Charset charset) throws IoRuntimeException {
-            return new String(data, charset);
+            return new String(data, CharsetUtil.getCharset(charset, CharsetUtil.UTF_8));
         }
 
         @Override
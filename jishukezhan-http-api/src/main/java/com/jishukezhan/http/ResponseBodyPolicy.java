@@ -0,0 +1,325 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.FastByteArrayOutputStream;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.CharsetUtil;
+import com.jishukezhan.http.exceptions.ResponseTooLargeException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * 按照{@linkplain Options#maxResponseBodySize()}和{@linkplain Options#responseBodySpillThreshold()}处理响应内容，
+ * 所有{@linkplain Client}实现在转换响应后、返回给调用方之前调用
+ * <ul>
+ * <li>最大长度：{@code Content-Length}超过时立即失败；长度未知时在读取到超出的字节时失败</li>
+ * <li>暂存阈值：设置后响应内容会被完整读取，不超过阈值的保存在内存中，超过的写入临时文件并以内存映射的方式读取，
+ * 两种情况下都可以重复读取</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+public final class ResponseBodyPolicy {
+
+    private ResponseBodyPolicy() {
+        throw new AssertionError("No com.jishukezhan.http.ResponseBodyPolicy instances for you!");
+    }
+
+    /**
+     * 应用响应内容的长度限制和暂存策略
+     *
+     * @param response 响应
+     * @param options  请求选项，为{@code null}时原样返回
+     * @return 处理后的响应，没有配置策略时返回{@code response}本身
+     * @throws ResponseTooLargeException 响应内容超过最大长度，此时{@code response}已经被关闭
+     * @throws IoRuntimeException        读取或者暂存响应内容失败，此时{@code response}已经被关闭
+     */
+    public static Response apply(@NonNull Response response, @Nullable Options options) throws IoRuntimeException {
+        ResponseBody body = response.body();
+        if (options == null || body == null) {
+            return response;
+        }
+        long maxSize = options.maxResponseBodySize();
+        long spillThreshold = options.responseBodySpillThreshold();
+        if (maxSize < 0 && spillThreshold < 0) {
+            return response;
+        }
+        String url = response.request() == null ? "" : response.request().url();
+        Integer length = body.length();
+        if (maxSize >= 0 && length != null && length > maxSize) {
+            response.close();
+            throw new ResponseTooLargeException(url, maxSize, length);
+        }
+        if (body.isRepeatable()) {
+            // 已经在内存中
+            return response;
+        }
+        if (spillThreshold < 0) {
+            return response.newBuilder().body(new LimitedResponseBody(body, url, maxSize)).build();
+        }
+        try {
+            return response.newBuilder()
+                    .body(buffer(body, url, maxSize, spillThreshold, options.responseBodySpillDirectory()))
+                    .build();
+        } catch (IOException e) {
+            throw new IoRuntimeException(e);
+        } finally {
+            IOUtil.closeQuietly(body);
+        }
+    }
+
+    /**
+     * 完整读取响应内容，超过阈值时转存到临时文件
+     */
+    private static ResponseBody buffer(ResponseBody body, String url, long maxSize, long spillThreshold,
+                                       @Nullable File directory) throws IOException {
+        InputStream in = body.byteStream();
+        Integer length = body.length();
+        int initialSize = length != null && length >= 0 && length <= spillThreshold ? Math.max(length, 32) : 1024;
+        try (Accumulator accumulator = new Accumulator(url, maxSize, spillThreshold, directory, initialSize)) {
+            byte[] buffer = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                accumulator.write(buffer, 0, n);
+            }
+            return accumulator.toResponseBody();
+        }
+    }
+
+    /**
+     * 按照请求选项创建{@linkplain Accumulator}
+     *
+     * @param url     请求地址，用于异常信息
+     * @param options 请求选项
+     * @return 没有配置长度限制和暂存阈值时返回{@code null}
+     */
+    @Nullable
+    public static Accumulator accumulator(String url, @Nullable Options options) {
+        if (options == null || (options.maxResponseBodySize() < 0 && options.responseBodySpillThreshold() < 0)) {
+            return null;
+        }
+        return new Accumulator(url, options.maxResponseBodySize(), options.responseBodySpillThreshold(),
+                options.responseBodySpillDirectory(), 1024);
+    }
+
+    /**
+     * 增量接收响应内容，接收的同时检查最大长度，超过暂存阈值后改为写入临时文件
+     * <p>供异步客户端在数据到达时应用策略，避免完整的响应内容先进入堆内存；没有设置暂存阈值时保存在内存中</p>
+     */
+    public static final class Accumulator implements Closeable {
+
+        private final String url;
+
+        private final long maxSize;
+
+        private final long spillThreshold;
+
+        private final File directory;
+
+        private FastByteArrayOutputStream memory;
+
+        private File file;
+
+        private OutputStream out;
+
+        private long total;
+
+        Accumulator(String url, long maxSize, long spillThreshold, @Nullable File directory, int initialSize) {
+            this.url = url;
+            this.maxSize = maxSize;
+            this.spillThreshold = spillThreshold;
+            this.directory = directory;
+            this.memory = new FastByteArrayOutputStream(initialSize);
+        }
+
+        /**
+         * 检查响应声明的长度
+         *
+         * @param contentLength 响应声明的长度，未知时为{@code -1}
+         * @throws ResponseTooLargeException 超过最大长度
+         */
+        public void checkContentLength(long contentLength) throws ResponseTooLargeException {
+            if (maxSize >= 0 && contentLength > maxSize) {
+                throw new ResponseTooLargeException(url, maxSize, contentLength);
+            }
+        }
+
+        /**
+         * 写入一段响应内容
+         *
+         * @param b   数据
+         * @param off 起始位置
+         * @param len 长度
+         * @throws IOException               写入临时文件失败
+         * @throws ResponseTooLargeException 累计长度超过最大长度
+         */
+        public void write(byte[] b, int off, int len) throws IOException {
+            total += len;
+            if (maxSize >= 0 && total > maxSize) {
+                throw new ResponseTooLargeException(url, maxSize, -1);
+            }
+            if (out == null && spillThreshold >= 0 && total > spillThreshold) {
+                file = File.createTempFile("cilantro-body-", ".tmp", directory);
+                out = new BufferedOutputStream(new FileOutputStream(file), IOUtil.DEFAULT_LARGE_BUFFER_SIZE);
+                if (memory.size() > 0) {
+                    memory.writeTo(out);
+                }
+                memory = null;
+            }
+            if (out != null) {
+                out.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        /**
+         * 结束接收，返回可以重复读取的响应内容，临时文件由返回的响应内容负责删除
+         *
+         * @return 响应内容
+         * @throws IOException 写入临时文件失败
+         */
+        public ResponseBody toResponseBody() throws IOException {
+            if (out == null) {
+                return Response.ByteArrayResponseBody.create(memory.toByteArray());
+            }
+            out.close();
+            out = null;
+            FileResponseBody body = new FileResponseBody(file);
+            file = null;
+            return body;
+        }
+
+        /**
+         * 放弃接收，删除未交给响应内容的临时文件
+         */
+        @Override
+        public void close() {
+            IOUtil.closeQuietly(out);
+            out = null;
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+            file = null;
+        }
+
+    }
+
+    /**
+     * 读取时检查长度的响应内容，用于只设置了最大长度、保持流式读取的情况
+     */
+    static final class LimitedResponseBody implements ResponseBody {
+
+        private final ResponseBody delegate;
+
+        private final String url;
+
+        private final long maxSize;
+
+        private InputStream stream;
+
+        LimitedResponseBody(ResponseBody delegate, String url, long maxSize) {
+            this.delegate = delegate;
+            this.url = url;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public Integer length() {
+            return delegate.length();
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        public synchronized InputStream byteStream() throws IoRuntimeException {
+            if (stream == null) {
+                stream = new LimitedInputStream(delegate.byteStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public Reader charStream(@Nullable Charset charset) throws IoRuntimeException {
+            return new BufferedReader(new InputStreamReader(byteStream(), CharsetUtil.getCharset(charset, CharsetUtil.UTF_8)));
+        }
+
+        @Override
+        public String string(@Nullable Charset charset) throws IoRuntimeException {
+            try (InputStream in = byteStream()) {
+                FastByteArrayOutputStream out = new FastByteArrayOutputStream();
+                IOUtil.copy(in, out);
+                return out.toString(CharsetUtil.getCharset(charset, CharsetUtil.UTF_8));
+            } catch (IOException e) {
+                throw new IoRuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        private final class LimitedInputStream extends FilterInputStream {
+
+            private long count;
+
+            LimitedInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    check(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    check(n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                if (skipped > 0) {
+                    check(skipped);
+                }
+                return skipped;
+            }
+
+            private void check(long n) {
+                count += n;
+                if (count > maxSize) {
+                    throw new ResponseTooLargeException(url, maxSize, -1);
+                }
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,570 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 与具体实现无关的重试策略，所有的{@linkplain Client}实现都按照相同的规则重试
+ * <ul>
+ * <li>指数退避加随机抖动，响应中有{@code Retry-After}时按照服务端要求的时间等待</li>
+ * <li>只重试幂等的请求方法，连接建立失败时请求尚未发出，任何方法都可以重试；不可重复写出的请求内容不会重试</li>
+ * <li>重试预算：每个请求存入{@code budgetRatio}个令牌，每次重试消耗一个，避免服务端故障时重试放大流量</li>
+ * <li>每次尝试的期限：到期后由{@linkplain Client}实现中止请求，期限覆盖到收到响应头为止</li>
+ * </ul>
+ * <p>重试预算的状态保存在策略实例中，应当在多个请求之间共享同一个实例</p>
+ *
+ * @author miles.tang
+ */
+public class RetryPolicy {
+
+    /**
+     * 不重试
+     */
+    public static final RetryPolicy NONE = builder().maxRetries(0).build();
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private static final Set<Method> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(Method.GET, Method.HEAD, Method.PUT, Method.DELETE, Method.OPTIONS, Method.TRACE)));
+
+    /**
+     * 令牌以千分之一为单位存储
+     */
+    private static final long TOKEN = 1000;
+
+    private final int maxRetries;
+
+    private final long initialBackoffMillis;
+
+    private final long maxBackoffMillis;
+
+    private final double multiplier;
+
+    private final double jitter;
+
+    private final Set<Integer> retryableStatuses;
+
+    private final boolean retryNonIdempotent;
+
+    private final boolean respectRetryAfter;
+
+    private final long maxRetryAfterMillis;
+
+    private final long attemptTimeoutMillis;
+
+    private final long budgetDeposit;
+
+    private final long budgetCapacity;
+
+    /**
+     * 重试预算中剩余的令牌
+     */
+    private final AtomicLong budgetTokens;
+
+    RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.multiplier = builder.multiplier;
+        this.jitter = builder.jitter;
+        this.retryableStatuses = Collections.unmodifiableSet(new HashSet<>(builder.retryableStatuses));
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.respectRetryAfter = builder.respectRetryAfter;
+        this.maxRetryAfterMillis = builder.maxRetryAfterMillis;
+        this.attemptTimeoutMillis = builder.attemptTimeoutMillis;
+        this.budgetDeposit = Math.round(builder.budgetRatio * TOKEN);
+        this.budgetCapacity = Math.max(1, builder.budgetReserve) * TOKEN;
+        this.budgetTokens = new AtomicLong(budgetCapacity);
+    }
+
+    public int maxRetries() {
+        return maxRetries;
+    }
+
+    public long attemptTimeoutMillis() {
+        return attemptTimeoutMillis;
+    }
+
+    /**
+     * 返回重试预算中剩余可用的重试次数
+     *
+     * @return 剩余的重试次数
+     */
+    public long availableRetries() {
+        return budgetTokens.get() / TOKEN;
+    }
+
+    /**
+     * 按照策略同步执行请求
+     *
+     * @param request 请求对象
+     * @param attempt 单次尝试
+     * @return 最后一次尝试的响应
+     * @throws IoRuntimeException 最后一次尝试的异常
+     */
+    public Response execute(@NonNull Request request, @NonNull Attempt attempt) throws IoRuntimeException {
+        if (maxRetries > 0) {
+            deposit();
+        }
+        for (int retries = 0; ; retries++) {
+            long start = System.nanoTime();
+            Response response = null;
+            IoRuntimeException failure = null;
+            try {
+                response = attempt.execute(request, attemptTimeoutMillis);
+            } catch (IoRuntimeException e) {
+                failure = deadlineExceeded(start) ? timeoutException(e) : e;
+            }
+            long delay = retryDelay(request, retries, response, failure == null ? null : failure.getCause());
+            if (delay < 0) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return response;
+            }
+            // 丢弃的响应必须关闭，否则连接无法归还连接池
+            IOUtil.closeQuietly(response);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IoRuntimeException(new InterruptedIOException("Interrupted while waiting to retry"));
+            }
+        }
+    }
+
+    /**
+     * 按照策略异步执行请求，等待重试时不占用线程；取消返回的{@linkplain CompletableFuture}会取消正在进行的尝试
+     *
+     * @param request 请求对象
+     * @param attempt 单次异步尝试，取消其返回的{@linkplain CompletableFuture}应当中止请求
+     * @return 最后一次尝试的结果
+     */
+    public CompletableFuture<Response> executeAsync(@NonNull Request request,
+                                                    @NonNull Function<Request, CompletableFuture<Response>> attempt) {
+        if (maxRetries == 0 && attemptTimeoutMillis <= 0) {
+            return attempt.apply(request);
+        }
+        if (maxRetries > 0) {
+            deposit();
+        }
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<Response>> current = new AtomicReference<>();
+        result.whenComplete((response, e) -> {
+            CompletableFuture<Response> inflight = current.get();
+            if (result.isCancelled() && inflight != null) {
+                inflight.cancel(true);
+            }
+        });
+        attemptAsync(request, attempt, 0, result, current);
+        return result;
+    }
+
+    private void attemptAsync(Request request, Function<Request, CompletableFuture<Response>> attempt, int retries,
+                              CompletableFuture<Response> result,
+                              AtomicReference<CompletableFuture<Response>> current) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<Response> future;
+        try {
+            future = attempt.apply(request);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        current.set(future);
+        AtomicBoolean timedOut = new AtomicBoolean();
+        ScheduledFuture<?> deadline = attemptTimeoutMillis <= 0 ? null : AsyncExecutors.schedule(() -> {
+            timedOut.set(true);
+            future.cancel(true);
+        }, attemptTimeoutMillis);
+        future.whenComplete((response, e) -> {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            if (result.isDone()) {
+                IOUtil.closeQuietly(response);
+                return;
+            }
+            Throwable failure = AsyncExecutors.unwrap(e);
+            if (timedOut.get()) {
+                failure = timeoutException(failure);
+            }
+            long delay = retryDelay(request, retries, response,
+                    failure instanceof IoRuntimeException ? failure.getCause() : failure);
+            if (delay < 0) {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else if (!result.complete(response)) {
+                    IOUtil.closeQuietly(response);
+                }
+                return;
+            }
+            IOUtil.closeQuietly(response);
+            AsyncExecutors.schedule(() -> attemptAsync(request, attempt, retries + 1, result, current), delay);
+        });
+    }
+
+    /**
+     * 计算下一次重试前的等待时间
+     *
+     * @param request  请求对象
+     * @param retries  已经重试的次数
+     * @param response 本次尝试的响应，失败时为{@code null}
+     * @param failure  本次尝试的异常，成功时为{@code null}
+     * @return 等待的毫秒数，不重试时返回{@code -1}
+     */
+    long retryDelay(Request request, int retries, Response response, Throwable failure) {
+        if (retries >= maxRetries) {
+            return -1;
+        }
+        RequestBody body = request.body();
+        if (body != null && !body.isRepeatable()) {
+            return -1;
+        }
+        boolean idempotent = retryNonIdempotent || IDEMPOTENT_METHODS.contains(request.method());
+        long delay = backoffMillis(retries);
+        if (failure != null) {
+            if (!(failure instanceof IOException)) {
+                return -1;
+            }
+            // 连接没有建立，请求没有发出，任何方法都可以安全重试
+            if (!isConnectFailure((IOException) failure) && !(idempotent && isRetryable((IOException) failure))) {
+                return -1;
+            }
+        } else {
+            if (response == null || !idempotent || !retryableStatuses.contains(response.status())) {
+                return -1;
+            }
+            if (respectRetryAfter) {
+                long retryAfter = retryAfterMillis(response.headers());
+                if (retryAfter > maxRetryAfterMillis) {
+                    return -1;
+                }
+                if (retryAfter >= 0) {
+                    delay = retryAfter;
+                }
+            }
+        }
+        return tryAcquire() ? delay : -1;
+    }
+
+    /**
+     * 第{@code retries + 1}次重试的退避时间，在{@code [delay * (1 - jitter), delay]}之间随机
+     */
+    long backoffMillis(int retries) {
+        double delay = Math.min(maxBackoffMillis, initialBackoffMillis * Math.pow(multiplier, retries));
+        if (jitter > 0) {
+            delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+        }
+        return (long) delay;
+    }
+
+    private boolean deadlineExceeded(long startNanos) {
+        return attemptTimeoutMillis > 0
+                && TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) >= attemptTimeoutMillis;
+    }
+
+    private IoRuntimeException timeoutException(Throwable cause) {
+        SocketTimeoutException timeout = new SocketTimeoutException(
+                "Attempt deadline of " + attemptTimeoutMillis + "ms exceeded");
+        if (cause != null && !(cause instanceof CancellationException)) {
+            timeout.initCause(cause);
+        }
+        return new IoRuntimeException(timeout);
+    }
+
+    private void deposit() {
+        budgetTokens.getAndUpdate(tokens -> Math.min(budgetCapacity, tokens + budgetDeposit));
+    }
+
+    private boolean tryAcquire() {
+        while (true) {
+            long tokens = budgetTokens.get();
+            if (tokens < TOKEN) {
+                return false;
+            }
+            if (budgetTokens.compareAndSet(tokens, tokens - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof NoRouteToHostException
+                || e instanceof PortUnreachableException;
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            return true;
+        }
+        // 线程中断、DNS解析失败、证书等SSL错误重试也不会成功
+        return !(e instanceof InterruptedIOException) && !(e instanceof UnknownHostException)
+                && !(e instanceof SSLException);
+    }
+
+    /**
+     * 解析{@code Retry-After}，支持秒数和HTTP日期两种格式
+     *
+     * @return 等待的毫秒数，没有或无法解析时返回{@code -1}
+     */
+    static long retryAfterMillis(Map<String, List<String>> headers) {
+        String value = Utils.header(headers, RETRY_AFTER, true);
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            // HTTP-date
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 单次尝试，由{@linkplain Client}实现提供
+     */
+    @FunctionalInterface
+    public interface Attempt {
+
+        /**
+         * 执行一次请求
+         *
+         * @param request       请求对象
+         * @param timeoutMillis 本次尝试的期限，单位毫秒，0表示不限制；到期后实现方应当中止请求
+         * @return 响应
+         * @throws IoRuntimeException HTTP请求异常
+         */
+        Response execute(Request request, long timeoutMillis) throws IoRuntimeException;
+
+    }
+
+    public static class Builder {
+
+        /**
+         * 最大重试次数
+         */
+        private int maxRetries;
+
+        /**
+         * 首次重试的退避时间，单位毫秒
+         */
+        private long initialBackoffMillis;
+
+        /**
+         * 最大退避时间，单位毫秒
+         */
+        private long maxBackoffMillis;
+
+        /**
+         * 退避时间的增长倍数
+         */
+        private double multiplier;
+
+        /**
+         * 随机抖动的比例，0到1之间
+         */
+        private double jitter;
+
+        /**
+         * 需要重试的响应状态码
+         */
+        private Set<Integer> retryableStatuses;
+
+        /**
+         * 是否重试非幂等的请求
+         */
+        private boolean retryNonIdempotent;
+
+        /**
+         * 是否遵循{@code Retry-After}
+         */
+        private boolean respectRetryAfter;
+
+        /**
+         * {@code Retry-After}允许的最大等待时间，超过则不重试，单位毫秒
+         */
+        private long maxRetryAfterMillis;
+
+        /**
+         * 每次尝试的期限，单位毫秒，0表示不限制
+         */
+        private long attemptTimeoutMillis;
+
+        /**
+         * 每个请求为重试预算存入的令牌数，即重试次数与请求次数的最大比例
+         */
+        private double budgetRatio;
+
+        /**
+         * 重试预算的容量，也是初始可用的重试次数
+         */
+        private int budgetReserve;
+
+        Builder() {
+            this.maxRetries = 3;
+            this.initialBackoffMillis = 100;
+            this.maxBackoffMillis = 1000 * 10;
+            this.multiplier = 2;
+            this.jitter = 0.5;
+            this.retryableStatuses = new HashSet<>(Arrays.asList(408, 429, 502, 503, 504));
+            this.respectRetryAfter = true;
+            this.maxRetryAfterMillis = 1000 * 60;
+            this.budgetRatio = 0.2;
+            this.budgetReserve = 10;
+        }
+
+        /**
+         * 设置最大重试次数，0则不会重试
+         *
+         * @param maxRetries 重试次数，必须不小于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxRetries(int maxRetries) {
+            Preconditions.checkArgument(maxRetries >= 0, "'maxRetries' must than 0");
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * 设置指数退避的参数，第n次重试等待{@code min(maxBackoff, initialBackoff * multiplier^(n-1))}
+         *
+         * @param initialBackoffMillis 首次重试的退避时间，单位毫秒
+         * @param maxBackoffMillis     最大退避时间，单位毫秒
+         * @param multiplier           增长倍数，必须不小于1
+         * @return {@linkplain Builder}
+         */
+        public Builder backoff(long initialBackoffMillis, long maxBackoffMillis, double multiplier) {
+            Preconditions.checkArgument(initialBackoffMillis >= 0, "'initialBackoffMillis' must than 0");
+            Preconditions.checkArgument(maxBackoffMillis >= initialBackoffMillis,
+                    "'maxBackoffMillis' must not less than 'initialBackoffMillis'");
+            Preconditions.checkArgument(multiplier >= 1, "'multiplier' must not less than 1");
+            this.initialBackoffMillis = initialBackoffMillis;
+            this.maxBackoffMillis = maxBackoffMillis;
+            this.multiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * 设置随机抖动的比例，避免大量客户端同时重试
+         *
+         * @param jitter 0到1之间，0表示不抖动
+         * @return {@linkplain Builder}
+         */
+        public Builder jitter(double jitter) {
+            Preconditions.checkArgument(jitter >= 0 && jitter <= 1, "'jitter' between 0 and 1");
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * 设置需要重试的响应状态码，默认为408、429、502、503、504
+         *
+         * @param statuses 状态码
+         * @return {@linkplain Builder}
+         */
+        public Builder retryableStatuses(Integer... statuses) {
+            this.retryableStatuses = new HashSet<>(Arrays.asList(statuses));
+            return this;
+        }
+
+        /**
+         * 设置是否重试{@code POST}、{@code PATCH}等非幂等的请求，连接失败时总是会重试
+         *
+         * @param retryNonIdempotent 是否重试
+         * @return {@linkplain Builder}
+         */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /**
+         * 设置是否遵循{@code Retry-After}，以及允许的最大等待时间
+         *
+         * @param respectRetryAfter   是否遵循
+         * @param maxRetryAfterMillis 最大等待时间，超过则不再重试，单位毫秒
+         * @return {@linkplain Builder}
+         */
+        public Builder retryAfter(boolean respectRetryAfter, long maxRetryAfterMillis) {
+            Preconditions.checkArgument(maxRetryAfterMillis >= 0, "'maxRetryAfterMillis' must than 0");
+            this.respectRetryAfter = respectRetryAfter;
+            this.maxRetryAfterMillis = maxRetryAfterMillis;
+            return this;
+        }
+
+        /**
+         * 设置每次尝试的期限，从发出请求到收到响应头
+         *
+         * @param attemptTimeoutMillis 期限，单位毫秒，0表示不限制
+         * @return {@linkplain Builder}
+         */
+        public Builder attemptTimeoutMillis(long attemptTimeoutMillis) {
+            Preconditions.checkArgument(attemptTimeoutMillis >= 0, "'attemptTimeoutMillis' must than 0");
+            this.attemptTimeoutMillis = attemptTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 设置重试预算
+         *
+         * @param ratio   重试次数与请求次数的最大比例，比如0.2表示每5个请求最多重试1次
+         * @param reserve 预算的容量，也是初始可用的重试次数
+         * @return {@linkplain Builder}
+         */
+        public Builder budget(double ratio, int reserve) {
+            Preconditions.checkArgument(ratio >= 0, "'ratio' must than 0");
+            Preconditions.checkArgument(reserve > 0, "'reserve' must than 0");
+            this.budgetRatio = ratio;
+            this.budgetReserve = reserve;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+    }
+
+}
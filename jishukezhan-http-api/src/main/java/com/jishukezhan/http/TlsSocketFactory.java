@@ -0,0 +1,85 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.annotation.Nullable;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * 为创建的{@linkplain SSLSocket}启用指定的协议版本和加密套件，见{@linkplain Options.SSLConfig}
+ *
+ * @author miles.tang
+ */
+final class TlsSocketFactory extends SSLSocketFactory {
+
+    private final SSLSocketFactory delegate;
+
+    private final String[] protocols;
+
+    private final String[] cipherSuites;
+
+    TlsSocketFactory(SSLSocketFactory delegate, @Nullable String[] protocols, @Nullable String[] cipherSuites) {
+        this.delegate = delegate;
+        this.protocols = protocols;
+        this.cipherSuites = cipherSuites;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return cipherSuites != null ? cipherSuites.clone() : delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return configure(delegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+        // 携带主机和端口创建，会话缓存才能按照host:port找到可以恢复的会话
+        return configure(delegate.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return configure(delegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return configure(delegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort)
+            throws IOException {
+        return configure(delegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket configure(Socket socket) {
+        if (socket instanceof SSLSocket) {
+            SSLSocket sslSocket = (SSLSocket) socket;
+            if (protocols != null) {
+                sslSocket.setEnabledProtocols(protocols);
+            }
+            if (cipherSuites != null) {
+                sslSocket.setEnabledCipherSuites(cipherSuites);
+            }
+        }
+        return socket;
+    }
+
+}
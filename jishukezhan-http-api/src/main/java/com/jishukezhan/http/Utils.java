@@ -6,6 +6,7 @@ import com.jishukezhan.core.lang.Preconditions;
 import com.jishukezhan.core.lang.StringUtil;
 
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -41,6 +42,36 @@ public class Utils {
         return header(headers, headerName.toString(), ignoreCase);
     }
 
+    /**
+     * 返回URL中的主机和端口（小写），比如{@code https://Example.com:8443/a?b=1}返回{@code example.com:8443}
+     * <p>只做简单的字符串截取，不会校验URL是否合法，用于按照主机隔离的统计、限流等场景</p>
+     *
+     * @param url 请求地址
+     * @return 主机和端口，无法解析时返回空字符串
+     */
+    public static String authority(String url) {
+        if (StringUtil.isEmpty(url)) {
+            return StringUtil.EMPTY_STRING;
+        }
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        String authority = url.substring(start, end);
+        // 去掉用户信息
+        int at = authority.lastIndexOf('@');
+        if (at >= 0) {
+            authority = authority.substring(at + 1);
+        }
+        return authority.toLowerCase(Locale.ROOT);
+    }
+
     public static String expandFilenameFromContentDisposition(Map<String, List<String>> headers) {
         String contentDisposition = header(headers, HeaderName.CONTENT_DISPOSITION, true);
         if (contentDisposition == null) {
@@ -0,0 +1,89 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.annotation.Nullable;
+
+/**
+ * 连接预热的结果，见{@linkplain Client#warmUp(String, int, Method, Options)}
+ * <p>HTTP/2下多个探测请求复用同一个连接，{@link #getSucceeded()}可能小于{@link #getConnections()}，
+ * 此时{@link #isSuccess()}返回{@code false}，但连接已经可用</p>
+ *
+ * @author miles.tang
+ */
+public class WarmUpResult {
+
+    private final String url;
+
+    /**
+     * 期望建立的连接数
+     */
+    private final int connections;
+
+    /**
+     * 成功建立的连接数，能够统计连接池的实现为实际新建的连接数，否则为成功的探测请求数
+     */
+    private final int succeeded;
+
+    /**
+     * 预热耗时，单位毫秒
+     */
+    private final long durationMillis;
+
+    /**
+     * 第一个失败的原因，全部成功时为{@code null}
+     */
+    private final Throwable failure;
+
+    public WarmUpResult(String url, int connections, int succeeded, long durationMillis, @Nullable Throwable failure) {
+        this.url = url;
+        this.connections = connections;
+        this.succeeded = succeeded;
+        this.durationMillis = durationMillis;
+        this.failure = failure;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return connections - succeeded;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Nullable
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * 是否所有连接都建立成功，可以作为就绪检查的依据
+     *
+     * @return 全部成功时返回{@code true}
+     */
+    public boolean isSuccess() {
+        return succeeded == connections;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpResult{" +
+                "url='" + url + '\'' +
+                ", connections=" + connections +
+                ", succeeded=" + succeeded +
+                ", durationMillis=" + durationMillis +
+                ", failure=" + failure +
+                '}';
+    }
+
+}
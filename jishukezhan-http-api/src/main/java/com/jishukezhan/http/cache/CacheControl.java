@@ -0,0 +1,174 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.lang.StringUtil;
+import com.jishukezhan.http.HeaderName;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@code Cache-Control}指令，见<a href="https://tools.ietf.org/html/rfc7234#section-5.2">RFC 7234 5.2</a>
+ * <p>同时兼容HTTP/1.0的{@code Pragma: no-cache}，时间单位均为秒，未设置时为{@code -1}</p>
+ *
+ * @author miles.tang
+ */
+public final class CacheControl {
+
+    private static final CacheControl EMPTY = new CacheControl();
+
+    private boolean noCache;
+
+    private boolean noStore;
+
+    private boolean mustRevalidate;
+
+    private boolean onlyIfCached;
+
+    private long maxAgeSeconds = -1;
+
+    private long maxStaleSeconds = -1;
+
+    private long minFreshSeconds = -1;
+
+    private CacheControl() {
+    }
+
+    public boolean noCache() {
+        return noCache;
+    }
+
+    public boolean noStore() {
+        return noStore;
+    }
+
+    public boolean mustRevalidate() {
+        return mustRevalidate;
+    }
+
+    public boolean onlyIfCached() {
+        return onlyIfCached;
+    }
+
+    public long maxAgeSeconds() {
+        return maxAgeSeconds;
+    }
+
+    public long maxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public long minFreshSeconds() {
+        return minFreshSeconds;
+    }
+
+    /**
+     * 从请求头或响应头中解析缓存指令，多个{@code Cache-Control}头会合并解析
+     *
+     * @param headers 消息头
+     * @return 缓存指令，不会为{@code null}
+     */
+    public static CacheControl parse(@Nullable Map<String, List<String>> headers) {
+        List<String> values = CacheHeaders.values(headers, HeaderName.CACHE_CONTROL.toString());
+        if (values.isEmpty()) {
+            for (String pragma : CacheHeaders.values(headers, HeaderName.PRAGMA.toString())) {
+                if (pragma.toLowerCase(Locale.ROOT).contains("no-cache")) {
+                    CacheControl result = new CacheControl();
+                    result.noCache = true;
+                    return result;
+                }
+            }
+            return EMPTY;
+        }
+        CacheControl result = new CacheControl();
+        for (String value : values) {
+            parseDirectives(result, value);
+        }
+        return result;
+    }
+
+    private static void parseDirectives(CacheControl result, String value) {
+        int pos = 0;
+        int length = value.length();
+        while (pos < length) {
+            int tokenStart = pos;
+            while (pos < length && value.charAt(pos) != '=' && value.charAt(pos) != ',') {
+                pos++;
+            }
+            String directive = value.substring(tokenStart, pos).trim().toLowerCase(Locale.ROOT);
+            String parameter = null;
+            if (pos < length && value.charAt(pos) == '=') {
+                pos++;
+                while (pos < length && value.charAt(pos) == ' ') {
+                    pos++;
+                }
+                if (pos < length && value.charAt(pos) == '"') {
+                    // quoted-string，比如 no-cache="Set-Cookie"
+                    int quoteEnd = value.indexOf('"', pos + 1);
+                    if (quoteEnd < 0) {
+                        quoteEnd = length;
+                    }
+                    parameter = value.substring(pos + 1, quoteEnd);
+                    pos = quoteEnd + 1;
+                    while (pos < length && value.charAt(pos) != ',') {
+                        pos++;
+                    }
+                } else {
+                    int paramStart = pos;
+                    while (pos < length && value.charAt(pos) != ',') {
+                        pos++;
+                    }
+                    parameter = value.substring(paramStart, pos).trim();
+                }
+            }
+            pos++;
+            apply(result, directive, parameter);
+        }
+    }
+
+    private static void apply(CacheControl result, String directive, String parameter) {
+        switch (directive) {
+            case "no-cache":
+                result.noCache = true;
+                break;
+            case "no-store":
+                result.noStore = true;
+                break;
+            case "must-revalidate":
+            case "proxy-revalidate":
+                result.mustRevalidate = true;
+                break;
+            case "only-if-cached":
+                result.onlyIfCached = true;
+                break;
+            case "max-age":
+                result.maxAgeSeconds = parseSeconds(parameter, -1);
+                break;
+            case "max-stale":
+                // 没有参数时表示接受任意过期时间
+                result.maxStaleSeconds = parseSeconds(parameter, Integer.MAX_VALUE);
+                break;
+            case "min-fresh":
+                result.minFreshSeconds = parseSeconds(parameter, -1);
+                break;
+            default:
+                // 私有缓存不区分public、private、s-maxage等指令
+                break;
+        }
+    }
+
+    private static long parseSeconds(String value, long defaultValue) {
+        if (StringUtil.isEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds < 0 ? 0 : seconds;
+        } catch (NumberFormatException e) {
+            // delta-seconds溢出时按照最大值处理
+            return value.chars().allMatch(Character::isDigit) ? Integer.MAX_VALUE : defaultValue;
+        }
+    }
+
+}
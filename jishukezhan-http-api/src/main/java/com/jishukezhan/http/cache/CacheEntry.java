@@ -0,0 +1,374 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.core.lang.CharsetUtil;
+import com.jishukezhan.http.HeaderName;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存的响应，包括响应头、完整的响应内容以及计算新鲜度所需的请求和响应时间
+ *
+ * @author miles.tang
+ */
+final class CacheEntry {
+
+    /**
+     * 磁盘文件格式的魔数和版本
+     */
+    private static final int MAGIC = 0x43494C01;
+
+    static final String IF_NONE_MATCH = "If-None-Match";
+
+    static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private static final String AGE = "Age";
+
+    private static final String EXPIRES = "Expires";
+
+    private static final String LAST_MODIFIED = "Last-Modified";
+
+    private static final String VARY = "Vary";
+
+    private final String url;
+
+    private final int status;
+
+    private final String reason;
+
+    private final Map<String, List<String>> headers;
+
+    /**
+     * 响应头{@code Vary}中列出的请求头及其在原始请求中的值
+     */
+    private final Map<String, List<String>> varyHeaders;
+
+    private final byte[] body;
+
+    /**
+     * 发出请求的时间
+     */
+    private final long requestMillis;
+
+    /**
+     * 收到响应的时间
+     */
+    private final long responseMillis;
+
+    private final CacheControl cacheControl;
+
+    CacheEntry(String url, int status, String reason, Map<String, List<String>> headers,
+               Map<String, List<String>> varyHeaders, byte[] body, long requestMillis, long responseMillis) {
+        this.url = url;
+        this.status = status;
+        this.reason = reason;
+        this.headers = headers;
+        this.varyHeaders = varyHeaders;
+        this.body = body;
+        this.requestMillis = requestMillis;
+        this.responseMillis = responseMillis;
+        this.cacheControl = CacheControl.parse(headers);
+    }
+
+    /**
+     * 根据网络响应创建缓存条目，响应头中{@code null}的键（状态行）会被忽略
+     */
+    static CacheEntry of(Request request, Response response, byte[] body, long requestMillis, long responseMillis) {
+        return new CacheEntry(request.url(), response.status(), response.reason(), copyHeaders(response.headers()),
+                varyHeaders(request, response.headers()), body, requestMillis, responseMillis);
+    }
+
+    String url() {
+        return url;
+    }
+
+    int size() {
+        return body.length;
+    }
+
+    String etag() {
+        return CacheHeaders.first(headers, HeaderName.ETAG.toString());
+    }
+
+    String lastModified() {
+        return CacheHeaders.first(headers, LAST_MODIFIED);
+    }
+
+    /**
+     * 是否可以直接返回，不需要与服务端确认
+     *
+     * @param now              当前时间
+     * @param requestDirectives 请求的缓存指令
+     * @return 新鲜时返回{@code true}
+     */
+    boolean isFresh(long now, CacheControl requestDirectives) {
+        if (cacheControl.noCache()) {
+            return false;
+        }
+        long lifetime = freshnessLifetimeMillis();
+        if (requestDirectives.maxAgeSeconds() >= 0) {
+            lifetime = Math.min(lifetime, TimeUnit.SECONDS.toMillis(requestDirectives.maxAgeSeconds()));
+        }
+        long minFresh = requestDirectives.minFreshSeconds() >= 0
+                ? TimeUnit.SECONDS.toMillis(requestDirectives.minFreshSeconds()) : 0;
+        long maxStale = !cacheControl.mustRevalidate() && requestDirectives.maxStaleSeconds() >= 0
+                ? TimeUnit.SECONDS.toMillis(requestDirectives.maxStaleSeconds()) : 0;
+        return currentAgeMillis(now) + minFresh < lifetime + maxStale;
+    }
+
+    /**
+     * 新鲜度生命周期，见RFC 7234 4.2.1
+     */
+    long freshnessLifetimeMillis() {
+        if (cacheControl.maxAgeSeconds() >= 0) {
+            return TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds());
+        }
+        long served = servedDateMillis();
+        String expiresValue = CacheHeaders.first(headers, EXPIRES);
+        if (expiresValue != null) {
+            // 无效的Expires（比如"0"）表示已经过期
+            long expires = CacheHeaders.parseDate(expiresValue);
+            return expires < 0 ? 0 : Math.max(0, expires - served);
+        }
+        long lastModified = CacheHeaders.parseDate(lastModified());
+        if (lastModified >= 0 && url.indexOf('?') < 0) {
+            // 启发式新鲜度，取距离上次修改时间的10%
+            return Math.max(0, (served - lastModified) / 10);
+        }
+        return 0;
+    }
+
+    /**
+     * 当前年龄，见RFC 7234 4.2.3
+     */
+    long currentAgeMillis(long now) {
+        long servedDate = CacheHeaders.parseDate(CacheHeaders.first(headers, HeaderName.DATE.toString()));
+        long apparentAge = servedDate >= 0 ? Math.max(0, responseMillis - servedDate) : 0;
+        long ageValue = 0;
+        String age = CacheHeaders.first(headers, AGE);
+        if (age != null) {
+            try {
+                ageValue = TimeUnit.SECONDS.toMillis(Long.parseLong(age.trim()));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+        long correctedAge = ageValue + (responseMillis - requestMillis);
+        long residentTime = Math.max(0, now - responseMillis);
+        return Math.max(apparentAge, correctedAge) + residentTime;
+    }
+
+    private long servedDateMillis() {
+        long date = CacheHeaders.parseDate(CacheHeaders.first(headers, HeaderName.DATE.toString()));
+        return date >= 0 ? date : responseMillis;
+    }
+
+    /**
+     * 请求中{@code Vary}列出的请求头是否与缓存时一致
+     */
+    boolean matchesVary(Request request) {
+        for (Map.Entry<String, List<String>> entry : varyHeaders.entrySet()) {
+            if (!Objects.equals(entry.getValue(), CacheHeaders.values(request.headers(), entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 创建带有验证器的条件请求
+     *
+     * @return 没有{@code ETag}和{@code Last-Modified}时返回{@code null}
+     */
+    Request conditionalRequest(Request request) {
+        String etag = etag();
+        String lastModified = lastModified();
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        Request.Builder builder = request.newBuilder();
+        if (etag != null) {
+            builder.replaceHeader(IF_NONE_MATCH, etag);
+        }
+        if (lastModified != null) {
+            builder.replaceHeader(IF_MODIFIED_SINCE, lastModified);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 收到{@code 304 Not Modified}后，使用其响应头更新缓存条目，见RFC 7234 4.3.4
+     */
+    CacheEntry revalidated(Map<String, List<String>> notModifiedHeaders, long requestMillis, long responseMillis) {
+        Map<String, List<String>> merged = new LinkedHashMap<>(headers);
+        for (Map.Entry<String, List<String>> entry : notModifiedHeaders.entrySet()) {
+            String name = entry.getKey();
+            if (name == null || isContentHeader(name)) {
+                continue;
+            }
+            merged.keySet().removeIf(name::equalsIgnoreCase);
+            merged.put(name, new ArrayList<>(entry.getValue()));
+        }
+        return new CacheEntry(url, status, reason, merged, varyHeaders, body, requestMillis, responseMillis);
+    }
+
+    /**
+     * 转为响应对象，每次都会创建新的响应，响应内容可以重复读取
+     */
+    Response toResponse(Request request, long now) {
+        Map<String, List<String>> responseHeaders = new LinkedHashMap<>(headers);
+        responseHeaders.keySet().removeIf(AGE::equalsIgnoreCase);
+        responseHeaders.put(AGE, Collections.singletonList(
+                String.valueOf(TimeUnit.MILLISECONDS.toSeconds(currentAgeMillis(now)))));
+        return Response.builder()
+                .status(status)
+                .reason(reason)
+                .headers(responseHeaders)
+                .request(request)
+                .body(body)
+                .build();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        writeString(out, url);
+        out.writeInt(status);
+        writeString(out, reason);
+        out.writeLong(requestMillis);
+        out.writeLong(responseMillis);
+        writeHeaders(out, headers);
+        writeHeaders(out, varyHeaders);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    static CacheEntry readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid cache entry");
+        }
+        String url = readString(in);
+        int status = in.readInt();
+        String reason = readString(in);
+        long requestMillis = in.readLong();
+        long responseMillis = in.readLong();
+        Map<String, List<String>> headers = readHeaders(in);
+        Map<String, List<String>> varyHeaders = readHeaders(in);
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CacheEntry(url, status, reason, headers, varyHeaders, body, requestMillis, responseMillis);
+    }
+
+    /**
+     * 响应头中是否有{@code Vary: *}，此时响应不能被缓存
+     */
+    static boolean hasVaryAll(Map<String, List<String>> responseHeaders) {
+        for (String name : varyFields(responseHeaders)) {
+            if ("*".equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Map<String, List<String>> varyHeaders(Request request, Map<String, List<String>> responseHeaders) {
+        List<String> fields = varyFields(responseHeaders);
+        if (fields.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        for (String field : fields) {
+            result.put(field, CacheHeaders.values(request.headers(), field));
+        }
+        return result;
+    }
+
+    private static List<String> varyFields(Map<String, List<String>> responseHeaders) {
+        List<String> fields = new ArrayList<>();
+        for (String value : CacheHeaders.values(responseHeaders, VARY)) {
+            for (String field : value.split(",")) {
+                field = field.trim();
+                if (!field.isEmpty()) {
+                    fields.add(field.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static boolean isContentHeader(String name) {
+        return HeaderName.CONTENT_LENGTH.toString().equalsIgnoreCase(name)
+                || HeaderName.CONTENT_ENCODING.toString().equalsIgnoreCase(name)
+                || HeaderName.TRANSFER_ENCODING.toString().equalsIgnoreCase(name)
+                || HeaderName.CONTENT_TYPE.toString().equalsIgnoreCase(name);
+    }
+
+    private static Map<String, List<String>> copyHeaders(Map<String, List<String>> headers) {
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    result.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void writeHeaders(DataOutputStream out, Map<String, List<String>> headers) throws IOException {
+        out.writeInt(headers.size());
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (String value : entry.getValue()) {
+                writeString(out, value);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            String name = readString(in);
+            int count = in.readInt();
+            List<String> values = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                values.add(readString(in));
+            }
+            headers.put(name, values);
+        }
+        return headers;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(CharsetUtil.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CharsetUtil.UTF_8);
+    }
+
+}
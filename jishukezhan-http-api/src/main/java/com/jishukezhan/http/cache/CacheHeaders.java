@@ -0,0 +1,67 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.core.lang.CollectionUtil;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 缓存相关的消息头工具，消息头名称均不区分大小写
+ *
+ * @author miles.tang
+ */
+final class CacheHeaders {
+
+    private CacheHeaders() {
+    }
+
+    /**
+     * 返回消息头的全部值
+     */
+    static List<String> values(Map<String, List<String>> headers, String name) {
+        if (CollectionUtil.isEmpty(headers)) {
+            return Collections.emptyList();
+        }
+        List<String> result = null;
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey()) && entry.getValue() != null) {
+                if (result == null) {
+                    result = new ArrayList<>(entry.getValue());
+                } else {
+                    result.addAll(entry.getValue());
+                }
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * 返回消息头的第一个值
+     */
+    static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = values(headers, name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * 解析HTTP日期（RFC 1123格式）
+     *
+     * @return 毫秒时间戳，无法解析时返回{@code -1}
+     */
+    static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.jishukezhan.http.cache;
+
+/**
+ * {@linkplain CachingClient}的统计快照
+ *
+ * @author miles.tang
+ */
+public class CacheStats {
+
+    /**
+     * 直接由缓存返回、没有发出网络请求的次数
+     */
+    private final long hitCount;
+
+    /**
+     * 发出网络请求的次数，包括条件请求
+     */
+    private final long missCount;
+
+    /**
+     * 发出条件请求（{@code If-None-Match}、{@code If-Modified-Since}）的次数
+     */
+    private final long revalidationCount;
+
+    /**
+     * 条件请求返回{@code 304 Not Modified}而复用缓存内容的次数
+     */
+    private final long notModifiedCount;
+
+    /**
+     * 内存中的缓存条目数
+     */
+    private final int memoryEntryCount;
+
+    /**
+     * 内存中缓存内容的总字节数
+     */
+    private final long memorySize;
+
+    /**
+     * 磁盘缓存的总字节数，未启用磁盘缓存时为0
+     */
+    private final long diskSize;
+
+    CacheStats(long hitCount, long missCount, long revalidationCount, long notModifiedCount,
+               int memoryEntryCount, long memorySize, long diskSize) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.revalidationCount = revalidationCount;
+        this.notModifiedCount = notModifiedCount;
+        this.memoryEntryCount = memoryEntryCount;
+        this.memorySize = memorySize;
+        this.diskSize = diskSize;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRevalidationCount() {
+        return revalidationCount;
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount;
+    }
+
+    public int getMemoryEntryCount() {
+        return memoryEntryCount;
+    }
+
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * 命中率，{@code 304}也视为命中
+     *
+     * @return 0到1之间的命中率，没有请求时为0
+     */
+    public double hitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) (hitCount + notModifiedCount) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", revalidationCount=" + revalidationCount +
+                ", notModifiedCount=" + notModifiedCount +
+                ", memoryEntryCount=" + memoryEntryCount +
+                ", memorySize=" + memorySize +
+                ", diskSize=" + diskSize +
+                '}';
+    }
+
+}
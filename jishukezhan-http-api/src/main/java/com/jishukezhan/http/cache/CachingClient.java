@@ -0,0 +1,444 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.FastByteArrayOutputStream;
+import com.jishukezhan.core.io.FileUtil;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 遵循<a href="https://tools.ietf.org/html/rfc7234">RFC 7234</a>的HTTP缓存，以装饰器的方式包装任意{@linkplain Client}
+ * <ul>
+ * <li>只缓存{@code GET}请求，按照{@code Cache-Control}、{@code Expires}以及{@code Last-Modified}计算新鲜度</li>
+ * <li>过期后使用{@code ETag}、{@code Last-Modified}发送条件请求，{@code 304}时复用缓存内容并更新响应头</li>
+ * <li>内存中按照LRU淘汰，可选的磁盘缓存作为第二级，内存未命中时从磁盘加载</li>
+ * <li>{@code POST}、{@code PUT}、{@code DELETE}、{@code PATCH}请求成功后会使同一URL的缓存失效</li>
+ * </ul>
+ * <p>缓存返回的响应内容可以重复读取，并带有{@code Age}响应头</p>
+ *
+ * @author miles.tang
+ */
+public class CachingClient implements Client {
+
+    /**
+     * 默认可缓存的状态码，见RFC 7231 6.1
+     */
+    private static final Set<Integer> CACHEABLE_STATUS = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501)));
+
+    private final Client delegate;
+
+    private final long maxMemorySize;
+
+    private final int maxEntrySize;
+
+    private final DiskCache diskCache;
+
+    /**
+     * 按照访问顺序排列的内存缓存
+     */
+    private final LinkedHashMap<String, CacheEntry> memoryCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long memorySize;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder revalidationCount = new LongAdder();
+
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    CachingClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.maxMemorySize = builder.maxMemorySize;
+        this.maxEntrySize = builder.maxEntrySize;
+        this.diskCache = builder.directory == null ? null : new DiskCache(builder.directory, builder.maxDiskSize);
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        Exchange exchange = prepare(request);
+        if (exchange.cached != null) {
+            return exchange.cached;
+        }
+        long sentMillis = System.currentTimeMillis();
+        Response network = delegate.execute(exchange.networkRequest, options);
+        return complete(exchange, network, sentMillis);
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        Exchange exchange;
+        try {
+            exchange = prepare(request);
+        } catch (RuntimeException e) {
+            CompletableFuture<Response> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        if (exchange.cached != null) {
+            return CompletableFuture.completedFuture(exchange.cached);
+        }
+        long sentMillis = System.currentTimeMillis();
+        return delegate.executeAsync(exchange.networkRequest, options)
+                .thenApply(network -> complete(exchange, network, sentMillis));
+    }
+
+    /**
+     * 返回统计快照
+     *
+     * @return {@linkplain CacheStats}
+     */
+    public CacheStats stats() {
+        int entryCount;
+        long size;
+        synchronized (memoryCache) {
+            entryCount = memoryCache.size();
+            size = memorySize;
+        }
+        return new CacheStats(hitCount.sum(), missCount.sum(), revalidationCount.sum(), notModifiedCount.sum(),
+                entryCount, size, diskCache == null ? 0 : diskCache.size());
+    }
+
+    /**
+     * 删除指定URL的缓存
+     *
+     * @param url 请求地址
+     */
+    public void evict(@NonNull String url) {
+        removeEntry(url);
+    }
+
+    /**
+     * 清空内存缓存，磁盘缓存不受影响
+     */
+    public void evictAll() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+            memorySize = 0;
+        }
+    }
+
+    /**
+     * 查找缓存，决定直接返回缓存还是发出（条件）网络请求
+     */
+    private Exchange prepare(Request request) {
+        Exchange exchange = new Exchange(request);
+        if (request.method() != Method.GET || hasConditionalHeaders(request)) {
+            // 调用方自己发出的条件请求由调用方处理304
+            exchange.bypass = true;
+            return exchange;
+        }
+        CacheControl requestDirectives = CacheControl.parse(request.headers());
+        if (requestDirectives.noStore()) {
+            exchange.bypass = true;
+            return exchange;
+        }
+        long now = System.currentTimeMillis();
+        CacheEntry entry = getEntry(request.url());
+        if (entry != null && !entry.matchesVary(request)) {
+            entry = null;
+        }
+        if (entry != null && !requestDirectives.noCache() && entry.isFresh(now, requestDirectives)) {
+            hitCount.increment();
+            exchange.cached = entry.toResponse(request, now);
+            return exchange;
+        }
+        if (requestDirectives.onlyIfCached()) {
+            // RFC 7234 5.2.1.7
+            exchange.cached = Response.builder()
+                    .status(504)
+                    .reason("Unsatisfiable Request (only-if-cached)")
+                    .headers(Collections.emptyMap())
+                    .request(request)
+                    .body(new byte[0])
+                    .build();
+            return exchange;
+        }
+        missCount.increment();
+        if (entry != null) {
+            Request conditional = entry.conditionalRequest(request);
+            if (conditional != null) {
+                revalidationCount.increment();
+                exchange.networkRequest = conditional;
+                exchange.entry = entry;
+            }
+        }
+        return exchange;
+    }
+
+    /**
+     * 处理网络响应：304时更新缓存并返回缓存内容，可缓存时读取完整内容并写入缓存
+     */
+    private Response complete(Exchange exchange, Response network, long sentMillis) {
+        Request request = exchange.request;
+        if (exchange.bypass) {
+            if (isUnsafe(request.method()) && network.status() < 400) {
+                removeEntry(request.url());
+            }
+            return network;
+        }
+        long receivedMillis = System.currentTimeMillis();
+        if (exchange.entry != null && network.status() == 304) {
+            notModifiedCount.increment();
+            IOUtil.closeQuietly(network);
+            CacheEntry updated = exchange.entry.revalidated(network.headers(), sentMillis, receivedMillis);
+            putEntry(request.url(), updated);
+            return updated.toResponse(request, receivedMillis);
+        }
+        if (!isCacheable(request, network)) {
+            if (exchange.entry != null) {
+                removeEntry(request.url());
+            }
+            return network;
+        }
+        ResponseBody body = network.body();
+        if (body == null) {
+            return store(request, network, new byte[0], sentMillis, receivedMillis);
+        }
+        Integer length = body.length();
+        if (length != null && length > maxEntrySize) {
+            return network;
+        }
+        InputStream in = body.byteStream();
+        FastByteArrayOutputStream buffer = new FastByteArrayOutputStream(length != null && length > 0 ? length : 1024);
+        byte[] chunk = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+        try {
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, n);
+                if (buffer.size() > maxEntrySize) {
+                    // 内容过大不缓存，将已读取的部分与剩余的流拼接后返回
+                    InputStream rest = new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), in);
+                    return network.newBuilder().body(rest, length == null ? -1 : length).build();
+                }
+            }
+        } catch (IOException e) {
+            IOUtil.closeQuietly(network);
+            throw new IoRuntimeException(e);
+        }
+        IOUtil.closeQuietly(network);
+        return store(request, network, buffer.toByteArray(), sentMillis, receivedMillis);
+    }
+
+    private Response store(Request request, Response network, byte[] body, long sentMillis, long receivedMillis) {
+        CacheEntry entry = CacheEntry.of(request, network, body, sentMillis, receivedMillis);
+        putEntry(request.url(), entry);
+        return entry.toResponse(request, receivedMillis);
+    }
+
+    private boolean isCacheable(Request request, Response response) {
+        if (!CACHEABLE_STATUS.contains(response.status())) {
+            return false;
+        }
+        CacheControl responseDirectives = CacheControl.parse(response.headers());
+        if (responseDirectives.noStore() || CacheControl.parse(request.headers()).noStore()) {
+            return false;
+        }
+        if (CacheEntry.hasVaryAll(response.headers())) {
+            return false;
+        }
+        // 没有新鲜度信息也没有验证器的响应缓存后也无法使用
+        return responseDirectives.maxAgeSeconds() >= 0
+                || responseDirectives.noCache()
+                || CacheHeaders.first(response.headers(), "Expires") != null
+                || CacheHeaders.first(response.headers(), "Last-Modified") != null
+                || CacheHeaders.first(response.headers(), "ETag") != null;
+    }
+
+    private static boolean hasConditionalHeaders(Request request) {
+        return CacheHeaders.first(request.headers(), CacheEntry.IF_NONE_MATCH) != null
+                || CacheHeaders.first(request.headers(), CacheEntry.IF_MODIFIED_SINCE) != null;
+    }
+
+    private static boolean isUnsafe(Method method) {
+        return method == Method.POST || method == Method.PUT || method == Method.DELETE || method == Method.PATCH;
+    }
+
+    private CacheEntry getEntry(String key) {
+        synchronized (memoryCache) {
+            CacheEntry entry = memoryCache.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        if (diskCache == null) {
+            return null;
+        }
+        CacheEntry entry = diskCache.get(key);
+        if (entry != null) {
+            putMemory(key, entry);
+        }
+        return entry;
+    }
+
+    private void putEntry(String key, CacheEntry entry) {
+        putMemory(key, entry);
+        if (diskCache != null) {
+            diskCache.put(key, entry);
+        }
+    }
+
+    private void putMemory(String key, CacheEntry entry) {
+        if (entry.size() > maxMemorySize) {
+            return;
+        }
+        synchronized (memoryCache) {
+            CacheEntry previous = memoryCache.put(key, entry);
+            memorySize += entry.size() - (previous == null ? 0 : previous.size());
+            Iterator<CacheEntry> iterator = memoryCache.values().iterator();
+            while (memorySize > maxMemorySize && iterator.hasNext()) {
+                memorySize -= iterator.next().size();
+                iterator.remove();
+            }
+        }
+    }
+
+    private void removeEntry(String key) {
+        synchronized (memoryCache) {
+            CacheEntry previous = memoryCache.remove(key);
+            if (previous != null) {
+                memorySize -= previous.size();
+            }
+        }
+        if (diskCache != null) {
+            diskCache.remove(key);
+        }
+    }
+
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * 一次请求的缓存处理状态
+     */
+    private static final class Exchange {
+
+        final Request request;
+
+        /**
+         * 实际发出的请求，可能是带有验证器的条件请求
+         */
+        Request networkRequest;
+
+        /**
+         * 需要验证的缓存条目
+         */
+        CacheEntry entry;
+
+        /**
+         * 直接返回的缓存响应
+         */
+        Response cached;
+
+        /**
+         * 不经过缓存
+         */
+        boolean bypass;
+
+        Exchange(Request request) {
+            this.request = request;
+            this.networkRequest = request;
+        }
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        /**
+         * 内存缓存的最大字节数
+         */
+        private long maxMemorySize;
+
+        /**
+         * 单个响应内容的最大字节数，超过则不缓存
+         */
+        private int maxEntrySize;
+
+        /**
+         * 磁盘缓存目录，为{@code null}时不启用磁盘缓存
+         */
+        private File directory;
+
+        /**
+         * 磁盘缓存的最大字节数
+         */
+        private long maxDiskSize;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.maxMemorySize = 10 * FileUtil.ONE_MB;
+            this.maxEntrySize = (int) FileUtil.ONE_MB;
+        }
+
+        /**
+         * 设置内存缓存的最大字节数，超过后按照LRU淘汰
+         *
+         * @param maxMemorySize 最大字节数，必须不小于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxMemorySize(long maxMemorySize) {
+            Preconditions.checkArgument(maxMemorySize >= 0, "'maxMemorySize' must than 0");
+            this.maxMemorySize = maxMemorySize;
+            return this;
+        }
+
+        /**
+         * 设置单个响应内容的最大字节数，超过的响应直接透传，不会被缓存
+         *
+         * @param maxEntrySize 最大字节数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxEntrySize(int maxEntrySize) {
+            Preconditions.checkArgument(maxEntrySize > 0, "'maxEntrySize' must than 0");
+            this.maxEntrySize = maxEntrySize;
+            return this;
+        }
+
+        /**
+         * 启用磁盘缓存
+         *
+         * @param directory   缓存目录，不存在时会自动创建
+         * @param maxDiskSize 磁盘缓存的最大字节数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder directory(@Nullable File directory, long maxDiskSize) {
+            Preconditions.checkArgument(maxDiskSize > 0, "'maxDiskSize' must than 0");
+            this.directory = directory;
+            this.maxDiskSize = maxDiskSize;
+            return this;
+        }
+
+        public CachingClient build() {
+            return new CachingClient(this);
+        }
+
+    }
+
+}
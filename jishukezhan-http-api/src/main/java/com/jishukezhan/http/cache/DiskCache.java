@@ -0,0 +1,145 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.core.digest.ShaUtil;
+import com.jishukezhan.core.io.FileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 磁盘缓存，每个条目一个文件，文件名为URL的SHA-256
+ * <p>写入时先写临时文件再原子替换，读取时更新文件的修改时间，超出容量时按照修改时间淘汰最久未使用的文件。
+ * 磁盘读写失败只会记录日志，不会影响请求</p>
+ *
+ * @author miles.tang
+ */
+final class DiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskCache.class);
+
+    private static final String SUFFIX = ".entry";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private final AtomicLong size;
+
+    DiskCache(File directory, long maxBytes) {
+        FileUtil.forceMakeDir(directory);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        long total = 0;
+        for (File file : listEntries()) {
+            total += file.length();
+        }
+        this.size = new AtomicLong(total);
+        // 清理上次异常退出时遗留的临时文件
+        File[] temps = directory.listFiles((dir, name) -> name.endsWith(TEMP_SUFFIX));
+        if (temps != null) {
+            for (File temp : temps) {
+                temp.delete();
+            }
+        }
+    }
+
+    CacheEntry get(String key) {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        CacheEntry entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            entry = CacheEntry.readFrom(in);
+        } catch (IOException e) {
+            log.warn("Discard unreadable cache file {}", file, e);
+            remove(key);
+            return null;
+        }
+        if (!key.equals(entry.url())) {
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return entry;
+    }
+
+    void put(String key, CacheEntry entry) {
+        File file = fileFor(key);
+        File temp = new File(directory, file.getName() + '.' + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                entry.writeTo(out);
+            }
+            long previous = file.isFile() ? file.length() : 0;
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (size.addAndGet(file.length() - previous) > maxBytes) {
+                trim();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write cache file {}", file, e);
+            temp.delete();
+        }
+    }
+
+    void remove(String key) {
+        File file = fileFor(key);
+        long length = file.length();
+        if (file.delete()) {
+            size.addAndGet(-length);
+        }
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    /**
+     * 按照修改时间从旧到新删除文件，直到总大小不超过上限
+     */
+    private synchronized void trim() {
+        if (size.get() <= maxBytes) {
+            return;
+        }
+        File[] files = listEntries();
+        // 先取出修改时间再排序，避免排序过程中文件被读取而改变顺序
+        Map<File, Long> lastModified = new HashMap<>(files.length);
+        for (File file : files) {
+            lastModified.put(file, file.lastModified());
+        }
+        Arrays.sort(files, Comparator.comparingLong(lastModified::get));
+        for (File file : files) {
+            if (size.get() <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size.addAndGet(-length);
+            }
+        }
+    }
+
+    private File[] listEntries() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, ShaUtil.sha256Hex(key) + SUFFIX);
+    }
+
+}
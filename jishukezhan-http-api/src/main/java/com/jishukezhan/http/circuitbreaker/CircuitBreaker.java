@@ -0,0 +1,256 @@
+package com.jishukezhan.http.circuitbreaker;
+
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个主机的熔断器和舱壁
+ * <p>关闭状态下使用固定大小的环形缓冲区记录最近的请求结果，失败率或慢调用率达到阈值时打开；
+ * 打开状态等待一段时间后进入半开状态，放行有限数量的试探请求，全部完成后根据结果关闭或者重新打开。</p>
+ * <p>每次状态变化都会使代数加一，许可中记录申请时的代数，旧状态下发出的请求在新状态下完成时不会被统计</p>
+ *
+ * @author miles.tang
+ */
+final class CircuitBreaker {
+
+    private static final byte FAILURE = 1;
+
+    private static final byte SLOW = 2;
+
+    private final String host;
+
+    private final CircuitBreakerClient config;
+
+    /**
+     * 并发请求的舱壁，不限制并发时为{@code null}
+     */
+    private final Semaphore bulkhead;
+
+    private final byte[] window;
+
+    private final int minimumNumberOfCalls;
+
+    private int head;
+
+    private int bufferedCalls;
+
+    private int failedCalls;
+
+    private int slowCalls;
+
+    private CircuitState state = CircuitState.CLOSED;
+
+    private long generation;
+
+    private long openedNanos;
+
+    private int halfOpenPermitted;
+
+    private int halfOpenCompleted;
+
+    private int halfOpenFailed;
+
+    private int halfOpenSlow;
+
+    private final LongAdder notPermittedCount = new LongAdder();
+
+    private final LongAdder bulkheadRejectedCount = new LongAdder();
+
+    CircuitBreaker(String host, CircuitBreakerClient config) {
+        this.host = host;
+        this.config = config;
+        this.bulkhead = config.maxConcurrentCallsPerHost > 0 ? new Semaphore(config.maxConcurrentCallsPerHost) : null;
+        this.window = new byte[config.slidingWindowSize];
+        this.minimumNumberOfCalls = Math.min(config.minimumNumberOfCalls, config.slidingWindowSize);
+    }
+
+    /**
+     * 申请执行许可，先检查熔断器再占用舱壁
+     *
+     * @param wait 舱壁已满时是否等待
+     * @return 许可，请求结束后必须调用{@linkplain #onResult(long, boolean, long)}或{@linkplain #onIgnored(long)}
+     * @throws CallNotPermittedException 请求被拒绝
+     */
+    long acquire(boolean wait) throws CallNotPermittedException {
+        long permit = tryAcquirePermission();
+        if (permit < 0) {
+            notPermittedCount.increment();
+            config.listener.onCallNotPermitted(host, CallNotPermittedException.Reason.CIRCUIT_OPEN);
+            throw new CallNotPermittedException(host, CallNotPermittedException.Reason.CIRCUIT_OPEN);
+        }
+        if (bulkhead != null && !tryAcquireBulkhead(wait)) {
+            releasePermission(permit);
+            bulkheadRejectedCount.increment();
+            config.listener.onCallNotPermitted(host, CallNotPermittedException.Reason.BULKHEAD_FULL);
+            throw new CallNotPermittedException(host, CallNotPermittedException.Reason.BULKHEAD_FULL);
+        }
+        return permit;
+    }
+
+    /**
+     * 记录请求结果并释放舱壁
+     *
+     * @param permit        {@linkplain #acquire(boolean)}返回的许可
+     * @param failure       是否失败
+     * @param durationNanos 请求耗时
+     */
+    void onResult(long permit, boolean failure, long durationNanos) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        boolean slow = durationNanos >= TimeUnit.MILLISECONDS.toNanos(config.slowCallDurationMillis);
+        CircuitState from = null;
+        CircuitState to = null;
+        synchronized (this) {
+            if (permit != generation) {
+                return;
+            }
+            if (state == CircuitState.CLOSED) {
+                record(failure, slow);
+                if (bufferedCalls >= minimumNumberOfCalls && exceeded(failedCalls, slowCalls, bufferedCalls)) {
+                    from = CircuitState.CLOSED;
+                    to = transitionTo(CircuitState.OPEN);
+                }
+            } else if (state == CircuitState.HALF_OPEN) {
+                halfOpenCompleted++;
+                if (failure) {
+                    halfOpenFailed++;
+                }
+                if (slow) {
+                    halfOpenSlow++;
+                }
+                if (halfOpenCompleted >= config.permittedCallsInHalfOpenState) {
+                    from = CircuitState.HALF_OPEN;
+                    to = transitionTo(exceeded(halfOpenFailed, halfOpenSlow, halfOpenCompleted)
+                            ? CircuitState.OPEN : CircuitState.CLOSED);
+                }
+            }
+        }
+        if (to != null) {
+            config.listener.onStateTransition(host, from, to);
+        }
+    }
+
+    /**
+     * 请求被取消或者发生了不需要统计的异常，只释放许可
+     *
+     * @param permit {@linkplain #acquire(boolean)}返回的许可
+     */
+    void onIgnored(long permit) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+        releasePermission(permit);
+    }
+
+    CircuitBreakerStats stats() {
+        synchronized (this) {
+            return new CircuitBreakerStats(host, state,
+                    bufferedCalls < minimumNumberOfCalls ? -1 : rate(failedCalls, bufferedCalls),
+                    bufferedCalls < minimumNumberOfCalls ? -1 : rate(slowCalls, bufferedCalls),
+                    bufferedCalls, failedCalls, slowCalls, notPermittedCount.sum(), bulkheadRejectedCount.sum(),
+                    bulkhead == null ? -1 : bulkhead.availablePermits());
+        }
+    }
+
+    CircuitState state() {
+        synchronized (this) {
+            return state;
+        }
+    }
+
+    private long tryAcquirePermission() {
+        boolean halfOpened = false;
+        long permit = -1;
+        synchronized (this) {
+            if (state == CircuitState.OPEN
+                    && System.nanoTime() - openedNanos >= TimeUnit.MILLISECONDS.toNanos(config.waitDurationInOpenStateMillis)) {
+                transitionTo(CircuitState.HALF_OPEN);
+                halfOpened = true;
+            }
+            if (state == CircuitState.CLOSED) {
+                permit = generation;
+            } else if (state == CircuitState.HALF_OPEN && halfOpenPermitted < config.permittedCallsInHalfOpenState) {
+                halfOpenPermitted++;
+                permit = generation;
+            }
+        }
+        if (halfOpened) {
+            config.listener.onStateTransition(host, CircuitState.OPEN, CircuitState.HALF_OPEN);
+        }
+        return permit;
+    }
+
+    private synchronized void releasePermission(long permit) {
+        if (permit == generation && state == CircuitState.HALF_OPEN) {
+            halfOpenPermitted--;
+        }
+    }
+
+    private boolean tryAcquireBulkhead(boolean wait) {
+        if (!wait || config.maxWaitMillis == 0) {
+            return bulkhead.tryAcquire();
+        }
+        try {
+            return bulkhead.tryAcquire(config.maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 写入环形缓冲区，覆盖最旧的结果
+     */
+    private void record(boolean failure, boolean slow) {
+        if (bufferedCalls == window.length) {
+            byte evicted = window[head];
+            if ((evicted & FAILURE) != 0) {
+                failedCalls--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            bufferedCalls++;
+        }
+        byte outcome = (byte) ((failure ? FAILURE : 0) | (slow ? SLOW : 0));
+        window[head] = outcome;
+        head = (head + 1) % window.length;
+        if (failure) {
+            failedCalls++;
+        }
+        if (slow) {
+            slowCalls++;
+        }
+    }
+
+    private boolean exceeded(int failed, int slow, int total) {
+        return rate(failed, total) >= config.failureRateThreshold || rate(slow, total) >= config.slowCallRateThreshold;
+    }
+
+    private CircuitState transitionTo(CircuitState to) {
+        state = to;
+        generation++;
+        head = 0;
+        bufferedCalls = 0;
+        failedCalls = 0;
+        slowCalls = 0;
+        halfOpenPermitted = 0;
+        halfOpenCompleted = 0;
+        halfOpenFailed = 0;
+        halfOpenSlow = 0;
+        if (to == CircuitState.OPEN) {
+            openedNanos = System.nanoTime();
+        }
+        return to;
+    }
+
+    private static float rate(int count, int total) {
+        return total == 0 ? 0 : count * 100f / total;
+    }
+
+}
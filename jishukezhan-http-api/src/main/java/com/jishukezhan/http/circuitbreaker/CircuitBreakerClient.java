@@ -0,0 +1,395 @@
+package com.jishukezhan.http.circuitbreaker;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.Utils;
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 按照主机隔离的熔断器和舱壁，以装饰器的方式包装任意{@linkplain Client}
+ * <ul>
+ * <li>每个主机（含端口）维护一个基于请求数的滑动窗口，统计失败率和慢调用率，达到阈值时熔断，在等待期间直接拒绝请求</li>
+ * <li>等待结束后进入半开状态，只放行有限数量的试探请求，根据试探结果恢复或者重新熔断</li>
+ * <li>可选的舱壁限制每个主机同时进行中的请求数，避免一个变慢的主机占满调用方的线程</li>
+ * </ul>
+ * <p>被拒绝的请求抛出{@linkplain CallNotPermittedException}，状态变化和拒绝事件可以通过{@linkplain CircuitBreakerListener}
+ * 观察，也可以通过{@linkplain #stats()}获取快照。舱壁只覆盖{@linkplain Client#execute(Request, Options)}返回之前的阶段，
+ * 不包括读取响应内容。</p>
+ * <pre>
+ * Cilantro cilantro = Cilantro.builder()
+ *         .client(CircuitBreakerClient.builder(new OkHttpClient()).maxConcurrentCallsPerHost(50).build())
+ *         .build();
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class CircuitBreakerClient implements Client {
+
+    private final Client delegate;
+
+    final int slidingWindowSize;
+
+    final int minimumNumberOfCalls;
+
+    final float failureRateThreshold;
+
+    final float slowCallRateThreshold;
+
+    final long slowCallDurationMillis;
+
+    final long waitDurationInOpenStateMillis;
+
+    final int permittedCallsInHalfOpenState;
+
+    final int maxConcurrentCallsPerHost;
+
+    final long maxWaitMillis;
+
+    private final IntPredicate failureStatus;
+
+    private final Predicate<Throwable> failureException;
+
+    final CircuitBreakerListener listener;
+
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    CircuitBreakerClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallDurationMillis = builder.slowCallDurationMillis;
+        this.waitDurationInOpenStateMillis = builder.waitDurationInOpenStateMillis;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        this.maxConcurrentCallsPerHost = builder.maxConcurrentCallsPerHost;
+        this.maxWaitMillis = builder.maxWaitMillis;
+        this.failureStatus = builder.failureStatus;
+        this.failureException = builder.failureException;
+        this.listener = builder.listener;
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        CircuitBreaker breaker = breaker(request);
+        long permit = breaker.acquire(true);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = delegate.execute(request, options);
+        } catch (RuntimeException e) {
+            onFailure(breaker, permit, e, System.nanoTime() - start);
+            throw e;
+        } catch (Error e) {
+            breaker.onIgnored(permit);
+            throw e;
+        }
+        breaker.onResult(permit, failureStatus.test(response.status()), System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * 异步请求在舱壁已满时不会等待，直接返回异常结束的{@linkplain CompletableFuture}
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        CircuitBreaker breaker;
+        long permit;
+        try {
+            breaker = breaker(request);
+            permit = breaker.acquire(false);
+        } catch (RuntimeException e) {
+            return AsyncExecutors.failed(e);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Response> future;
+        try {
+            future = delegate.executeAsync(request, options);
+        } catch (RuntimeException e) {
+            onFailure(breaker, permit, e, System.nanoTime() - start);
+            return AsyncExecutors.failed(e);
+        }
+        // 返回原始的future，使调用方的取消可以传递到底层请求
+        future.whenComplete((response, e) -> {
+            long duration = System.nanoTime() - start;
+            if (e == null) {
+                breaker.onResult(permit, failureStatus.test(response.status()), duration);
+            } else {
+                onFailure(breaker, permit, AsyncExecutors.unwrap(e), duration);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 返回所有主机的统计快照
+     *
+     * @return 主机到统计快照的映射
+     */
+    public Map<String, CircuitBreakerStats> stats() {
+        Map<String, CircuitBreakerStats> stats = new LinkedHashMap<>();
+        breakers.forEach((host, breaker) -> stats.put(host, breaker.stats()));
+        return stats;
+    }
+
+    /**
+     * 返回指定主机的统计快照
+     *
+     * @param host 主机，包含端口时格式为{@code host:port}
+     * @return 统计快照，该主机没有请求过时返回{@code null}
+     */
+    @Nullable
+    public CircuitBreakerStats stats(@NonNull String host) {
+        CircuitBreaker breaker = breakers.get(host.toLowerCase(Locale.ROOT));
+        return breaker == null ? null : breaker.stats();
+    }
+
+    /**
+     * 返回指定主机当前的熔断状态
+     *
+     * @param host 主机，包含端口时格式为{@code host:port}
+     * @return 熔断状态，该主机没有请求过时返回{@linkplain CircuitState#CLOSED}
+     */
+    public CircuitState state(@NonNull String host) {
+        CircuitBreaker breaker = breakers.get(host.toLowerCase(Locale.ROOT));
+        return breaker == null ? CircuitState.CLOSED : breaker.state();
+    }
+
+    private CircuitBreaker breaker(Request request) {
+        return breakers.computeIfAbsent(Utils.authority(request.url()), host -> new CircuitBreaker(host, this));
+    }
+
+    private void onFailure(CircuitBreaker breaker, long permit, Throwable e, long durationNanos) {
+        if (e instanceof CancellationException || !failureException.test(e)) {
+            breaker.onIgnored(permit);
+        } else {
+            breaker.onResult(permit, true, durationNanos);
+        }
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 被装饰的客户端
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        /**
+         * 滑动窗口记录的请求数
+         */
+        private int slidingWindowSize;
+
+        /**
+         * 计算失败率之前至少需要的请求数
+         */
+        private int minimumNumberOfCalls;
+
+        /**
+         * 失败率阈值（百分比），达到后熔断
+         */
+        private float failureRateThreshold;
+
+        /**
+         * 慢调用率阈值（百分比），达到后熔断
+         */
+        private float slowCallRateThreshold;
+
+        /**
+         * 耗时不小于该值的请求视为慢调用，单位毫秒
+         */
+        private long slowCallDurationMillis;
+
+        /**
+         * 熔断后等待多久进入半开状态，单位毫秒
+         */
+        private long waitDurationInOpenStateMillis;
+
+        /**
+         * 半开状态下放行的试探请求数
+         */
+        private int permittedCallsInHalfOpenState;
+
+        /**
+         * 每个主机的最大并发请求数，0表示不限制
+         */
+        private int maxConcurrentCallsPerHost;
+
+        /**
+         * 舱壁已满时同步请求的最长等待时间，单位毫秒，0表示不等待
+         */
+        private long maxWaitMillis;
+
+        /**
+         * 视为失败的状态码
+         */
+        private IntPredicate failureStatus;
+
+        /**
+         * 视为失败的异常
+         */
+        private Predicate<Throwable> failureException;
+
+        private CircuitBreakerListener listener;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.slidingWindowSize = 100;
+            this.minimumNumberOfCalls = 20;
+            this.failureRateThreshold = 50;
+            this.slowCallRateThreshold = 100;
+            this.slowCallDurationMillis = 5000;
+            this.waitDurationInOpenStateMillis = 30000;
+            this.permittedCallsInHalfOpenState = 5;
+            this.failureStatus = status -> status >= 500;
+            this.failureException = e -> e instanceof IoRuntimeException && !(e instanceof CallNotPermittedException);
+            this.listener = CircuitBreakerListener.NONE;
+        }
+
+        /**
+         * 设置滑动窗口的大小和开始计算失败率所需的最少请求数
+         *
+         * @param slidingWindowSize    滑动窗口记录的请求数，必须大于0
+         * @param minimumNumberOfCalls 最少请求数，必须大于0，大于窗口大小时以窗口大小为准
+         * @return {@linkplain Builder}
+         */
+        public Builder slidingWindow(int slidingWindowSize, int minimumNumberOfCalls) {
+            Preconditions.checkArgument(slidingWindowSize > 0, "'slidingWindowSize' must than 0");
+            Preconditions.checkArgument(minimumNumberOfCalls > 0, "'minimumNumberOfCalls' must than 0");
+            this.slidingWindowSize = slidingWindowSize;
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * 设置失败率阈值
+         *
+         * @param failureRateThreshold 百分比，范围{@code (0, 100]}
+         * @return {@linkplain Builder}
+         */
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            Preconditions.checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 100,
+                    "'failureRateThreshold' must between 0 and 100");
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * 设置慢调用的判定标准和慢调用率阈值
+         *
+         * @param slowCallDurationMillis 耗时不小于该值的请求视为慢调用，单位毫秒，必须大于0
+         * @param slowCallRateThreshold  百分比，范围{@code (0, 100]}
+         * @return {@linkplain Builder}
+         */
+        public Builder slowCall(long slowCallDurationMillis, float slowCallRateThreshold) {
+            Preconditions.checkArgument(slowCallDurationMillis > 0, "'slowCallDurationMillis' must than 0");
+            Preconditions.checkArgument(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100,
+                    "'slowCallRateThreshold' must between 0 and 100");
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * 设置熔断后的等待时间和半开状态下的试探请求数
+         *
+         * @param waitDurationInOpenStateMillis 等待时间，单位毫秒，必须大于0
+         * @param permittedCallsInHalfOpenState 试探请求数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder openState(long waitDurationInOpenStateMillis, int permittedCallsInHalfOpenState) {
+            Preconditions.checkArgument(waitDurationInOpenStateMillis > 0, "'waitDurationInOpenStateMillis' must than 0");
+            Preconditions.checkArgument(permittedCallsInHalfOpenState > 0, "'permittedCallsInHalfOpenState' must than 0");
+            this.waitDurationInOpenStateMillis = waitDurationInOpenStateMillis;
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        /**
+         * 设置每个主机的最大并发请求数
+         *
+         * @param maxConcurrentCallsPerHost 最大并发数，0表示不限制
+         * @return {@linkplain Builder}
+         */
+        public Builder maxConcurrentCallsPerHost(int maxConcurrentCallsPerHost) {
+            return maxConcurrentCallsPerHost(maxConcurrentCallsPerHost, 0);
+        }
+
+        /**
+         * 设置每个主机的最大并发请求数以及同步请求的最长等待时间
+         *
+         * @param maxConcurrentCallsPerHost 最大并发数，0表示不限制
+         * @param maxWaitMillis             舱壁已满时的最长等待时间，单位毫秒，0表示直接拒绝
+         * @return {@linkplain Builder}
+         */
+        public Builder maxConcurrentCallsPerHost(int maxConcurrentCallsPerHost, long maxWaitMillis) {
+            Preconditions.checkArgument(maxConcurrentCallsPerHost >= 0, "'maxConcurrentCallsPerHost' must than 0");
+            Preconditions.checkArgument(maxWaitMillis >= 0, "'maxWaitMillis' must than 0");
+            this.maxConcurrentCallsPerHost = maxConcurrentCallsPerHost;
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * 设置视为失败的状态码，默认为{@code 5xx}
+         *
+         * @param failureStatus 状态码判断
+         * @return {@linkplain Builder}
+         */
+        public Builder failureStatus(@NonNull IntPredicate failureStatus) {
+            this.failureStatus = Preconditions.requireNonNull(failureStatus, "failureStatus == null");
+            return this;
+        }
+
+        /**
+         * 设置视为失败的异常，默认为{@linkplain IoRuntimeException}，其他异常不会被统计
+         *
+         * @param failureException 异常判断
+         * @return {@linkplain Builder}
+         */
+        public Builder failureException(@NonNull Predicate<Throwable> failureException) {
+            this.failureException = Preconditions.requireNonNull(failureException, "failureException == null");
+            return this;
+        }
+
+        /**
+         * 设置事件监听器
+         *
+         * @param listener 监听器
+         * @return {@linkplain Builder}
+         */
+        public Builder listener(@NonNull CircuitBreakerListener listener) {
+            this.listener = Preconditions.requireNonNull(listener, "listener == null");
+            return this;
+        }
+
+        public CircuitBreakerClient build() {
+            return new CircuitBreakerClient(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.jishukezhan.http.circuitbreaker;
+
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+/**
+ * 熔断器事件的监听器，回调在请求线程上同步执行，实现中不要做耗时操作
+ *
+ * @author miles.tang
+ */
+public interface CircuitBreakerListener {
+
+    /**
+     * 什么也不做的监听器
+     */
+    CircuitBreakerListener NONE = new CircuitBreakerListener() {
+    };
+
+    /**
+     * 熔断器状态发生变化
+     *
+     * @param host 主机
+     * @param from 原状态
+     * @param to   新状态
+     */
+    default void onStateTransition(String host, CircuitState from, CircuitState to) {
+    }
+
+    /**
+     * 请求被拒绝
+     *
+     * @param host   主机
+     * @param reason 拒绝原因
+     */
+    default void onCallNotPermitted(String host, CallNotPermittedException.Reason reason) {
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.jishukezhan.http.circuitbreaker;
+
+/**
+ * 单个主机的熔断器统计快照
+ *
+ * @author miles.tang
+ */
+public class CircuitBreakerStats {
+
+    private final String host;
+
+    private final CircuitState state;
+
+    /**
+     * 滑动窗口内的失败率（百分比），请求数不足{@code minimumNumberOfCalls}时为-1
+     */
+    private final float failureRate;
+
+    /**
+     * 滑动窗口内的慢调用率（百分比），请求数不足{@code minimumNumberOfCalls}时为-1
+     */
+    private final float slowCallRate;
+
+    /**
+     * 滑动窗口内记录的请求数
+     */
+    private final int bufferedCalls;
+
+    /**
+     * 滑动窗口内失败的请求数
+     */
+    private final int failedCalls;
+
+    /**
+     * 滑动窗口内的慢调用数
+     */
+    private final int slowCalls;
+
+    /**
+     * 因熔断器打开而被拒绝的累计次数
+     */
+    private final long notPermittedCalls;
+
+    /**
+     * 因舱壁已满而被拒绝的累计次数
+     */
+    private final long bulkheadRejectedCalls;
+
+    /**
+     * 舱壁剩余的并发数，不限制并发时为-1
+     */
+    private final int availableConcurrentCalls;
+
+    CircuitBreakerStats(String host, CircuitState state, float failureRate, float slowCallRate,
+                        int bufferedCalls, int failedCalls, int slowCalls,
+                        long notPermittedCalls, long bulkheadRejectedCalls, int availableConcurrentCalls) {
+        this.host = host;
+        this.state = state;
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.bufferedCalls = bufferedCalls;
+        this.failedCalls = failedCalls;
+        this.slowCalls = slowCalls;
+        this.notPermittedCalls = notPermittedCalls;
+        this.bulkheadRejectedCalls = bulkheadRejectedCalls;
+        this.availableConcurrentCalls = availableConcurrentCalls;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    public float getFailureRate() {
+        return failureRate;
+    }
+
+    public float getSlowCallRate() {
+        return slowCallRate;
+    }
+
+    public int getBufferedCalls() {
+        return bufferedCalls;
+    }
+
+    public int getFailedCalls() {
+        return failedCalls;
+    }
+
+    public int getSlowCalls() {
+        return slowCalls;
+    }
+
+    public long getNotPermittedCalls() {
+        return notPermittedCalls;
+    }
+
+    public long getBulkheadRejectedCalls() {
+        return bulkheadRejectedCalls;
+    }
+
+    public int getAvailableConcurrentCalls() {
+        return availableConcurrentCalls;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreakerStats{" +
+                "host='" + host + '\'' +
+                ", state=" + state +
+                ", failureRate=" + failureRate +
+                ", slowCallRate=" + slowCallRate +
+                ", bufferedCalls=" + bufferedCalls +
+                ", failedCalls=" + failedCalls +
+                ", slowCalls=" + slowCalls +
+                ", notPermittedCalls=" + notPermittedCalls +
+                ", bulkheadRejectedCalls=" + bulkheadRejectedCalls +
+                ", availableConcurrentCalls=" + availableConcurrentCalls +
+                '}';
+    }
+
+}
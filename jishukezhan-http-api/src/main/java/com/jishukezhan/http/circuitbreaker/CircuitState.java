@@ -0,0 +1,25 @@
+package com.jishukezhan.http.circuitbreaker;
+
+/**
+ * 熔断器的状态
+ *
+ * @author miles.tang
+ */
+public enum CircuitState {
+
+    /**
+     * 关闭，请求正常通过并记录结果
+     */
+    CLOSED,
+
+    /**
+     * 打开，所有请求直接拒绝，等待一段时间后进入半开状态
+     */
+    OPEN,
+
+    /**
+     * 半开，只放行有限数量的试探请求，根据试探结果决定关闭还是重新打开
+     */
+    HALF_OPEN
+
+}
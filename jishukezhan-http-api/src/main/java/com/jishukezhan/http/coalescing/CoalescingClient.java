@@ -0,0 +1,335 @@
+package com.jishukezhan.http.coalescing;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.FastByteArrayOutputStream;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并相同的进行中请求（single-flight），以装饰器的方式包装任意{@linkplain Client}
+ * <p>缓存失效的瞬间往往有大量线程同时请求同一个地址，本装饰器按照请求方法、地址和选定的请求头生成键，
+ * 同一个键同时只有第一个请求（leader）真正发出，之后到达的相同请求直接等待它的结果。leader的响应内容被完整读入内存，
+ * 每个等待者得到一个独立的{@linkplain Response}，共享同一份可以重复读取的字节数组；leader失败时所有等待者收到同样的异常。
+ * 请求完成后立即从进行中的表里移除，之后的请求会重新发出，本装饰器不缓存任何结果。</p>
+ * <ul>
+ * <li>只合并没有请求内容的幂等请求，默认为{@code GET}和{@code HEAD}</li>
+ * <li>键默认包含{@code Accept}、{@code Accept-Encoding}、{@code Accept-Language}、{@code Authorization}和{@code Cookie}，
+ * 不同用户的请求不会被合并</li>
+ * <li>响应内容超过{@linkplain Builder#maxBodySize(int)}时不共享，leader照常流式返回，等待者各自重新发出请求</li>
+ * <li>等待者使用leader的{@linkplain Options}，自己的超时设置不生效</li>
+ * </ul>
+ * <pre>
+ * Client client = CoalescingClient.builder(new OkHttpClient()).keyHeaders("Authorization", "X-Tenant").build();
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class CoalescingClient implements Client {
+
+    private final Client delegate;
+
+    private final Set<Method> methods;
+
+    /**
+     * 参与生成键的请求头，小写
+     */
+    private final String[] keyHeaders;
+
+    private final int maxBodySize;
+
+    private final ConcurrentMap<String, CompletableFuture<Shared>> inflight = new ConcurrentHashMap<>();
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder executionCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder notSharedCount = new LongAdder();
+
+    CoalescingClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.methods = EnumSet.copyOf(builder.methods);
+        this.keyHeaders = new String[builder.keyHeaders.length];
+        for (int i = 0; i < keyHeaders.length; i++) {
+            keyHeaders[i] = builder.keyHeaders[i].toLowerCase(Locale.ROOT);
+        }
+        this.maxBodySize = builder.maxBodySize;
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        if (!isCoalescable(request)) {
+            return delegate.execute(request, options);
+        }
+        requestCount.increment();
+        String key = key(request);
+        CompletableFuture<Shared> flight = new CompletableFuture<>();
+        CompletableFuture<Shared> leader = inflight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalescedCount.increment();
+            Shared shared;
+            try {
+                shared = leader.join();
+            } catch (CompletionException e) {
+                throw AsyncExecutors.rethrow(e);
+            }
+            return shared == null ? delegate.execute(request, options) : shared.toResponse(request);
+        }
+
+        executionCount.increment();
+        Response response;
+        try {
+            response = delegate.execute(request, options);
+        } catch (RuntimeException | Error e) {
+            inflight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        return share(key, flight, request, response);
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        if (!isCoalescable(request)) {
+            return delegate.executeAsync(request, options);
+        }
+        requestCount.increment();
+        String key = key(request);
+        CompletableFuture<Shared> flight = new CompletableFuture<>();
+        CompletableFuture<Shared> leader = inflight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalescedCount.increment();
+            return leader.thenCompose(shared -> shared == null ? delegate.executeAsync(request, options) :
+                    CompletableFuture.completedFuture(shared.toResponse(request)));
+        }
+
+        executionCount.increment();
+        CompletableFuture<Response> future;
+        try {
+            future = delegate.executeAsync(request, options);
+        } catch (RuntimeException e) {
+            inflight.remove(key, flight);
+            flight.completeExceptionally(e);
+            return AsyncExecutors.failed(e);
+        }
+        // 调用方取消返回的future不会影响等待者
+        return future.handle((response, e) -> {
+            if (e != null) {
+                inflight.remove(key, flight);
+                flight.completeExceptionally(AsyncExecutors.unwrap(e));
+                throw AsyncExecutors.rethrow(e);
+            }
+            return share(key, flight, request, response);
+        });
+    }
+
+    /**
+     * 读取leader的响应内容并唤醒等待者
+     *
+     * @return 交给leader的响应
+     */
+    private Response share(String key, CompletableFuture<Shared> flight, Request request, Response response) {
+        Shared shared = null;
+        Response result = response;
+        try {
+            ResponseBody body = response.body();
+            Integer length = body == null ? null : body.length();
+            if (body == null) {
+                shared = new Shared(response, new byte[0]);
+            } else if (length == null || length <= maxBodySize) {
+                InputStream in = body.byteStream();
+                FastByteArrayOutputStream buffer = new FastByteArrayOutputStream(
+                        length != null && length > 0 ? length : 1024);
+                byte[] chunk = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+                int n;
+                boolean tooLarge = false;
+                while ((n = in.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, n);
+                    if (buffer.size() > maxBodySize) {
+                        // 将已读取的部分与剩余的流拼接后交给leader
+                        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), in);
+                        result = response.newBuilder().body(rest, length == null ? -1 : length).build();
+                        tooLarge = true;
+                        break;
+                    }
+                }
+                if (!tooLarge) {
+                    IOUtil.closeQuietly(response);
+                    shared = new Shared(response, buffer.toByteArray());
+                }
+            }
+        } catch (IOException e) {
+            throw fail(key, flight, response, new IoRuntimeException(e));
+        } catch (RuntimeException e) {
+            throw fail(key, flight, response, e);
+        }
+        inflight.remove(key, flight);
+        if (shared == null) {
+            notSharedCount.increment();
+            flight.complete(null);
+            return result;
+        }
+        flight.complete(shared);
+        return shared.toResponse(request);
+    }
+
+    private RuntimeException fail(String key, CompletableFuture<Shared> flight, Response response, RuntimeException e) {
+        IOUtil.closeQuietly(response);
+        inflight.remove(key, flight);
+        flight.completeExceptionally(e);
+        return e;
+    }
+
+    private boolean isCoalescable(Request request) {
+        return request.body() == null && methods.contains(request.method());
+    }
+
+    /**
+     * 生成合并的键：方法、地址以及选定的请求头，请求头名称不区分大小写
+     */
+    private String key(Request request) {
+        StringBuilder key = new StringBuilder(request.url().length() + 16)
+                .append(request.method().name()).append(' ').append(request.url());
+        Map<String, List<String>> headers = request.headers();
+        if (headers.isEmpty()) {
+            return key.toString();
+        }
+        for (String name : keyHeaders) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (entry.getKey().equalsIgnoreCase(name)) {
+                    key.append('\n').append(name).append(':').append(entry.getValue());
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * 返回统计快照
+     *
+     * @return {@linkplain CoalescingStats}
+     */
+    public CoalescingStats stats() {
+        return new CoalescingStats(requestCount.sum(), executionCount.sum(), coalescedCount.sum(),
+                notSharedCount.sum(), inflight.size());
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 被装饰的客户端
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * leader的响应，等待者各自生成独立的{@linkplain Response}，共享同一份内容
+     */
+    private static final class Shared {
+
+        private final Response response;
+
+        private final byte[] body;
+
+        Shared(Response response, byte[] body) {
+            this.response = response;
+            this.body = body;
+        }
+
+        Response toResponse(Request request) {
+            return response.newBuilder().request(request).body(body).build();
+        }
+
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        private Set<Method> methods;
+
+        private String[] keyHeaders;
+
+        /**
+         * 可以共享的最大响应内容，单位字节
+         */
+        private int maxBodySize;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.methods = EnumSet.of(Method.GET, Method.HEAD);
+            this.keyHeaders = new String[]{"Accept", "Accept-Encoding", "Accept-Language", "Authorization", "Cookie"};
+            this.maxBodySize = 1024 * 1024;
+        }
+
+        /**
+         * 设置可以合并的请求方法，默认为{@code GET}和{@code HEAD}，只应当设置幂等的方法
+         *
+         * @param methods 请求方法
+         * @return {@linkplain Builder}
+         */
+        public Builder methods(@NonNull Method... methods) {
+            Preconditions.checkArgument(methods != null && methods.length > 0, "'methods' must not be empty");
+            this.methods = EnumSet.copyOf(Arrays.asList(methods));
+            return this;
+        }
+
+        /**
+         * 设置参与生成键的请求头，只有这些请求头的值都相同的请求才会被合并，会替换默认值
+         *
+         * @param keyHeaders 请求头名称，不区分大小写
+         * @return {@linkplain Builder}
+         */
+        public Builder keyHeaders(@NonNull String... keyHeaders) {
+            Preconditions.requireNonNull(keyHeaders, "keyHeaders == null");
+            this.keyHeaders = keyHeaders.clone();
+            return this;
+        }
+
+        /**
+         * 设置可以共享的最大响应内容，超过时leader流式返回，等待者各自重新请求，默认为1MB
+         *
+         * @param maxBodySize 最大字节数
+         * @return {@linkplain Builder}
+         */
+        public Builder maxBodySize(int maxBodySize) {
+            Preconditions.checkArgument(maxBodySize >= 0, "'maxBodySize' must than 0");
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        public CoalescingClient build() {
+            return new CoalescingClient(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.jishukezhan.http.coalescing;
+
+/**
+ * {@linkplain CoalescingClient}的统计快照
+ *
+ * @author miles.tang
+ */
+public class CoalescingStats {
+
+    /**
+     * 可以合并的请求数，不包括直接透传的请求
+     */
+    private final long requestCount;
+
+    /**
+     * 作为leader真正发出的请求数
+     */
+    private final long executionCount;
+
+    /**
+     * 合并到进行中请求的请求数
+     */
+    private final long coalescedCount;
+
+    /**
+     * 响应内容过大而没有共享的次数，此时等待者会各自重新请求
+     */
+    private final long notSharedCount;
+
+    /**
+     * 当前进行中的请求数
+     */
+    private final int inflightCount;
+
+    CoalescingStats(long requestCount, long executionCount, long coalescedCount, long notSharedCount,
+                    int inflightCount) {
+        this.requestCount = requestCount;
+        this.executionCount = executionCount;
+        this.coalescedCount = coalescedCount;
+        this.notSharedCount = notSharedCount;
+        this.inflightCount = inflightCount;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getExecutionCount() {
+        return executionCount;
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public long getNotSharedCount() {
+        return notSharedCount;
+    }
+
+    public int getInflightCount() {
+        return inflightCount;
+    }
+
+    /**
+     * 合并率
+     *
+     * @return 0到1之间的合并率，没有请求时为0
+     */
+    public double coalescingRatio() {
+        return requestCount == 0 ? 0 : (double) coalescedCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CoalescingStats{" +
+                "requestCount=" + requestCount +
+                ", executionCount=" + executionCount +
+                ", coalescedCount=" + coalescedCount +
+                ", notSharedCount=" + notSharedCount +
+                ", inflightCount=" + inflightCount +
+                '}';
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.jishukezhan.http.declarative;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 请求内容，每个方法最多一个
+ * <ul>
+ * <li>{@linkplain com.jishukezhan.http.RequestBody}：原样发送</li>
+ * <li>{@code byte[]}：{@code application/octet-stream}</li>
+ * <li>{@code String}：{@code text/plain}</li>
+ * <li>其他对象：通过{@linkplain com.jishukezhan.json.JSON}序列化为{@code application/json}</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Body {
+}
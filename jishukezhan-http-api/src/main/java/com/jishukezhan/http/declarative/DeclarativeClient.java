@@ -0,0 +1,222 @@
+package com.jishukezhan.http.declarative;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.support.Cilantro;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 声明式HTTP客户端，将带有{@linkplain RequestMapping}等注解的接口代理为{@linkplain Client}调用
+ * <pre>
+ * &#64;Headers("Accept: application/json")
+ * public interface UserApi {
+ *
+ *     &#64;RequestMapping(method = Method.GET, value = "/users/{id}")
+ *     User get(&#64;Param("id") long id);
+ *
+ *     &#64;RequestMapping(method = Method.GET, value = "/users")
+ *     CompletableFuture&lt;List&lt;User&gt;&gt; search(&#64;Query("name") String name);
+ *
+ *     &#64;RequestMapping(method = Method.POST, value = "/users")
+ *     void create(&#64;Body User user);
+ * }
+ *
+ * UserApi api = DeclarativeClient.builder().baseUrl("https://api.example.com").build().create(UserApi.class);
+ * </pre>
+ * 注解在{@link #create(Class)}时全部解析完成：地址和请求头编译为模板，返回值的JSON类型提前确定，
+ * 注解有误时立即抛出{@linkplain IllegalArgumentException}。每次调用只需要按照下标读取参数拼接请求，不再反射读取注解或者解析字符串。
+ * <p>返回值支持{@linkplain com.jishukezhan.http.Response}（由调用方关闭）、{@code void}、{@code String}、{@code byte[]}
+ * 和任意JSON类型，以及它们的{@linkplain java.util.concurrent.CompletableFuture}形式（异步执行）。
+ * 状态码的处理与{@linkplain com.jishukezhan.http.support.RequestSupport}一致。</p>
+ * <p>接口的默认方法直接执行，其中调用的其它接口方法仍然发起请求，可以用来组合多个请求或者提供默认参数</p>
+ *
+ * @author miles.tang
+ */
+public final class DeclarativeClient {
+
+    private final String baseUrl;
+
+    private final Cilantro cilantro;
+
+    DeclarativeClient(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.cilantro = builder.cilantro == null ? Cilantro.getDefault() : builder.cilantro;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public Cilantro getCilantro() {
+        return cilantro;
+    }
+
+    /**
+     * 创建接口的代理
+     *
+     * @param type 接口
+     * @param <T>  接口类型
+     * @return 代理对象
+     * @throws IllegalArgumentException 不是接口或者注解有误
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T create(@NonNull Class<T> type) {
+        Preconditions.requireNonNull(type, "type == null");
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException(type.getName() + " is not an interface");
+        }
+        Map<Method, MethodMetadata> metadata = new HashMap<>();
+        Map<Method, MethodHandle> defaultMethods = new HashMap<>();
+        for (Method method : type.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            if (method.isDefault()) {
+                defaultMethods.put(method, defaultMethodHandle(method));
+                continue;
+            }
+            metadata.put(method, MethodMetadata.parse(type, method, baseUrl));
+        }
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                new Handler(type, Collections.unmodifiableMap(metadata), Collections.unmodifiableMap(defaultMethods),
+                        cilantro));
+    }
+
+    /**
+     * 获取直接调用接口默认方法的{@linkplain MethodHandle}，调用时绑定到代理对象
+     * <p>Java 9及以上通过{@code MethodHandles.privateLookupIn}获取接口的私有访问权限；
+     * Java 8没有该方法，只能通过{@linkplain MethodHandles.Lookup}的私有构造方法创建</p>
+     *
+     * @param method 默认方法
+     * @return {@linkplain MethodHandle}
+     * @throws IllegalArgumentException 无法访问默认方法，比如接口所在的模块没有开放
+     */
+    private static MethodHandle defaultMethodHandle(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        try {
+            MethodHandles.Lookup lookup;
+            try {
+                Method privateLookupIn = MethodHandles.class.getMethod("privateLookupIn",
+                        Class.class, MethodHandles.Lookup.class);
+                lookup = (MethodHandles.Lookup) privateLookupIn.invoke(null, declaringClass, MethodHandles.lookup());
+            } catch (NoSuchMethodException e) {
+                Constructor<MethodHandles.Lookup> constructor =
+                        MethodHandles.Lookup.class.getDeclaredConstructor(Class.class, int.class);
+                constructor.setAccessible(true);
+                lookup = constructor.newInstance(declaringClass, MethodHandles.Lookup.PRIVATE);
+            }
+            return lookup.unreflectSpecial(method, declaringClass);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Default method " + declaringClass.getName() + "." + method.getName()
+                    + " cannot be invoked through proxy", e);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static final class Handler implements InvocationHandler {
+
+        private static final Object[] NO_ARGS = new Object[0];
+
+        private final Class<?> type;
+
+        private final Map<Method, MethodMetadata> metadata;
+
+        private final Map<Method, MethodHandle> defaultMethods;
+
+        private final Cilantro cilantro;
+
+        Handler(Class<?> type, Map<Method, MethodMetadata> metadata, Map<Method, MethodHandle> defaultMethods,
+                Cilantro cilantro) {
+            this.type = type;
+            this.metadata = metadata;
+            this.defaultMethods = defaultMethods;
+            this.cilantro = cilantro;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "DeclarativeClient{" + "type=" + type.getName() + '}';
+                }
+            }
+            if (args == null) {
+                args = NO_ARGS;
+            }
+            MethodMetadata meta = metadata.get(method);
+            if (meta == null) {
+                // 默认方法，其中调用的其它接口方法仍然经过代理
+                return defaultMethods.get(method).bindTo(proxy).invokeWithArguments(args);
+            }
+            Request request = meta.toRequest(args, cilantro);
+            Options options = meta.options(args, cilantro.getOptions());
+            Client client = cilantro.getClient();
+            if (meta.isAsync()) {
+                return client.executeAsync(request, options).thenApply(response -> meta.decode(response, cilantro));
+            }
+            return meta.decode(client.execute(request, options), cilantro);
+        }
+
+    }
+
+    public static class Builder {
+
+        private String baseUrl;
+
+        private Cilantro cilantro;
+
+        public Builder() {
+        }
+
+        /**
+         * 基础地址，{@linkplain RequestMapping#value()}不是完整地址时拼接在其后
+         *
+         * @param baseUrl 基础地址
+         * @return {@linkplain Builder}
+         */
+        public Builder baseUrl(@Nullable String baseUrl) {
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * 执行请求使用的{@linkplain Cilantro}，包括{@linkplain Client}、{@linkplain Options}和JSON引擎，
+         * 默认为{@linkplain Cilantro#getDefault()}
+         *
+         * @param cilantro 自定义客户端
+         * @return {@linkplain Builder}
+         */
+        public Builder cilantro(@NonNull Cilantro cilantro) {
+            this.cilantro = Preconditions.requireNonNull(cilantro, "cilantro == null");
+            return this;
+        }
+
+        public DeclarativeClient build() {
+            return new DeclarativeClient(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.jishukezhan.http.declarative;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 请求头，值为{@code null}时忽略
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Header {
+
+    /**
+     * 请求头名称
+     *
+     * @return 请求头名称
+     */
+    String value();
+
+}
@@ -0,0 +1,22 @@
+package com.jishukezhan.http.declarative;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 固定的请求头，格式为{@code Name: value}，值中可以包含{@code {name}}形式的变量
+ * <p>注解在接口上时对所有方法生效，方法上的请求头追加在接口的之后</p>
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Headers {
+
+    String[] value();
+
+}
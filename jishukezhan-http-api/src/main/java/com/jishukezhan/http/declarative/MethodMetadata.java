@@ -0,0 +1,421 @@
+package com.jishukezhan.http.declarative;
+
+import com.jishukezhan.core.http.ContentType;
+import com.jishukezhan.core.http.UriTemplate;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.CharsetUtil;
+import com.jishukezhan.core.lang.StringUtil;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.RequestBody;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+import com.jishukezhan.http.support.Cilantro;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 接口方法编译后的元数据，在创建代理时根据注解生成，每次调用只需要按照下标取参数填充模板
+ *
+ * @author miles.tang
+ */
+final class MethodMetadata {
+
+    /**
+     * 返回值的处理方式
+     */
+    enum ReturnKind {
+        /**
+         * 原始响应，由调用方关闭
+         */
+        RESPONSE,
+        VOID,
+        STRING,
+        BYTES,
+        /**
+         * 通过JSON解码为{@linkplain #returnType}
+         */
+        JSON
+    }
+
+    private static final String[] EMPTY = new String[0];
+
+    private static final int[] NO_INDEXES = new int[0];
+
+    private final String configKey;
+
+    private final Method method;
+
+    private final Template url;
+
+    /**
+     * 地址模板中是否已经包含查询参数
+     */
+    private final boolean urlHasQuery;
+
+    private final String[] headerNames;
+
+    private final Template[] headerValues;
+
+    /**
+     * 编码后的查询参数名
+     */
+    private final String[] queryNames;
+
+    private final int[] queryIndexes;
+
+    private final String[] headerParamNames;
+
+    private final int[] headerParamIndexes;
+
+    private final int bodyIndex;
+
+    private final int optionsIndex;
+
+    private final boolean async;
+
+    private final ReturnKind returnKind;
+
+    private final Type returnType;
+
+    private MethodMetadata(Builder builder) {
+        this.configKey = builder.configKey;
+        this.method = builder.method;
+        this.url = builder.url;
+        this.urlHasQuery = builder.urlHasQuery;
+        this.headerNames = builder.headerNames.toArray(EMPTY);
+        this.headerValues = builder.headerValues.toArray(new Template[0]);
+        this.queryNames = builder.queryNames.toArray(EMPTY);
+        this.queryIndexes = toArray(builder.queryIndexes);
+        this.headerParamNames = builder.headerParamNames.toArray(EMPTY);
+        this.headerParamIndexes = toArray(builder.headerParamIndexes);
+        this.bodyIndex = builder.bodyIndex;
+        this.optionsIndex = builder.optionsIndex;
+        this.async = builder.async;
+        this.returnKind = builder.returnKind;
+        this.returnType = builder.returnType;
+    }
+
+    boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * 本次调用的请求选项
+     *
+     * @param args     方法参数
+     * @param defaults 默认的请求选项
+     * @return 请求选项
+     */
+    Options options(Object[] args, Options defaults) {
+        if (optionsIndex >= 0 && args[optionsIndex] != null) {
+            return (Options) args[optionsIndex];
+        }
+        return defaults;
+    }
+
+    /**
+     * 根据方法参数生成请求
+     *
+     * @param args     方法参数，无参方法为空数组
+     * @param cilantro 序列化请求内容使用的JSON引擎
+     * @return 请求
+     */
+    Request toRequest(Object[] args, Cilantro cilantro) {
+        StringBuilder buffer = new StringBuilder(url.estimatedLength() + 32 * queryIndexes.length);
+        url.expand(args, buffer);
+        boolean hasQuery = urlHasQuery;
+        for (int i = 0; i < queryIndexes.length; i++) {
+            Object value = args[queryIndexes[i]];
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof Iterable) {
+                for (Object item : (Iterable<?>) value) {
+                    hasQuery = appendQuery(buffer, hasQuery, queryNames[i], item);
+                }
+            } else if (value instanceof Object[]) {
+                for (Object item : (Object[]) value) {
+                    hasQuery = appendQuery(buffer, hasQuery, queryNames[i], item);
+                }
+            } else {
+                hasQuery = appendQuery(buffer, hasQuery, queryNames[i], value);
+            }
+        }
+
+        // 地址已经编码完成，Client直接使用
+        Request.Builder builder = Request.builder().encodedUrl(buffer.toString());
+        for (int i = 0; i < headerNames.length; i++) {
+            builder.addHeader(headerNames[i], headerValues[i].expand(args));
+        }
+        for (int i = 0; i < headerParamIndexes.length; i++) {
+            Object value = args[headerParamIndexes[i]];
+            if (value != null) {
+                builder.addHeader(headerParamNames[i], value.toString());
+            }
+        }
+        return builder.method(method, toBody(args, cilantro)).build();
+    }
+
+    private static boolean appendQuery(StringBuilder buffer, boolean hasQuery, String name, Object value) {
+        if (value == null) {
+            return hasQuery;
+        }
+        buffer.append(hasQuery ? '&' : '?').append(name).append('=');
+        UriTemplate.encodeQueryParam(value instanceof CharSequence ? (CharSequence) value : value.toString(), buffer);
+        return true;
+    }
+
+    private RequestBody toBody(Object[] args, Cilantro cilantro) {
+        Object value = bodyIndex >= 0 ? args[bodyIndex] : null;
+        if (value == null) {
+            return requiresBody(method) ? RequestBody.create(null, new byte[0]) : null;
+        }
+        if (value instanceof RequestBody) {
+            return (RequestBody) value;
+        }
+        if (value instanceof byte[]) {
+            return RequestBody.create(ContentType.APPLICATION_OCTET_STREAM, (byte[]) value);
+        }
+        if (value instanceof String) {
+            return RequestBody.create(ContentType.TEXT_PLAIN, (String) value);
+        }
+        return RequestBody.create(ContentType.APPLICATION_JSON, cilantro.getJson().toJson(value));
+    }
+
+    /**
+     * 按照返回类型转换响应，除{@linkplain ReturnKind#RESPONSE}外都会关闭响应
+     *
+     * @param response 响应
+     * @param cilantro 解码使用的JSON引擎
+     * @return 方法的返回值
+     */
+    Object decode(Response response, Cilantro cilantro) {
+        if (returnKind == ReturnKind.RESPONSE) {
+            return response;
+        }
+        try {
+            cilantro.checkStatus(response);
+            ResponseBody body = response.body();
+            switch (returnKind) {
+                case VOID:
+                    return null;
+                case STRING:
+                    return body == null ? null : body.string(CharsetUtil.UTF_8);
+                case BYTES:
+                    return body == null ? null : IOUtil.readBytes(body.byteStream());
+                default:
+                    return cilantro.decodeJson(body, returnType);
+            }
+        } finally {
+            IOUtil.closeQuietly(response);
+        }
+    }
+
+    private static boolean requiresBody(Method method) {
+        return method == Method.POST || method == Method.PUT || method == Method.PATCH;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_INDEXES;
+        }
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * 解析方法上的注解
+     *
+     * @param type    接口
+     * @param method  接口方法
+     * @param baseUrl 基础地址，可能为{@code null}
+     * @return 方法元数据
+     * @throws IllegalArgumentException 注解不完整或者不一致
+     */
+    static MethodMetadata parse(Class<?> type, java.lang.reflect.Method method, String baseUrl) {
+        Builder builder = new Builder();
+        builder.configKey = type.getSimpleName() + "#" + method.getName();
+        RequestMapping mapping = method.getAnnotation(RequestMapping.class);
+        if (mapping == null) {
+            throw error(builder, "missing @RequestMapping");
+        }
+        builder.method = mapping.method();
+
+        // 参数
+        Map<String, Template.Binding> bindings = new HashMap<>();
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            int annotated = 0;
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof Param) {
+                    Param param = (Param) annotation;
+                    if (bindings.put(param.value(), new Template.Binding(i, param.encoded())) != null) {
+                        throw error(builder, "duplicate @Param(\"" + param.value() + "\")");
+                    }
+                    annotated++;
+                } else if (annotation instanceof Query) {
+                    builder.queryNames.add(UriTemplate.encodeQueryParam(((Query) annotation).value()));
+                    builder.queryIndexes.add(i);
+                    annotated++;
+                } else if (annotation instanceof Header) {
+                    builder.headerParamNames.add(((Header) annotation).value());
+                    builder.headerParamIndexes.add(i);
+                    annotated++;
+                } else if (annotation instanceof Body) {
+                    if (builder.bodyIndex >= 0) {
+                        throw error(builder, "multiple @Body parameters");
+                    }
+                    builder.bodyIndex = i;
+                    annotated++;
+                }
+            }
+            if (annotated == 0 && parameterTypes[i] == Options.class) {
+                builder.optionsIndex = i;
+                annotated++;
+            }
+            if (annotated != 1) {
+                throw error(builder, "parameter " + i + " must have exactly one of @Param, @Query, @Header, @Body" +
+                        " or be of type Options");
+            }
+        }
+        if (builder.bodyIndex >= 0 && (builder.method == Method.GET || builder.method == Method.HEAD)) {
+            throw error(builder, "method " + builder.method + " must not have a @Body");
+        }
+
+        // 地址
+        String path = mapping.value();
+        String url;
+        if (path.startsWith("http://") || path.startsWith("https://") || StringUtil.isEmpty(baseUrl)) {
+            url = path;
+        } else if (baseUrl.endsWith("/") && path.startsWith("/")) {
+            url = baseUrl + path.substring(1);
+        } else if (!baseUrl.endsWith("/") && !path.isEmpty() && !path.startsWith("/")) {
+            url = baseUrl + "/" + path;
+        } else {
+            url = baseUrl + path;
+        }
+        if (StringUtil.isEmpty(url)) {
+            throw error(builder, "url is empty, set a base url or @RequestMapping value");
+        }
+        Set<String> used = new LinkedHashSet<>(Template.variables(url));
+        try {
+            builder.url = Template.compile(url, bindings, true);
+        } catch (IllegalArgumentException e) {
+            throw error(builder, e.getMessage());
+        }
+        builder.urlHasQuery = url.indexOf('?') >= 0;
+
+        // 请求头
+        List<String> headers = new ArrayList<>();
+        Headers typeHeaders = type.getAnnotation(Headers.class);
+        if (typeHeaders != null) {
+            Collections.addAll(headers, typeHeaders.value());
+        }
+        Headers methodHeaders = method.getAnnotation(Headers.class);
+        if (methodHeaders != null) {
+            Collections.addAll(headers, methodHeaders.value());
+        }
+        for (String header : headers) {
+            int index = header.indexOf(':');
+            if (index <= 0) {
+                throw error(builder, "@Headers value '" + header + "' must be formatted as 'Name: value'");
+            }
+            String value = header.substring(index + 1).trim();
+            used.addAll(Template.variables(value));
+            builder.headerNames.add(header.substring(0, index).trim());
+            try {
+                builder.headerValues.add(Template.compile(value, bindings, false));
+            } catch (IllegalArgumentException e) {
+                throw error(builder, e.getMessage());
+            }
+        }
+        for (String name : bindings.keySet()) {
+            if (!used.contains(name)) {
+                throw error(builder, "@Param(\"" + name + "\") is not used in url or headers");
+            }
+        }
+
+        // 返回值
+        Type returnType = method.getGenericReturnType();
+        Class<?> rawType = method.getReturnType();
+        if (rawType == CompletableFuture.class) {
+            if (!(returnType instanceof ParameterizedType)) {
+                throw error(builder, "CompletableFuture return type must be parameterized");
+            }
+            builder.async = true;
+            returnType = ((ParameterizedType) returnType).getActualTypeArguments()[0];
+            if (returnType instanceof WildcardType) {
+                returnType = ((WildcardType) returnType).getUpperBounds()[0];
+            }
+        }
+        builder.returnType = returnType;
+        if (returnType == Response.class) {
+            builder.returnKind = ReturnKind.RESPONSE;
+        } else if (returnType == void.class || returnType == Void.class) {
+            builder.returnKind = ReturnKind.VOID;
+        } else if (returnType == String.class) {
+            builder.returnKind = ReturnKind.STRING;
+        } else if (returnType == byte[].class) {
+            builder.returnKind = ReturnKind.BYTES;
+        } else {
+            builder.returnKind = ReturnKind.JSON;
+        }
+        return new MethodMetadata(builder);
+    }
+
+    private static IllegalArgumentException error(Builder builder, String message) {
+        return new IllegalArgumentException(builder.configKey + ": " + message);
+    }
+
+    private static final class Builder {
+
+        private String configKey;
+
+        private Method method;
+
+        private Template url;
+
+        private boolean urlHasQuery;
+
+        private final List<String> headerNames = new ArrayList<>();
+
+        private final List<Template> headerValues = new ArrayList<>();
+
+        private final List<String> queryNames = new ArrayList<>();
+
+        private final List<Integer> queryIndexes = new ArrayList<>();
+
+        private final List<String> headerParamNames = new ArrayList<>();
+
+        private final List<Integer> headerParamIndexes = new ArrayList<>();
+
+        private int bodyIndex = -1;
+
+        private int optionsIndex = -1;
+
+        private boolean async;
+
+        private ReturnKind returnKind;
+
+        private Type returnType;
+
+    }
+
+}
@@ -0,0 +1,33 @@
+package com.jishukezhan.http.declarative;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 填充地址和请求头模板中的同名变量，值为{@code null}时替换为空字符串
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Param {
+
+    /**
+     * 变量名
+     *
+     * @return 变量名
+     */
+    String value();
+
+    /**
+     * 值是否已经编码，为{@code false}时填充到地址中会先进行url编码，请求头中的变量不编码
+     *
+     * @return 已经编码返回{@code true}
+     */
+    boolean encoded() default false;
+
+}
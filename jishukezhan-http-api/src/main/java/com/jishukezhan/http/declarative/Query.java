@@ -0,0 +1,26 @@
+package com.jishukezhan.http.declarative;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 请求参数，值为{@code null}时忽略，集合和数组会展开为多个同名参数
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface Query {
+
+    /**
+     * 参数名
+     *
+     * @return 参数名
+     */
+    String value();
+
+}
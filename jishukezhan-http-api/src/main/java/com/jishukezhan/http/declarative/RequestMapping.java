@@ -0,0 +1,40 @@
+package com.jishukezhan.http.declarative;
+
+import com.jishukezhan.http.Method;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明接口方法对应的HTTP请求，地址相对于{@linkplain DeclarativeClient.Builder#baseUrl(String)}，
+ * 可以包含{@code {name}}形式的变量，由{@linkplain Param}注解的参数填充
+ * <pre>
+ * &#64;RequestMapping(method = Method.GET, value = "/users/{id}")
+ * User getUser(&#64;Param("id") long id);
+ * </pre>
+ *
+ * @author miles.tang
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RequestMapping {
+
+    /**
+     * 请求地址，可以是完整的地址，也可以是相对于基础地址的路径
+     *
+     * @return 地址模板
+     */
+    String value() default "";
+
+    /**
+     * 请求方法
+     *
+     * @return 请求方法
+     */
+    Method method() default Method.GET;
+
+}
@@ -0,0 +1,194 @@
+package com.jishukezhan.http.declarative;
+
+import com.jishukezhan.core.http.UriTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 创建时编译好的模板，由字面量和变量交替组成，展开时只做拼接和编码，不再解析字符串
+ *
+ * @author miles.tang
+ */
+final class Template {
+
+    /**
+     * 字面量，变量位置为{@code null}
+     */
+    private final String[] literals;
+
+    /**
+     * 变量对应的参数下标，字面量位置为{@code -1}
+     */
+    private final int[] indexes;
+
+    /**
+     * 变量的值的编码方式
+     */
+    private final Encoding[] encodings;
+
+    /**
+     * 预估展开后的长度，字面量的总长度加上每个变量16个字符
+     */
+    private final int estimatedLength;
+
+    private Template(String[] literals, int[] indexes, Encoding[] encodings, int estimatedLength) {
+        this.literals = literals;
+        this.indexes = indexes;
+        this.encodings = encodings;
+        this.estimatedLength = estimatedLength;
+    }
+
+    /**
+     * 返回模板中的变量名
+     *
+     * @param template 模板
+     * @return 变量名，按照出现的顺序
+     */
+    static Set<String> variables(String template) {
+        Set<String> names = new LinkedHashSet<>();
+        int start;
+        int end = 0;
+        while ((start = template.indexOf('{', end)) >= 0) {
+            end = template.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed variable in template '" + template + "'");
+            }
+            names.add(template.substring(start + 1, end).trim());
+        }
+        return names;
+    }
+
+    /**
+     * 编译模板
+     *
+     * @param template  模板
+     * @param bindings  变量名对应的参数
+     * @param urlEncode 变量的值是否需要url编码，{@linkplain Param#encoded()}为{@code true}的参数除外；
+     *                  {@code ?}之前的变量按照路径片段编码，之后的按照查询参数编码
+     * @return 编译后的模板
+     */
+    static Template compile(String template, Map<String, Binding> bindings, boolean urlEncode) {
+        List<String> literals = new ArrayList<>();
+        List<Binding> variables = new ArrayList<>();
+        int literalLength = 0;
+        int position = 0;
+        int start;
+        while ((start = template.indexOf('{', position)) >= 0) {
+            int end = template.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Unclosed variable in template '" + template + "'");
+            }
+            if (start > position) {
+                literals.add(template.substring(position, start));
+                variables.add(null);
+                literalLength += start - position;
+            }
+            String name = template.substring(start + 1, end).trim();
+            Binding binding = bindings.get(name);
+            if (binding == null) {
+                throw new IllegalArgumentException("No @Param(\"" + name + "\") for template '" + template + "'");
+            }
+            literals.add(null);
+            variables.add(binding);
+            position = end + 1;
+        }
+        if (position < template.length()) {
+            literals.add(template.substring(position));
+            variables.add(null);
+            literalLength += template.length() - position;
+        }
+
+        int size = literals.size();
+        int[] indexes = new int[size];
+        Encoding[] encodings = new Encoding[size];
+        int estimatedLength = literalLength;
+        boolean inQuery = false;
+        for (int i = 0; i < size; i++) {
+            Binding binding = variables.get(i);
+            if (binding == null) {
+                indexes[i] = -1;
+                encodings[i] = Encoding.NONE;
+                inQuery |= literals.get(i).indexOf('?') >= 0;
+                continue;
+            }
+            indexes[i] = binding.index;
+            if (!urlEncode || binding.encoded) {
+                encodings[i] = Encoding.NONE;
+            } else {
+                encodings[i] = inQuery ? Encoding.QUERY : Encoding.PATH_SEGMENT;
+            }
+            estimatedLength += 16;
+        }
+        return new Template(literals.toArray(new String[0]), indexes, encodings, estimatedLength);
+    }
+
+    /**
+     * 展开模板
+     *
+     * @param args 方法参数
+     * @param out  输出
+     */
+    void expand(Object[] args, StringBuilder out) {
+        for (int i = 0; i < literals.length; i++) {
+            if (indexes[i] < 0) {
+                out.append(literals[i]);
+                continue;
+            }
+            Object value = args[indexes[i]];
+            if (value == null) {
+                continue;
+            }
+            CharSequence text = value instanceof CharSequence ? (CharSequence) value : value.toString();
+            switch (encodings[i]) {
+                case PATH_SEGMENT:
+                    UriTemplate.encodePathSegment(text, out);
+                    break;
+                case QUERY:
+                    UriTemplate.encodeQueryParam(text, out);
+                    break;
+                default:
+                    out.append(text);
+            }
+        }
+    }
+
+    String expand(Object[] args) {
+        StringBuilder out = new StringBuilder(estimatedLength);
+        expand(args, out);
+        return out.toString();
+    }
+
+    int estimatedLength() {
+        return estimatedLength;
+    }
+
+    /**
+     * 变量的编码方式
+     */
+    private enum Encoding {
+        NONE,
+        PATH_SEGMENT,
+        QUERY
+    }
+
+    /**
+     * 模板变量绑定的方法参数
+     */
+    static final class Binding {
+
+        final int index;
+
+        final boolean encoded;
+
+        Binding(int index, boolean encoded) {
+            this.index = index;
+            this.encoded = encoded;
+        }
+
+    }
+
+}
@@ -0,0 +1,541 @@
+package com.jishukezhan.http.dns;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.core.thread.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的域名解析缓存，不依赖JVM全局的{@code networkaddress.cache.ttl}
+ * <ul>
+ * <li>解析结果在{@code ttl}内直接返回；过期后的{@code stale}时间内仍然返回旧结果，同时在后台刷新，调用方不会被慢速的DNS阻塞</li>
+ * <li>热点主机名（有效期内命中次数达到阈值）在接近过期时提前在后台刷新，避免过期后出现同步解析</li>
+ * <li>同一主机名同时只有一个解析在进行，其他调用方等待同一个结果</li>
+ * <li>解析失败会在较短的时间内缓存，后台刷新失败时保留旧结果直到{@code stale}结束</li>
+ * </ul>
+ * <pre>
+ * CachingDns dns = CachingDns.builder().ttlMillis(30_000).build();
+ * dns.prefetch("api.example.com");
+ * Options options = Options.builder().dns(dns).build();
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class CachingDns implements Dns {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingDns.class);
+
+    private final Dns delegate;
+
+    private final long ttlNanos;
+
+    private final long staleNanos;
+
+    private final long negativeTtlNanos;
+
+    private final long refreshAheadNanos;
+
+    private final int refreshAheadMinHits;
+
+    private final int maxEntries;
+
+    private final Executor executor;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 正在进行的解析，保证同一主机名同时只有一个解析
+     */
+    private final ConcurrentMap<String, CompletableFuture<Entry>> inflight = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder staleHitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder refreshCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    CachingDns(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttlMillis);
+        this.staleNanos = TimeUnit.MILLISECONDS.toNanos(builder.staleMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(builder.negativeTtlMillis);
+        this.refreshAheadNanos = (long) (ttlNanos * builder.refreshAheadFactor);
+        this.refreshAheadMinHits = builder.refreshAheadMinHits;
+        this.maxEntries = builder.maxEntries;
+        this.executor = builder.executor != null ? builder.executor : RefreshExecutorHolder.INSTANCE;
+    }
+
+    @Override
+    public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        Preconditions.requireNonNull(hostname, "hostname == null");
+        if (isIpLiteral(hostname)) {
+            // IP地址不需要解析
+            return delegate.lookup(hostname);
+        }
+        String host = hostname.toLowerCase(Locale.ROOT);
+        Entry entry = entries.get(host);
+        if (entry != null) {
+            long now = System.nanoTime();
+            if (now - entry.expiresAt < 0) {
+                hitCount.increment();
+                int hits = entry.hits.incrementAndGet();
+                if (entry.addresses != null && now - entry.refreshAt >= 0 && hits >= refreshAheadMinHits) {
+                    refreshAsync(host, entry);
+                }
+                return entry.get(hostname);
+            }
+            if (entry.addresses != null && now - entry.staleUntil < 0) {
+                staleHitCount.increment();
+                refreshAsync(host, entry);
+                return entry.addresses;
+            }
+        }
+        missCount.increment();
+        return resolve(host, entry).get(hostname);
+    }
+
+    /**
+     * 在后台预先解析主机名，已经缓存且未过期的主机名会被忽略
+     *
+     * @param hostnames 主机名
+     */
+    public void prefetch(@NonNull String... hostnames) {
+        Preconditions.requireNonNull(hostnames, "hostnames == null");
+        long now = System.nanoTime();
+        for (String hostname : hostnames) {
+            if (hostname == null || hostname.isEmpty() || isIpLiteral(hostname)) {
+                continue;
+            }
+            String host = hostname.toLowerCase(Locale.ROOT);
+            Entry entry = entries.get(host);
+            if (entry == null || now - entry.expiresAt >= 0) {
+                refreshAsync(host, entry);
+            }
+        }
+    }
+
+    /**
+     * 移除主机名的缓存
+     *
+     * @param hostname 主机名
+     */
+    public void invalidate(@NonNull String hostname) {
+        Preconditions.requireNonNull(hostname, "hostname == null");
+        entries.remove(hostname.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * 返回统计快照
+     *
+     * @return {@linkplain DnsStats}
+     */
+    public DnsStats stats() {
+        return new DnsStats(hitCount.sum(), staleHitCount.sum(), missCount.sum(), refreshCount.sum(),
+                failureCount.sum(), evictionCount.sum(), entries.size());
+    }
+
+    private void refreshAsync(String host, @Nullable Entry previous) {
+        if (previous != null && (System.nanoTime() - previous.retryAfter < 0
+                || !previous.refreshing.compareAndSet(false, true))) {
+            return;
+        }
+        if (inflight.containsKey(host)) {
+            if (previous != null) {
+                previous.refreshing.set(false);
+            }
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                refreshCount.increment();
+                try {
+                    resolve(host, previous);
+                } catch (UnknownHostException e) {
+                    log.debug("Background dns refresh of {} failed: {}", host, e.getMessage());
+                } catch (RuntimeException e) {
+                    log.warn("Background dns refresh of {} failed", host, e);
+                } finally {
+                    if (previous != null) {
+                        previous.refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 刷新线程繁忙，下一次命中时再尝试
+            if (previous != null) {
+                previous.refreshing.set(false);
+            }
+        }
+    }
+
+    /**
+     * 解析主机名并更新缓存，同一主机名同时只有一个调用方真正执行解析
+     *
+     * @param host     小写的主机名
+     * @param previous 当前缓存的条目
+     * @return 新的条目，解析失败且旧条目仍可用时返回旧条目
+     */
+    private Entry resolve(String host, @Nullable Entry previous) throws UnknownHostException {
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inflight.putIfAbsent(host, future);
+        if (existing != null) {
+            return await(host, existing);
+        }
+        try {
+            Entry entry = load(host, previous);
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(host, future);
+        }
+    }
+
+    private Entry load(String host, @Nullable Entry previous) {
+        List<InetAddress> addresses;
+        try {
+            addresses = delegate.lookup(host);
+            if (addresses == null || addresses.isEmpty()) {
+                throw new UnknownHostException(host);
+            }
+        } catch (UnknownHostException e) {
+            failureCount.increment();
+            long now = System.nanoTime();
+            if (previous != null && previous.addresses != null && now - previous.staleUntil < 0) {
+                // 刷新失败时继续使用旧结果，并且在失败缓存时长内不再刷新
+                previous.retryAfter = now + negativeTtlNanos;
+                return previous;
+            }
+            Entry failed = new Entry(null, e.getMessage() == null ? host : e.getMessage(), now, negativeTtlNanos);
+            if (negativeTtlNanos > 0) {
+                put(host, failed);
+            } else {
+                entries.remove(host);
+            }
+            return failed;
+        }
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(addresses)), null, System.nanoTime(),
+                ttlNanos);
+        put(host, entry);
+        return entry;
+    }
+
+    private static Entry await(String host, CompletableFuture<Entry> future) throws UnknownHostException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UnknownHostException(host + ": interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void put(String host, Entry entry) {
+        entries.put(host, entry);
+        if (entries.size() > maxEntries && evicting.compareAndSet(false, true)) {
+            try {
+                evict();
+            } finally {
+                evicting.set(false);
+            }
+        }
+    }
+
+    /**
+     * 先移除已经超过{@code stale}时间的条目，仍然超出容量时移除最早过期的条目
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().staleUntil >= 0) {
+                iterator.remove();
+                evictionCount.increment();
+            }
+        }
+        while (entries.size() > maxEntries) {
+            String eldest = null;
+            long eldestExpiresAt = 0;
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (eldest == null || e.getValue().expiresAt - eldestExpiresAt < 0) {
+                    eldest = e.getKey();
+                    eldestExpiresAt = e.getValue().expiresAt;
+                }
+            }
+            if (eldest == null) {
+                break;
+            }
+            entries.remove(eldest);
+            evictionCount.increment();
+        }
+    }
+
+    private static boolean isIpLiteral(String hostname) {
+        if (hostname.indexOf(':') >= 0) {
+            return true;
+        }
+        for (int i = 0; i < hostname.length(); i++) {
+            char c = hostname.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return !hostname.isEmpty();
+    }
+
+    /**
+     * 创建{@linkplain Builder}，使用{@linkplain Dns#SYSTEM}解析
+     *
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder() {
+        return new Builder(Dns.SYSTEM);
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 实际执行解析的服务
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Dns delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * 缓存条目，{@code addresses}为{@code null}表示解析失败
+     */
+    private final class Entry {
+
+        final List<InetAddress> addresses;
+
+        final String failure;
+
+        final long expiresAt;
+
+        final long refreshAt;
+
+        final long staleUntil;
+
+        /**
+         * 有效期内的命中次数，用于判断是否为热点主机名
+         */
+        final AtomicInteger hits = new AtomicInteger();
+
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * 后台刷新失败后，在该时间之前不再刷新
+         */
+        volatile long retryAfter;
+
+        Entry(@Nullable List<InetAddress> addresses, @Nullable String failure, long now, long ttl) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiresAt = now + ttl;
+            this.refreshAt = now + (addresses == null ? ttl : refreshAheadNanos);
+            this.staleUntil = addresses == null ? expiresAt : expiresAt + staleNanos;
+            this.retryAfter = now;
+        }
+
+        List<InetAddress> get(String hostname) throws UnknownHostException {
+            if (addresses == null) {
+                // 每次抛出新的异常，避免共享异常栈
+                throw new UnknownHostException(failure == null ? hostname : failure);
+            }
+            return addresses;
+        }
+
+    }
+
+    private static class RefreshExecutorHolder {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(256),
+                    new ThreadFactoryBuilder().namePrefix("cilantro-dns-").daemon(true).build());
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    public static class Builder {
+
+        private final Dns delegate;
+
+        /**
+         * 解析结果的有效期，单位毫秒
+         */
+        private long ttlMillis;
+
+        /**
+         * 过期后仍然可以返回旧结果（同时后台刷新）的时长，单位毫秒
+         */
+        private long staleMillis;
+
+        /**
+         * 解析失败的缓存时长，单位毫秒，0表示不缓存
+         */
+        private long negativeTtlMillis;
+
+        /**
+         * 有效期过去该比例后，热点主机名会在后台提前刷新
+         */
+        private float refreshAheadFactor;
+
+        /**
+         * 成为热点主机名需要的命中次数
+         */
+        private int refreshAheadMinHits;
+
+        /**
+         * 最大缓存条目数
+         */
+        private int maxEntries;
+
+        /**
+         * 后台刷新使用的线程池
+         */
+        private Executor executor;
+
+        Builder(@NonNull Dns delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.ttlMillis = 60_000;
+            this.staleMillis = 300_000;
+            this.negativeTtlMillis = 1_000;
+            this.refreshAheadFactor = 0.8f;
+            this.refreshAheadMinHits = 2;
+            this.maxEntries = 1024;
+        }
+
+        /**
+         * 设置解析结果的有效期，默认60秒
+         *
+         * @param ttlMillis 有效期，单位毫秒，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder ttlMillis(long ttlMillis) {
+            Preconditions.checkArgument(ttlMillis > 0, "'ttlMillis' must than 0");
+            this.ttlMillis = ttlMillis;
+            return this;
+        }
+
+        /**
+         * 设置过期后仍然可以返回旧结果的时长，默认5分钟。这段时间内调用方直接拿到旧结果，由后台线程刷新
+         *
+         * @param staleMillis 时长，单位毫秒，0表示过期后同步解析
+         * @return {@linkplain Builder}
+         */
+        public Builder staleMillis(long staleMillis) {
+            Preconditions.checkArgument(staleMillis >= 0, "'staleMillis' must than 0");
+            this.staleMillis = staleMillis;
+            return this;
+        }
+
+        /**
+         * 设置解析失败的缓存时长，默认1秒，避免无法解析的主机名在短时间内反复请求DNS
+         *
+         * @param negativeTtlMillis 时长，单位毫秒，0表示不缓存
+         * @return {@linkplain Builder}
+         */
+        public Builder negativeTtlMillis(long negativeTtlMillis) {
+            Preconditions.checkArgument(negativeTtlMillis >= 0, "'negativeTtlMillis' must than 0");
+            this.negativeTtlMillis = negativeTtlMillis;
+            return this;
+        }
+
+        /**
+         * 设置热点主机名的提前刷新，默认有效期过去80%且命中2次以上时刷新
+         *
+         * @param refreshAheadFactor 有效期过去的比例，取值{@code (0, 1]}，1表示不提前刷新
+         * @param minHits            有效期内的最少命中次数
+         * @return {@linkplain Builder}
+         */
+        public Builder refreshAhead(float refreshAheadFactor, int minHits) {
+            Preconditions.checkArgument(refreshAheadFactor > 0 && refreshAheadFactor <= 1,
+                    "'refreshAheadFactor' must between 0 and 1");
+            Preconditions.checkArgument(minHits > 0, "'minHits' must than 0");
+            this.refreshAheadFactor = refreshAheadFactor;
+            this.refreshAheadMinHits = minHits;
+            return this;
+        }
+
+        /**
+         * 设置最大缓存条目数，默认1024
+         *
+         * @param maxEntries 最大条目数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder maxEntries(int maxEntries) {
+            Preconditions.checkArgument(maxEntries > 0, "'maxEntries' must than 0");
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 设置后台刷新使用的线程池，默认使用共享的2个守护线程
+         *
+         * @param executor 线程池
+         * @return {@linkplain Builder}
+         */
+        public Builder executor(@NonNull Executor executor) {
+            this.executor = Preconditions.requireNonNull(executor, "executor == null");
+            return this;
+        }
+
+        public CachingDns build() {
+            return new CachingDns(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.jishukezhan.http.dns;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.lang.Preconditions;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 域名解析服务，通过{@linkplain com.jishukezhan.http.Options.Builder#dns(Dns)}设置
+ * <p>OkHttp和Apache HttpClient在建立连接时使用该服务解析主机名；{@linkplain com.jishukezhan.http.Client.DefaultClient}
+ * 基于{@code HttpURLConnection}，JDK没有为其提供替换解析器的入口，始终使用{@linkplain InetAddress}的解析和缓存。</p>
+ *
+ * @author miles.tang
+ * @see CachingDns
+ */
+@FunctionalInterface
+public interface Dns {
+
+    /**
+     * 使用{@linkplain InetAddress#getAllByName(String)}解析，受JVM的{@code networkaddress.cache.ttl}配置影响
+     */
+    Dns SYSTEM = hostname -> {
+        Preconditions.requireNonNull(hostname, "hostname == null");
+        return Arrays.asList(InetAddress.getAllByName(hostname));
+    };
+
+    /**
+     * 解析主机名
+     *
+     * @param hostname 主机名
+     * @return 解析得到的地址，至少包含一个
+     * @throws UnknownHostException 无法解析
+     */
+    List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException;
+
+}
@@ -0,0 +1,107 @@
+package com.jishukezhan.http.dns;
+
+/**
+ * {@linkplain CachingDns}的统计快照
+ *
+ * @author miles.tang
+ */
+public class DnsStats {
+
+    /**
+     * 在有效期内命中缓存的次数
+     */
+    private final long hitCount;
+
+    /**
+     * 返回过期但仍在{@code stale}时间内的结果的次数
+     */
+    private final long staleHitCount;
+
+    /**
+     * 调用方同步等待解析的次数
+     */
+    private final long missCount;
+
+    /**
+     * 后台刷新（包括提前刷新和预解析）的次数
+     */
+    private final long refreshCount;
+
+    /**
+     * 解析失败的次数
+     */
+    private final long failureCount;
+
+    /**
+     * 因为容量限制或者过期被移除的条目数
+     */
+    private final long evictionCount;
+
+    /**
+     * 当前的缓存条目数
+     */
+    private final int entryCount;
+
+    DnsStats(long hitCount, long staleHitCount, long missCount, long refreshCount, long failureCount,
+             long evictionCount, int entryCount) {
+        this.hitCount = hitCount;
+        this.staleHitCount = staleHitCount;
+        this.missCount = missCount;
+        this.refreshCount = refreshCount;
+        this.failureCount = failureCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * 命中率，过期结果也视为命中
+     *
+     * @return 0到1之间的命中率，没有解析时为0
+     */
+    public double hitRate() {
+        long total = hitCount + staleHitCount + missCount;
+        return total == 0 ? 0 : (double) (hitCount + staleHitCount) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "DnsStats{" +
+                "hitCount=" + hitCount +
+                ", staleHitCount=" + staleHitCount +
+                ", missCount=" + missCount +
+                ", refreshCount=" + refreshCount +
+                ", failureCount=" + failureCount +
+                ", evictionCount=" + evictionCount +
+                ", entryCount=" + entryCount +
+                '}';
+    }
+
+}
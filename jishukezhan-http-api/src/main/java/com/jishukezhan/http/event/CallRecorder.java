@@ -0,0 +1,129 @@
+package com.jishukezhan.http.event;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 记录一次请求的时间点并回调{@linkplain HttpEventListener}，供{@linkplain com.jishukezhan.http.Client}的实现使用
+ * <pre>
+ * CallRecorder recorder = CallRecorder.start(request, options);
+ * try {
+ *     // 执行请求，期间通过recorder.timings()记录各阶段的时间点
+ *     return recorder.complete(response);
+ * } catch (RuntimeException e) {
+ *     recorder.failed(e);
+ *     throw e;
+ * }
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public final class CallRecorder {
+
+    private static final Logger log = LoggerFactory.getLogger(CallRecorder.class);
+
+    private final Request request;
+
+    private final HttpEventListener listener;
+
+    private final CallTimings timings;
+
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private CallRecorder(Request request, HttpEventListener listener) {
+        this.request = request;
+        this.listener = listener;
+        this.timings = new CallTimings();
+    }
+
+    /**
+     * 开始记录一次请求
+     *
+     * @param request 请求对象
+     * @param options 请求选项，为{@code null}时只记录时间点
+     * @return {@linkplain CallRecorder}
+     */
+    public static CallRecorder start(@NonNull Request request, @Nullable Options options) {
+        CallRecorder recorder = new CallRecorder(request,
+                options == null ? HttpEventListener.NONE : options.eventListener());
+        try {
+            recorder.listener.callStart(request);
+        } catch (RuntimeException e) {
+            log.warn("HttpEventListener.callStart failed", e);
+        }
+        return recorder;
+    }
+
+    public CallTimings timings() {
+        return timings;
+    }
+
+    /**
+     * 收到响应头，将{@linkplain CallTimings}附加到响应上，并在响应内容读取完毕或者关闭时结束记录
+     *
+     * @param response 响应对象
+     * @return 附加了{@linkplain CallTimings}的响应对象
+     */
+    public Response complete(@NonNull Response response) {
+        timings.markIfAbsent(CallTimings.Phase.RESPONSE_HEADERS_START);
+        timings.markIfAbsent(CallTimings.Phase.RESPONSE_HEADERS_END);
+        ResponseBody body = response.body();
+        Response.Builder builder = response.newBuilder().timings(timings);
+        Response[] holder = new Response[1];
+        boolean streaming = body != null && !body.isRepeatable();
+        if (streaming) {
+            builder.body(new TimedResponseBody(body, () -> end(holder[0])));
+        }
+        Response result = builder.build();
+        holder[0] = result;
+        try {
+            listener.responseHeaders(request, result);
+        } catch (RuntimeException e) {
+            log.warn("HttpEventListener.responseHeaders failed", e);
+        }
+        if (!streaming) {
+            // 没有响应内容或者内容已经在内存中
+            end(result);
+        }
+        return result;
+    }
+
+    /**
+     * 请求失败
+     *
+     * @param cause 异常
+     */
+    public void failed(@NonNull Throwable cause) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        timings.mark(CallTimings.Phase.CALL_END);
+        try {
+            listener.callFailed(request, cause, timings);
+        } catch (RuntimeException e) {
+            log.warn("HttpEventListener.callFailed failed", e);
+        }
+    }
+
+    private void end(Response response) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        timings.markIfAbsent(CallTimings.Phase.RESPONSE_BODY_END);
+        timings.mark(CallTimings.Phase.CALL_END);
+        try {
+            listener.callEnd(request, response);
+        } catch (RuntimeException e) {
+            log.warn("HttpEventListener.callEnd failed", e);
+        }
+    }
+
+}
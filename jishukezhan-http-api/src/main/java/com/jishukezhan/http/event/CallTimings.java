@@ -0,0 +1,224 @@
+package com.jishukezhan.http.event;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一次HTTP请求各个阶段的时间点及耗时
+ * <p>时间点由{@linkplain com.jishukezhan.http.Client}的实现在请求过程中通过{@link #mark(Phase)}记录，
+ * 取值为{@linkplain System#nanoTime()}，可以在不同线程中记录。某个阶段的起止时间点都记录后才能计算耗时，否则返回-1。</p>
+ * <p>各实现能够观察到的阶段不同：</p>
+ * <ul>
+ * <li>OkHttp：全部阶段，连接复用时没有DNS、建立连接和TLS握手阶段</li>
+ * <li>Apache HttpClient同步请求：全部阶段；异步请求：没有DNS、建立连接和TLS握手阶段</li>
+ * <li>{@linkplain com.jishukezhan.http.Client.DefaultClient}：{@code HttpURLConnection}没有提供DNS、TLS握手的回调，
+ * 建立连接阶段包含DNS解析和TLS握手，连接复用时该阶段接近0</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+public final class CallTimings {
+
+    /**
+     * 请求的各个时间点，按照发生的先后排列
+     */
+    public enum Phase {
+
+        CALL_START,
+
+        DNS_START,
+
+        DNS_END,
+
+        CONNECT_START,
+
+        SECURE_CONNECT_START,
+
+        SECURE_CONNECT_END,
+
+        /**
+         * 连接建立完成，包括TLS握手
+         */
+        CONNECT_END,
+
+        /**
+         * 开始发送请求头
+         */
+        REQUEST_START,
+
+        /**
+         * 请求内容发送完毕
+         */
+        REQUEST_END,
+
+        /**
+         * 收到响应的第一个字节
+         */
+        RESPONSE_HEADERS_START,
+
+        RESPONSE_HEADERS_END,
+
+        /**
+         * 响应内容读取完毕或者被关闭
+         */
+        RESPONSE_BODY_END,
+
+        CALL_END
+
+    }
+
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final AtomicLongArray marks = new AtomicLongArray(PHASES.length);
+
+    /**
+     * 请求开始时的系统时间，单位毫秒
+     */
+    private final long startMillis;
+
+    public CallTimings() {
+        for (int i = 0; i < PHASES.length; i++) {
+            marks.set(i, UNSET);
+        }
+        this.startMillis = System.currentTimeMillis();
+        mark(Phase.CALL_START);
+    }
+
+    /**
+     * 以当前时间记录时间点，重复记录时以最后一次为准（比如重定向后重新建立连接）
+     *
+     * @param phase 时间点
+     */
+    public void mark(Phase phase) {
+        mark(phase, System.nanoTime());
+    }
+
+    /**
+     * 记录时间点
+     *
+     * @param phase     时间点
+     * @param nanoTime  {@linkplain System#nanoTime()}的取值
+     */
+    public void mark(Phase phase, long nanoTime) {
+        marks.set(phase.ordinal(), nanoTime);
+    }
+
+    /**
+     * 只在时间点还没有记录时记录
+     *
+     * @param phase 时间点
+     * @return 是否记录成功
+     */
+    public boolean markIfAbsent(Phase phase) {
+        return marks.compareAndSet(phase.ordinal(), UNSET, System.nanoTime());
+    }
+
+    /**
+     * 是否已经记录了时间点
+     *
+     * @param phase 时间点
+     * @return 已记录返回{@code true}
+     */
+    public boolean has(Phase phase) {
+        return marks.get(phase.ordinal()) != UNSET;
+    }
+
+    /**
+     * 两个时间点之间的耗时
+     *
+     * @param from 开始时间点
+     * @param to   结束时间点
+     * @return 耗时，单位纳秒，任意一个时间点没有记录时返回-1
+     */
+    public long elapsedNanos(Phase from, Phase to) {
+        long start = marks.get(from.ordinal());
+        long end = marks.get(to.ordinal());
+        if (start == UNSET || end == UNSET) {
+            return -1;
+        }
+        return Math.max(0, end - start);
+    }
+
+    public long startMillis() {
+        return startMillis;
+    }
+
+    /**
+     * DNS解析耗时
+     */
+    public long dnsNanos() {
+        return elapsedNanos(Phase.DNS_START, Phase.DNS_END);
+    }
+
+    /**
+     * 建立连接的耗时，包括TLS握手
+     */
+    public long connectNanos() {
+        return elapsedNanos(Phase.CONNECT_START, Phase.CONNECT_END);
+    }
+
+    /**
+     * TLS握手耗时
+     */
+    public long secureConnectNanos() {
+        return elapsedNanos(Phase.SECURE_CONNECT_START, Phase.SECURE_CONNECT_END);
+    }
+
+    /**
+     * 发送请求头和请求内容的耗时
+     */
+    public long requestNanos() {
+        return elapsedNanos(Phase.REQUEST_START, Phase.REQUEST_END);
+    }
+
+    /**
+     * 请求发送完毕到收到响应第一个字节的耗时，即服务端的处理时间加上网络往返时间
+     */
+    public long timeToFirstByteNanos() {
+        return elapsedNanos(Phase.REQUEST_END, Phase.RESPONSE_HEADERS_START);
+    }
+
+    /**
+     * 读取响应内容的耗时
+     */
+    public long responseBodyNanos() {
+        return elapsedNanos(Phase.RESPONSE_HEADERS_END, Phase.RESPONSE_BODY_END);
+    }
+
+    /**
+     * 从请求开始到收到完整响应头的耗时
+     */
+    public long headersNanos() {
+        return elapsedNanos(Phase.CALL_START, Phase.RESPONSE_HEADERS_END);
+    }
+
+    /**
+     * 请求的总耗时，响应内容读取完毕后才可用
+     */
+    public long totalNanos() {
+        return elapsedNanos(Phase.CALL_START, Phase.CALL_END);
+    }
+
+    @Override
+    public String toString() {
+        return "CallTimings{" +
+                "dns=" + millis(dnsNanos()) +
+                ", connect=" + millis(connectNanos()) +
+                ", secureConnect=" + millis(secureConnectNanos()) +
+                ", request=" + millis(requestNanos()) +
+                ", timeToFirstByte=" + millis(timeToFirstByteNanos()) +
+                ", responseBody=" + millis(responseBodyNanos()) +
+                ", total=" + millis(totalNanos()) +
+                '}';
+    }
+
+    private static String millis(long nanos) {
+        if (nanos < 0) {
+            return "-";
+        }
+        return String.format("%.3fms", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+}
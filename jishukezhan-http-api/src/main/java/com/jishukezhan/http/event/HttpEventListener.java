@@ -0,0 +1,100 @@
+package com.jishukezhan.http.event;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+
+/**
+ * HTTP请求事件的监听器，通过{@linkplain com.jishukezhan.http.Options.Builder#eventListener(HttpEventListener)}设置
+ * <p>每次请求（包括重试的每一次尝试）都会依次收到{@link #callStart(Request)}、{@link #responseHeaders(Request, Response)}
+ * 和{@link #callEnd(Request, Response)}，失败时收到{@link #callFailed(Request, Throwable, CallTimings)}。
+ * 回调在请求线程上同步执行，实现应当足够轻量，抛出的异常会被忽略</p>
+ *
+ * @author miles.tang
+ */
+public interface HttpEventListener {
+
+    /**
+     * 什么也不做的监听器
+     */
+    HttpEventListener NONE = new HttpEventListener() {
+    };
+
+    /**
+     * 请求开始
+     *
+     * @param request 请求对象
+     */
+    default void callStart(Request request) {
+    }
+
+    /**
+     * 收到了完整的响应头，此时响应内容还没有读取
+     *
+     * @param request  请求对象
+     * @param response 响应对象，{@linkplain Response#timings()}中已有响应头之前的各阶段耗时
+     */
+    default void responseHeaders(Request request, Response response) {
+    }
+
+    /**
+     * 请求结束，响应内容已经读取完毕或者被关闭
+     *
+     * @param request  请求对象
+     * @param response 响应对象，不能再读取响应内容
+     */
+    default void callEnd(Request request, Response response) {
+    }
+
+    /**
+     * 请求失败，没有收到响应
+     *
+     * @param request 请求对象
+     * @param cause   异常
+     * @param timings 失败前各阶段的耗时
+     */
+    default void callFailed(Request request, Throwable cause, CallTimings timings) {
+    }
+
+    /**
+     * 组合多个监听器，按照顺序依次回调
+     *
+     * @param listeners 监听器
+     * @return 组合后的监听器
+     */
+    static HttpEventListener composite(@NonNull HttpEventListener... listeners) {
+        Preconditions.requireNonNull(listeners, "listeners == null");
+        HttpEventListener[] copy = listeners.clone();
+        return new HttpEventListener() {
+            @Override
+            public void callStart(Request request) {
+                for (HttpEventListener listener : copy) {
+                    listener.callStart(request);
+                }
+            }
+
+            @Override
+            public void responseHeaders(Request request, Response response) {
+                for (HttpEventListener listener : copy) {
+                    listener.responseHeaders(request, response);
+                }
+            }
+
+            @Override
+            public void callEnd(Request request, Response response) {
+                for (HttpEventListener listener : copy) {
+                    listener.callEnd(request, response);
+                }
+            }
+
+            @Override
+            public void callFailed(Request request, Throwable cause, CallTimings timings) {
+                for (HttpEventListener listener : copy) {
+                    listener.callFailed(request, cause, timings);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.jishukezhan.http.event;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.Utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 内置的延迟统计，按照主机和状态码类别（{@code 2xx}、{@code 4xx}等）分别维护{@linkplain LatencyHistogram}
+ * <p>记录的是请求的总耗时（包括读取响应内容），响应内容既没有读取完毕也没有关闭的请求不会被记录，
+ * 没有收到响应的请求单独统计</p>
+ * <pre>
+ * LatencyAggregator aggregator = new LatencyAggregator();
+ * Options options = Options.builder().eventListener(aggregator).build();
+ * ...
+ * aggregator.byHost().forEach((host, snapshot) -&gt; log.info("{} {}", host, snapshot));
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class LatencyAggregator implements HttpEventListener {
+
+    private final ConcurrentMap<String, LatencyHistogram> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * 下标为状态码的百位数，1到5有效
+     */
+    private final LatencyHistogram[] statusClasses = new LatencyHistogram[6];
+
+    private final LatencyHistogram failures = new LatencyHistogram();
+
+    public LatencyAggregator() {
+        for (int i = 0; i < statusClasses.length; i++) {
+            statusClasses[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public void callEnd(Request request, Response response) {
+        CallTimings timings = response.timings();
+        if (timings == null) {
+            return;
+        }
+        long nanos = timings.totalNanos();
+        host(request).record(nanos);
+        int statusClass = response.status() / 100;
+        if (statusClass > 0 && statusClass < statusClasses.length) {
+            statusClasses[statusClass].record(nanos);
+        }
+    }
+
+    @Override
+    public void callFailed(Request request, Throwable cause, CallTimings timings) {
+        long nanos = timings.totalNanos();
+        host(request).record(nanos);
+        failures.record(nanos);
+    }
+
+    /**
+     * 返回所有主机的统计快照
+     *
+     * @return 主机（含端口）到快照的映射
+     */
+    public Map<String, LatencySnapshot> byHost() {
+        Map<String, LatencySnapshot> result = new LinkedHashMap<>();
+        hosts.forEach((host, histogram) -> result.put(host, histogram.snapshot()));
+        return result;
+    }
+
+    /**
+     * 返回指定主机的统计快照
+     *
+     * @param host 主机，包含端口时格式为{@code host:port}
+     * @return 快照，没有请求过该主机时返回{@code null}
+     */
+    @Nullable
+    public LatencySnapshot byHost(@NonNull String host) {
+        LatencyHistogram histogram = hosts.get(Preconditions.requireNonNull(host, "host == null").toLowerCase(Locale.ROOT));
+        return histogram == null ? null : histogram.snapshot();
+    }
+
+    /**
+     * 返回指定状态码类别的统计快照
+     *
+     * @param statusClass 状态码的百位数，比如{@code 2}表示{@code 2xx}
+     * @return 快照
+     */
+    public LatencySnapshot byStatusClass(int statusClass) {
+        Preconditions.checkArgument(statusClass > 0 && statusClass < statusClasses.length,
+                "'statusClass' must between 1 and 5");
+        return statusClasses[statusClass].snapshot();
+    }
+
+    /**
+     * 返回没有收到响应的请求的统计快照
+     *
+     * @return 快照
+     */
+    public LatencySnapshot failures() {
+        return failures.snapshot();
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public void reset() {
+        hosts.clear();
+        for (LatencyHistogram histogram : statusClasses) {
+            histogram.reset();
+        }
+        failures.reset();
+    }
+
+    private LatencyHistogram host(Request request) {
+        return hosts.computeIfAbsent(Utils.authority(request.url()), key -> new LatencyHistogram());
+    }
+
+}
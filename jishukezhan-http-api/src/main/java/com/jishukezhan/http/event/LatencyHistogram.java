@@ -0,0 +1,96 @@
+package com.jishukezhan.http.event;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无锁的延迟直方图
+ * <p>以微秒为单位分桶：16微秒以下每微秒一个桶，之后每个2的幂区间再均分为8个桶，相对误差不超过12.5%。
+ * 记录只有几次原子操作，适合在请求线程上直接调用</p>
+ *
+ * @author miles.tang
+ */
+public final class LatencyHistogram {
+
+    /**
+     * 每个2的幂区间内的桶数为{@code 1 << SUB_BITS}
+     */
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int LINEAR_COUNT = 2 * SUB_COUNT;
+
+    private static final int BUCKET_COUNT = LINEAR_COUNT + (63 - (SUB_BITS + 1)) * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder sumMicros = new LongAdder();
+
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时，单位纳秒，小于0时忽略
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            return;
+        }
+        long micros = nanos / 1000;
+        buckets.incrementAndGet(indexOf(micros));
+        sumMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    /**
+     * 返回统计快照，快照期间的并发记录可能只被部分计入
+     *
+     * @return {@linkplain LatencySnapshot}
+     */
+    public LatencySnapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new LatencySnapshot(counts, total, sumMicros.sum(), maxMicros.get());
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        sumMicros.reset();
+        maxMicros.reset();
+    }
+
+    static int indexOf(long micros) {
+        if (micros < LINEAR_COUNT) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR_COUNT + (exponent - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * 桶的上界（包含），单位微秒
+     */
+    static long upperBoundOf(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int exponent = (index - LINEAR_COUNT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - LINEAR_COUNT) % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((long) (SUB_COUNT + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.jishukezhan.http.event;
+
+/**
+ * {@linkplain LatencyHistogram}的统计快照，耗时单位均为毫秒
+ *
+ * @author miles.tang
+ */
+public class LatencySnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sumMicros;
+
+    private final long maxMicros;
+
+    LatencySnapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+        this.counts = counts;
+        this.count = count;
+        this.sumMicros = sumMicros;
+        this.maxMicros = maxMicros;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return count == 0 ? 0 : sumMicros / 1000.0 / count;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    public double getP50Millis() {
+        return percentileMillis(50);
+    }
+
+    public double getP90Millis() {
+        return percentileMillis(90);
+    }
+
+    public double getP99Millis() {
+        return percentileMillis(99);
+    }
+
+    /**
+     * 计算百分位数，返回所在桶的上界，不超过最大值
+     *
+     * @param percentile 百分位，范围{@code (0, 100]}
+     * @return 耗时，单位毫秒，没有记录时返回0
+     */
+    public double percentileMillis(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.upperBoundOf(i), maxMicros) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{" +
+                "count=" + count +
+                ", mean=" + format(getMeanMillis()) +
+                ", p50=" + format(getP50Millis()) +
+                ", p90=" + format(getP90Millis()) +
+                ", p99=" + format(getP99Millis()) +
+                ", max=" + format(getMaxMillis()) +
+                '}';
+    }
+
+    private static String format(double millis) {
+        return String.format("%.3fms", millis);
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.jishukezhan.http.event;
+
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.http.ResponseBody;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * 在响应内容读取完毕或者关闭时回调的{@linkplain ResponseBody}
+ *
+ * @author miles.tang
+ */
+final class TimedResponseBody implements ResponseBody {
+
+    private final ResponseBody delegate;
+
+    private final Runnable onEnd;
+
+    TimedResponseBody(ResponseBody delegate, Runnable onEnd) {
+        this.delegate = delegate;
+        this.onEnd = onEnd;
+    }
+
+    @Override
+    public Integer length() {
+        return delegate.length();
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return delegate.isRepeatable();
+    }
+
+    @Override
+    public InputStream byteStream() throws IoRuntimeException {
+        return new FilterInputStream(delegate.byteStream()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b == -1) {
+                    onEnd.run();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n == -1) {
+                    onEnd.run();
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    onEnd.run();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Reader charStream(Charset charset) throws IoRuntimeException {
+        return new FilterReader(delegate.charStream(charset)) {
+            @Override
+            public int read() throws IOException {
+                int c = super.read();
+                if (c == -1) {
+                    onEnd.run();
+                }
+                return c;
+            }
+
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = super.read(cbuf, off, len);
+                if (n == -1) {
+                    onEnd.run();
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    onEnd.run();
+                }
+            }
+        };
+    }
+
+    @Override
+    public String string(Charset charset) throws IoRuntimeException {
+        try {
+            return delegate.string(charset);
+        } finally {
+            onEnd.run();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            onEnd.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.jishukezhan.http.exceptions;
+
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+
+/**
+ * 请求在发出之前被拒绝，比如熔断器处于打开状态、并发数已满或者超过了自适应并发限制
+ * <p>继承自{@linkplain IoRuntimeException}，调用方可以和网络异常一样处理</p>
+ *
+ * @author miles.tang
+ */
+public class CallNotPermittedException extends IoRuntimeException {
+
+    private static final long serialVersionUID = 1990L;
+
+    /**
+     * 拒绝原因
+     */
+    public enum Reason {
+
+        /**
+         * 熔断器处于打开状态，或者半开状态下的试探请求已满
+         */
+        CIRCUIT_OPEN,
+
+        /**
+         * 同一主机的并发请求数已达上限
+         */
+        BULKHEAD_FULL,
+
+        /**
+         * 同一主机的进行中请求数达到自适应并发限制，并且排队已满或者等待超时
+         */
+        CONCURRENCY_LIMITED
+
+    }
+
+    private final String host;
+
+    private final Reason reason;
+
+    /**
+     * @param host   被拒绝请求的主机
+     * @param reason 拒绝原因
+     */
+    public CallNotPermittedException(String host, Reason reason) {
+        super("Call to '" + host + "' not permitted: " + reason);
+        this.host = host;
+        this.reason = reason;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+}
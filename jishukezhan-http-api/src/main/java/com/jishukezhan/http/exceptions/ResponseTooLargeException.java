@@ -0,0 +1,47 @@
+package com.jishukezhan.http.exceptions;
+
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+
+/**
+ * 响应内容超过{@linkplain com.jishukezhan.http.Options#maxResponseBodySize()}
+ * <p>{@code Content-Length}已知时在读取之前抛出；长度未知时在读取到超出的字节时抛出。该异常不会触发重试。</p>
+ *
+ * @author miles.tang
+ */
+public class ResponseTooLargeException extends IoRuntimeException {
+
+    private static final long serialVersionUID = 1990L;
+
+    private final String url;
+
+    private final long limit;
+
+    private final long contentLength;
+
+    /**
+     * @param url           请求地址
+     * @param limit         允许的最大字节数
+     * @param contentLength 响应声明的长度，未知时为{@code -1}
+     */
+    public ResponseTooLargeException(String url, long limit, long contentLength) {
+        super(contentLength >= 0 ?
+                "Response body of '" + url + "' is " + contentLength + " bytes, exceeds limit of " + limit + " bytes" :
+                "Response body of '" + url + "' exceeds limit of " + limit + " bytes");
+        this.url = url;
+        this.limit = limit;
+        this.contentLength = contentLength;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+}
@@ -0,0 +1,509 @@
+package com.jishukezhan.http.hedging;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.Utils;
+import com.jishukezhan.http.event.LatencyHistogram;
+import com.jishukezhan.http.event.LatencySnapshot;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲请求（hedged request），以装饰器的方式包装任意{@linkplain Client}，用于降低幂等请求的长尾延迟
+ * <p>请求发出后如果在对冲延迟内没有返回，再发出一个完全相同的请求，两者中先返回的作为结果，另一个被取消：
+ * OkHttp取消对应的{@code Call}，Apache中止请求，{@linkplain Client.DefaultClient}无法中断阻塞的连接，
+ * 只能放弃该请求并在其返回后关闭响应。先收到的响应无论状态码如何都作为结果；两个请求都失败时以首个请求的异常结束。</p>
+ * <ul>
+ * <li>只对冲幂等方法，默认为{@code GET}、{@code HEAD}和{@code OPTIONS}，请求内容必须可以重复读取</li>
+ * <li>对冲延迟可以固定，也可以按照每个主机最近一个统计窗口内的延迟百分位（默认p95）计算，并限制在上下限之间</li>
+ * <li>对冲预算以令牌桶的方式限制额外的请求量：每个请求存入{@code ratio}个令牌，每次对冲消耗1个，
+ * 下游整体变慢时不会因为对冲而使请求量翻倍</li>
+ * </ul>
+ * <pre>
+ * Client client = HedgingClient.builder(new OkHttpClient())
+ *         .percentileDelay(95, 5, 500)
+ *         .hedgeBudget(0.05, 10)
+ *         .build();
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class HedgingClient implements Client {
+
+    /**
+     * 令牌的精度，桶中以千分之一个令牌为单位计数
+     */
+    private static final long TOKEN_SCALE = 1000;
+
+    private static final Set<Method> IDEMPOTENT_METHODS = EnumSet.of(Method.GET, Method.HEAD, Method.PUT,
+            Method.DELETE, Method.OPTIONS, Method.TRACE);
+
+    private final Client delegate;
+
+    private final Set<Method> methods;
+
+    private final long initialDelayMillis;
+
+    /**
+     * 计算对冲延迟的百分位，小于等于0时使用固定延迟
+     */
+    private final double percentile;
+
+    private final long minDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final long windowMillis;
+
+    private final int minSamples;
+
+    private final long tokensPerRequest;
+
+    private final long maxTokens;
+
+    private final AtomicLong tokens;
+
+    private final ConcurrentMap<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+
+    private final LongAdder requestCount = new LongAdder();
+
+    private final LongAdder hedgedCount = new LongAdder();
+
+    private final LongAdder hedgeWinCount = new LongAdder();
+
+    private final LongAdder budgetExhaustedCount = new LongAdder();
+
+    HedgingClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.methods = EnumSet.copyOf(builder.methods);
+        this.initialDelayMillis = builder.delayMillis;
+        this.percentile = builder.percentile;
+        this.minDelayMillis = builder.minDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.windowMillis = builder.windowMillis;
+        this.minSamples = builder.minSamples;
+        this.tokensPerRequest = Math.round(builder.budgetRatio * TOKEN_SCALE);
+        this.maxTokens = builder.budgetBurst * TOKEN_SCALE;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        if (!isHedgeable(request)) {
+            return delegate.execute(request, options);
+        }
+        try {
+            return executeAsync(request, options).join();
+        } catch (CompletionException e) {
+            throw AsyncExecutors.rethrow(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        if (!isHedgeable(request)) {
+            return delegate.executeAsync(request, options);
+        }
+        requestCount.increment();
+        deposit();
+        LatencyWindow window = percentile > 0 ? windows.computeIfAbsent(Utils.authority(request.url()),
+                authority -> new LatencyWindow()) : null;
+        Race race = new Race(request, options, window);
+        race.start(window == null ? initialDelayMillis : window.delayMillis);
+        return race.result;
+    }
+
+    private boolean isHedgeable(Request request) {
+        return methods.contains(request.method()) && (request.body() == null || request.body().isRepeatable());
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current >= maxTokens) {
+                return;
+            }
+        } while (!tokens.compareAndSet(current, Math.min(maxTokens, current + tokensPerRequest)));
+    }
+
+    private boolean tryAcquire() {
+        long current;
+        do {
+            current = tokens.get();
+            if (current < TOKEN_SCALE) {
+                return false;
+            }
+        } while (!tokens.compareAndSet(current, current - TOKEN_SCALE));
+        return true;
+    }
+
+    /**
+     * 返回请求当前使用的对冲延迟
+     *
+     * @param request 请求
+     * @return 对冲延迟，单位毫秒
+     */
+    public long hedgeDelayMillis(@NonNull Request request) {
+        if (percentile <= 0) {
+            return initialDelayMillis;
+        }
+        LatencyWindow window = windows.get(Utils.authority(request.url()));
+        return window == null ? initialDelayMillis : window.delayMillis;
+    }
+
+    /**
+     * 返回统计快照
+     *
+     * @return {@linkplain HedgingStats}
+     */
+    public HedgingStats stats() {
+        return new HedgingStats(requestCount.sum(), hedgedCount.sum(), hedgeWinCount.sum(),
+                budgetExhaustedCount.sum(), (double) tokens.get() / TOKEN_SCALE);
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 被装饰的客户端
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    /**
+     * 一次请求的首个请求与对冲请求之间的竞争
+     */
+    private final class Race {
+
+        private final Request request;
+
+        private final Options options;
+
+        private final LatencyWindow window;
+
+        private final CompletableFuture<Response> result = new CompletableFuture<>();
+
+        private final long startNanos = System.nanoTime();
+
+        /**
+         * 对冲请求发出的时间，每个请求按照自己的耗时计入延迟统计
+         */
+        private volatile long hedgeStartNanos;
+
+        private volatile CompletableFuture<Response> primary;
+
+        private volatile CompletableFuture<Response> hedge;
+
+        private volatile ScheduledFuture<?> timer;
+
+        /**
+         * 尚未结束的请求数，以及对冲请求是否还可能发出
+         */
+        private int outstanding;
+
+        private boolean hedgePending;
+
+        private Throwable primaryFailure;
+
+        Race(Request request, Options options, LatencyWindow window) {
+            this.request = request;
+            this.options = options;
+            this.window = window;
+        }
+
+        void start(long delayMillis) {
+            synchronized (this) {
+                outstanding = 1;
+                hedgePending = true;
+            }
+            // 调用方取消或者得到结果后，取消仍在进行的请求
+            result.whenComplete((response, e) -> {
+                ScheduledFuture<?> t = timer;
+                if (t != null) {
+                    t.cancel(false);
+                }
+                cancel(primary);
+                cancel(hedge);
+            });
+            primary = attempt();
+            primary.whenComplete((response, e) -> onComplete(response, e, false));
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                timer = AsyncExecutors.schedule(this::fireHedge, delayMillis);
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+            if (result.isDone()) {
+                timer.cancel(false);
+            }
+        }
+
+        private CompletableFuture<Response> attempt() {
+            try {
+                return delegate.executeAsync(request, options);
+            } catch (RuntimeException e) {
+                return AsyncExecutors.failed(e);
+            }
+        }
+
+        private void fireHedge() {
+            synchronized (this) {
+                if (!hedgePending || result.isDone()) {
+                    return;
+                }
+                hedgePending = false;
+                if (!tryAcquire()) {
+                    budgetExhaustedCount.increment();
+                    return;
+                }
+                outstanding++;
+            }
+            hedgedCount.increment();
+            hedgeStartNanos = System.nanoTime();
+            CompletableFuture<Response> future = attempt();
+            hedge = future;
+            future.whenComplete((response, e) -> onComplete(response, e, true));
+            if (result.isDone()) {
+                cancel(future);
+            }
+        }
+
+        private void onComplete(Response response, Throwable e, boolean hedged) {
+            if (e == null) {
+                long now = System.nanoTime();
+                if (window != null) {
+                    window.record(now - (hedged ? hedgeStartNanos : startNanos));
+                }
+                CompletableFuture<Response> p = primary;
+                boolean primaryPending = hedged && p != null && !p.isDone();
+                if (result.complete(response)) {
+                    if (hedged) {
+                        hedgeWinCount.increment();
+                        if (window != null && primaryPending) {
+                            // 首个请求随后被取消，按照至少已经耗费的时间计入，避免慢请求从统计中消失
+                            window.record(now - startNanos);
+                        }
+                    }
+                } else {
+                    // 输掉竞争的请求晚于取消返回，关闭以释放连接
+                    IOUtil.closeQuietly(response);
+                }
+                return;
+            }
+            Throwable failure;
+            synchronized (this) {
+                outstanding--;
+                if (!hedged) {
+                    primaryFailure = e;
+                    // 首个请求失败时不再对冲，对冲不是重试
+                    hedgePending = false;
+                }
+                if (outstanding > 0) {
+                    return;
+                }
+                failure = primaryFailure != null ? primaryFailure : e;
+            }
+            result.completeExceptionally(AsyncExecutors.unwrap(failure));
+        }
+
+        private void cancel(CompletableFuture<Response> future) {
+            if (future != null && !future.isDone()) {
+                future.cancel(true);
+            }
+        }
+
+    }
+
+    /**
+     * 单个主机的延迟统计窗口，窗口结束且样本足够时按照百分位更新对冲延迟并开始新的窗口
+     */
+    private final class LatencyWindow {
+
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private volatile long delayMillis = initialDelayMillis;
+
+        private volatile long windowEnd = System.currentTimeMillis() + windowMillis;
+
+        void record(long nanos) {
+            histogram.record(nanos);
+            long now = System.currentTimeMillis();
+            if (now >= windowEnd) {
+                roll(now);
+            }
+        }
+
+        private synchronized void roll(long now) {
+            if (now < windowEnd) {
+                return;
+            }
+            LatencySnapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() < minSamples) {
+                // 样本不足时继续累积
+                return;
+            }
+            long delay = (long) Math.ceil(snapshot.percentileMillis(percentile));
+            delayMillis = Math.max(minDelayMillis, Math.min(maxDelayMillis, delay));
+            histogram.reset();
+            windowEnd = now + windowMillis;
+        }
+
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        private Set<Method> methods;
+
+        /**
+         * 固定的对冲延迟，使用百分位时作为首个窗口结束前的初始延迟，单位毫秒
+         */
+        private long delayMillis;
+
+        private double percentile;
+
+        private long minDelayMillis;
+
+        private long maxDelayMillis;
+
+        /**
+         * 统计窗口的时长，单位毫秒
+         */
+        private long windowMillis;
+
+        /**
+         * 计算百分位所需的最少样本数
+         */
+        private int minSamples;
+
+        /**
+         * 每个请求存入的令牌数，即对冲请求占总请求数的最大比例
+         */
+        private double budgetRatio;
+
+        /**
+         * 令牌桶的容量，即允许连续对冲的请求数
+         */
+        private long budgetBurst;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.methods = EnumSet.of(Method.GET, Method.HEAD, Method.OPTIONS);
+            this.delayMillis = 100;
+            this.percentile = 95;
+            this.minDelayMillis = 10;
+            this.maxDelayMillis = 1000;
+            this.windowMillis = 10000;
+            this.minSamples = 20;
+            this.budgetRatio = 0.1;
+            this.budgetBurst = 10;
+        }
+
+        /**
+         * 设置可以对冲的请求方法，默认为{@code GET}、{@code HEAD}和{@code OPTIONS}，只能设置幂等的方法
+         *
+         * @param methods 请求方法
+         * @return {@linkplain Builder}
+         */
+        public Builder methods(@NonNull Method... methods) {
+            Preconditions.checkArgument(methods != null && methods.length > 0, "'methods' must not be empty");
+            for (Method method : methods) {
+                Preconditions.checkArgument(IDEMPOTENT_METHODS.contains(method),
+                        "'" + method + "' is not idempotent");
+            }
+            this.methods = EnumSet.copyOf(Arrays.asList(methods));
+            return this;
+        }
+
+        /**
+         * 使用固定的对冲延迟
+         *
+         * @param delayMillis 对冲延迟，单位毫秒
+         * @return {@linkplain Builder}
+         */
+        public Builder delay(long delayMillis) {
+            Preconditions.checkArgument(delayMillis >= 0, "'delayMillis' must than 0");
+            this.delayMillis = delayMillis;
+            this.percentile = 0;
+            return this;
+        }
+
+        /**
+         * 按照每个主机最近一个统计窗口内的延迟百分位计算对冲延迟，默认为p95，限制在10毫秒到1秒之间
+         *
+         * @param percentile     百分位，范围{@code (0, 100)}
+         * @param minDelayMillis 最小延迟，单位毫秒
+         * @param maxDelayMillis 最大延迟，单位毫秒
+         * @return {@linkplain Builder}
+         */
+        public Builder percentileDelay(double percentile, long minDelayMillis, long maxDelayMillis) {
+            Preconditions.checkArgument(percentile > 0 && percentile < 100, "'percentile' must between 0 and 100");
+            Preconditions.checkArgument(minDelayMillis >= 0, "'minDelayMillis' must than 0");
+            Preconditions.checkArgument(maxDelayMillis >= minDelayMillis, "'maxDelayMillis' must than minDelayMillis");
+            this.percentile = percentile;
+            this.minDelayMillis = minDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            this.delayMillis = Math.max(minDelayMillis, Math.min(maxDelayMillis, delayMillis));
+            return this;
+        }
+
+        /**
+         * 设置计算百分位的统计窗口，默认为10秒且至少20个样本，样本不足时窗口延长
+         *
+         * @param windowMillis 窗口时长，单位毫秒
+         * @param minSamples   最少样本数
+         * @return {@linkplain Builder}
+         */
+        public Builder window(long windowMillis, int minSamples) {
+            Preconditions.checkArgument(windowMillis > 0, "'windowMillis' must than 0");
+            Preconditions.checkArgument(minSamples > 0, "'minSamples' must than 0");
+            this.windowMillis = windowMillis;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * 设置对冲预算，默认对冲请求不超过总请求数的10%，最多连续对冲10个请求
+         *
+         * @param ratio 对冲请求占总请求数的最大比例，范围{@code [0, 1]}
+         * @param burst 令牌桶的容量
+         * @return {@linkplain Builder}
+         */
+        public Builder hedgeBudget(double ratio, int burst) {
+            Preconditions.checkArgument(ratio >= 0 && ratio <= 1, "'ratio' must between 0 and 1");
+            Preconditions.checkArgument(burst > 0, "'burst' must than 0");
+            this.budgetRatio = ratio;
+            this.budgetBurst = burst;
+            return this;
+        }
+
+        public HedgingClient build() {
+            return new HedgingClient(this);
+        }
+
+    }
+
+}
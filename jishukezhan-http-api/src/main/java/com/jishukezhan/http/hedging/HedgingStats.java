@@ -0,0 +1,84 @@
+package com.jishukezhan.http.hedging;
+
+/**
+ * {@linkplain HedgingClient}的统计快照
+ *
+ * @author miles.tang
+ */
+public class HedgingStats {
+
+    /**
+     * 可以对冲的请求数，不包括直接透传的请求
+     */
+    private final long requestCount;
+
+    /**
+     * 发出的对冲请求数
+     */
+    private final long hedgedCount;
+
+    /**
+     * 对冲请求先于首个请求返回的次数
+     */
+    private final long hedgeWinCount;
+
+    /**
+     * 到达对冲延迟但预算不足而没有对冲的次数
+     */
+    private final long budgetExhaustedCount;
+
+    /**
+     * 令牌桶中剩余的令牌数
+     */
+    private final double availableTokens;
+
+    HedgingStats(long requestCount, long hedgedCount, long hedgeWinCount, long budgetExhaustedCount,
+                 double availableTokens) {
+        this.requestCount = requestCount;
+        this.hedgedCount = hedgedCount;
+        this.hedgeWinCount = hedgeWinCount;
+        this.budgetExhaustedCount = budgetExhaustedCount;
+        this.availableTokens = availableTokens;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getHedgedCount() {
+        return hedgedCount;
+    }
+
+    public long getHedgeWinCount() {
+        return hedgeWinCount;
+    }
+
+    public long getBudgetExhaustedCount() {
+        return budgetExhaustedCount;
+    }
+
+    public double getAvailableTokens() {
+        return availableTokens;
+    }
+
+    /**
+     * 额外的请求量
+     *
+     * @return 对冲请求占总请求数的比例，没有请求时为0
+     */
+    public double hedgeRatio() {
+        return requestCount == 0 ? 0 : (double) hedgedCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingStats{" +
+                "requestCount=" + requestCount +
+                ", hedgedCount=" + hedgedCount +
+                ", hedgeWinCount=" + hedgeWinCount +
+                ", budgetExhaustedCount=" + budgetExhaustedCount +
+                ", availableTokens=" + availableTokens +
+                '}';
+    }
+
+}
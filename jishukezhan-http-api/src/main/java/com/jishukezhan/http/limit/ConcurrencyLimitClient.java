@@ -0,0 +1,384 @@
+package com.jishukezhan.http.limit;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.Utils;
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntPredicate;
+
+/**
+ * 按照主机自适应调整并发数的限流器，以装饰器的方式包装任意{@linkplain Client}，
+ * 包括{@linkplain com.jishukezhan.http.ClientFactory}提供的各个实现
+ * <p>固定大小的线程池或者舱壁在下游健康时限制了吞吐，在下游变慢时又放行了过多的请求。本装饰器测量每次请求的耗时和结果，
+ * 按照{@linkplain LimitAlgorithm}调整每个主机允许的进行中请求数：</p>
+ * <ul>
+ * <li>{@linkplain LimitAlgorithm#AIMD}：请求失败、被下游限流或者耗时超过慢调用阈值时按比例缩小，并发已满且成功时加1</li>
+ * <li>{@linkplain LimitAlgorithm#GRADIENT}：比较无负载时的耗时与本次耗时，耗时上升时按比例缩小，平稳时逐步增加</li>
+ * </ul>
+ * <p>超过限制的请求先短暂排队，排队已满或者等待超时时抛出{@linkplain CallNotPermittedException}，
+ * 原因为{@linkplain CallNotPermittedException.Reason#CONCURRENCY_LIMITED}。当前限制、进行中的请求数和排队等待时间
+ * 可以通过{@linkplain #stats()}获取。与舱壁一样，许可只覆盖{@linkplain Client#execute(Request, Options)}返回之前的阶段，
+ * 不包括读取响应内容。</p>
+ * <pre>
+ * Client client = ConcurrencyLimitClient.builder(ClientFactory.get().build(options))
+ *         .algorithm(LimitAlgorithm.GRADIENT)
+ *         .limit(20, 1, 500)
+ *         .queue(100, 50)
+ *         .build();
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class ConcurrencyLimitClient implements Client {
+
+    private final Client delegate;
+
+    final LimitAlgorithm algorithm;
+
+    final int initialLimit;
+
+    final int minLimit;
+
+    final int maxLimit;
+
+    final int maxQueueSize;
+
+    final long maxWaitMillis;
+
+    final double backoffRatio;
+
+    final long slowCallDurationMillis;
+
+    final double rttTolerance;
+
+    final int probeInterval;
+
+    private final IntPredicate dropStatus;
+
+    private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    ConcurrencyLimitClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.algorithm = builder.algorithm;
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.maxQueueSize = builder.maxQueueSize;
+        this.maxWaitMillis = builder.maxWaitMillis;
+        this.backoffRatio = builder.backoffRatio;
+        this.slowCallDurationMillis = builder.slowCallDurationMillis;
+        this.rttTolerance = builder.rttTolerance;
+        this.probeInterval = builder.probeInterval;
+        this.dropStatus = builder.dropStatus;
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        ConcurrencyLimiter limiter = limiter(request);
+        CompletableFuture<Void> permit = limiter.acquire();
+        try {
+            permit.join();
+        } catch (CompletionException e) {
+            throw AsyncExecutors.rethrow(e);
+        }
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = delegate.execute(request, options);
+        } catch (CallNotPermittedException e) {
+            // 被内层的熔断器等拒绝，没有到达下游
+            limiter.onIgnored();
+            throw e;
+        } catch (IoRuntimeException e) {
+            limiter.onComplete(System.nanoTime() - start, true);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            limiter.onIgnored();
+            throw e;
+        }
+        limiter.onComplete(System.nanoTime() - start, dropStatus.test(response.status()));
+        return response;
+    }
+
+    /**
+     * 异步请求在排队期间不占用线程，获得许可后才调用被装饰的客户端
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        ConcurrencyLimiter limiter;
+        CompletableFuture<Void> permit;
+        try {
+            limiter = limiter(request);
+            permit = limiter.acquire();
+        } catch (RuntimeException e) {
+            return AsyncExecutors.failed(e);
+        }
+        if (permit.isDone() && !permit.isCompletedExceptionally()) {
+            // 没有排队时返回原始的future，使调用方的取消可以传递到底层请求
+            return run(limiter, request, options);
+        }
+        CompletableFuture<Response> result = new CompletableFuture<>();
+        permit.whenComplete((v, e) -> {
+            if (e != null) {
+                result.completeExceptionally(AsyncExecutors.unwrap(e));
+                return;
+            }
+            if (result.isDone()) {
+                limiter.onIgnored();
+                return;
+            }
+            CompletableFuture<Response> future = run(limiter, request, options);
+            future.whenComplete((response, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(AsyncExecutors.unwrap(ex));
+                } else if (!result.complete(response)) {
+                    IOUtil.closeQuietly(response);
+                }
+            });
+            result.whenComplete((response, ex) -> {
+                if (result.isCancelled()) {
+                    future.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                limiter.abandon(permit);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Response> run(ConcurrencyLimiter limiter, Request request, Options options) {
+        long start = System.nanoTime();
+        CompletableFuture<Response> future;
+        try {
+            future = delegate.executeAsync(request, options);
+        } catch (RuntimeException e) {
+            limiter.onIgnored();
+            return AsyncExecutors.failed(e);
+        }
+        future.whenComplete((response, e) -> {
+            long rtt = System.nanoTime() - start;
+            if (e == null) {
+                limiter.onComplete(rtt, dropStatus.test(response.status()));
+                return;
+            }
+            Throwable cause = AsyncExecutors.unwrap(e);
+            if (cause instanceof IoRuntimeException && !(cause instanceof CallNotPermittedException)) {
+                limiter.onComplete(rtt, true);
+            } else {
+                limiter.onIgnored();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 返回所有主机的统计快照
+     *
+     * @return 主机到统计快照的映射
+     */
+    public Map<String, ConcurrencyLimitStats> stats() {
+        Map<String, ConcurrencyLimitStats> stats = new LinkedHashMap<>();
+        limiters.forEach((host, limiter) -> stats.put(host, limiter.stats()));
+        return stats;
+    }
+
+    /**
+     * 返回指定主机的统计快照
+     *
+     * @param host 主机，包含端口时格式为{@code host:port}
+     * @return 统计快照，该主机没有请求过时返回{@code null}
+     */
+    @Nullable
+    public ConcurrencyLimitStats stats(@NonNull String host) {
+        ConcurrencyLimiter limiter = limiters.get(host.toLowerCase(Locale.ROOT));
+        return limiter == null ? null : limiter.stats();
+    }
+
+    private ConcurrencyLimiter limiter(Request request) {
+        return limiters.computeIfAbsent(Utils.authority(request.url()), host -> new ConcurrencyLimiter(host, this));
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 被装饰的客户端
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        private LimitAlgorithm algorithm;
+
+        private int initialLimit;
+
+        private int minLimit;
+
+        private int maxLimit;
+
+        /**
+         * 每个主机的最大排队数
+         */
+        private int maxQueueSize;
+
+        /**
+         * 排队的最长等待时间，单位毫秒，0表示直接拒绝
+         */
+        private long maxWaitMillis;
+
+        /**
+         * AIMD算法缩小限制时的比例
+         */
+        private double backoffRatio;
+
+        /**
+         * AIMD算法中耗时不小于该值的请求视为过载，单位毫秒
+         */
+        private long slowCallDurationMillis;
+
+        /**
+         * 梯度算法允许的耗时上升倍数，耗时在长期平均值的该倍数以内时不缩小限制
+         */
+        private double rttTolerance;
+
+        /**
+         * 梯度算法重新探测无负载耗时的间隔，单位为样本数
+         */
+        private int probeInterval;
+
+        /**
+         * 视为下游过载的状态码
+         */
+        private IntPredicate dropStatus;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.algorithm = LimitAlgorithm.GRADIENT;
+            this.initialLimit = 20;
+            this.minLimit = 1;
+            this.maxLimit = 1000;
+            this.maxQueueSize = 100;
+            this.maxWaitMillis = 50;
+            this.backoffRatio = 0.9;
+            this.slowCallDurationMillis = 5000;
+            this.rttTolerance = 2;
+            this.probeInterval = 1000;
+            this.dropStatus = status -> status == 429 || status == 503;
+        }
+
+        /**
+         * 设置调整限制的算法，默认为{@linkplain LimitAlgorithm#GRADIENT}
+         *
+         * @param algorithm 算法
+         * @return {@linkplain Builder}
+         */
+        public Builder algorithm(@NonNull LimitAlgorithm algorithm) {
+            this.algorithm = Preconditions.requireNonNull(algorithm, "algorithm == null");
+            return this;
+        }
+
+        /**
+         * 设置初始限制以及调整的范围，默认初始为20，范围为1到1000
+         *
+         * @param initialLimit 初始限制
+         * @param minLimit     最小限制，必须大于0
+         * @param maxLimit     最大限制
+         * @return {@linkplain Builder}
+         */
+        public Builder limit(int initialLimit, int minLimit, int maxLimit) {
+            Preconditions.checkArgument(minLimit > 0, "'minLimit' must than 0");
+            Preconditions.checkArgument(maxLimit >= minLimit, "'maxLimit' must than minLimit");
+            Preconditions.checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit,
+                    "'initialLimit' must between minLimit and maxLimit");
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * 设置超过限制时的排队策略，默认最多排队100个请求，最长等待50毫秒
+         *
+         * @param maxQueueSize  每个主机的最大排队数，0表示直接拒绝
+         * @param maxWaitMillis 最长等待时间，单位毫秒，0表示直接拒绝
+         * @return {@linkplain Builder}
+         */
+        public Builder queue(int maxQueueSize, long maxWaitMillis) {
+            Preconditions.checkArgument(maxQueueSize >= 0, "'maxQueueSize' must than 0");
+            Preconditions.checkArgument(maxWaitMillis >= 0, "'maxWaitMillis' must than 0");
+            this.maxQueueSize = maxQueueSize;
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * 设置AIMD算法的参数
+         *
+         * @param backoffRatio           缩小限制时的比例，范围{@code [0.5, 1)}，默认为0.9
+         * @param slowCallDurationMillis 耗时不小于该值的请求视为过载，单位毫秒，默认为5秒
+         * @return {@linkplain Builder}
+         */
+        public Builder aimd(double backoffRatio, long slowCallDurationMillis) {
+            Preconditions.checkArgument(backoffRatio >= 0.5 && backoffRatio < 1, "'backoffRatio' must between 0.5 and 1");
+            Preconditions.checkArgument(slowCallDurationMillis > 0, "'slowCallDurationMillis' must than 0");
+            this.backoffRatio = backoffRatio;
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            return this;
+        }
+
+        /**
+         * 设置梯度算法的参数
+         *
+         * @param rttTolerance  允许的耗时上升倍数，不小于1，默认为2
+         * @param probeInterval 重新探测无负载耗时的间隔，单位为样本数，默认为1000，探测时限制会短暂降低到其平方根
+         * @return {@linkplain Builder}
+         */
+        public Builder gradient(double rttTolerance, int probeInterval) {
+            Preconditions.checkArgument(rttTolerance >= 1, "'rttTolerance' must than 1");
+            Preconditions.checkArgument(probeInterval > 0, "'probeInterval' must than 0");
+            this.rttTolerance = rttTolerance;
+            this.probeInterval = probeInterval;
+            return this;
+        }
+
+        /**
+         * 设置视为下游过载的状态码，默认为{@code 429}和{@code 503}，网络异常始终视为过载
+         *
+         * @param dropStatus 状态码判断
+         * @return {@linkplain Builder}
+         */
+        public Builder dropStatus(@NonNull IntPredicate dropStatus) {
+            this.dropStatus = Preconditions.requireNonNull(dropStatus, "dropStatus == null");
+            return this;
+        }
+
+        public ConcurrencyLimitClient build() {
+            return new ConcurrencyLimitClient(this);
+        }
+
+    }
+
+}
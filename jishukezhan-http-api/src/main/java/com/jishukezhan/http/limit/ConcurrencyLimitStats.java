@@ -0,0 +1,107 @@
+package com.jishukezhan.http.limit;
+
+import com.jishukezhan.http.event.LatencySnapshot;
+
+/**
+ * 单个主机的并发限制统计快照
+ *
+ * @author miles.tang
+ */
+public class ConcurrencyLimitStats {
+
+    private final String host;
+
+    /**
+     * 当前允许的进行中请求数
+     */
+    private final int limit;
+
+    /**
+     * 当前进行中的请求数
+     */
+    private final int inflight;
+
+    /**
+     * 当前排队中的请求数
+     */
+    private final int queueSize;
+
+    /**
+     * 获得许可的请求数，包括排队后获得许可的请求
+     */
+    private final long acceptedCount;
+
+    /**
+     * 进入排队的请求数
+     */
+    private final long queuedCount;
+
+    /**
+     * 被拒绝的请求数，包括排队超时的请求
+     */
+    private final long rejectedCount;
+
+    /**
+     * 排队等待时间的分布
+     */
+    private final LatencySnapshot queueWait;
+
+    ConcurrencyLimitStats(String host, int limit, int inflight, int queueSize, long acceptedCount, long queuedCount,
+                          long rejectedCount, LatencySnapshot queueWait) {
+        this.host = host;
+        this.limit = limit;
+        this.inflight = inflight;
+        this.queueSize = queueSize;
+        this.acceptedCount = acceptedCount;
+        this.queuedCount = queuedCount;
+        this.rejectedCount = rejectedCount;
+        this.queueWait = queueWait;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInflight() {
+        return inflight;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    public long getQueuedCount() {
+        return queuedCount;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public LatencySnapshot getQueueWait() {
+        return queueWait;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimitStats{" +
+                "host='" + host + '\'' +
+                ", limit=" + limit +
+                ", inflight=" + inflight +
+                ", queueSize=" + queueSize +
+                ", acceptedCount=" + acceptedCount +
+                ", queuedCount=" + queuedCount +
+                ", rejectedCount=" + rejectedCount +
+                ", queueWait=" + queueWait +
+                '}';
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.jishukezhan.http.limit;
+
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.event.LatencyHistogram;
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个主机的自适应并发限制，根据每次请求的耗时和结果调整允许的进行中请求数
+ *
+ * @author miles.tang
+ */
+final class ConcurrencyLimiter {
+
+    /**
+     * 已经获得许可时返回的共享结果
+     */
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final String host;
+
+    private final ConcurrencyLimitClient config;
+
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+
+    private final LongAdder acceptedCount = new LongAdder();
+
+    private final LongAdder queuedCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    private double limit;
+
+    private int inflight;
+
+    /**
+     * 无负载时的耗时，即最近一次探测以来的最小耗时，单位纳秒，只用于梯度算法
+     */
+    private long noLoadRttNanos;
+
+    /**
+     * 最近一次探测以来的样本数
+     */
+    private int samples;
+
+    ConcurrencyLimiter(String host, ConcurrencyLimitClient config) {
+        this.host = host;
+        this.config = config;
+        this.limit = config.initialLimit;
+    }
+
+    /**
+     * 申请许可，并发未满时立即返回已完成的结果，否则排队等待
+     *
+     * @return 获得许可时正常结束，排队已满或者等待超时时以{@linkplain CallNotPermittedException}异常结束
+     */
+    CompletableFuture<Void> acquire() {
+        Waiter waiter;
+        synchronized (this) {
+            if (inflight < (int) limit && queue.isEmpty()) {
+                inflight++;
+                acceptedCount.increment();
+                return GRANTED;
+            }
+            if (queue.size() >= config.maxQueueSize || config.maxWaitMillis == 0) {
+                rejectedCount.increment();
+                return AsyncExecutors.failed(
+                        new CallNotPermittedException(host, CallNotPermittedException.Reason.CONCURRENCY_LIMITED));
+            }
+            waiter = new Waiter();
+            queue.addLast(waiter);
+            queuedCount.increment();
+        }
+        waiter.timeout = AsyncExecutors.schedule(() -> expire(waiter), config.maxWaitMillis);
+        return waiter.future;
+    }
+
+    /**
+     * 放弃排队中的许可，比如调用方取消了请求
+     *
+     * @param permit {@linkplain #acquire()}返回的结果
+     */
+    void abandon(CompletableFuture<Void> permit) {
+        synchronized (this) {
+            Iterator<Waiter> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.future == permit) {
+                    iterator.remove();
+                    cancelTimeout(waiter);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求结束，按照耗时和结果调整限制并释放许可
+     *
+     * @param rttNanos 请求耗时，单位纳秒
+     * @param dropped  是否失败或者被下游限流
+     */
+    void onComplete(long rttNanos, boolean dropped) {
+        List<Waiter> granted;
+        synchronized (this) {
+            int current = inflight;
+            inflight--;
+            if (config.algorithm == LimitAlgorithm.AIMD) {
+                updateAimd(rttNanos, dropped, current);
+            } else {
+                updateGradient(rttNanos, dropped, current);
+            }
+            granted = drain();
+        }
+        grant(granted);
+    }
+
+    /**
+     * 请求被取消或者发生了不需要统计的异常，只释放许可
+     */
+    void onIgnored() {
+        List<Waiter> granted;
+        synchronized (this) {
+            inflight--;
+            granted = drain();
+        }
+        grant(granted);
+    }
+
+    synchronized ConcurrencyLimitStats stats() {
+        return new ConcurrencyLimitStats(host, (int) limit, inflight, queue.size(), acceptedCount.sum(),
+                queuedCount.sum(), rejectedCount.sum(), queueWait.snapshot());
+    }
+
+    private void updateAimd(long rttNanos, boolean dropped, int current) {
+        if (dropped || rttNanos >= TimeUnit.MILLISECONDS.toNanos(config.slowCallDurationMillis)) {
+            limit = clamp(limit * config.backoffRatio);
+        } else if (current >= (int) limit) {
+            // 只有并发已满时才增加，避免空闲期间限制无限增长
+            limit = clamp(limit + 1);
+        }
+    }
+
+    private void updateGradient(long rttNanos, boolean dropped, int current) {
+        long rtt = Math.max(1, rttNanos);
+        if (++samples >= config.probeInterval) {
+            // 定期重新探测无负载耗时，否则持续拥塞期间基准值一旦被抬高就无法恢复
+            samples = 0;
+            noLoadRttNanos = 0;
+            limit = clamp(Math.sqrt(limit));
+            return;
+        }
+        if (noLoadRttNanos == 0 || rtt < noLoadRttNanos) {
+            noLoadRttNanos = rtt;
+        }
+        if (!dropped && current < limit / 2) {
+            // 调用方自身的并发不足时，耗时无法反映下游的负载
+            return;
+        }
+        double gradient = dropped ? 0.5 :
+                Math.max(0.5, Math.min(1.0, config.rttTolerance * noLoadRttNanos / rtt));
+        double target = limit * gradient + Math.sqrt(limit);
+        limit = clamp(limit * 0.8 + target * 0.2);
+    }
+
+    private double clamp(double value) {
+        return Math.max(config.minLimit, Math.min(config.maxLimit, value));
+    }
+
+    /**
+     * 按照新的限制依次唤醒排队的请求，在锁内占用许可，在锁外完成结果
+     */
+    private List<Waiter> drain() {
+        List<Waiter> granted = null;
+        while (!queue.isEmpty() && inflight < (int) limit) {
+            Waiter waiter = queue.pollFirst();
+            inflight++;
+            acceptedCount.increment();
+            if (granted == null) {
+                granted = new ArrayList<>(2);
+            }
+            granted.add(waiter);
+        }
+        return granted;
+    }
+
+    private void grant(List<Waiter> granted) {
+        if (granted == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (Waiter waiter : granted) {
+            cancelTimeout(waiter);
+            queueWait.record(now - waiter.enqueuedNanos);
+            waiter.future.complete(null);
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!queue.remove(waiter)) {
+                return;
+            }
+            rejectedCount.increment();
+        }
+        queueWait.record(System.nanoTime() - waiter.enqueuedNanos);
+        waiter.future.completeExceptionally(
+                new CallNotPermittedException(host, CallNotPermittedException.Reason.CONCURRENCY_LIMITED));
+    }
+
+    private static void cancelTimeout(Waiter waiter) {
+        ScheduledFuture<?> timeout = waiter.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    private static final class Waiter {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private final long enqueuedNanos = System.nanoTime();
+
+        private volatile ScheduledFuture<?> timeout;
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.jishukezhan.http.limit;
+
+/**
+ * 调整并发限制的算法
+ *
+ * @author miles.tang
+ */
+public enum LimitAlgorithm {
+
+    /**
+     * 加性增、乘性减：请求成功且并发已满时限制加1；请求失败、被限流（{@code 429}、{@code 503}）
+     * 或者耗时超过慢调用阈值时按照回退比例缩小
+     */
+    AIMD,
+
+    /**
+     * 梯度算法：以无负载时的耗时（最近一次探测以来的最小耗时）与本次耗时之比作为梯度，耗时上升时按比例缩小限制，
+     * 耗时平稳时逐步增加约{@code sqrt(limit)}的排队余量；请求失败时梯度取最小值0.5
+     */
+    GRADIENT
+
+}
@@ -0,0 +1,74 @@
+package com.jishukezhan.http.loadbalancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务的一个节点及其运行状态，所有字段都是无锁更新的
+ *
+ * @author miles.tang
+ */
+final class Endpoint {
+
+    /**
+     * 节点地址，包括协议、主机、端口以及可选的路径前缀，不以{@code /}结尾
+     */
+    final String baseUrl;
+
+    final AtomicInteger outstanding = new AtomicInteger();
+
+    /**
+     * 耗时的指数加权移动平均值，单位纳秒，以{@code double}的位模式保存，0表示还没有样本
+     */
+    private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToRawLongBits(0));
+
+    final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * 摘除的截止时间，{@linkplain System#nanoTime()}，0表示没有被摘除
+     */
+    volatile long ejectedUntilNanos;
+
+    final LongAdder requestCount = new LongAdder();
+
+    final LongAdder failureCount = new LongAdder();
+
+    final LongAdder ejectionCount = new LongAdder();
+
+    Endpoint(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    double ewmaNanos() {
+        return Double.longBitsToDouble(ewmaBits.get());
+    }
+
+    void recordLatency(long nanos, double alpha) {
+        long current;
+        long next;
+        do {
+            current = ewmaBits.get();
+            double ewma = Double.longBitsToDouble(current);
+            next = Double.doubleToRawLongBits(ewma == 0 ? nanos : ewma + (nanos - ewma) * alpha);
+        } while (!ewmaBits.compareAndSet(current, next));
+    }
+
+    boolean isEjected(long now) {
+        long until = ejectedUntilNanos;
+        return until != 0 && now - until < 0;
+    }
+
+    /**
+     * 负载代价：进行中的请求数加1再乘以平均耗时，还没有样本的节点代价最低，以便尽快得到样本
+     */
+    double cost() {
+        return (outstanding.get() + 1) * Math.max(1, ewmaNanos());
+    }
+
+    EndpointStats stats(long now) {
+        return new EndpointStats(baseUrl, outstanding.get(), ewmaNanos() / 1000000, consecutiveFailures.get(),
+                isEjected(now), requestCount.sum(), failureCount.sum(), ejectionCount.sum());
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.jishukezhan.http.loadbalancer;
+
+/**
+ * 服务节点的统计快照
+ *
+ * @author miles.tang
+ */
+public class EndpointStats {
+
+    private final String url;
+
+    /**
+     * 当前进行中的请求数
+     */
+    private final int outstanding;
+
+    /**
+     * 耗时的指数加权移动平均值，单位毫秒
+     */
+    private final double ewmaMillis;
+
+    /**
+     * 连续失败次数
+     */
+    private final int consecutiveFailures;
+
+    /**
+     * 当前是否被摘除
+     */
+    private final boolean ejected;
+
+    private final long requestCount;
+
+    private final long failureCount;
+
+    /**
+     * 被摘除的次数
+     */
+    private final long ejectionCount;
+
+    EndpointStats(String url, int outstanding, double ewmaMillis, int consecutiveFailures, boolean ejected,
+                  long requestCount, long failureCount, long ejectionCount) {
+        this.url = url;
+        this.outstanding = outstanding;
+        this.ewmaMillis = ewmaMillis;
+        this.consecutiveFailures = consecutiveFailures;
+        this.ejected = ejected;
+        this.requestCount = requestCount;
+        this.failureCount = failureCount;
+        this.ejectionCount = ejectionCount;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getOutstanding() {
+        return outstanding;
+    }
+
+    public double getEwmaMillis() {
+        return ewmaMillis;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public boolean isEjected() {
+        return ejected;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getEjectionCount() {
+        return ejectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EndpointStats{" +
+                "url='" + url + '\'' +
+                ", outstanding=" + outstanding +
+                ", ewmaMillis=" + ewmaMillis +
+                ", consecutiveFailures=" + consecutiveFailures +
+                ", ejected=" + ejected +
+                ", requestCount=" + requestCount +
+                ", failureCount=" + failureCount +
+                ", ejectionCount=" + ejectionCount +
+                '}';
+    }
+
+}
@@ -0,0 +1,418 @@
+package com.jishukezhan.http.loadbalancer;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.core.lang.StringUtil;
+import com.jishukezhan.http.AsyncExecutors;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.Utils;
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+/**
+ * 客户端负载均衡，以装饰器的方式包装任意{@linkplain Client}
+ * <p>把逻辑服务名映射到一组节点，请求地址的主机部分是已注册的服务名时（比如{@code http://user-service/users/1}），
+ * 选出一个节点并把地址的协议和主机部分替换为节点地址后再交给被装饰的客户端，其他请求原样透传：</p>
+ * <ul>
+ * <li>选择节点：随机选出两个节点（power of two choices），取{@code (进行中的请求数 + 1) × 平均耗时}较小的一个，
+ * 平均耗时为指数加权移动平均值</li>
+ * <li>摘除节点：连续失败达到阈值后在一段时间内不再选择，到期后自动恢复；所有节点都被摘除时忽略摘除状态，避免服务完全不可用</li>
+ * <li>更新节点：{@linkplain #updateEndpoints(String, Collection)}以写时复制的方式替换节点列表，保留已有节点的统计，
+ * 请求路径上不加锁</li>
+ * </ul>
+ * <pre>
+ * LoadBalancingClient client = LoadBalancingClient.builder(new OkHttpClient())
+ *         .service("user-service", "http://10.0.0.1:8080", "http://10.0.0.2:8080")
+ *         .build();
+ * client.execute(Request.builder().url("http://user-service/users/1").build(), options);
+ * </pre>
+ *
+ * @author miles.tang
+ */
+public class LoadBalancingClient implements Client {
+
+    private final Client delegate;
+
+    private final double ewmaAlpha;
+
+    private final int maxConsecutiveFailures;
+
+    private final long ejectionNanos;
+
+    private final IntPredicate failureStatus;
+
+    /**
+     * 服务名（小写）到节点数组的映射，数组创建后不再修改
+     */
+    private final ConcurrentMap<String, Endpoint[]> services = new ConcurrentHashMap<>();
+
+    LoadBalancingClient(Builder builder) {
+        this.delegate = builder.delegate;
+        this.ewmaAlpha = builder.ewmaAlpha;
+        this.maxConsecutiveFailures = builder.maxConsecutiveFailures;
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(builder.ejectionMillis);
+        this.failureStatus = builder.failureStatus;
+        builder.services.forEach(this::updateEndpoints);
+    }
+
+    @Override
+    public Response execute(Request request, Options options) throws IoRuntimeException {
+        Endpoint endpoint = choose(request);
+        if (endpoint == null) {
+            return delegate.execute(request, options);
+        }
+        Request rewritten = rewrite(request, endpoint);
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = delegate.execute(rewritten, options);
+        } catch (CallNotPermittedException e) {
+            // 被内层的熔断器等拒绝，没有到达节点
+            endpoint.outstanding.decrementAndGet();
+            throw e;
+        } catch (IoRuntimeException e) {
+            onComplete(endpoint, System.nanoTime() - start, true);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            endpoint.outstanding.decrementAndGet();
+            throw e;
+        }
+        onComplete(endpoint, System.nanoTime() - start, failureStatus.test(response.status()));
+        return response;
+    }
+
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        Endpoint endpoint;
+        try {
+            endpoint = choose(request);
+        } catch (RuntimeException e) {
+            return AsyncExecutors.failed(e);
+        }
+        if (endpoint == null) {
+            return delegate.executeAsync(request, options);
+        }
+        Request rewritten = rewrite(request, endpoint);
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<Response> future;
+        try {
+            future = delegate.executeAsync(rewritten, options);
+        } catch (RuntimeException e) {
+            endpoint.outstanding.decrementAndGet();
+            return AsyncExecutors.failed(e);
+        }
+        // 返回原始的future，使调用方的取消可以传递到底层请求
+        future.whenComplete((response, e) -> {
+            long duration = System.nanoTime() - start;
+            if (e == null) {
+                onComplete(endpoint, duration, failureStatus.test(response.status()));
+                return;
+            }
+            Throwable cause = AsyncExecutors.unwrap(e);
+            if (cause instanceof IoRuntimeException && !(cause instanceof CallNotPermittedException)) {
+                onComplete(endpoint, duration, true);
+            } else {
+                endpoint.outstanding.decrementAndGet();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 设置服务的节点列表，已有节点的统计和摘除状态会被保留
+     *
+     * @param service 服务名，不区分大小写
+     * @param urls    节点地址，比如{@code https://10.0.0.1:8443}，可以带路径前缀，为空时该服务的请求会失败
+     */
+    public void updateEndpoints(@NonNull String service, @NonNull Collection<String> urls) {
+        Preconditions.requireNonNull(service, "service == null");
+        Preconditions.requireNonNull(urls, "urls == null");
+        List<String> baseUrls = new ArrayList<>(urls.size());
+        for (String url : urls) {
+            String baseUrl = normalize(url);
+            if (!baseUrls.contains(baseUrl)) {
+                baseUrls.add(baseUrl);
+            }
+        }
+        services.compute(service.toLowerCase(Locale.ROOT), (name, current) -> {
+            Map<String, Endpoint> existing = new HashMap<>();
+            if (current != null) {
+                for (Endpoint endpoint : current) {
+                    existing.put(endpoint.baseUrl, endpoint);
+                }
+            }
+            Endpoint[] endpoints = new Endpoint[baseUrls.size()];
+            for (int i = 0; i < endpoints.length; i++) {
+                Endpoint endpoint = existing.get(baseUrls.get(i));
+                endpoints[i] = endpoint != null ? endpoint : new Endpoint(baseUrls.get(i));
+            }
+            return endpoints;
+        });
+    }
+
+    /**
+     * 移除服务，之后该服务名的请求原样透传
+     *
+     * @param service 服务名，不区分大小写
+     */
+    public void removeService(@NonNull String service) {
+        services.remove(service.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * 返回所有服务的节点统计快照
+     *
+     * @return 服务名到节点统计快照的映射
+     */
+    public Map<String, List<EndpointStats>> stats() {
+        Map<String, List<EndpointStats>> stats = new LinkedHashMap<>();
+        services.forEach((service, endpoints) -> stats.put(service, stats(endpoints)));
+        return stats;
+    }
+
+    /**
+     * 返回指定服务的节点统计快照
+     *
+     * @param service 服务名，不区分大小写
+     * @return 节点统计快照，服务不存在时返回空列表
+     */
+    public List<EndpointStats> stats(@NonNull String service) {
+        Endpoint[] endpoints = services.get(service.toLowerCase(Locale.ROOT));
+        return endpoints == null ? Collections.emptyList() : stats(endpoints);
+    }
+
+    private static List<EndpointStats> stats(Endpoint[] endpoints) {
+        long now = System.nanoTime();
+        List<EndpointStats> list = new ArrayList<>(endpoints.length);
+        for (Endpoint endpoint : endpoints) {
+            list.add(endpoint.stats(now));
+        }
+        return list;
+    }
+
+    /**
+     * 选出处理请求的节点
+     *
+     * @return 节点，请求的主机不是已注册的服务时返回{@code null}
+     * @throws IoRuntimeException 服务没有可用的节点
+     */
+    private Endpoint choose(Request request) {
+        if (services.isEmpty()) {
+            return null;
+        }
+        String service = Utils.authority(request.url());
+        Endpoint[] endpoints = services.get(service);
+        if (endpoints == null) {
+            return null;
+        }
+        int n = endpoints.length;
+        if (n == 0) {
+            throw new IoRuntimeException("No endpoints available for service '" + service + "'");
+        }
+        Endpoint endpoint = n == 1 ? endpoints[0] : choose(endpoints);
+        endpoint.requestCount.increment();
+        return endpoint;
+    }
+
+    private static Endpoint choose(Endpoint[] endpoints) {
+        int n = endpoints.length;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = endpoints[i];
+        Endpoint b = endpoints[j];
+        long now = System.nanoTime();
+        boolean aEjected = a.isEjected(now);
+        boolean bEjected = b.isEjected(now);
+        if (aEjected && bEjected) {
+            // 从随机位置开始找一个没有被摘除的节点，全部被摘除时在两者中选择
+            for (int k = 0; k < n; k++) {
+                Endpoint endpoint = endpoints[(i + k) % n];
+                if (!endpoint.isEjected(now)) {
+                    return endpoint;
+                }
+            }
+        } else if (aEjected) {
+            return b;
+        } else if (bEjected) {
+            return a;
+        }
+        return a.cost() <= b.cost() ? a : b;
+    }
+
+    private void onComplete(Endpoint endpoint, long nanos, boolean failure) {
+        endpoint.outstanding.decrementAndGet();
+        if (!failure) {
+            endpoint.recordLatency(nanos, ewmaAlpha);
+            if (endpoint.consecutiveFailures.get() != 0) {
+                endpoint.consecutiveFailures.set(0);
+            }
+            return;
+        }
+        // 失败通常很快返回，不计入平均耗时，以免失败的节点看起来更快
+        endpoint.failureCount.increment();
+        if (endpoint.consecutiveFailures.incrementAndGet() >= maxConsecutiveFailures) {
+            endpoint.consecutiveFailures.set(0);
+            endpoint.ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+            endpoint.ejectionCount.increment();
+        }
+    }
+
+    /**
+     * 把请求地址的协议和主机部分替换为节点地址，保留地址是否已经编码
+     */
+    private static Request rewrite(Request request, Endpoint endpoint) {
+        String url = request.url();
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        String rewritten = new StringBuilder(endpoint.baseUrl.length() + url.length() - end)
+                .append(endpoint.baseUrl).append(url, end, url.length()).toString();
+        Request.Builder builder = request.newBuilder();
+        return (request.isUrlEncoded() ? builder.encodedUrl(rewritten) : builder.url(rewritten)).build();
+    }
+
+    private static String normalize(String url) {
+        Preconditions.checkArgument(!StringUtil.isEmpty(url) && url.contains("://"),
+                "'" + url + "' is not an absolute url");
+        String baseUrl = url.trim();
+        while (baseUrl.endsWith("/")) {
+            baseUrl = baseUrl.substring(0, baseUrl.length() - 1);
+        }
+        return baseUrl;
+    }
+
+    /**
+     * 创建{@linkplain Builder}
+     *
+     * @param delegate 被装饰的客户端
+     * @return {@linkplain Builder}
+     */
+    public static Builder builder(@NonNull Client delegate) {
+        return new Builder(delegate);
+    }
+
+    public static class Builder {
+
+        private final Client delegate;
+
+        private final Map<String, Collection<String>> services = new LinkedHashMap<>();
+
+        /**
+         * 平均耗时的平滑系数，越大越偏向最近的样本
+         */
+        private double ewmaAlpha;
+
+        /**
+         * 连续失败多少次后摘除节点
+         */
+        private int maxConsecutiveFailures;
+
+        /**
+         * 摘除的时长，单位毫秒
+         */
+        private long ejectionMillis;
+
+        /**
+         * 视为节点失败的状态码
+         */
+        private IntPredicate failureStatus;
+
+        Builder(@NonNull Client delegate) {
+            this.delegate = Preconditions.requireNonNull(delegate, "delegate == null");
+            this.ewmaAlpha = 0.3;
+            this.maxConsecutiveFailures = 5;
+            this.ejectionMillis = 30000;
+            this.failureStatus = status -> status == 502 || status == 503 || status == 504;
+        }
+
+        /**
+         * 注册服务及其节点
+         *
+         * @param service 服务名，不区分大小写，请求地址的主机部分与之相同时进行负载均衡
+         * @param urls    节点地址，比如{@code https://10.0.0.1:8443}，可以带路径前缀
+         * @return {@linkplain Builder}
+         */
+        public Builder service(@NonNull String service, @NonNull String... urls) {
+            Preconditions.requireNonNull(service, "service == null");
+            Preconditions.requireNonNull(urls, "urls == null");
+            this.services.put(service, Arrays.asList(urls));
+            return this;
+        }
+
+        /**
+         * 设置平均耗时的平滑系数，默认为0.3
+         *
+         * @param ewmaAlpha 平滑系数，范围{@code (0, 1]}
+         * @return {@linkplain Builder}
+         */
+        public Builder ewmaAlpha(double ewmaAlpha) {
+            Preconditions.checkArgument(ewmaAlpha > 0 && ewmaAlpha <= 1, "'ewmaAlpha' must between 0 and 1");
+            this.ewmaAlpha = ewmaAlpha;
+            return this;
+        }
+
+        /**
+         * 设置摘除策略，默认连续失败5次后摘除30秒
+         *
+         * @param maxConsecutiveFailures 连续失败次数
+         * @param ejectionMillis         摘除的时长，单位毫秒
+         * @return {@linkplain Builder}
+         */
+        public Builder ejection(int maxConsecutiveFailures, long ejectionMillis) {
+            Preconditions.checkArgument(maxConsecutiveFailures > 0, "'maxConsecutiveFailures' must than 0");
+            Preconditions.checkArgument(ejectionMillis >= 0, "'ejectionMillis' must than 0");
+            this.maxConsecutiveFailures = maxConsecutiveFailures;
+            this.ejectionMillis = ejectionMillis;
+            return this;
+        }
+
+        /**
+         * 设置视为节点失败的状态码，默认为{@code 502}、{@code 503}和{@code 504}，网络异常始终视为失败
+         *
+         * @param failureStatus 状态码判断
+         * @return {@linkplain Builder}
+         */
+        public Builder failureStatus(@NonNull IntPredicate failureStatus) {
+            this.failureStatus = Preconditions.requireNonNull(failureStatus, "failureStatus == null");
+            return this;
+        }
+
+        public LoadBalancingClient build() {
+            return new LoadBalancingClient(this);
+        }
+
+    }
+
+}
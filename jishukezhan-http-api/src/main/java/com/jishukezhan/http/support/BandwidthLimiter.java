@@ -0,0 +1,57 @@
+package com.jishukezhan.http.support;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌桶限速，每个字节消耗一个令牌，所有下载共享同一个令牌桶
+ * <p>令牌不足时允许透支，由透支的线程等待令牌补足后再继续读取，平均速率不超过设置的带宽</p>
+ *
+ * @author miles.tang
+ */
+final class BandwidthLimiter {
+
+    private final double bytesPerNano;
+
+    /**
+     * 桶的容量，即空闲之后允许的突发字节数
+     */
+    private final long burst;
+
+    private double available;
+
+    private long lastRefillNanos;
+
+    BandwidthLimiter(long bytesPerSecond, long burst) {
+        this.bytesPerNano = bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.burst = burst;
+        this.available = burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 消耗{@code bytes}个令牌，令牌不足时等待
+     *
+     * @param bytes 字节数
+     * @throws InterruptedIOException 等待时被中断
+     */
+    void acquire(int bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            available = Math.min(burst, available + (now - lastRefillNanos) * bytesPerNano);
+            lastRefillNanos = now;
+            available -= bytes;
+            waitNanos = available >= 0 ? 0 : (long) (-available / bytesPerNano);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download cancelled");
+            }
+        }
+    }
+
+}
@@ -2,13 +2,23 @@ package com.jishukezhan.http.support;
 
 import com.jishukezhan.annotation.NonNull;
 import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.core.lang.StringUtil;
 import com.jishukezhan.http.Client;
 import com.jishukezhan.http.ClientFactory;
 import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+import com.jishukezhan.http.exceptions.CilantroStatusException;
 import com.jishukezhan.json.JSON;
 import com.jishukezhan.json.JSONFactory;
 
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.lang.reflect.Type;
+
 /**
  * Ginger是生姜的意思，是我们日常常见的配料，
  */
@@ -58,6 +68,52 @@ public class Cilantro {
         this.decode404 = decode404;
     }
 
+    /**
+     * 检查响应状态码，{@linkplain RequestSupport}和声明式客户端共用
+     * <p>5xx抛出异常，异常信息为原因短语，没有原因短语时为响应内容；404在没有开启{@linkplain #isDecode404()}时抛出异常</p>
+     *
+     * @param response 响应
+     * @throws CilantroStatusException 状态码不符合要求
+     */
+    public void checkStatus(@NonNull Response response) throws CilantroStatusException {
+        if (response.status() >= 500) {
+            String message = response.reason();
+            if (StringUtil.isEmpty(message) && response.body() != null) {
+                message = response.body().string(CharsetUtil.UTF_8);
+            }
+            throw new CilantroStatusException(response.status(), message, response.request());
+        }
+        if (response.status() == 404 && !decode404) {
+            throw new CilantroStatusException(404, "Not Found", response.request());
+        }
+    }
+
+    /**
+     * 将响应内容直接以流的方式交给JSON处理器解析，不会生成中间字符串，不会关闭响应内容
+     *
+     * @param body 响应内容
+     * @param type 目标类型
+     * @param <T>  目标类型的泛型
+     * @return 解析结果，响应内容为空时返回{@code null}
+     */
+    @Nullable
+    public <T> T decodeJson(@Nullable ResponseBody body, @NonNull Type type) {
+        if (body == null || (body.length() != null && body.length() == 0)) {
+            return null;
+        }
+        try {
+            PushbackInputStream in = new PushbackInputStream(body.byteStream(), 1);
+            int first = in.read();
+            if (first == -1) {
+                return null;
+            }
+            in.unread(first);
+            return json.fromJson(in, CharsetUtil.UTF_8, type);
+        } catch (IOException e) {
+            throw new IoRuntimeException(e);
+        }
+    }
+
     public static Cilantro getDefault() {
         return Holder.INSTANCE;
     }
@@ -0,0 +1,381 @@
+package com.jishukezhan.http.support;
+
+import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.lang.Preconditions;
+import com.jishukezhan.core.thread.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批量下载，限制同时下载的文件数和所有下载共享的带宽
+ * <pre>
+ * DownloadManager manager = DownloadManager.builder().parallelism(8).bandwidth(10 * FileUtil.ONE_MB).build();
+ * for (String url : urls) {
+ *     manager.submit(Cilantro.downloadFile(url), dir);
+ * }
+ * manager.awaitAll().join();
+ * </pre>
+ * <ul>
+ * <li>相同地址（包括查询参数）的请求只下载一次，未结束或者已完成时返回已有的任务，失败或取消之后可以重新提交</li>
+ * <li>带宽限制作用于读取响应内容，分段下载的每个连接都计入同一个令牌桶</li>
+ * <li>{@linkplain DownloadRequest#parallel(int)}开启的分段下载在单个任务内部再并发，不占用{@code parallelism}</li>
+ * </ul>
+ *
+ * @author miles.tang
+ */
+public class DownloadManager implements Closeable {
+
+    private final Cilantro cilantro;
+
+    /**
+     * 目标文件已存在时是否替换，见{@linkplain DownloadRequest#writeTo(File, boolean, Cilantro)}
+     */
+    private final boolean replace;
+
+    /**
+     * 带宽限制，不限制时为{@code null}
+     */
+    private final BandwidthLimiter limiter;
+
+    private final ExecutorService executor;
+
+    /**
+     * 按照地址去重的任务
+     */
+    private final ConcurrentMap<String, DownloadTask> tasks = new ConcurrentHashMap<>();
+
+    private final LongAdder submittedCount = new LongAdder();
+
+    private final LongAdder deduplicatedCount = new LongAdder();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private volatile long firstStartNanos;
+
+    private volatile long lastEndNanos;
+
+    DownloadManager(Builder builder) {
+        this.cilantro = builder.cilantro != null ? builder.cilantro : Cilantro.getDefault();
+        this.replace = builder.replace;
+        this.limiter = builder.bytesPerSecond > 0 ? new BandwidthLimiter(builder.bytesPerSecond, builder.burst) : null;
+        this.executor = Executors.newFixedThreadPool(builder.parallelism,
+                new ThreadFactoryBuilder().namePrefix("cilantro-download-manager-").daemon(true).build());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 提交下载任务
+     *
+     * @param request 下载请求
+     * @param target  目标目录或文件
+     * @return 下载任务，地址相同且未失败、未取消时返回已有的任务
+     */
+    public DownloadTask submit(@NonNull DownloadRequest request, @NonNull File target) {
+        Preconditions.requireNonNull(request, "request == null");
+        Preconditions.requireNonNull(target, "target == null");
+        String url = request.genRequest().url();
+        submittedCount.increment();
+        DownloadTask[] created = new DownloadTask[1];
+        DownloadTask task = tasks.compute(url, (key, existing) -> {
+            if (existing != null && existing.getState() != DownloadTask.State.FAILED && !existing.isCancelled()) {
+                return existing;
+            }
+            created[0] = new DownloadTask(key, target);
+            return created[0];
+        });
+        if (created[0] == null) {
+            deduplicatedCount.increment();
+            return task;
+        }
+        request.streamDecorator(in -> new MeteredInputStream(in, task));
+        task.worker(executor.submit(() -> run(task, request)));
+        return task;
+    }
+
+    /**
+     * 批量提交下载任务，文件名由响应头或者地址决定
+     *
+     * @param requests  下载请求
+     * @param directory 目标目录
+     * @return 下载任务，与{@code requests}的顺序一致
+     */
+    public List<DownloadTask> submitAll(@NonNull Collection<DownloadRequest> requests, @NonNull File directory) {
+        Preconditions.requireNonNull(requests, "requests == null");
+        List<DownloadTask> result = new ArrayList<>(requests.size());
+        for (DownloadRequest request : requests) {
+            result.add(submit(request, directory));
+        }
+        return result;
+    }
+
+    private void run(DownloadTask task, DownloadRequest request) {
+        if (!task.start()) {
+            return;
+        }
+        if (firstStartNanos == 0) {
+            synchronized (this) {
+                if (firstStartNanos == 0) {
+                    firstStartNanos = System.nanoTime();
+                }
+            }
+        }
+        try {
+            task.complete(request.writeTo(task.getTarget(), replace, cilantro));
+        } catch (RuntimeException e) {
+            task.fail(e);
+        } finally {
+            lastEndNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 返回当前所有的任务
+     *
+     * @return 任务列表
+     */
+    public List<DownloadTask> tasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    /**
+     * 返回当前所有任务都结束（包括失败和取消）时完成的{@linkplain CompletableFuture}，不会异常结束
+     *
+     * @return {@linkplain CompletableFuture}
+     */
+    public CompletableFuture<Void> awaitAll() {
+        List<CompletableFuture<?>> futures = new ArrayList<>(tasks.size());
+        for (DownloadTask task : tasks.values()) {
+            futures.add(task.completion().handle((file, e) -> null));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * 取消所有未结束的任务
+     *
+     * @return 取消的任务数
+     */
+    public int cancelAll() {
+        int cancelled = 0;
+        for (DownloadTask task : tasks.values()) {
+            if (task.cancel()) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * 移除已经结束的任务，释放内存，移除之后相同的地址可以重新下载
+     *
+     * @return 移除的任务数
+     */
+    public int purge() {
+        int removed = 0;
+        for (DownloadTask task : tasks.values()) {
+            if (task.isDone() && tasks.remove(task.getUrl(), task)) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 返回汇总统计
+     *
+     * @return {@linkplain DownloadStats}
+     */
+    public DownloadStats stats() {
+        int queued = 0;
+        int running = 0;
+        int completed = 0;
+        int failed = 0;
+        int cancelled = 0;
+        for (DownloadTask task : tasks.values()) {
+            switch (task.getState()) {
+                case QUEUED:
+                    queued++;
+                    break;
+                case RUNNING:
+                    running++;
+                    break;
+                case COMPLETED:
+                    completed++;
+                    break;
+                case FAILED:
+                    failed++;
+                    break;
+                default:
+                    cancelled++;
+            }
+        }
+        long start = firstStartNanos;
+        long elapsedMillis = 0;
+        if (start != 0) {
+            long end = queued + running > 0 ? System.nanoTime() : lastEndNanos;
+            elapsedMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, end - start));
+        }
+        return new DownloadStats(submittedCount.sum(), deduplicatedCount.sum(), queued, running, completed, failed,
+                cancelled, bytes.sum(), elapsedMillis);
+    }
+
+    /**
+     * 取消所有任务并停止下载线程
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 统计读取的字节数并限速，任务取消后中止读取
+     */
+    private final class MeteredInputStream extends FilterInputStream {
+
+        private final DownloadTask task;
+
+        MeteredInputStream(InputStream in, DownloadTask task) {
+            super(in);
+            this.task = task;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkCancelled();
+            int b = super.read();
+            if (b != -1) {
+                record(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            checkCancelled();
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                record(n);
+            }
+            return n;
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (task.isCancelled() || Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Download cancelled: " + task.getUrl());
+            }
+        }
+
+        private void record(int n) throws InterruptedIOException {
+            task.addBytes(n);
+            bytes.add(n);
+            if (limiter != null) {
+                limiter.acquire(n);
+            }
+        }
+
+    }
+
+    public static class Builder {
+
+        private Cilantro cilantro;
+
+        private int parallelism;
+
+        private long bytesPerSecond;
+
+        private long burst;
+
+        private boolean replace;
+
+        Builder() {
+            this.parallelism = 4;
+            this.bytesPerSecond = -1;
+            this.replace = true;
+        }
+
+        /**
+         * 设置执行下载的{@linkplain Cilantro}，默认使用{@linkplain Cilantro#getDefault()}
+         *
+         * @param cilantro {@linkplain Cilantro}
+         * @return {@linkplain Builder}
+         */
+        public Builder cilantro(@NonNull Cilantro cilantro) {
+            this.cilantro = Preconditions.requireNonNull(cilantro, "cilantro == null");
+            return this;
+        }
+
+        /**
+         * 设置同时下载的文件数，默认4
+         *
+         * @param parallelism 同时下载的文件数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder parallelism(int parallelism) {
+            Preconditions.checkArgument(parallelism > 0, "'parallelism' must than 0");
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * 设置所有下载共享的带宽，允许空闲之后突发1秒的流量
+         *
+         * @param bytesPerSecond 每秒字节数，必须大于0
+         * @return {@linkplain Builder}
+         * @see #bandwidth(long, long)
+         */
+        public Builder bandwidth(long bytesPerSecond) {
+            return bandwidth(bytesPerSecond, bytesPerSecond);
+        }
+
+        /**
+         * 设置所有下载共享的带宽，默认不限制
+         *
+         * @param bytesPerSecond 每秒字节数，必须大于0
+         * @param burst          空闲之后允许突发的字节数，必须大于0
+         * @return {@linkplain Builder}
+         */
+        public Builder bandwidth(long bytesPerSecond, long burst) {
+            Preconditions.checkArgument(bytesPerSecond > 0, "'bytesPerSecond' must than 0");
+            Preconditions.checkArgument(burst > 0, "'burst' must than 0");
+            this.bytesPerSecond = bytesPerSecond;
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * 设置目标文件已存在时是否替换，默认替换，否则重命名
+         *
+         * @param replace 是否替换
+         * @return {@linkplain Builder}
+         */
+        public Builder replace(boolean replace) {
+            this.replace = replace;
+            return this;
+        }
+
+        public DownloadManager build() {
+            return new DownloadManager(this);
+        }
+
+    }
+
+}
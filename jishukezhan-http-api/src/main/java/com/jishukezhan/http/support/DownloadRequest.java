@@ -11,9 +11,28 @@ import com.jishukezhan.http.Utils;
 import com.jishukezhan.http.exceptions.CilantroStatusException;
 
 import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 public class DownloadRequest extends RequestSupport<DownloadRequest> {
 
+    /**
+     * 分段下载的最大连接数，1表示不分段
+     */
+    private int connections = 1;
+
+    /**
+     * 分段下载时每段的最小字节数
+     */
+    private long minRangeSize = FileUtil.ONE_MB;
+
+    /**
+     * 包装响应内容的输入流，用于{@linkplain DownloadManager}统计进度和限速
+     */
+    private UnaryOperator<InputStream> streamDecorator;
+
     public DownloadRequest(String url) {
         super.url = Preconditions.requireNotEmpty(url, "url is null or empty");
         super.method = Method.GET;
@@ -24,6 +43,41 @@ public class DownloadRequest extends RequestSupport<DownloadRequest> {
         return null;
     }
 
+    /**
+     * 启用多连接分段下载，每段至少1MB
+     *
+     * @param connections 最大连接数，必须大于0，1表示不分段
+     * @return {@linkplain DownloadRequest}
+     * @see #parallel(int, long)
+     */
+    public DownloadRequest parallel(int connections) {
+        return parallel(connections, FileUtil.ONE_MB);
+    }
+
+    /**
+     * 启用多连接分段下载
+     * <p>下载前先发送{@code HEAD}请求，服务端返回{@code Accept-Ranges: bytes}和{@code Content-Length}时，
+     * 把资源切分为若干段并发下载，直接写入目标文件的对应位置；否则退化为单连接下载。</p>
+     * <p>分段下载会在目标文件旁边生成{@code .cilantro-ranges}检查点文件，下载中断后再次下载到同一个文件时会从检查点继续，
+     * 即使{@code replace}为{@code false}也不会重命名。下载完成后检查点文件会被删除</p>
+     *
+     * @param connections  最大连接数，必须大于0，1表示不分段
+     * @param minRangeSize 每段的最小字节数，必须大于0，资源较小时实际连接数会少于{@code connections}
+     * @return {@linkplain DownloadRequest}
+     */
+    public DownloadRequest parallel(int connections, long minRangeSize) {
+        Preconditions.checkArgument(connections > 0, "'connections' must than 0");
+        Preconditions.checkArgument(minRangeSize > 0, "'minRangeSize' must than 0");
+        this.connections = connections;
+        this.minRangeSize = minRangeSize;
+        return this;
+    }
+
+    DownloadRequest streamDecorator(UnaryOperator<InputStream> streamDecorator) {
+        this.streamDecorator = streamDecorator;
+        return this;
+    }
+
     /**
      * 执行请求,并将结果写到指定目录或文件
      * <p>如果目标是文件夹，则会根据请求尝试解析文件名，如果无法解析出文件名，则自动采用"Cilantro-Download-${index}"</p>
@@ -46,29 +100,40 @@ public class DownloadRequest extends RequestSupport<DownloadRequest> {
      * @return 最终文件
      */
     public File writeTo(@NonNull File file, boolean replace) {
+        return writeTo(file, replace, Cilantro.getDefault());
+    }
+
+    /**
+     * 自定义{@linkplain Cilantro}执行请求,并将结果写到指定目录或文件
+     *
+     * @param file     目标目录或文件
+     * @param replace  是否支持重命名
+     * @param cilantro 自定义客户端
+     * @return 最终文件
+     * @see #writeTo(File, boolean)
+     */
+    public File writeTo(@NonNull File file, boolean replace, @NonNull Cilantro cilantro) {
         Preconditions.requireNonNull(file, "file == null");
-        Response response = execute();
-        if (response.status() >= 200 && response.status() < 300) {
-            File target = null;
-            if (file.isDirectory()) {
-                String filename = Utils.expandFilenameFromContentDisposition(response.headers());
-                if (StringUtil.isEmpty(filename)) {
-                    filename = "Cilantro-Download";
-                }
-                target = new File(file, filename);
-            } else {
-                target = file;
-            }
-            if (replace) {
-                FileUtil.delete(target);
-            } else {
-                if (target.exists()) {
-                    target = getNewFilename(target, 1);
+        Preconditions.requireNonNull(cilantro, "cilantro == null");
+        if (connections > 1) {
+            RangedDownload.Probe probe = RangedDownload.probe(cilantro.getClient(), options(), genRequest());
+            if (probe != null) {
+                File target = resolveTarget(file, probe.headers);
+                if (!probe.resumable(target)) {
+                    target = prepareTarget(target, replace);
                 }
+                probe.download.download(target, connections, minRangeSize, streamDecorator);
+                return target;
             }
+        }
+
+        Response response = execute(cilantro);
+        if (response.status() >= 200 && response.status() < 300) {
+            File target = prepareTarget(resolveTarget(file, response.headers()), replace);
 
             // 开始写入内容
-            FileUtil.copyStream(response.body().byteStream(), target);
+            InputStream in = response.body().byteStream();
+            FileUtil.copyStream(streamDecorator == null ? in : streamDecorator.apply(in), target);
 
             return target;
         } else {
@@ -76,6 +141,29 @@ public class DownloadRequest extends RequestSupport<DownloadRequest> {
         }
     }
 
+    private File resolveTarget(File file, Map<String, List<String>> headers) {
+        if (file.isDirectory()) {
+            String filename = Utils.expandFilenameFromContentDisposition(headers);
+            if (StringUtil.isEmpty(filename)) {
+                filename = "Cilantro-Download";
+            }
+            return new File(file, filename);
+        }
+        return file;
+    }
+
+    private File prepareTarget(File target, boolean replace) {
+        if (replace) {
+            FileUtil.delete(target);
+            FileUtil.delete(RangedDownload.checkpointFile(target));
+        } else {
+            if (target.exists()) {
+                target = getNewFilename(target, 1);
+            }
+        }
+        return target;
+    }
+
     private File getNewFilename(File file, int index) {
         String mainName = FileUtil.mainName(file);
         String fileExt = FileUtil.getFileExt(file);
@@ -0,0 +1,113 @@
+package com.jishukezhan.http.support;
+
+/**
+ * {@linkplain DownloadManager}的汇总统计快照
+ *
+ * @author miles.tang
+ */
+public class DownloadStats {
+
+    /**
+     * 提交的任务数，包括去重的
+     */
+    private final long submitted;
+
+    /**
+     * 因为地址相同而复用已有任务的次数
+     */
+    private final long deduplicated;
+
+    private final int queued;
+
+    private final int running;
+
+    private final int completed;
+
+    private final int failed;
+
+    private final int cancelled;
+
+    /**
+     * 所有任务读取的字节数
+     */
+    private final long bytes;
+
+    /**
+     * 从第一个任务开始到现在（或者最后一个任务结束）的耗时，单位毫秒
+     */
+    private final long elapsedMillis;
+
+    DownloadStats(long submitted, long deduplicated, int queued, int running, int completed, int failed,
+                  int cancelled, long bytes, long elapsedMillis) {
+        this.submitted = submitted;
+        this.deduplicated = deduplicated;
+        this.queued = queued;
+        this.running = running;
+        this.completed = completed;
+        this.failed = failed;
+        this.cancelled = cancelled;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getSubmitted() {
+        return submitted;
+    }
+
+    public long getDeduplicated() {
+        return deduplicated;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public int getRunning() {
+        return running;
+    }
+
+    public int getCompleted() {
+        return completed;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public int getCancelled() {
+        return cancelled;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 返回总体的平均吞吐量
+     *
+     * @return 每秒字节数
+     */
+    public double getBytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : bytes * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadStats{" +
+                "submitted=" + submitted +
+                ", deduplicated=" + deduplicated +
+                ", queued=" + queued +
+                ", running=" + running +
+                ", completed=" + completed +
+                ", failed=" + failed +
+                ", cancelled=" + cancelled +
+                ", bytes=" + bytes +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.jishukezhan.http.support;
+
+import com.jishukezhan.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@linkplain DownloadManager}中的一个下载任务，记录单个文件的状态和吞吐量
+ *
+ * @author miles.tang
+ */
+public class DownloadTask {
+
+    /**
+     * 任务状态
+     */
+    public enum State {
+
+        /**
+         * 等待执行
+         */
+        QUEUED,
+
+        /**
+         * 正在下载
+         */
+        RUNNING,
+
+        /**
+         * 下载完成
+         */
+        COMPLETED,
+
+        /**
+         * 下载失败
+         */
+        FAILED,
+
+        /**
+         * 已取消
+         */
+        CANCELLED,
+
+    }
+
+    private final String url;
+
+    private final File target;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.QUEUED);
+
+    private final CompletableFuture<File> completion = new CompletableFuture<>();
+
+    /**
+     * 本次下载读取的字节数，从检查点继续的分段下载不包括已经下载的部分
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    private volatile long startNanos;
+
+    private volatile long endNanos;
+
+    private volatile Throwable failure;
+
+    private volatile Future<?> worker;
+
+    DownloadTask(String url, File target) {
+        this.url = url;
+        this.target = target;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * 提交时指定的目标目录或文件
+     *
+     * @return 目标目录或文件
+     */
+    public File getTarget() {
+        return target;
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    /**
+     * 返回下载完成的文件
+     *
+     * @return 下载完成的文件，未完成时返回{@code null}
+     */
+    @Nullable
+    public File getFile() {
+        return completion.isDone() && !completion.isCompletedExceptionally() ? completion.join() : null;
+    }
+
+    /**
+     * 返回失败的原因
+     *
+     * @return 失败的原因，没有失败时返回{@code null}
+     */
+    @Nullable
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * 返回下载耗时，未开始时返回0，进行中时返回已经耗费的时间
+     *
+     * @return 耗时，单位毫秒
+     */
+    public long getElapsedMillis() {
+        long start = startNanos;
+        if (start == 0) {
+            return 0;
+        }
+        long end = endNanos;
+        return TimeUnit.NANOSECONDS.toMillis((end == 0 ? System.nanoTime() : end) - start);
+    }
+
+    /**
+     * 返回平均吞吐量
+     *
+     * @return 每秒字节数
+     */
+    public double getBytesPerSecond() {
+        long elapsed = getElapsedMillis();
+        return elapsed == 0 ? 0 : bytes.get() * 1000.0 / elapsed;
+    }
+
+    /**
+     * 返回任务结束时完成的{@linkplain CompletableFuture}，失败或取消时异常结束
+     *
+     * @return 下载完成的文件
+     */
+    public CompletableFuture<File> completion() {
+        return completion;
+    }
+
+    /**
+     * 取消任务，等待中的任务不会再执行，进行中的任务在下一次读取时中止
+     * <p>分段下载保留检查点，再次下载到同一个文件时可以继续</p>
+     *
+     * @return 任务已经结束时返回{@code false}
+     */
+    public boolean cancel() {
+        for (State current = state.get(); current == State.QUEUED || current == State.RUNNING; current = state.get()) {
+            if (state.compareAndSet(current, State.CANCELLED)) {
+                Future<?> future = worker;
+                if (future != null) {
+                    future.cancel(true);
+                }
+                if (current == State.RUNNING) {
+                    endNanos = System.nanoTime();
+                }
+                completion.completeExceptionally(new CancellationException("Download cancelled: " + url));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == State.CANCELLED;
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    void worker(Future<?> worker) {
+        this.worker = worker;
+        if (state.get() == State.CANCELLED) {
+            worker.cancel(true);
+        }
+    }
+
+    boolean start() {
+        if (state.compareAndSet(State.QUEUED, State.RUNNING)) {
+            startNanos = System.nanoTime();
+            return true;
+        }
+        return false;
+    }
+
+    void addBytes(int n) {
+        bytes.addAndGet(n);
+    }
+
+    void complete(File file) {
+        if (state.compareAndSet(State.RUNNING, State.COMPLETED)) {
+            endNanos = System.nanoTime();
+            completion.complete(file);
+        }
+    }
+
+    void fail(Throwable failure) {
+        if (state.compareAndSet(State.RUNNING, State.FAILED)) {
+            endNanos = System.nanoTime();
+            this.failure = failure;
+            completion.completeExceptionally(failure);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadTask{" +
+                "url='" + url + '\'' +
+                ", state=" + state.get() +
+                ", bytes=" + bytes.get() +
+                ", elapsedMillis=" + getElapsedMillis() +
+                '}';
+    }
+
+}
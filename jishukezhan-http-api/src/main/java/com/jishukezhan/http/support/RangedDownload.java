@@ -0,0 +1,478 @@
+package com.jishukezhan.http.support;
+
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.StringUtil;
+import com.jishukezhan.core.thread.ThreadFactoryBuilder;
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.HeaderName;
+import com.jishukezhan.http.Method;
+import com.jishukezhan.http.Options;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import com.jishukezhan.http.ResponseBody;
+import com.jishukezhan.http.Utils;
+import com.jishukezhan.http.exceptions.CilantroStatusException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+/**
+ * 多连接分段下载
+ * <p>先用{@code HEAD}请求确认服务端支持范围请求并获取资源长度，再把资源切分为若干段并发下载，
+ * 每段通过{@linkplain FileChannel#write(ByteBuffer, long)}写入目标文件的对应位置。</p>
+ * <p>下载过程中会在目标文件旁边维护一个检查点文件，记录每段已经写入的位置，中断后再次下载同一个资源时从检查点继续。
+ * 检查点同时记录资源的长度和{@code ETag}/{@code Last-Modified}，资源发生变化时会丢弃检查点重新下载</p>
+ *
+ * @author miles.tang
+ */
+final class RangedDownload {
+
+    private static final Logger log = LoggerFactory.getLogger(RangedDownload.class);
+
+    /**
+     * 检查点文件的后缀
+     */
+    static final String CHECKPOINT_SUFFIX = ".cilantro-ranges";
+
+    private static final String BYTES = "bytes";
+
+    private static final String IDENTITY = "identity";
+
+    /**
+     * 每段连续失败（期间没有任何进展）的最大次数
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * 每段写入多少字节后保存一次检查点
+     */
+    private static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+
+    private final Client client;
+
+    private final Options options;
+
+    private final Request request;
+
+    private final long length;
+
+    private final String validator;
+
+    private RangedDownload(Client client, Options options, Request request, long length, String validator) {
+        this.client = client;
+        this.options = options;
+        this.request = request;
+        this.length = length;
+        this.validator = validator;
+    }
+
+    /**
+     * 发送{@code HEAD}请求探测资源是否支持范围请求
+     *
+     * @param client  客户端
+     * @param options 请求配置
+     * @param request 原始的{@code GET}请求
+     * @return 探测结果，不支持范围请求时返回{@code null}
+     */
+    static Probe probe(Client client, Options options, Request request) {
+        Request head = request.newBuilder()
+                .method(Method.HEAD, null)
+                .replaceHeader(HeaderName.ACCEPT_ENCODING.toString(), IDENTITY)
+                .build();
+        try (Response response = client.execute(head, options)) {
+            if (response.status() < 200 || response.status() >= 300) {
+                log.debug("HEAD {} returned {}, fallback to single stream", request.url(), response.status());
+                return null;
+            }
+            Map<String, List<String>> headers = response.headers();
+            String acceptRanges = Utils.header(headers, HeaderName.ACCEPT_RANGES, true);
+            String contentLength = Utils.header(headers, HeaderName.CONTENT_LENGTH, true);
+            String contentEncoding = Utils.header(headers, HeaderName.CONTENT_ENCODING, true);
+            long length = parseLong(contentLength);
+            if (acceptRanges == null || !acceptRanges.toLowerCase(Locale.ROOT).contains(BYTES) || length <= 0
+                    || (contentEncoding != null && !IDENTITY.equalsIgnoreCase(contentEncoding))) {
+                log.debug("{} does not support ranges (Accept-Ranges={}, Content-Length={}), fallback to single stream",
+                        request.url(), acceptRanges, contentLength);
+                return null;
+            }
+            String validator = Utils.header(headers, HeaderName.ETAG, true);
+            if (validator != null && validator.startsWith("W/")) {
+                // 弱ETag不能用于If-Range
+                validator = null;
+            }
+            if (validator == null) {
+                validator = Utils.header(headers, HeaderName.LAST_MODIFIED, true);
+            }
+            return new Probe(new RangedDownload(client, options, request, length, validator), headers);
+        }
+    }
+
+    /**
+     * 下载到目标文件
+     *
+     * @param target       目标文件
+     * @param connections  最大连接数
+     * @param minRangeSize 每段的最小字节数
+     * @param decorator    包装每段响应内容的输入流，可以为{@code null}
+     */
+    void download(File target, int connections, long minRangeSize, UnaryOperator<InputStream> decorator) {
+        Checkpoint checkpoint = Checkpoint.load(checkpointFile(target), request.url(), length, validator);
+        if (checkpoint == null) {
+            int parts = (int) Math.max(1, Math.min(connections, length / minRangeSize));
+            checkpoint = Checkpoint.create(checkpointFile(target), request.url(), length, validator, parts);
+        } else {
+            log.debug("Resume {} from checkpoint, {} of {} bytes done", request.url(), checkpoint.completed(), length);
+        }
+
+        List<Range> pending = new ArrayList<>();
+        for (Range range : checkpoint.ranges) {
+            if (!range.isDone()) {
+                pending.add(range);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, pending.size()),
+                new ThreadFactoryBuilder().namePrefix("cilantro-download-").daemon(true).build());
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            try {
+                checkpoint.save(channel);
+                List<Future<?>> futures = new ArrayList<>(pending.size());
+                for (Range range : pending) {
+                    Checkpoint cp = checkpoint;
+                    futures.add(executor.submit(() -> {
+                        fetch(range, channel, cp, decorator);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+                if (channel.size() > length) {
+                    channel.truncate(length);
+                }
+                // 删除检查点之前确保内容已经写入磁盘
+                channel.force(false);
+                completed = true;
+            } finally {
+                executor.shutdownNow();
+                if (!completed) {
+                    // 在关闭文件之前保存，保证记录的位置已经写入磁盘
+                    checkpoint.save(channel);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ResourceChangedException) {
+                checkpoint.delete();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IoRuntimeException("Failed to download " + request.url(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IoRuntimeException("Download interrupted: " + request.url(), e);
+        } catch (IOException e) {
+            throw new IoRuntimeException(e);
+        } finally {
+            if (completed) {
+                checkpoint.delete();
+            }
+        }
+    }
+
+    /**
+     * 下载一段内容，连接中断时从已写入的位置继续
+     */
+    private void fetch(Range range, FileChannel channel, Checkpoint checkpoint, UnaryOperator<InputStream> decorator)
+            throws IOException {
+        int attempts = 0;
+        byte[] buffer = new byte[IOUtil.DEFAULT_LARGE_BUFFER_SIZE];
+        while (!range.isDone()) {
+            long start = range.position;
+            Request.Builder builder = request.newBuilder()
+                    .replaceHeader(HeaderName.RANGE.toString(), BYTES + '=' + start + '-' + range.end)
+                    .replaceHeader(HeaderName.ACCEPT_ENCODING.toString(), IDENTITY);
+            if (validator != null) {
+                builder.replaceHeader(HeaderName.IF_RANGE.toString(), validator);
+            }
+            try (Response response = client.execute(builder.build(), options)) {
+                checkPartial(response, start);
+                ResponseBody body = response.body();
+                InputStream in = body == null ? null : body.byteStream();
+                if (in == null) {
+                    throw new EOFException("Empty body for range " + start + '-' + range.end);
+                }
+                if (decorator != null) {
+                    in = decorator.apply(in);
+                }
+                long unsaved = 0;
+                int n;
+                while (!range.isDone() && (n = in.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Download cancelled");
+                    }
+                    n = (int) Math.min(n, range.end - range.position + 1);
+                    ByteBuffer src = ByteBuffer.wrap(buffer, 0, n);
+                    long position = range.position;
+                    while (src.hasRemaining()) {
+                        position += channel.write(src, position);
+                    }
+                    range.position = position;
+                    unsaved += n;
+                    if (unsaved >= CHECKPOINT_INTERVAL) {
+                        checkpoint.save(channel);
+                        unsaved = 0;
+                    }
+                }
+                if (!range.isDone()) {
+                    throw new EOFException("Unexpected end of range " + start + '-' + range.end);
+                }
+            } catch (ResourceChangedException | InterruptedIOException | ClosedChannelException e) {
+                throw e;
+            } catch (IOException | IoRuntimeException e) {
+                // 有进展时重新计数
+                attempts = range.position > start ? 1 : attempts + 1;
+                if (attempts >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("Range {}-{} of {} failed at {}, retrying", start, range.end, request.url(), range.position, e);
+            }
+        }
+    }
+
+    private void checkPartial(Response response, long start) {
+        if (response.status() == 206) {
+            String contentRange = Utils.header(response.headers(), HeaderName.CONTENT_RANGE, true);
+            if (contentRange != null && !contentRange.startsWith(BYTES + ' ' + start + '-')) {
+                throw new ResourceChangedException("Unexpected Content-Range '" + contentRange + "' for " + request.url());
+            }
+            return;
+        }
+        if (response.status() == 200 || response.status() == 416) {
+            // If-Range不匹配时服务端返回完整内容，或者资源变短
+            throw new ResourceChangedException("Resource changed during download: " + request.url());
+        }
+        throw new CilantroStatusException(response.status(), response.reason(), response.request());
+    }
+
+    static File checkpointFile(File target) {
+        return new File(target.getParentFile(), target.getName() + CHECKPOINT_SUFFIX);
+    }
+
+    private static long parseLong(String value) {
+        if (StringUtil.isEmpty(value)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * {@code HEAD}请求的探测结果
+     */
+    static final class Probe {
+
+        final RangedDownload download;
+
+        final Map<String, List<String>> headers;
+
+        Probe(RangedDownload download, Map<String, List<String>> headers) {
+            this.download = download;
+            this.headers = headers;
+        }
+
+        /**
+         * 检查目标文件是否有可以继续的检查点
+         *
+         * @param target 目标文件
+         * @return 有可用的检查点时返回{@code true}
+         */
+        boolean resumable(File target) {
+            return target.isFile() && Checkpoint.load(checkpointFile(target), download.request.url(),
+                    download.length, download.validator) != null;
+        }
+
+    }
+
+    /**
+     * 一段内容，包含两端
+     */
+    static final class Range {
+
+        final long start;
+
+        final long end;
+
+        /**
+         * 下一个要写入的位置
+         */
+        volatile long position;
+
+        Range(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        boolean isDone() {
+            return position > end;
+        }
+
+    }
+
+    /**
+     * 资源在下载过程中发生了变化，检查点不再可用
+     */
+    private static final class ResourceChangedException extends IoRuntimeException {
+
+        private static final long serialVersionUID = 1990L;
+
+        ResourceChangedException(String message) {
+            super(message);
+        }
+
+    }
+
+    /**
+     * 检查点，以{@linkplain Properties}格式保存
+     */
+    static final class Checkpoint {
+
+        private final File file;
+
+        private final String url;
+
+        private final long length;
+
+        private final String validator;
+
+        private final List<Range> ranges;
+
+        private Checkpoint(File file, String url, long length, String validator, List<Range> ranges) {
+            this.file = file;
+            this.url = url;
+            this.length = length;
+            this.validator = validator;
+            this.ranges = ranges;
+        }
+
+        static Checkpoint create(File file, String url, long length, String validator, int parts) {
+            List<Range> ranges = new ArrayList<>(parts);
+            long size = length / parts;
+            for (int i = 0; i < parts; i++) {
+                long start = i * size;
+                long end = i == parts - 1 ? length - 1 : start + size - 1;
+                ranges.add(new Range(start, end, start));
+            }
+            return new Checkpoint(file, url, length, validator, ranges);
+        }
+
+        /**
+         * 读取检查点，文件不存在、格式错误或者与资源不匹配时返回{@code null}
+         */
+        static Checkpoint load(File file, String url, long length, String validator) {
+            if (!file.isFile()) {
+                return null;
+            }
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                properties.load(reader);
+                if (!url.equals(properties.getProperty("url"))
+                        || length != Long.parseLong(properties.getProperty("length"))
+                        || !StringUtil.equals(validator, properties.getProperty("validator"))) {
+                    log.debug("Discard stale checkpoint {}", file);
+                    return null;
+                }
+                int count = Integer.parseInt(properties.getProperty("ranges"));
+                List<Range> ranges = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    String[] parts = properties.getProperty("range." + i).split(",");
+                    ranges.add(new Range(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+                }
+                return new Checkpoint(file, url, length, validator, ranges);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Discard unreadable checkpoint {}", file, e);
+                return null;
+            }
+        }
+
+        long completed() {
+            long completed = 0;
+            for (Range range : ranges) {
+                completed += range.position - range.start;
+            }
+            return completed;
+        }
+
+        /**
+         * 先把目标文件写入磁盘，再写临时文件并原子替换，避免中断时留下损坏的检查点
+         * <p>必须先记录位置再刷盘，之后写入的内容不会被记录；目标文件已经关闭（比如被中断）时无法刷盘，保留上一次的检查点</p>
+         *
+         * @param channel 目标文件
+         */
+        synchronized void save(FileChannel channel) {
+            Properties properties = new Properties();
+            properties.setProperty("url", url);
+            properties.setProperty("length", String.valueOf(length));
+            if (validator != null) {
+                properties.setProperty("validator", validator);
+            }
+            properties.setProperty("ranges", String.valueOf(ranges.size()));
+            for (int i = 0; i < ranges.size(); i++) {
+                Range range = ranges.get(i);
+                properties.setProperty("range." + i, range.start + "," + range.end + "," + range.position);
+            }
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                log.debug("Skip checkpoint {}, target could not be flushed", file, e);
+                return;
+            }
+            File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+            try {
+                try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                    properties.store(writer, null);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Failed to save checkpoint {}", file, e);
+                temp.delete();
+            }
+        }
+
+        synchronized void delete() {
+            file.delete();
+        }
+
+    }
+
+}
@@ -1,9 +1,10 @@
 package com.jishukezhan.http.support;
 
 import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.core.http.UriTemplate;
+import com.jishukezhan.core.io.IOUtil;
 import com.jishukezhan.core.lang.*;
 import com.jishukezhan.http.*;
-import com.jishukezhan.http.exceptions.CilantroStatusException;
 import com.jishukezhan.json.TypeRef;
 
 import java.lang.reflect.Type;
@@ -11,6 +12,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @SuppressWarnings("unchecked")
 public abstract class RequestSupport<Req extends RequestSupport<Req>> {
@@ -123,6 +125,26 @@ public abstract class RequestSupport<Req extends RequestSupport<Req>> {
         return cilantro.getClient().execute(genRequest(), options());
     }
 
+    /**
+     * 异步执行请求
+     *
+     * @return 异步响应结果
+     */
+    public CompletableFuture<Response> executeAsync() {
+        return executeAsync(Cilantro.getDefault());
+    }
+
+    /**
+     * 自定义{@linkplain Cilantro}异步执行请求
+     *
+     * @param cilantro 自定义客户端
+     * @return 异步响应结果
+     */
+    public CompletableFuture<Response> executeAsync(@NonNull Cilantro cilantro) {
+        Preconditions.requireNonNull(cilantro, "cilantro == null");
+        return cilantro.getClient().executeAsync(genRequest(), options());
+    }
+
     /**
      * 执行请求,并且将响应内容转换为字符串
      *
@@ -139,17 +161,18 @@ public abstract class RequestSupport<Req extends RequestSupport<Req>> {
      * @return 响应内容
      */
     public String string(@NonNull Cilantro cilantro) {
-        Response response = execute(cilantro);
-        if (response.status() >= 500) {
-            String message = response.reason();
-            if (StringUtil.isEmpty(message)) {
-                message = response.body().string(CharsetUtil.UTF_8);
-            }
-            throw new CilantroStatusException(response.status(), message, response.request());
-        }
-        if (response.status() == 404 && !cilantro.isDecode404()) {
-            throw new CilantroStatusException(404, "Not Found", response.request());
-        }
+        return toString(execute(cilantro), cilantro);
+    }
+
+    /**
+     * 将响应内容转换为字符串，会校验响应状态码
+     *
+     * @param response 响应对象
+     * @param cilantro 自定义客户端
+     * @return 响应内容
+     */
+    private String toString(Response response, Cilantro cilantro) {
+        cilantro.checkStatus(response);
         ResponseBody body = response.body();
         return body.string(CharsetUtil.UTF_8);
     }
@@ -206,14 +229,99 @@ public abstract class RequestSupport<Req extends RequestSupport<Req>> {
 
     // 内部方法
     private <T> T bean(Type typeOfSrc, Cilantro cilantro) {
-        String jsonStr = string(cilantro);
-        if (StringUtil.hasLength(jsonStr)) {
-            return cilantro.getJson().fromJson(jsonStr, typeOfSrc);
+        return toBean(execute(cilantro), typeOfSrc, cilantro);
+    }
+
+    /**
+     * 将响应内容直接以流的方式交给JSON处理器解析，不会生成中间字符串，无论成功与否都会关闭响应
+     */
+    private <T> T toBean(Response response, Type typeOfSrc, Cilantro cilantro) {
+        try {
+            cilantro.checkStatus(response);
+            return cilantro.decodeJson(response.body(), typeOfSrc);
+        } finally {
+            IOUtil.closeQuietly(response);
         }
-        return null;
     }
 
-    private Request genRequest() {
+    // region async
+
+    /**
+     * 异步执行请求,并且将响应内容转换为字符串
+     *
+     * @return 异步响应内容
+     */
+    public CompletableFuture<String> stringAsync() {
+        return stringAsync(Cilantro.getDefault());
+    }
+
+    /**
+     * 自定义{@linkplain Cilantro}异步执行请求,并且将响应内容转换为字符串
+     *
+     * @param cilantro 自定义客户端
+     * @return 异步响应内容
+     */
+    public CompletableFuture<String> stringAsync(@NonNull Cilantro cilantro) {
+        return executeAsync(cilantro).thenApply(response -> toString(response, cilantro));
+    }
+
+    /**
+     * 异步执行请求,并将响应内容转为Java Bean
+     *
+     * @param clazz 目标类
+     * @param <T>   目标类的泛型
+     * @return 异步响应内容
+     */
+    public <T> CompletableFuture<T> beanAsync(@NonNull Class<T> clazz) {
+        return beanAsync(clazz, Cilantro.getDefault());
+    }
+
+    /**
+     * 异步执行请求,并将响应内容转为Java Bean
+     *
+     * @param clazz    目标类
+     * @param cilantro 自定义客户端
+     * @param <T>      目标类的泛型
+     * @return 异步响应内容
+     */
+    public <T> CompletableFuture<T> beanAsync(@NonNull Class<T> clazz, @NonNull Cilantro cilantro) {
+        Preconditions.requireNonNull(clazz, "clazz == null");
+        return beanAsync((Type) clazz, cilantro);
+    }
+
+    /**
+     * 异步执行请求,并将响应内容转为Java Bean
+     * <p>本方法一般适用于目标类型本身就是泛型,比如List,Map等</p>
+     *
+     * @param typeRef 目标类包装
+     * @param <T>     目标类的泛型
+     * @return 异步响应内容
+     */
+    public <T> CompletableFuture<T> beanAsync(@NonNull TypeRef<T> typeRef) {
+        return beanAsync(typeRef, Cilantro.getDefault());
+    }
+
+    /**
+     * 异步执行请求,并将响应内容转为Java Bean
+     * <p>本方法一般适用于目标类型本身就是泛型,比如List,Map等</p>
+     *
+     * @param typeRef  目标类包装
+     * @param cilantro 自定义客户端
+     * @param <T>      目标类的泛型
+     * @return 异步响应内容
+     */
+    public <T> CompletableFuture<T> beanAsync(@NonNull TypeRef<T> typeRef, @NonNull Cilantro cilantro) {
+        Preconditions.requireNonNull(typeRef, "typeRef == null");
+        return beanAsync(typeRef.getType(), cilantro);
+    }
+
+    private <T> CompletableFuture<T> beanAsync(Type typeOfSrc, Cilantro cilantro) {
+        return executeAsync(cilantro).thenApply(response -> toBean(response, typeOfSrc, cilantro));
+    }
+
+    // endregion
+
+    Request genRequest() {
         Request.Builder builder = Request.builder().method(method);
         if (CollectionUtil.isNotEmpty(headers)) {
             for (Map.Entry<String, String> entry : headers.entrySet()) {
@@ -221,23 +329,27 @@ public abstract class RequestSupport<Req extends RequestSupport<Req>> {
             }
         }
 
-        StringBuilder urlBuilder = new StringBuilder(url);
+        // 在这里一次性编码好，Client不需要再拆分查询参数重新编码
+        StringBuilder urlBuilder = new StringBuilder(url.length() + 32 * queryParams.size());
+        if (UriTemplate.needsReservedEncoding(url)) {
+            // 只编码空格、中文等非法字符，保留已有的分隔符和%XX
+            UriTemplate.encodeReserved(url, urlBuilder);
+        } else {
+            urlBuilder.append(url);
+        }
         if (CollectionUtil.isNotEmpty(queryParams)) {
-            if (url.contains("?")) {
-                urlBuilder.append(StringUtil.AMP);
-            } else {
-                urlBuilder.append('?');
-            }
+            boolean hasQuery = url.indexOf('?') >= 0;
             for (Map.Entry<String, List<String>> entry : queryParams.entrySet()) {
                 for (String val : entry.getValue()) {
-                    urlBuilder.append(entry.getKey()).append(StringUtil.EQUALS).append(val).append(StringUtil.AMP);
+                    urlBuilder.append(hasQuery ? StringUtil.AMP : "?");
+                    UriTemplate.encodeQueryParam(entry.getKey(), urlBuilder);
+                    urlBuilder.append(StringUtil.EQUALS);
+                    UriTemplate.encodeQueryParam(val, urlBuilder);
+                    hasQuery = true;
                 }
             }
-            urlBuilder.deleteCharAt(urlBuilder.length() - 1);
-            builder.url(urlBuilder.toString());
-        } else {
-            builder.url(url);
         }
+        builder.encodedUrl(urlBuilder.toString());
         builder.body(genBody());
         return builder.build();
     }
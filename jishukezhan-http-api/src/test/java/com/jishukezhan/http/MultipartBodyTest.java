@@ -0,0 +1,95 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.core.http.ContentType;
+import com.jishukezhan.core.lang.CharsetUtil;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class MultipartBodyTest {
+
+    @Test
+    public void testTextParts() {
+        MultipartBody body = MultipartBody.builder()
+                .add("name", "miles")
+                .add("city", "上海")
+                .add("empty", (String) null)
+                .add("quoted\"name", "a\r\nb")
+                .build();
+        assertContentLength(body);
+        assertTrue(body.isRepeatable());
+        String data = new String(body.getData(), CharsetUtil.UTF_8);
+        assertTrue(data.startsWith("--" + body.getBoundary() + "\r\n"));
+        assertTrue(data.endsWith("--" + body.getBoundary() + "--\r\n"));
+        assertTrue(data.contains("name=\"quoted%22name\""));
+    }
+
+    @Test
+    public void testByteBodyParts() {
+        MultipartBody body = MultipartBody.builder()
+                .add("bytes", "数据.bin",
+                        RequestBody.create(ContentType.DEFAULT_BINARY, new byte[]{0, 1, 2, (byte) 0xFF}))
+                .add("text", "说明.txt", RequestBody.create(ContentType.DEFAULT_TEXT, "你好, world"))
+                .add("empty", "empty.bin", RequestBody.create(ContentType.DEFAULT_BINARY, new byte[0]))
+                .build();
+        assertContentLength(body);
+        assertTrue(body.isRepeatable());
+    }
+
+    @Test
+    public void testFileParts() throws IOException {
+        File file = File.createTempFile("multipart", ".txt");
+        try {
+            Files.write(file.toPath(), "文件内容\nline 2".getBytes(CharsetUtil.UTF_8));
+            MultipartBody body = MultipartBody.builder()
+                    .add("file", file)
+                    .add(MultipartBody.Part.create("renamed", "报告.txt", file))
+                    .add("comment", "备注")
+                    .build();
+            assertContentLength(body);
+            assertTrue(body.isRepeatable());
+            // 文件可以重复写出
+            assertEquals(body.getData(), body.getData());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testInputStreamPart() {
+        MultipartBody body = MultipartBody.builder()
+                .add("name", "miles")
+                .add(MultipartBody.Part.create("stream", "流.bin",
+                        new ByteArrayInputStream("stream content".getBytes(CharsetUtil.UTF_8))))
+                .build();
+        assertEquals(body.contentLength(), -1);
+        assertFalse(body.isRepeatable());
+        String data = new String(body.getData(), CharsetUtil.UTF_8);
+        assertTrue(data.contains("filename=\"流.bin\""));
+        assertTrue(data.contains("\r\n\r\nstream content\r\n"));
+    }
+
+    @Test
+    public void testInputStreamBodyPart() {
+        MultipartBody body = MultipartBody.builder()
+                .add("stream", "a.bin", RequestBody.create(ContentType.DEFAULT_BINARY,
+                        new ByteArrayInputStream(new byte[]{1, 2, 3})))
+                .build();
+        assertEquals(body.contentLength(), -1);
+        assertFalse(body.isRepeatable());
+    }
+
+    private static void assertContentLength(MultipartBody body) {
+        long length = body.contentLength();
+        assertEquals(body.getData().length, length);
+        assertTrue(length > 0);
+    }
+
+}
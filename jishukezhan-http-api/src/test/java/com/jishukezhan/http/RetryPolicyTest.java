@@ -0,0 +1,131 @@
+package com.jishukezhan.http;
+
+import com.jishukezhan.core.exceptions.IoRuntimeException;
+import org.testng.annotations.Test;
+
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class RetryPolicyTest {
+
+    private static final Request GET = Request.builder().url("http://localhost/a").build();
+
+    @Test
+    public void testBudgetExhaustedAndRefilled() {
+        // 每个请求存入0.1个令牌，初始2个
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxRetries(1)
+                .backoff(0, 0, 1)
+                .jitter(0)
+                .budget(0.1, 2)
+                .build();
+        AtomicInteger attempts = new AtomicInteger();
+        RetryPolicy.Attempt refused = (request, timeoutMillis) -> {
+            attempts.incrementAndGet();
+            throw new IoRuntimeException(new ConnectException("Connection refused"));
+        };
+
+        assertEquals(executeAndFail(policy, refused, attempts), 2);
+        assertEquals(policy.availableRetries(), 1);
+        assertEquals(executeAndFail(policy, refused, attempts), 2);
+        assertEquals(policy.availableRetries(), 0);
+        // 预算用完，只尝试一次
+        assertEquals(executeAndFail(policy, refused, attempts), 1);
+        assertEquals(executeAndFail(policy, refused, attempts), 1);
+
+        // 成功的请求同样存入令牌，累计满1个之后可以再重试一次
+        RetryPolicy.Attempt ok = (request, timeoutMillis) -> response(200, Collections.emptyMap());
+        for (int i = 0; i < 7; i++) {
+            assertEquals(policy.execute(GET, ok).status(), 200);
+        }
+        assertEquals(policy.availableRetries(), 1);
+        assertEquals(executeAndFail(policy, refused, attempts), 2);
+        assertEquals(policy.availableRetries(), 0);
+    }
+
+    @Test
+    public void testBudgetCapacity() {
+        RetryPolicy policy = RetryPolicy.builder().budget(1, 3).build();
+        assertEquals(policy.availableRetries(), 3);
+        RetryPolicy.Attempt ok = (request, timeoutMillis) -> response(200, Collections.emptyMap());
+        for (int i = 0; i < 10; i++) {
+            policy.execute(GET, ok);
+        }
+        // 存入的令牌不超过容量
+        assertEquals(policy.availableRetries(), 3);
+    }
+
+    @Test
+    public void testBackoff() {
+        RetryPolicy policy = RetryPolicy.builder().backoff(100, 1000, 2).jitter(0).build();
+        assertEquals(policy.backoffMillis(0), 100);
+        assertEquals(policy.backoffMillis(1), 200);
+        assertEquals(policy.backoffMillis(3), 800);
+        assertEquals(policy.backoffMillis(4), 1000);
+        assertEquals(policy.backoffMillis(10), 1000);
+
+        RetryPolicy jittered = RetryPolicy.builder().backoff(100, 1000, 2).jitter(0.5).build();
+        for (int i = 0; i < 100; i++) {
+            long delay = jittered.backoffMillis(1);
+            assertTrue(delay >= 100 && delay <= 200, "delay = " + delay);
+        }
+    }
+
+    @Test
+    public void testRetryDelay() {
+        RetryPolicy policy = RetryPolicy.builder()
+                .maxRetries(2)
+                .backoff(100, 1000, 2)
+                .jitter(0)
+                .retryAfter(true, 5000)
+                .build();
+        assertEquals(policy.retryDelay(GET, 0, response(503, Collections.emptyMap()), null), 100);
+        assertEquals(policy.retryDelay(GET, 1, response(503, Collections.emptyMap()), null), 200);
+        assertEquals(policy.retryDelay(GET, 2, response(503, Collections.emptyMap()), null), -1);
+        assertEquals(policy.retryDelay(GET, 0, response(500, Collections.emptyMap()), null), -1);
+
+        // Retry-After超过上限时不重试
+        assertEquals(policy.retryDelay(GET, 0, response(429, retryAfter("2")), null), 2000);
+        assertEquals(policy.retryDelay(GET, 0, response(429, retryAfter("10")), null), -1);
+
+        // 非幂等请求只在连接失败时重试
+        Request post = Request.builder().url("http://localhost/a")
+                .method(Method.POST, RequestBody.create(null, "a=1")).build();
+        assertEquals(policy.retryDelay(post, 0, response(503, Collections.emptyMap()), null), -1);
+        assertEquals(policy.retryDelay(post, 0, null, new ConnectException()), 100);
+
+        // DNS解析失败重试也不会成功
+        assertEquals(policy.retryDelay(GET, 0, null, new UnknownHostException("localhost")), -1);
+    }
+
+    private static int executeAndFail(RetryPolicy policy, RetryPolicy.Attempt attempt, AtomicInteger attempts) {
+        attempts.set(0);
+        try {
+            policy.execute(GET, attempt);
+            fail("expected IoRuntimeException");
+        } catch (IoRuntimeException e) {
+            assertTrue(e.getCause() instanceof ConnectException);
+        }
+        return attempts.get();
+    }
+
+    private static Response response(int status, Map<String, List<String>> headers) {
+        return Response.builder().status(status).headers(headers).request(GET).build();
+    }
+
+    private static Map<String, List<String>> retryAfter(String value) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Retry-After", Collections.singletonList(value));
+        return headers;
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.jishukezhan.http.cache;
+
+import com.jishukezhan.core.lang.CharsetUtil;
+import com.jishukezhan.http.Request;
+import com.jishukezhan.http.Response;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class CacheEntryTest {
+
+    /**
+     * 收到响应的时间，取整到秒以便与HTTP日期比较
+     */
+    private static final long RESPONSE_MILLIS = 1_600_000_000_000L;
+
+    private static final long REQUEST_MILLIS = RESPONSE_MILLIS - 100;
+
+    private static final String URL = "http://localhost/a";
+
+    private static final CacheControl NONE = CacheControl.parse(null);
+
+    @Test
+    public void testMaxAge() {
+        CacheEntry entry = entry(URL, headers("Cache-Control", "max-age=60"));
+        assertEquals(entry.freshnessLifetimeMillis(), 60_000);
+        // 年龄包括请求往返的100毫秒
+        assertEquals(entry.currentAgeMillis(RESPONSE_MILLIS), 100);
+        assertTrue(entry.isFresh(RESPONSE_MILLIS + seconds(59), NONE));
+        assertFalse(entry.isFresh(RESPONSE_MILLIS + seconds(60), NONE));
+    }
+
+    @Test
+    public void testAgeHeader() {
+        CacheEntry entry = entry(URL, headers("Cache-Control", "max-age=60", "Age", "30"));
+        assertEquals(entry.currentAgeMillis(RESPONSE_MILLIS), seconds(30) + 100);
+        assertTrue(entry.isFresh(RESPONSE_MILLIS + seconds(29), NONE));
+        assertFalse(entry.isFresh(RESPONSE_MILLIS + seconds(30), NONE));
+    }
+
+    @Test
+    public void testRequestDirectives() {
+        CacheEntry entry = entry(URL, headers("Cache-Control", "max-age=60"));
+        long now = RESPONSE_MILLIS + seconds(20);
+        assertTrue(entry.isFresh(now, NONE));
+        assertFalse(entry.isFresh(now, directives("max-age=10")));
+        assertFalse(entry.isFresh(now, directives("min-fresh=45")));
+        assertTrue(entry.isFresh(now, directives("min-fresh=30")));
+
+        // 允许使用过期30秒以内的响应
+        long stale = RESPONSE_MILLIS + seconds(80);
+        assertFalse(entry.isFresh(stale, NONE));
+        assertTrue(entry.isFresh(stale, directives("max-stale=30")));
+        assertFalse(entry.isFresh(stale, directives("max-stale=10")));
+    }
+
+    @Test
+    public void testMustRevalidateAndNoCache() {
+        CacheEntry mustRevalidate = entry(URL, headers("Cache-Control", "max-age=60, must-revalidate"));
+        assertFalse(mustRevalidate.isFresh(RESPONSE_MILLIS + seconds(80), directives("max-stale=30")));
+
+        CacheEntry noCache = entry(URL, headers("Cache-Control", "no-cache, max-age=60"));
+        assertFalse(noCache.isFresh(RESPONSE_MILLIS, NONE));
+    }
+
+    @Test
+    public void testExpires() {
+        CacheEntry entry = entry(URL, headers("Date", date(RESPONSE_MILLIS),
+                "Expires", date(RESPONSE_MILLIS + seconds(120))));
+        assertEquals(entry.freshnessLifetimeMillis(), 120_000);
+        assertTrue(entry.isFresh(RESPONSE_MILLIS + seconds(119), NONE));
+        assertFalse(entry.isFresh(RESPONSE_MILLIS + seconds(120), NONE));
+
+        // max-age优先于Expires
+        CacheEntry maxAge = entry(URL, headers("Cache-Control", "max-age=10",
+                "Date", date(RESPONSE_MILLIS), "Expires", date(RESPONSE_MILLIS + seconds(120))));
+        assertEquals(maxAge.freshnessLifetimeMillis(), 10_000);
+
+        // 无效的Expires表示已经过期
+        CacheEntry invalid = entry(URL, headers("Expires", "0"));
+        assertEquals(invalid.freshnessLifetimeMillis(), 0);
+        assertFalse(invalid.isFresh(RESPONSE_MILLIS, NONE));
+    }
+
+    @Test
+    public void testHeuristicFreshness() {
+        Map<String, List<String>> headers = headers("Date", date(RESPONSE_MILLIS),
+                "Last-Modified", date(RESPONSE_MILLIS - TimeUnit.DAYS.toMillis(10)));
+        assertEquals(entry(URL, headers).freshnessLifetimeMillis(), TimeUnit.DAYS.toMillis(1));
+        // 带查询参数的地址不使用启发式新鲜度
+        assertEquals(entry(URL + "?q=1", headers).freshnessLifetimeMillis(), 0);
+        assertEquals(entry(URL, headers("Cache-Control", "public")).freshnessLifetimeMillis(), 0);
+    }
+
+    @Test
+    public void testConditionalRequest() {
+        Request request = Request.builder().url(URL).build();
+        assertNull(entry(URL, headers("Cache-Control", "max-age=60")).conditionalRequest(request));
+
+        String lastModified = date(RESPONSE_MILLIS - seconds(3600));
+        CacheEntry entry = entry(URL, headers("ETag", "\"v1\"", "Last-Modified", lastModified));
+        Request conditional = entry.conditionalRequest(request);
+        assertEquals(CacheHeaders.first(conditional.headers(), CacheEntry.IF_NONE_MATCH), "\"v1\"");
+        assertEquals(CacheHeaders.first(conditional.headers(), CacheEntry.IF_MODIFIED_SINCE), lastModified);
+        // 原始请求不受影响
+        assertNull(CacheHeaders.first(request.headers(), CacheEntry.IF_NONE_MATCH));
+    }
+
+    @Test
+    public void testRevalidated() {
+        CacheEntry entry = entry(URL, headers("Cache-Control", "max-age=0", "ETag", "\"v1\"",
+                "Content-Type", "text/plain", "Content-Length", "5"));
+        assertFalse(entry.isFresh(RESPONSE_MILLIS, NONE));
+
+        long later = RESPONSE_MILLIS + seconds(100);
+        CacheEntry revalidated = entry.revalidated(headers("cache-control", "max-age=60", "ETag", "\"v2\"",
+                "Content-Length", "0"), later - 100, later);
+        assertEquals(revalidated.etag(), "\"v2\"");
+        assertEquals(revalidated.freshnessLifetimeMillis(), 60_000);
+        assertTrue(revalidated.isFresh(later, NONE));
+
+        // 内容相关的消息头保持缓存时的值
+        Response response = revalidated.toResponse(Request.builder().url(URL).build(), later);
+        assertEquals(CacheHeaders.first(response.headers(), "Content-Length"), "5");
+        assertEquals(CacheHeaders.first(response.headers(), "Content-Type"), "text/plain");
+        assertEquals(CacheHeaders.values(response.headers(), "Cache-Control"), Collections.singletonList("max-age=60"));
+    }
+
+    @Test
+    public void testVary() {
+        Request request = Request.builder().url(URL).addHeader("Accept-Language", "zh-CN").build();
+        Response response = Response.builder().status(200).reason("OK").request(request)
+                .headers(headers("Cache-Control", "max-age=60", "Vary", "Accept-Language")).build();
+        CacheEntry entry = CacheEntry.of(request, response, new byte[0], REQUEST_MILLIS, RESPONSE_MILLIS);
+
+        assertTrue(entry.matchesVary(Request.builder().url(URL).addHeader("Accept-Language", "zh-CN").build()));
+        assertFalse(entry.matchesVary(Request.builder().url(URL).addHeader("Accept-Language", "en").build()));
+        assertFalse(entry.matchesVary(Request.builder().url(URL).build()));
+
+        assertTrue(CacheEntry.hasVaryAll(headers("Vary", "Accept-Encoding, *")));
+        assertFalse(CacheEntry.hasVaryAll(headers("Vary", "Accept-Encoding")));
+    }
+
+    @Test
+    public void testSerialization() throws IOException {
+        Request request = Request.builder().url(URL).addHeader("Accept", "text/plain").build();
+        Response response = Response.builder().status(200).reason(null).request(request)
+                .headers(headers("Cache-Control", "max-age=60", "ETag", "\"v1\"", "Vary", "Accept")).build();
+        byte[] body = "你好".getBytes(CharsetUtil.UTF_8);
+        CacheEntry entry = CacheEntry.of(request, response, body, REQUEST_MILLIS, RESPONSE_MILLIS);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.writeTo(new DataOutputStream(out));
+        CacheEntry restored = CacheEntry.readFrom(new DataInputStream(new ByteArrayInputStream(out.toByteArray())));
+
+        assertEquals(restored.url(), URL);
+        assertEquals(restored.size(), body.length);
+        assertEquals(restored.etag(), "\"v1\"");
+        assertEquals(restored.freshnessLifetimeMillis(), 60_000);
+        assertEquals(restored.currentAgeMillis(RESPONSE_MILLIS), entry.currentAgeMillis(RESPONSE_MILLIS));
+        assertTrue(restored.matchesVary(request));
+
+        Response cached = restored.toResponse(request, RESPONSE_MILLIS + seconds(5));
+        assertEquals(cached.status(), 200);
+        assertNull(cached.reason());
+        assertEquals(cached.body().string(CharsetUtil.UTF_8), "你好");
+        assertEquals(CacheHeaders.first(cached.headers(), "Age"), "5");
+
+        byte[] corrupted = out.toByteArray();
+        corrupted[0] = 0;
+        expectThrows(IOException.class,
+                () -> CacheEntry.readFrom(new DataInputStream(new ByteArrayInputStream(corrupted))));
+    }
+
+    private static CacheEntry entry(String url, Map<String, List<String>> headers) {
+        return new CacheEntry(url, 200, "OK", headers, Collections.emptyMap(), new byte[0],
+                REQUEST_MILLIS, RESPONSE_MILLIS);
+    }
+
+    private static CacheControl directives(String value) {
+        return CacheControl.parse(headers("Cache-Control", value));
+    }
+
+    private static Map<String, List<String>> headers(String... nameAndValues) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (int i = 0; i < nameAndValues.length; i += 2) {
+            headers.put(nameAndValues[i], Arrays.asList(nameAndValues[i + 1]));
+        }
+        return headers;
+    }
+
+    private static String date(long millis) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+    }
+
+    private static long seconds(long seconds) {
+        return TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+}
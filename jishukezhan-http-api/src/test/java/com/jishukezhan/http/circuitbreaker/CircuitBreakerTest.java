@@ -0,0 +1,185 @@
+package com.jishukezhan.http.circuitbreaker;
+
+import com.jishukezhan.http.Client;
+import com.jishukezhan.http.exceptions.CallNotPermittedException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
+
+public class CircuitBreakerTest {
+
+    private static final String HOST = "localhost:8080";
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long WAIT_MILLIS = 50;
+
+    @Test
+    public void testOpenOnFailureRate() {
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = breaker(builder(transitions).slidingWindow(10, 4));
+        call(breaker, true);
+        call(breaker, true);
+        call(breaker, false);
+        // 未达到最少请求数，不计算失败率
+        assertEquals(breaker.state(), CircuitState.CLOSED);
+        assertEquals(breaker.stats().getFailureRate(), -1f);
+
+        call(breaker, true);
+        assertEquals(breaker.state(), CircuitState.OPEN);
+        assertEquals(transitions, Arrays.asList("CLOSED->OPEN"));
+
+        CallNotPermittedException e = expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+        assertEquals(e.getReason(), CallNotPermittedException.Reason.CIRCUIT_OPEN);
+        assertEquals(e.getHost(), HOST);
+        assertEquals(breaker.stats().getNotPermittedCalls(), 1);
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        CircuitBreaker breaker = breaker(builder(new ArrayList<>()).slidingWindow(4, 4));
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, false);
+        call(breaker, false);
+        assertEquals(breaker.stats().getFailureRate(), 25f);
+
+        // 最旧的失败被覆盖
+        call(breaker, false);
+        CircuitBreakerStats stats = breaker.stats();
+        assertEquals(stats.getBufferedCalls(), 4);
+        assertEquals(stats.getFailedCalls(), 0);
+        assertEquals(stats.getFailureRate(), 0f);
+
+        call(breaker, true);
+        assertEquals(breaker.state(), CircuitState.CLOSED);
+        call(breaker, true);
+        assertEquals(breaker.state(), CircuitState.OPEN);
+    }
+
+    @Test
+    public void testOpenOnSlowCallRate() {
+        CircuitBreaker breaker = breaker(builder(new ArrayList<>()).slidingWindow(4, 4).slowCall(100, 50));
+        long slow = TimeUnit.MILLISECONDS.toNanos(100);
+        breaker.onResult(breaker.acquire(false), false, FAST);
+        breaker.onResult(breaker.acquire(false), false, FAST);
+        breaker.onResult(breaker.acquire(false), false, slow);
+        assertEquals(breaker.state(), CircuitState.CLOSED);
+        breaker.onResult(breaker.acquire(false), false, slow);
+        assertEquals(breaker.state(), CircuitState.OPEN);
+    }
+
+    @Test
+    public void testHalfOpenThenClosed() throws InterruptedException {
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = open(breaker(builder(transitions).slidingWindow(2, 2).openState(WAIT_MILLIS, 2)));
+        // 等待时间结束前一直拒绝
+        expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+
+        TimeUnit.MILLISECONDS.sleep(WAIT_MILLIS * 2);
+        long first = breaker.acquire(false);
+        assertEquals(breaker.state(), CircuitState.HALF_OPEN);
+        long second = breaker.acquire(false);
+        // 只放行两个试探请求
+        expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+
+        breaker.onResult(first, false, FAST);
+        assertEquals(breaker.state(), CircuitState.HALF_OPEN);
+        breaker.onResult(second, false, FAST);
+        assertEquals(breaker.state(), CircuitState.CLOSED);
+        assertEquals(transitions, Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"));
+        assertEquals(breaker.stats().getBufferedCalls(), 0);
+    }
+
+    @Test
+    public void testHalfOpenThenReopen() throws InterruptedException {
+        List<String> transitions = new ArrayList<>();
+        CircuitBreaker breaker = open(breaker(builder(transitions).slidingWindow(2, 2).openState(WAIT_MILLIS, 2)));
+        TimeUnit.MILLISECONDS.sleep(WAIT_MILLIS * 2);
+        long first = breaker.acquire(false);
+        long second = breaker.acquire(false);
+        breaker.onResult(first, true, FAST);
+        breaker.onResult(second, false, FAST);
+        assertEquals(breaker.state(), CircuitState.OPEN);
+        assertEquals(transitions, Arrays.asList("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN"));
+        expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+    }
+
+    @Test
+    public void testHalfOpenIgnoredReleasesPermit() throws InterruptedException {
+        CircuitBreaker breaker = open(breaker(builder(new ArrayList<>())
+                .slidingWindow(2, 2).openState(WAIT_MILLIS, 1)));
+        TimeUnit.MILLISECONDS.sleep(WAIT_MILLIS * 2);
+        long cancelled = breaker.acquire(false);
+        expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+
+        // 取消的试探请求不计入结果，许可可以再次使用
+        breaker.onIgnored(cancelled);
+        assertEquals(breaker.state(), CircuitState.HALF_OPEN);
+        breaker.onResult(breaker.acquire(false), false, FAST);
+        assertEquals(breaker.state(), CircuitState.CLOSED);
+    }
+
+    @Test
+    public void testStalePermitNotRecorded() {
+        CircuitBreaker breaker = breaker(builder(new ArrayList<>()).slidingWindow(2, 2));
+        long stale = breaker.acquire(false);
+        open(breaker);
+        // 打开之前发出的请求在打开之后完成，不影响新的状态
+        breaker.onResult(stale, true, FAST);
+        assertEquals(breaker.state(), CircuitState.OPEN);
+        assertEquals(breaker.stats().getBufferedCalls(), 0);
+    }
+
+    @Test
+    public void testBulkhead() {
+        CircuitBreaker breaker = breaker(builder(new ArrayList<>()).maxConcurrentCallsPerHost(1));
+        long permit = breaker.acquire(false);
+        CallNotPermittedException e = expectThrows(CallNotPermittedException.class, () -> breaker.acquire(false));
+        assertEquals(e.getReason(), CallNotPermittedException.Reason.BULKHEAD_FULL);
+        assertEquals(breaker.stats().getAvailableConcurrentCalls(), 0);
+
+        breaker.onResult(permit, false, FAST);
+        CircuitBreakerStats stats = breaker.stats();
+        assertEquals(stats.getAvailableConcurrentCalls(), 1);
+        assertEquals(stats.getBulkheadRejectedCalls(), 1);
+        assertEquals(stats.getBufferedCalls(), 1);
+    }
+
+    private static CircuitBreakerClient.Builder builder(List<String> transitions) {
+        return CircuitBreakerClient.builder(new Client.DefaultClient())
+                .failureRateThreshold(50)
+                .listener(new CircuitBreakerListener() {
+                    @Override
+                    public void onStateTransition(String host, CircuitState from, CircuitState to) {
+                        transitions.add(from + "->" + to);
+                    }
+                });
+    }
+
+    private static CircuitBreaker breaker(CircuitBreakerClient.Builder builder) {
+        return new CircuitBreaker(HOST, builder.build());
+    }
+
+    /**
+     * 连续失败直到打开
+     */
+    private static CircuitBreaker open(CircuitBreaker breaker) {
+        while (breaker.state() == CircuitState.CLOSED) {
+            call(breaker, true);
+        }
+        assertEquals(breaker.state(), CircuitState.OPEN);
+        return breaker;
+    }
+
+    private static void call(CircuitBreaker breaker, boolean failure) {
+        breaker.onResult(breaker.acquire(false), failure, FAST);
+    }
+
+}
@@ -0,0 +1,199 @@
+package com.jishukezhan.http.dns;
+
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+public class CachingDnsTest {
+
+    private static final String HOST = "api.example.com";
+
+    @Test
+    public void testHitStaleMiss() throws Exception {
+        FakeDns fake = new FakeDns(address(1));
+        CachingDns dns = builder(fake).ttlMillis(100).staleMillis(300).build();
+
+        assertEquals(dns.lookup(HOST), address(1));
+        fake.next = address(2);
+        // 有效期内命中缓存，主机名不区分大小写
+        assertEquals(dns.lookup("API.Example.com"), address(1));
+        assertEquals(fake.calls.get(), 1);
+
+        // 过期后在stale时间内返回旧结果，同时刷新
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 2);
+        assertEquals(dns.lookup(HOST), address(2));
+        assertEquals(fake.calls.get(), 2);
+
+        // 超过stale时间后同步解析
+        fake.next = address(3);
+        TimeUnit.MILLISECONDS.sleep(500);
+        assertEquals(dns.lookup(HOST), address(3));
+        assertEquals(fake.calls.get(), 3);
+
+        DnsStats stats = dns.stats();
+        assertEquals(stats.getHitCount(), 2);
+        assertEquals(stats.getStaleHitCount(), 1);
+        assertEquals(stats.getMissCount(), 2);
+        assertEquals(stats.getRefreshCount(), 1);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsOldAddresses() throws Exception {
+        FakeDns fake = new FakeDns(address(1));
+        CachingDns dns = builder(fake).ttlMillis(100).staleMillis(2000).negativeTtlMillis(300).build();
+        assertEquals(dns.lookup(HOST), address(1));
+
+        fake.next = null;
+        TimeUnit.MILLISECONDS.sleep(150);
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 2);
+        assertEquals(dns.stats().getFailureCount(), 1);
+
+        // 刷新失败后在失败缓存时长内不再刷新，继续返回旧结果
+        fake.next = address(2);
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 2);
+
+        TimeUnit.MILLISECONDS.sleep(350);
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 3);
+        assertEquals(dns.lookup(HOST), address(2));
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        FakeDns fake = new FakeDns(null);
+        CachingDns dns = builder(fake).negativeTtlMillis(200).build();
+        expectThrows(UnknownHostException.class, () -> dns.lookup(HOST));
+        expectThrows(UnknownHostException.class, () -> dns.lookup(HOST));
+        assertEquals(fake.calls.get(), 1);
+
+        // 失败缓存过期后重新解析
+        fake.next = address(1);
+        TimeUnit.MILLISECONDS.sleep(250);
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 2);
+
+        FakeDns uncached = new FakeDns(null);
+        CachingDns noNegative = builder(uncached).negativeTtlMillis(0).build();
+        expectThrows(UnknownHostException.class, () -> noNegative.lookup(HOST));
+        expectThrows(UnknownHostException.class, () -> noNegative.lookup(HOST));
+        assertEquals(uncached.calls.get(), 2);
+    }
+
+    @Test
+    public void testRefreshAheadForHotNames() throws Exception {
+        FakeDns fake = new FakeDns(address(1));
+        CachingDns dns = builder(fake).ttlMillis(400).refreshAhead(0.25f, 2).build();
+        assertEquals(dns.lookup(HOST), address(1));
+        fake.next = address(2);
+
+        TimeUnit.MILLISECONDS.sleep(150);
+        // 命中次数不足，不提前刷新
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 1);
+        // 成为热点主机名后在过期前刷新
+        assertEquals(dns.lookup(HOST), address(1));
+        assertEquals(fake.calls.get(), 2);
+        assertEquals(dns.lookup(HOST), address(2));
+        assertEquals(dns.stats().getMissCount(), 1);
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FakeDns fake = new FakeDns(address(1)) {
+            @Override
+            public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new UnknownHostException(hostname);
+                }
+                return super.lookup(hostname);
+            }
+        };
+        CachingDns dns = builder(fake).build();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<InetAddress>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pool.submit(() -> dns.lookup(HOST)));
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            TimeUnit.MILLISECONDS.sleep(100);
+            release.countDown();
+            for (Future<List<InetAddress>> future : futures) {
+                assertEquals(future.get(5, TimeUnit.SECONDS), address(1));
+            }
+            assertEquals(fake.calls.get(), 1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testIpLiteralNotCached() throws Exception {
+        FakeDns fake = new FakeDns(address(1));
+        CachingDns dns = builder(fake).build();
+        dns.lookup("10.0.0.1");
+        dns.lookup("10.0.0.1");
+        assertEquals(fake.calls.get(), 2);
+        assertEquals(dns.stats().getEntryCount(), 0);
+    }
+
+    /**
+     * 后台刷新在调用线程上执行，便于断言
+     */
+    private static CachingDns.Builder builder(Dns delegate) {
+        return CachingDns.builder(delegate).executor(Runnable::run);
+    }
+
+    private static List<InetAddress> address(int last) throws UnknownHostException {
+        return Collections.singletonList(InetAddress.getByAddress(HOST, new byte[]{10, 0, 0, (byte) last}));
+    }
+
+    /**
+     * 返回{@code next}并记录调用次数，{@code next}为{@code null}时解析失败
+     */
+    private static class FakeDns implements Dns {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        volatile List<InetAddress> next;
+
+        FakeDns(List<InetAddress> next) {
+            this.next = next;
+        }
+
+        @Override
+        public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+            calls.incrementAndGet();
+            List<InetAddress> result = next;
+            if (result == null) {
+                throw new UnknownHostException(hostname);
+            }
+            return result;
+        }
+
+    }
+
+}
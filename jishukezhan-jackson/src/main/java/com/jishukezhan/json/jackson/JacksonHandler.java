@@ -1,13 +1,19 @@
 package com.jishukezhan.json.jackson;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jishukezhan.core.lang.CharsetUtil;
 import com.jishukezhan.json.Handler;
 import com.jishukezhan.json.JsonRuntimeException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 public class JacksonHandler implements Handler {
 
@@ -41,31 +47,73 @@ public class JacksonHandler implements Handler {
     @Override
     public <T> T deserialize(String json, Type typeOfT) throws JsonRuntimeException {
         try {
-            if (JacksonUtil.isJacksonJavaType(typeOfT)) {
-                return objectMapper.readValue(json, JacksonUtil.toJavaType(typeOfT));
+            JavaType javaType = resolveJavaType(typeOfT);
+            if (javaType == null) {
+                return null;
             }
-            // is primitive ?
+            return objectMapper.readValue(json, javaType);
+        } catch (IOException e) {
+            throw new JsonRuntimeException(e);
+        }
+    }
 
-            if (JacksonUtil.isClass(typeOfT)) {
-                return objectMapper.readValue(json, objectMapper.getTypeFactory().constructType(JacksonUtil.toClass(typeOfT)));
+    /**
+     * 从字节流中读取JSON并反序列化为Java对象，{@code UTF-8}编码时直接按字节解析，不会生成中间字符串
+     * <p>字节流由调用方关闭，解析时关闭了{@linkplain JsonParser.Feature#AUTO_CLOSE_SOURCE}</p>
+     *
+     * @param in      JSON字节流
+     * @param charset 字节流的编码，为{@code null}时采用{@code UTF-8}
+     * @param typeOfT Java类型
+     * @return Java对象
+     * @throws JsonRuntimeException 反序列化出现异常
+     */
+    @Override
+    public <T> T deserialize(InputStream in, Charset charset, Type typeOfT) throws JsonRuntimeException {
+        try {
+            JavaType javaType = resolveJavaType(typeOfT);
+            if (javaType == null) {
+                return null;
             }
-
-            if (JacksonUtil.isParameterizedType(typeOfT)) {
-                ParameterizedType pType = (ParameterizedType) typeOfT;
-                Class<?> parametrized = JacksonUtil.toClass(pType.getRawType());
-                Type[] parameterTypes = pType.getActualTypeArguments();
-                Class<?>[] parameterClasses = new Class[parameterTypes.length];
-                for (int i = 0; i < parameterTypes.length; i++) {
-                    parameterClasses[i] = JacksonUtil.toClass(parameterTypes[i]);
-                }
-                return objectMapper.readValue(json, objectMapper.getTypeFactory().constructParametricType(parametrized, parameterClasses));
+            try (JsonParser parser = charset == null || CharsetUtil.UTF_8.equals(charset) ?
+                    objectMapper.getFactory().createParser(in) :
+                    objectMapper.getFactory().createParser(new InputStreamReader(in, charset))) {
+                parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+                return objectMapper.readValue(parser, javaType);
             }
-            return null;
         } catch (IOException e) {
             throw new JsonRuntimeException(e);
         }
     }
 
+    /**
+     * 将Java类型转为Jackson的{@linkplain JavaType}
+     *
+     * @param typeOfT Java类型
+     * @return 无法转换时返回{@code null}
+     */
+    private JavaType resolveJavaType(Type typeOfT) {
+        if (JacksonUtil.isJacksonJavaType(typeOfT)) {
+            return JacksonUtil.toJavaType(typeOfT);
+        }
+        // is primitive ?
+
+        if (JacksonUtil.isClass(typeOfT)) {
+            return objectMapper.getTypeFactory().constructType(JacksonUtil.toClass(typeOfT));
+        }
+
+        if (JacksonUtil.isParameterizedType(typeOfT)) {
+            ParameterizedType pType = (ParameterizedType) typeOfT;
+            Class<?> parametrized = JacksonUtil.toClass(pType.getRawType());
+            Type[] parameterTypes = pType.getActualTypeArguments();
+            Class<?>[] parameterClasses = new Class[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                parameterClasses[i] = JacksonUtil.toClass(parameterTypes[i]);
+            }
+            return objectMapper.getTypeFactory().constructParametricType(parametrized, parameterClasses);
+        }
+        return null;
+    }
+
     public void setObjectMapper(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
     }
@@ -1,8 +1,13 @@
 package com.jishukezhan.json;
 
 import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.core.io.IOUtil;
+import com.jishukezhan.core.lang.CharsetUtil;
 
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 public interface Handler {
 
@@ -27,4 +32,20 @@ public interface Handler {
      */
     <T> T deserialize(@NonNull String json, @NonNull Type typeOfT) throws JsonRuntimeException;
 
+    /**
+     * 从字节流中读取JSON并反序列化为Java对象，不会关闭输入流
+     * <p>默认实现会先将流读取为字符串，支持流式解析的实现应当覆盖本方法</p>
+     *
+     * @param in      JSON字节流
+     * @param charset 字节流的编码，为{@code null}时采用{@code UTF-8}
+     * @param typeOfT Java类型
+     * @param <T>     泛型类型
+     * @return Java对象
+     * @throws JsonRuntimeException 反序列化出现异常
+     */
+    default <T> T deserialize(@NonNull InputStream in, @Nullable Charset charset, @NonNull Type typeOfT)
+            throws JsonRuntimeException {
+        return deserialize(IOUtil.toString(in, CharsetUtil.getCharset(charset, CharsetUtil.UTF_8)), typeOfT);
+    }
+
 }
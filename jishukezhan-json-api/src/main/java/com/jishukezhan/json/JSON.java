@@ -1,6 +1,8 @@
 package com.jishukezhan.json;
 
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 public class JSON {
 
@@ -33,6 +35,22 @@ public class JSON {
         return handler.deserialize(json, typeOfT);
     }
 
+    /**
+     * 从字节流中读取JSON并反序列化为Java对象，不会关闭输入流
+     *
+     * @param in      JSON字节流
+     * @param charset 字节流的编码，为{@code null}时采用{@code UTF-8}
+     * @param typeOfT Java类型
+     * @param <T>     泛型类型
+     * @return Java对象
+     */
+    public <T> T fromJson(InputStream in, Charset charset, Type typeOfT) {
+        if (in == null) {
+            return null;
+        }
+        return handler.deserialize(in, charset, typeOfT);
+    }
+
     public JSON setHandler(Handler handler) {
         this.handler = handler;
         return this;
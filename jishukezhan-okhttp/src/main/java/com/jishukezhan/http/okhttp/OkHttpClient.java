@@ -1,24 +1,39 @@
 package com.jishukezhan.http.okhttp;
 
 import com.jishukezhan.annotation.NonNull;
+import com.jishukezhan.annotation.Nullable;
 import com.jishukezhan.core.exceptions.IoRuntimeException;
 import com.jishukezhan.core.http.ContentType;
 import com.jishukezhan.core.io.FastByteArrayOutputStream;
 import com.jishukezhan.core.io.IOUtil;
 import com.jishukezhan.core.lang.CharsetUtil;
-import com.jishukezhan.core.lang.CollectionUtil;
 import com.jishukezhan.core.lang.Preconditions;
 import com.jishukezhan.core.lang.StringUtil;
 import com.jishukezhan.http.*;
+import com.jishukezhan.http.dns.Dns;
+import com.jishukezhan.http.event.CallRecorder;
+import com.jishukezhan.http.event.CallTimings;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
+import okhttp3.ConnectionSpec;
 import okhttp3.Credentials;
+import okhttp3.Dispatcher;
 import okhttp3.MediaType;
+import okhttp3.Protocol;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -28,20 +43,80 @@ import java.util.concurrent.TimeUnit;
  */
 public class OkHttpClient implements Client {
 
+    /**
+     * 缓存派生客户端的最大数量
+     */
+    private static final int MAX_SCOPED_CLIENTS = 64;
+
+    private static final List<Protocol> HTTP_1_1 = Collections.singletonList(Protocol.HTTP_1_1);
+
+    private static final List<Protocol> HTTP_2 = Collections.unmodifiableList(
+            Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+
+    private static final List<Protocol> H2_PRIOR_KNOWLEDGE = Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+
     private final okhttp3.OkHttpClient delegate;
 
+    /**
+     * 按照请求选项缓存的派生客户端，均与{@link #delegate}共享连接池和调度器
+     */
+    private final Map<ClientKey, okhttp3.OkHttpClient> scopedClients =
+            Collections.synchronizedMap(new LinkedHashMap<ClientKey, okhttp3.OkHttpClient>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1990L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ClientKey, okhttp3.OkHttpClient> eldest) {
+                    return size() > MAX_SCOPED_CLIENTS;
+                }
+            });
+
     public OkHttpClient() {
         this(new okhttp3.OkHttpClient());
     }
 
+    /**
+     * 包装已有的客户端，派生出的客户端与其共享连接池和调度器，并在原有的{@code EventListener}之外记录各阶段耗时
+     *
+     * @param delegate OkHttp客户端
+     */
     public OkHttpClient(@NonNull okhttp3.OkHttpClient delegate) {
-        this.delegate = Preconditions.requireNonNull(delegate);
+        Preconditions.requireNonNull(delegate);
+        this.delegate = delegate.newBuilder()
+                .eventListenerFactory(TimingEventListener.factory(delegate.eventListenerFactory()))
+                .build();
     }
 
     public OkHttpClient(@NonNull Options options) {
         Preconditions.requireNonNull(options, "options == null");
 
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(options.maxConnections());
+        dispatcher.setMaxRequestsPerHost(options.maxConnectionsPerRoute());
+
         okhttp3.OkHttpClient.Builder builder = new okhttp3.OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                // ConnectionPool限制的是整个连接池的空闲连接数，不区分主机
+                .connectionPool(new ConnectionPool(options.maxConnections(), 5, TimeUnit.MINUTES))
+                // 记录各阶段耗时
+                .eventListenerFactory(TimingEventListener.factory(null));
+//        // debugger
+//        DebugLoggingInterceptor debugLoggingInterceptor = DebugLoggingInterceptor.INSTANCE;
+//        debugLoggingInterceptor.setLoggingLevel(DebugLoggingInterceptor.Level.ALL);
+//        builder.addNetworkInterceptor(debugLoggingInterceptor);
+
+        this.delegate = configure(builder, options).build();
+        this.scopedClients.put(ClientKey.of(options), this.delegate);
+    }
+
+    /**
+     * 将请求选项应用到{@code builder}，重试由{@linkplain RetryPolicy}在请求级别处理
+     *
+     * @param builder 构建器
+     * @param options 请求选项
+     * @return {@code builder}
+     */
+    private static okhttp3.OkHttpClient.Builder configure(okhttp3.OkHttpClient.Builder builder, Options options) {
+        builder
                 // 连接超时
                 .connectTimeout(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
                 // 读取超时
@@ -49,11 +124,25 @@ public class OkHttpClient implements Client {
                 // 写出超时
                 .writeTimeout(options.writeTimeoutMillis(), TimeUnit.MILLISECONDS)
                 // 3XX自动跳转
-                .followRedirects(options.followRedirects());
-//        // debugger
-//        DebugLoggingInterceptor debugLoggingInterceptor = DebugLoggingInterceptor.INSTANCE;
-//        debugLoggingInterceptor.setLoggingLevel(DebugLoggingInterceptor.Level.ALL);
-//        builder.addNetworkInterceptor(debugLoggingInterceptor);
+                .followRedirects(options.followRedirects())
+                // 协议
+                .protocols(protocols(options.protocol()));
+
+        // 域名解析，默认的Dns.SYSTEM沿用builder中的设置
+        if (options.dns() != Dns.SYSTEM) {
+            builder.dns(new OkHttpDns(options.dns()));
+        }
+
+        // TLS，未设置时沿用builder中的设置
+        Options.SSLConfig sslConfig = options.sslConfig();
+        if (sslConfig != null) {
+            // 共享同一个SSLSocketFactory，派生的客户端之间可以恢复TLS会话
+            builder.sslSocketFactory(sslConfig.socketFactory(), sslConfig.trustManager());
+            // OkHttp按照ConnectionSpec设置协议版本和加密套件，会覆盖SSLSocketFactory中的设置
+            if (sslConfig.protocols() != null || sslConfig.cipherSuites() != null) {
+                builder.connectionSpecs(Arrays.asList(connectionSpec(sslConfig), ConnectionSpec.CLEARTEXT));
+            }
+        }
 
         // 代理
         ProxyInfo proxyInfo = options.proxyInfo();
@@ -65,66 +154,211 @@ public class OkHttpClient implements Client {
                         .build());
             }
         }
+        return builder;
+    }
 
-        // 重试机制
-        if (options.retryCount() > 0) {
-            builder.addNetworkInterceptor(new Retry(options.retryCount()));
+    /**
+     * 转换为OkHttp的TLS连接规格，未指定的协议版本或加密套件使用{@code SSLSocket}启用的全部
+     *
+     * @param sslConfig TLS配置
+     * @return 连接规格
+     */
+    static ConnectionSpec connectionSpec(Options.SSLConfig sslConfig) {
+        ConnectionSpec.Builder specBuilder = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS);
+        String[] protocols = sslConfig.protocols();
+        if (protocols != null) {
+            specBuilder.tlsVersions(protocols);
+        } else {
+            specBuilder.allEnabledTlsVersions();
+        }
+        String[] cipherSuites = sslConfig.cipherSuites();
+        if (cipherSuites != null) {
+            specBuilder.cipherSuites(cipherSuites);
+        } else {
+            specBuilder.allEnabledCipherSuites();
         }
+        return specBuilder.build();
+    }
 
-        this.delegate = builder.build();
+    /**
+     * 转换为OkHttp的协议列表
+     *
+     * @param protocol 协议偏好
+     * @return 协议列表
+     */
+    static List<Protocol> protocols(HttpProtocol protocol) {
+        switch (protocol) {
+            case HTTP_1_1:
+                return HTTP_1_1;
+            case H2_PRIOR_KNOWLEDGE:
+                return H2_PRIOR_KNOWLEDGE;
+            default:
+                return HTTP_2;
+        }
+    }
+
+    /**
+     * 返回请求选项对应的客户端，相同选项复用同一个实例
+     *
+     * @param options 请求选项
+     * @return {@code okhttp3.OkHttpClient}
+     */
+    okhttp3.OkHttpClient scopedClient(@Nullable Options options) {
+        if (options == null) {
+            return delegate;
+        }
+        ClientKey key = ClientKey.of(options);
+        okhttp3.OkHttpClient client = scopedClients.get(key);
+        if (client == null) {
+            if (key.matches(delegate)) {
+                client = delegate;
+            } else {
+                // 派生的客户端与delegate共享ConnectionPool和Dispatcher
+                client = configure(delegate.newBuilder(), options).build();
+            }
+            scopedClients.put(key, client);
+        }
+        return client;
+    }
+
+    /**
+     * 返回连接池及调度器的统计信息
+     *
+     * @return {@linkplain OkHttpPoolStats}
+     */
+    public OkHttpPoolStats poolStats() {
+        ConnectionPool pool = delegate.connectionPool();
+        Dispatcher dispatcher = delegate.dispatcher();
+        return new OkHttpPoolStats(pool.connectionCount(), pool.idleConnectionCount(),
+                dispatcher.runningCallsCount(), dispatcher.queuedCallsCount(),
+                dispatcher.getMaxRequests(), dispatcher.getMaxRequestsPerHost(), scopedClients.size());
     }
 
     /**
-     * 执行HTTP请求
+     * 执行HTTP请求，按照{@linkplain Options#retryPolicy()}重试
      *
      * @param request 请求对象
      * @param options 请求选项
      * @return 执行结果
-     * @throws IoRuntimeException HTTP请求异常¬
+     * @throws IoRuntimeException HTTP请求异常
      */
     @Override
     public Response execute(Request request, Options options) throws IoRuntimeException {
-        okhttp3.OkHttpClient okHttpClientScoped = null;
-        if (options != null) {
-            okhttp3.OkHttpClient.Builder builder = delegate.newBuilder();
-            if (delegate.connectTimeoutMillis() != options.connectTimeoutMillis() ||
-                    delegate.readTimeoutMillis() != options.readTimeoutMillis() ||
-                    delegate.writeTimeoutMillis() != options.writeTimeoutMillis() ||
-                    delegate.followRedirects() != options.followRedirects()) {
-                builder.connectTimeout(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
-                        .readTimeout(options.readTimeoutMillis(), TimeUnit.MILLISECONDS)
-                        .writeTimeout(options.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
-                        .followRedirects(options.followRedirects())
-                        .build();
+        okhttp3.OkHttpClient okHttpClientScoped = scopedClient(options);
+        RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+        return retryPolicy.execute(request, (attemptRequest, timeoutMillis) -> {
+            CallRecorder recorder = CallRecorder.start(attemptRequest, options);
+            Call call = okHttpClientScoped.newCall(toOkHttpRequest(attemptRequest, recorder.timings()));
+            // 到达期限时取消请求，收到响应头后不再限制
+            ScheduledFuture<?> deadline = timeoutMillis > 0 ? AsyncExecutors.schedule(call::cancel, timeoutMillis) : null;
+            try {
+                return recorder.complete(
+                        ResponseBodyPolicy.apply(toHttpResponse(call.execute(), attemptRequest), options));
+            } catch (IOException e) {
+                IoRuntimeException ex = new IoRuntimeException(e);
+                recorder.failed(ex);
+                throw ex;
+            } catch (RuntimeException e) {
+                recorder.failed(e);
+                throw e;
+            } finally {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
             }
-            ProxyInfo proxyInfo = options.proxyInfo();
-            if (proxyInfo != null) {
-                builder.proxy(proxyInfo.toJdkProxy());
-                if (StringUtil.haveAnyLength(proxyInfo.username(), proxyInfo.password())) {
-                    builder.proxyAuthenticator((route, response) -> response.request().newBuilder()
-                            .header("Proxy-Authorization", Credentials.basic(proxyInfo.username(), proxyInfo.password()))
-                            .build());
+        });
+    }
+
+    /**
+     * 基于{@code Call.enqueue}异步执行HTTP请求，按照{@linkplain Options#retryPolicy()}重试，
+     * 取消返回的{@linkplain CompletableFuture}会同时取消底层的{@code Call}
+     *
+     * @param request 请求对象
+     * @param options 请求选项
+     * @return 异步执行结果
+     */
+    @Override
+    public CompletableFuture<Response> executeAsync(Request request, Options options) {
+        okhttp3.OkHttpClient okHttpClientScoped = scopedClient(options);
+        RetryPolicy retryPolicy = options == null ? RetryPolicy.NONE : options.retryPolicy();
+        return retryPolicy.executeAsync(request,
+                attemptRequest -> enqueue(okHttpClientScoped, attemptRequest, options));
+    }
+
+    /**
+     * 预热连接，见{@linkplain Client#warmUp(String, int, Method, Options)}
+     * <p>默认使用HTTP/2，同一主机的探测请求会复用同一个连接，因此按照预热前后连接池中连接数的差值报告成功数，
+     * 不超过成功的探测请求数。连接池中已有的连接不计入，预热应当在接收流量之前进行，否则统计会受其他请求影响。</p>
+     *
+     * @param url         目标地址，比如{@code https://api.example.com}
+     * @param connections 连接数
+     * @param probe       探测请求的方法，为{@code null}时使用{@code HEAD}
+     * @param options     请求选项
+     * @return 预热结果，不会异常结束
+     */
+    @Override
+    public CompletableFuture<WarmUpResult> warmUp(@NonNull String url, int connections, @Nullable Method probe,
+                                                  @Nullable Options options) {
+        ConnectionPool pool = delegate.connectionPool();
+        int before = pool.connectionCount();
+        return Client.super.warmUp(url, connections, probe, options).thenApply(result -> {
+            int opened = Math.max(0, pool.connectionCount() - before);
+            if (opened >= result.getSucceeded()) {
+                return result;
+            }
+            Throwable failure = result.getFailure();
+            if (failure == null) {
+                failure = new IllegalStateException(result.getSucceeded() + " probes succeeded but only " + opened
+                        + " new connections were opened, HTTP/2 multiplexes requests to the same host");
+            }
+            return new WarmUpResult(url, connections, opened, result.getDurationMillis(), failure);
+        });
+    }
+
+    private static CompletableFuture<Response> enqueue(okhttp3.OkHttpClient client, Request request,
+                                                       @Nullable Options options) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        CallRecorder recorder = CallRecorder.start(request, options);
+        Call call = client.newCall(toOkHttpRequest(request, recorder.timings()));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                IoRuntimeException ex = new IoRuntimeException(e);
+                recorder.failed(ex);
+                future.completeExceptionally(ex);
+            }
+
+            @Override
+            public void onResponse(Call call, okhttp3.Response okResponse) {
+                Response response;
+                try {
+                    response = recorder.complete(ResponseBodyPolicy.apply(toHttpResponse(okResponse, request), options));
+                } catch (RuntimeException e) {
+                    // 响应内容超过限制或者暂存失败，响应已经被关闭
+                    recorder.failed(e);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                if (!future.complete(response)) {
+                    // 已经被取消，释放连接
+                    response.close();
+                    okResponse.close();
                 }
             }
-            if (options.retryCount() > 0) {
-                builder.addNetworkInterceptor(new Retry(options.retryCount()));
+        });
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                call.cancel();
             }
-            okHttpClientScoped = builder.build();
-        } else {
-            okHttpClientScoped = delegate;
-        }
-        okhttp3.Request okRequest = toOkHttpRequest(request);
-        try {
-            okhttp3.Response okResponse = okHttpClientScoped.newCall(okRequest).execute();
-            return toHttpResponse(okResponse, request).newBuilder().request(request).build();
-        } catch (IOException e) {
-            throw new IoRuntimeException(e);
-        }
+        });
+        return future;
     }
 
-    private static okhttp3.Request toOkHttpRequest(Request input) {
+    private static okhttp3.Request toOkHttpRequest(Request input, CallTimings timings) {
         okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder();
         requestBuilder.url(input.url());
+        // 供TimingEventListener记录各阶段耗时
+        requestBuilder.tag(CallTimings.class, timings);
 
         ContentType contentType = null;
         if (input.body() != null) {
@@ -171,38 +405,12 @@ public class OkHttpClient implements Client {
             }
             requestBuilder.method(input.method().name(), builder.build());
         } else if (input.body() instanceof MultipartBody) {
+            // 使用自身的编码器流式写出，文件和流的部分不会读入内存
             MultipartBody multipartBody = (MultipartBody) input.body();
-            okhttp3.MultipartBody.Builder builder;
-            if (StringUtil.hasLength(multipartBody.getBoundary())) {
-                builder = new okhttp3.MultipartBody.Builder(multipartBody.getBoundary());
-            } else {
-                builder = new okhttp3.MultipartBody.Builder();
-            }
-            builder.setType(okhttp3MediaType);
-
-            if (CollectionUtil.isEmpty(multipartBody.getParts())) {
-                builder.addPart(okhttp3.RequestBody.create(okhttp3.MultipartBody.FORM, new byte[0]));
-            } else {
-                for (MultipartBody.Part part : multipartBody.getParts()) {
-                    okhttp3.MediaType partMediaType = okhttp3.MediaType.parse(part.getContentType().toString());
-                    if (part.getFile() != null) {
-                        builder.addFormDataPart(part.getName(), part.getValue(),
-                                okhttp3.RequestBody.create(partMediaType, part.getFile()));
-                    } else if (part.getIn() != null) {
-                        builder.addFormDataPart(part.getName(), part.getValue(),
-                                okhttp3.RequestBody.create(partMediaType, RequestBody.create(null, part.getIn()).getData()));
-                    } else if (part.getBody() != null) {
-                        builder.addFormDataPart(part.getName(), part.getValue(),
-                                okhttp3.RequestBody.create(partMediaType, part.getBody().getData()));
-                    } else if (part.getValue() != null) {
-                        builder.addFormDataPart(part.getName(), null,
-                                okhttp3.RequestBody.create(partMediaType, part.getValue()));
-                    }
-                }
-            }
-            requestBuilder.method(input.method().name(), builder.build());
+            requestBuilder.method(input.method().name(), new StreamingRequestBody(multipartBody,
+                    MediaType.parse(multipartBody.contentTypeHeader())));
         } else {
-            requestBuilder.method(input.method().name(), okhttp3.RequestBody.create(okhttp3MediaType, input.body().getData()));
+            requestBuilder.method(input.method().name(), StreamingRequestBody.create(input.body(), okhttp3MediaType));
         }
         return requestBuilder.build();
     }
@@ -283,4 +491,81 @@ public class OkHttpClient implements Client {
 
     }
 
+    /**
+     * 派生客户端的缓存键
+     */
+    static final class ClientKey {
+
+        private final int connectTimeoutMillis;
+
+        private final int readTimeoutMillis;
+
+        private final int writeTimeoutMillis;
+
+        private final boolean followRedirects;
+
+        private final ProxyInfo proxyInfo;
+
+        private final Dns dns;
+
+        private final HttpProtocol protocol;
+
+        private final Options.SSLConfig sslConfig;
+
+        private ClientKey(Options options) {
+            this.connectTimeoutMillis = options.connectTimeoutMillis();
+            this.readTimeoutMillis = options.readTimeoutMillis();
+            this.writeTimeoutMillis = options.writeTimeoutMillis();
+            this.followRedirects = options.followRedirects();
+            this.proxyInfo = options.proxyInfo();
+            this.dns = options.dns();
+            this.protocol = options.protocol();
+            this.sslConfig = options.sslConfig();
+        }
+
+        static ClientKey of(@NonNull Options options) {
+            return new ClientKey(options);
+        }
+
+        /**
+         * 判断客户端是否已经满足当前的选项，满足则无需派生
+         */
+        boolean matches(okhttp3.OkHttpClient client) {
+            return proxyInfo == null &&
+                    (dns == Dns.SYSTEM || client.dns() instanceof OkHttpDns && ((OkHttpDns) client.dns()).dns == dns) &&
+                    client.connectTimeoutMillis() == connectTimeoutMillis &&
+                    client.readTimeoutMillis() == readTimeoutMillis &&
+                    client.writeTimeoutMillis() == writeTimeoutMillis &&
+                    client.followRedirects() == followRedirects &&
+                    client.protocols().equals(protocols(protocol)) &&
+                    (sslConfig == null || client.sslSocketFactory() == sslConfig.socketFactory());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            ClientKey that = (ClientKey) o;
+            return connectTimeoutMillis == that.connectTimeoutMillis &&
+                    readTimeoutMillis == that.readTimeoutMillis &&
+                    writeTimeoutMillis == that.writeTimeoutMillis &&
+                    followRedirects == that.followRedirects &&
+                    Objects.equals(proxyInfo, that.proxyInfo) &&
+                    dns == that.dns &&
+                    protocol == that.protocol &&
+                    sslConfig == that.sslConfig;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connectTimeoutMillis, readTimeoutMillis, writeTimeoutMillis, followRedirects, proxyInfo,
+                    System.identityHashCode(dns), protocol, System.identityHashCode(sslConfig));
+        }
+
+    }
+
 }
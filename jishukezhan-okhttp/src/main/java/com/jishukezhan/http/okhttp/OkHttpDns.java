@@ -0,0 +1,27 @@
+package com.jishukezhan.http.okhttp;
+
+import com.jishukezhan.http.dns.Dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+
+/**
+ * 将{@linkplain Dns}适配为OkHttp的{@code Dns}
+ *
+ * @author miles.tang
+ */
+final class OkHttpDns implements okhttp3.Dns {
+
+    final Dns dns;
+
+    OkHttpDns(Dns dns) {
+        this.dns = dns;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        return dns.lookup(hostname);
+    }
+
+}
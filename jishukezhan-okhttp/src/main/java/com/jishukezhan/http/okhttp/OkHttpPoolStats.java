@@ -0,0 +1,117 @@
+package com.jishukezhan.http.okhttp;
+
+/**
+ * {@linkplain OkHttpClient}连接池及调度器的统计快照
+ *
+ * @author miles.tang
+ */
+public class OkHttpPoolStats {
+
+    /**
+     * 连接池中的连接总数
+     */
+    private final int connectionCount;
+
+    /**
+     * 连接池中空闲的连接数
+     */
+    private final int idleConnectionCount;
+
+    /**
+     * 正在执行的请求数
+     */
+    private final int runningCallsCount;
+
+    /**
+     * 排队等待执行的请求数
+     */
+    private final int queuedCallsCount;
+
+    /**
+     * 调度器允许的最大并发请求数
+     */
+    private final int maxRequests;
+
+    /**
+     * 调度器允许的每个主机最大并发请求数
+     */
+    private final int maxRequestsPerHost;
+
+    /**
+     * 缓存的派生客户端数量
+     */
+    private final int scopedClientCount;
+
+    OkHttpPoolStats(int connectionCount, int idleConnectionCount, int runningCallsCount, int queuedCallsCount,
+                    int maxRequests, int maxRequestsPerHost, int scopedClientCount) {
+        this.connectionCount = connectionCount;
+        this.idleConnectionCount = idleConnectionCount;
+        this.runningCallsCount = runningCallsCount;
+        this.queuedCallsCount = queuedCallsCount;
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.scopedClientCount = scopedClientCount;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    /**
+     * 正在使用中的连接数
+     *
+     * @return 连接数
+     */
+    public int getActiveConnectionCount() {
+        return Math.max(0, connectionCount - idleConnectionCount);
+    }
+
+    /**
+     * 每个使用中的连接平均承载的请求数，HTTP/2多路复用时大于1，HTTP/1.1时不超过1
+     *
+     * @return 请求数，没有使用中的连接时为0
+     */
+    public double getStreamsPerConnection() {
+        int active = getActiveConnectionCount();
+        return active == 0 ? 0 : (double) runningCallsCount / active;
+    }
+
+    public int getRunningCallsCount() {
+        return runningCallsCount;
+    }
+
+    public int getQueuedCallsCount() {
+        return queuedCallsCount;
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+
+    public int getScopedClientCount() {
+        return scopedClientCount;
+    }
+
+    @Override
+    public String toString() {
+        return "OkHttpPoolStats{" +
+                "connectionCount=" + connectionCount +
+                ", idleConnectionCount=" + idleConnectionCount +
+                ", runningCallsCount=" + runningCallsCount +
+                ", streamsPerConnection=" + getStreamsPerConnection() +
+                ", queuedCallsCount=" + queuedCallsCount +
+                ", maxRequests=" + maxRequests +
+                ", maxRequestsPerHost=" + maxRequestsPerHost +
+                ", scopedClientCount=" + scopedClientCount +
+                '}';
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.jishukezhan.http.okhttp;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.http.RequestBody;
+import okhttp3.MediaType;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+
+/**
+ * 将{@linkplain RequestBody}适配为{@code okhttp3.RequestBody}，发送时直接写出到{@linkplain BufferedSink}，不会全部读入内存
+ *
+ * @author miles.tang
+ */
+class StreamingRequestBody extends okhttp3.RequestBody {
+
+    private final RequestBody body;
+
+    private final MediaType mediaType;
+
+    StreamingRequestBody(RequestBody body, @Nullable MediaType mediaType) {
+        this.body = body;
+        this.mediaType = mediaType;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mediaType;
+    }
+
+    @Override
+    public long contentLength() {
+        return body.contentLength();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return !body.isRepeatable();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (body instanceof RequestBody.InputStreamRequestBody) {
+            try (Source source = Okio.source(((RequestBody.InputStreamRequestBody) body).getIn())) {
+                sink.writeAll(source);
+            }
+        } else {
+            body.writeTo(sink.outputStream());
+        }
+    }
+
+    /**
+     * 将{@linkplain RequestBody}转为{@code okhttp3.RequestBody}
+     *
+     * @param body      请求内容
+     * @param mediaType 内容类型
+     * @return {@code okhttp3.RequestBody}
+     */
+    static okhttp3.RequestBody create(RequestBody body, @Nullable MediaType mediaType) {
+        if (body instanceof RequestBody.FileRequestBody) {
+            return okhttp3.RequestBody.create(mediaType, ((RequestBody.FileRequestBody) body).getFile());
+        }
+        if (body.getClass() == RequestBody.class) {
+            byte[] data = body.getData();
+            return okhttp3.RequestBody.create(mediaType, data == null ? new byte[0] : data);
+        }
+        return new StreamingRequestBody(body, mediaType);
+    }
+
+}
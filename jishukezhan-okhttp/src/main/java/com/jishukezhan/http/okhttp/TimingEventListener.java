@@ -0,0 +1,187 @@
+package com.jishukezhan.http.okhttp;
+
+import com.jishukezhan.annotation.Nullable;
+import com.jishukezhan.http.event.CallTimings;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * 将OkHttp的{@linkplain EventListener}事件记录到请求附带的{@linkplain CallTimings}中，
+ * 所有事件同时转发给原有的监听器
+ * <p>{@linkplain CallTimings}通过{@code okhttp3.Request#tag(Class)}传递，没有附带时只转发事件</p>
+ *
+ * @author miles.tang
+ */
+final class TimingEventListener extends EventListener {
+
+    private final CallTimings timings;
+
+    private final EventListener delegate;
+
+    private TimingEventListener(@Nullable CallTimings timings, EventListener delegate) {
+        this.timings = timings;
+        this.delegate = delegate;
+    }
+
+    /**
+     * 创建事件监听器工厂
+     *
+     * @param delegate 原有的监听器工厂，可以为{@code null}
+     * @return 监听器工厂，{@code delegate}已经是本类创建的工厂时直接返回
+     */
+    static EventListener.Factory factory(@Nullable EventListener.Factory delegate) {
+        if (delegate instanceof TimingFactory) {
+            return delegate;
+        }
+        return new TimingFactory(delegate);
+    }
+
+    private void mark(CallTimings.Phase phase) {
+        if (timings != null) {
+            timings.mark(phase);
+        }
+    }
+
+    @Override
+    public void callStart(Call call) {
+        delegate.callStart(call);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        mark(CallTimings.Phase.DNS_START);
+        delegate.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        mark(CallTimings.Phase.DNS_END);
+        delegate.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        mark(CallTimings.Phase.CONNECT_START);
+        delegate.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        mark(CallTimings.Phase.SECURE_CONNECT_START);
+        delegate.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+        mark(CallTimings.Phase.SECURE_CONNECT_END);
+        delegate.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+        mark(CallTimings.Phase.CONNECT_END);
+        delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              @Nullable Protocol protocol, IOException ioe) {
+        delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        delegate.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        delegate.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        mark(CallTimings.Phase.REQUEST_START);
+        delegate.requestHeadersStart(call);
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        // 没有请求内容时请求头发送完即请求结束，有请求内容时会被requestBodyEnd覆盖
+        mark(CallTimings.Phase.REQUEST_END);
+        delegate.requestHeadersEnd(call, request);
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        delegate.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        mark(CallTimings.Phase.REQUEST_END);
+        delegate.requestBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        mark(CallTimings.Phase.RESPONSE_HEADERS_START);
+        delegate.responseHeadersStart(call);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        mark(CallTimings.Phase.RESPONSE_HEADERS_END);
+        delegate.responseHeadersEnd(call, response);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        delegate.responseBodyStart(call);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        mark(CallTimings.Phase.RESPONSE_BODY_END);
+        delegate.responseBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        delegate.callEnd(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        delegate.callFailed(call, ioe);
+    }
+
+    private static final class TimingFactory implements EventListener.Factory {
+
+        private final EventListener.Factory delegate;
+
+        TimingFactory(@Nullable EventListener.Factory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            EventListener listener = delegate == null ? null : delegate.create(call);
+            return new TimingEventListener(call.request().tag(CallTimings.class),
+                    listener == null ? EventListener.NONE : listener);
+        }
+
+    }
+
+}